@@ -29,6 +29,8 @@ import org.terrier.indexing.Collection;
 import org.terrier.structures.indexing.Indexer;
 import org.terrier.structures.indexing.singlepass.BasicSinglePassIndexer;
 import org.terrier.structures.indexing.singlepass.BlockSinglePassIndexer;
+import org.terrier.structures.indexing.singlepass.PipelinedSinglePassIndexer;
+import org.terrier.utility.ApplicationSetup;
 
 public class TRECIndexingSinglePass extends TRECIndexing {
 
@@ -52,8 +54,15 @@ public class TRECIndexingSinglePass extends TRECIndexing {
 	@Override
 	protected Indexer loadIndexer(String pa, String pr) {
 		BasicSinglePassIndexer _indexer;
+		final boolean pipelined = Boolean.parseBoolean(ApplicationSetup.getProperty("indexing.singlepass.pipelined", "false"));
 		if (blocks)
+		{
+			if (pipelined)
+				logger.warn("Pipelined singlepass indexing does not support blocks, using "+ BlockSinglePassIndexer.class.getSimpleName());
 			_indexer = new BlockSinglePassIndexer(pa, pr);
+		}
+		else if (pipelined)
+			_indexer = new PipelinedSinglePassIndexer(pa, pr);
 		else
 			_indexer = new BasicSinglePassIndexer(pa, pr);
 		return _indexer;
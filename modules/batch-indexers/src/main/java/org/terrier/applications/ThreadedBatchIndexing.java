@@ -26,11 +26,16 @@
 package org.terrier.applications;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,12 +44,31 @@ import org.terrier.indexing.CollectionFactory;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.IndexUtil;
-import org.terrier.structures.merging.BlockStructureMerger;
-import org.terrier.structures.merging.StructureMerger;
+import org.terrier.structures.merging.BlockMultiStructureMerger;
+import org.terrier.structures.merging.MultiStructureMerger;
 import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
 import org.terrier.utility.TagSet;
+import org.terrier.utility.UnitUtils;
 /** An implementation of BatchIndexing that uses Java 8 parallel streams to
- * increase indexing speed on multi-core machines.
+ * increase indexing speed on multi-core machines. The indices built by each 
+ * stream are then merged in a single pass using a {@link MultiStructureMerger}.
+ * <p>
+ * The files of the collection.spec can be assigned to the indexing threads in one of 
+ * three ways:
+ * <ul>
+ * <li><tt>count</tt> - the collection.spec is split into one partition per thread, each with the same number of files (default).</li>
+ * <li><tt>size</tt> - the collection.spec is split into one contiguous range of files per thread, each with approximately the same total size in bytes.</li>
+ * <li><tt>queue</tt> - the threads repeatedly take the next files from a shared queue, building a new partial index each
+ * time the files taken reach a target size. Threads hence remain busy until the collection is exhausted, regardless of
+ * the mix of file sizes. The partial indices are merged in collection.spec order.</li>
+ * </ul>
+ * <b>Properties:</b>
+ * <ul>
+ * <li><tt>indexing.threaded.partitioning</tt> - one of <tt>count</tt>, <tt>size</tt> or <tt>queue</tt>, as above. Default is <tt>count</tt>.</li>
+ * <li><tt>indexing.threaded.partial.size</tt> - in <tt>queue</tt> mode, the target size of the files indexed in each partial index, e.g. <tt>2GiB</tt>. 
+ * Default is 0, which uses a quarter of the collection size per thread.</li>
+ * </ul>
  * @author Craig Macdonald
  * @since 4.2
  */
@@ -94,15 +118,105 @@ public class ThreadedBatchIndexing extends BatchIndexing {
 		this.maxThreads = threads;
 	}
 
+	/** 
+	 * Merges the indices created by each stream, in a single pass, using a {@link MultiStructureMerger}.
+	 * The source indices are deleted once merged.
+	 * @param streamPrefixes prefixes of the indices to merge, in the order of their documents
+	 * @return the prefix of the merged index
+	 */
+	protected String merge(List<String> streamPrefixes) throws IOException
+	{
+		if (streamPrefixes.size() == 1)
+			return streamPrefixes.get(0);
+		final long starttime = System.currentTimeMillis();
+		Index.setIndexLoadingProfileAsRetrieval(false);
+		IndexOnDisk[] srcIndices = new IndexOnDisk[streamPrefixes.size()];
+		for(int i=0;i<srcIndices.length;i++)
+			srcIndices[i] = IndexOnDisk.createIndex(path, streamPrefixes.get(i));
+		String thisPrefix = prefix + "_merge";
+		IndexOnDisk newIndex = IndexOnDisk.createNewIndex(path, thisPrefix);
+		if (blocks)
+			new BlockMultiStructureMerger(srcIndices, newIndex).mergeStructures();
+		else
+			new MultiStructureMerger(srcIndices, newIndex).mergeStructures();
+		for(IndexOnDisk src : srcIndices)
+			src.close();
+		newIndex.close();
+		for(String srcPrefix : streamPrefixes)
+			IndexUtil.deleteIndex(path, srcPrefix);
+		logger.info("Merged " + srcIndices.length + " indices in " + (System.currentTimeMillis() - starttime)/1000 + " seconds");
+		return thisPrefix;
+	}
+
+	/** Builds one index for the specified files, returning its prefix */
+	protected String indexFiles(List<String> files, String thisPrefix)
+	{
+		Collection c = loadCollection(files);
+		BatchIndexing indexing = singlePass 
+				? new TRECIndexingSinglePass(path, thisPrefix, c)
+				: new TRECIndexing(path, thisPrefix, c);
+		indexing.blocks = blocks;
+		indexing.index();
+		return thisPrefix;
+	}
+	
+	/** 
+	 * Indexes the collection.spec using threads that take files from a shared queue. Each thread
+	 * indexes consecutive files of the collection.spec until their total size reaches the target size,
+	 * then rolls over to a new partial index. 
+	 * @return prefixes of the partial indices, in collection.spec order
+	 */
+	protected List<String> indexQueue(final ForkJoinPool forkPool, final List<String> files, final AtomicInteger indexCounter) throws Exception
+	{
+		final int threadCount = forkPool.getParallelism();
+		final long[] sizes = new long[files.size()];
+		long total = 0;
+		for(int i=0;i<sizes.length;i++)
+			total += sizes[i] = Files.length(files.get(i));
+		long configuredTarget = UnitUtils.parseLong(ApplicationSetup.getProperty("indexing.threaded.partial.size", "0"));
+		final long target = configuredTarget > 0
+				? configuredTarget
+				: Math.max(1l, total / (4l * threadCount));
+		logger.info("Indexing " + files.size() + " files totalling " + total + " bytes from a shared queue, rolling partial indices every " + target + " bytes");
+		
+		final int[] nextFile = new int[]{0};
+		//partial index prefixes keyed by the position of their first file 
+		final ConcurrentSkipListMap<Integer,String> partials = new ConcurrentSkipListMap<>();
+		Callable<Object> worker = () -> {
+			while(true)
+			{
+				final int first;
+				final List<String> batch = new ArrayList<>();
+				synchronized (nextFile) {
+					first = nextFile[0];
+					long batchSize = 0;
+					while(nextFile[0] < sizes.length && (batch.isEmpty() || batchSize < target))
+					{
+						batchSize += sizes[nextFile[0]];
+						batch.add(files.get(nextFile[0]++));
+					}
+				}
+				if (batch.isEmpty())
+					return null;
+				partials.put(first, indexFiles(batch, prefix + "_stream"+indexCounter.getAndIncrement()));
+			}
+		};
+		for(Future<Object> f : forkPool.invokeAll(Collections.nCopies(threadCount, worker)))
+			f.get();
+		return new ArrayList<>(partials.values());
+	}
+
 	@Override
 	public void index()
 	{	
 		try{
 			final long starttime = System.currentTimeMillis();
 			final AtomicInteger indexCounter = new AtomicInteger();
-			final AtomicInteger mergeCounter = new AtomicInteger();			
 			
-			final int threadCount = ForkJoinPool.commonPool().getParallelism();
+			ForkJoinPool forkPool = this.maxThreads == -1 
+					? ForkJoinPool.commonPool()
+					: new ForkJoinPool(this.maxThreads);
+			final int threadCount = forkPool.getParallelism();
 			logger.info("Started " + this.getClass().getSimpleName() + " with parallelism " + threadCount);
 			if (singlePass)
 			{
@@ -114,56 +228,29 @@ public class ThreadedBatchIndexing extends BatchIndexing {
 				logger.info("Memory reserved is now "+ApplicationSetup.MEMORY_THRESHOLD_SINGLEPASS);
 			}
 			
-			List<List<String>> partitioned = CollectionFactory.splitCollectionSpecFileList(ApplicationSetup.COLLECTION_SPEC, threadCount);
-			logger.info("Partitioned collection.spec into "+ partitioned.size() + " partitions");
-			
 			IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
-			Function<List<String>,String> indexer = new Function<List<String>,String>()
+			
+			final String partitioning = ApplicationSetup.getProperty("indexing.threaded.partitioning", "count");
+			final List<String> streamPrefixes;
+			if (partitioning.equals("queue"))
 			{
-				@Override
-				public String apply(List<String> files) {
-					String thisPrefix = prefix + "_stream"+indexCounter.getAndIncrement();
-					Collection c = loadCollection(files);
-					BatchIndexing indexing = singlePass 
-							? new TRECIndexingSinglePass(path, thisPrefix, c)
-							: new TRECIndexing(path, thisPrefix, c);
-					indexing.blocks = blocks;
-					indexing.index();
-					return thisPrefix;
-				}	
-			};
-			BinaryOperator<String> merger = new BinaryOperator<String>()
+				streamPrefixes = indexQueue(forkPool, CollectionFactory.loadCollectionSpecFileList(ApplicationSetup.COLLECTION_SPEC), indexCounter);
+			}
+			else
 			{
-				@Override
-				public String apply(String t, String u) {
-					Index.setIndexLoadingProfileAsRetrieval(false);
-					IndexOnDisk src1 = IndexOnDisk.createIndex(path, t);
-					IndexOnDisk src2 = IndexOnDisk.createIndex(path, u);
-					String thisPrefix = prefix + "_merge"+mergeCounter.getAndIncrement();
-					IndexOnDisk newIndex = IndexOnDisk.createNewIndex(path, thisPrefix);
-					if (blocks)
-						new BlockStructureMerger(src1, src2, newIndex).mergeStructures();
-					else
-						new StructureMerger(src1, src2, newIndex).mergeStructures();
-					
-					try {
-						src1.close();
-						src2.close();
-						newIndex.close();
-						//TODO: could index deletion occur in parallel
-						IndexUtil.deleteIndex(path, t);
-						IndexUtil.deleteIndex(path, u);
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-					return thisPrefix;
-				}	
-			};
-			
-			ForkJoinPool forkPool = this.maxThreads == -1 
-					? ForkJoinPool.commonPool()
-					: new ForkJoinPool(this.maxThreads);
-			String tmpPrefix = forkPool.submit(() -> partitioned.parallelStream().map(indexer).reduce(merger).get()).get();
+				List<List<String>> partitioned;
+				if (partitioning.equals("size"))
+					partitioned = CollectionFactory.splitCollectionSpecFileListBySize(ApplicationSetup.COLLECTION_SPEC, threadCount);
+				else if (partitioning.equals("count"))
+					partitioned = CollectionFactory.splitCollectionSpecFileList(ApplicationSetup.COLLECTION_SPEC, threadCount);
+				else
+					throw new IllegalArgumentException("Unknown indexing.threaded.partitioning " + partitioning);
+				logger.info("Partitioned collection.spec into "+ partitioned.size() + " partitions by " + partitioning);
+				
+				Function<List<String>,String> indexer = files -> indexFiles(files, prefix + "_stream"+indexCounter.getAndIncrement());
+				streamPrefixes = forkPool.submit(() -> partitioned.parallelStream().map(indexer).collect(Collectors.toList())).get();
+			}
+			String tmpPrefix = merge(streamPrefixes);
 			
 			IndexUtil.renameIndex(path, tmpPrefix, path, prefix);
 			logger.info("Parallel indexing completed after " 
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -44,6 +45,7 @@ import org.terrier.indexing.tokenisation.Tokeniser;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.Files;
 import org.terrier.utility.StringTools;
+import org.terrier.utility.io.ReadAheadInputStream;
 import org.terrier.utility.io.WrappedIOException;
 
 public abstract class MultiDocumentFileCollection implements Collection {
@@ -81,6 +83,12 @@ public abstract class MultiDocumentFileCollection implements Collection {
 	protected Class<? extends Document> documentClass;
 	/** Tokeniser to use for all documents parsed by this class */
 	protected Tokeniser tokeniser = Tokeniser.getTokeniser();
+	/** number of files opened ahead of the current file, and read on background threads.
+	 * Set by property <tt>trec.collection.readahead</tt>, defaults to 0, i.e. files are read
+	 * on the calling thread. */
+	protected int readAheadFiles = Integer.parseInt(ApplicationSetup.getProperty("trec.collection.readahead", "0"));
+	/** files opened ahead, keyed by their position in FilesToProcess */
+	protected final Map<Integer,InputStream> readAheadStreams = new HashMap<Integer,InputStream>();
 
 	protected MultiDocumentFileCollection(){}
 	
@@ -150,6 +158,9 @@ public abstract class MultiDocumentFileCollection implements Collection {
 		try{
 			if (is != null)
 				is.close();
+			for(InputStream ahead : readAheadStreams.values())
+				ahead.close();
+			readAheadStreams.clear();
 		} catch (IOException ioe) { 
 			logger.warn("Problem closing collection",ioe);
 		}
@@ -196,7 +207,7 @@ public abstract class MultiDocumentFileCollection implements Collection {
 				}
 				else
 				{//filename seems ok, open it
-					is = Files.openFileStream(filename); //throws an IOException, throw upwards
+					is = openFileStream(FileNumber-1, filename); //throws an IOException, throw upwards
 					logger.info(this.getClass().getSimpleName() + " "+( (100*(FileNumber-1))/FilesToProcess.size())+"% processing "+filename);
 					//no need to loop again
 					tryFile = false;
@@ -223,6 +234,42 @@ public abstract class MultiDocumentFileCollection implements Collection {
 		return rtr;
 	}
 	
+	/**
+	 * Opens the file at the specified position of FilesToProcess, using the stream opened
+	 * ahead if there is one. If <tt>trec.collection.readahead</tt> is set, the following 
+	 * files are then opened ahead, such that their decompression starts on background threads.
+	 * @param index position of the file in FilesToProcess
+	 * @param filename name of the file
+	 * @return stream of the file's contents
+	 * @throws IOException if the file cannot be opened
+	 */
+	protected InputStream openFileStream(int index, String filename) throws IOException {
+		InputStream rtr = readAheadStreams.remove(index);
+		if (rtr == null)
+			rtr = readAhead(Files.openFileStream(filename));
+		for(int i=index+1;i<=index+readAheadFiles && i < FilesToProcess.size();i++)
+		{
+			if (readAheadStreams.containsKey(i))
+				continue;
+			final String next = FilesToProcess.get(i);
+			if (! Files.exists(next) || ! Files.canRead(next))
+				continue;
+			try{
+				readAheadStreams.put(i, readAhead(Files.openFileStream(next)));
+			} catch (IOException ioe) {
+				logger.warn("Could not open "+next+" ahead of reading it", ioe);
+			}
+		}
+		return rtr;
+	}
+	
+	/** wraps the stream in a ReadAheadInputStream, if files are read ahead */
+	protected InputStream readAhead(InputStream stream) {
+		if (readAheadFiles == 0 || stream instanceof ReadAheadInputStream)
+			return stream;
+		return new ReadAheadInputStream(stream);
+	}
+	
 	static final Pattern charsetMatchPattern = Pattern.compile("charset[:=]\\s*['\"]?([0-9a-zA-Z_\\-]+)['\"]?");
 
 	
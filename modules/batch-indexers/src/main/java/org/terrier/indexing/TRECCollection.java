@@ -27,8 +27,11 @@
  */
 package org.terrier.indexing;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,10 +40,9 @@ import java.util.Map;
 import org.terrier.indexing.tokenisation.Tokeniser;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.Files;
-import org.terrier.utility.LookAheadStream;
-import org.terrier.utility.LookAheadStreamCaseInsensitive;
 import org.terrier.utility.TagSet;
 import org.terrier.utility.io.CountingInputStream;
+import org.terrier.utility.io.ScanningInputStream;
 /**
  * Models a TREC test collection by implementing the interfaces
  * Collection and DocumentExtractor. It provides sequential access
@@ -56,10 +58,15 @@ import org.terrier.utility.io.CountingInputStream;
  * need to be ordered and the tags to add need to be specified in <tt>TrecDocTags.propertytags</tt> and <tt>indexer.meta.forward.keys</tt>
  * and the maximum length of the tags given in <tt>indexer.meta.forward.keylens</tt>.
  * 
+ * Since 5.2, files are read through a {@link ScanningInputStream}, which finds the tags
+ * by scanning a large buffer of bytes. The content of each document is read into memory
+ * as bytes, which are decoded by the {@link Document} class.
+ * 
  * <p><b>Properties</b>:
  * <ul> 
  * <li><tt>trec.document.class</tt> the {@link Document} class to parse individual documents (defaults to {@link TaggedDocument}).</li> 
  * <li><tt>trec.encoding</tt> - encoding to use to open all files. Leave unset for System default encoding.</li>
+ * <li><tt>trec.collection.readahead</tt> - number of files to open ahead of the current file, such that they are read (and decompressed) on background threads. Defaults to 0.</li>
  * <li><tt>(tagset).propertytags</tt> - list of tags to add to the meta index rather than to index. Tags are assumed to be IN ORDER after the docid.</li>
  * <li><tt>indexer.meta.forward.keys</tt> - list of keys to add to the meta index, remember to put any property tags here as well.</li>
  * <li><tt>indexer.meta.forward.keylens</tt> - lengths of each of the the meta keys, remember to put the lengths of the property tags here as well.</li>
@@ -82,7 +89,7 @@ public class TRECCollection extends MultiDocumentFileCollection {
 	/** The string identifier of the current document.*/
 	protected String ThisDocID;
 	/** The inputstream used for reading data.*/
-	protected CountingInputStream br;
+	protected ScanningInputStream br;
 	
 	/** The opening document tag.*/
 	protected char[] start_docTag;
@@ -112,6 +119,22 @@ public class TRECCollection extends MultiDocumentFileCollection {
 	protected char[][] startPropertyTags;
 	/** The end property tag */
 	protected char[][] endPropertyTags;
+	/** The opening document tag, as bytes */
+	protected byte[] start_docTagBytes;
+	/** The closing document tag, as bytes */
+	protected byte[] end_docTagBytes;
+	/** The opening document number tag, as bytes */
+	protected byte[] start_docnoTagBytes;
+	/** The closing document number tag, as bytes */
+	protected byte[] end_docnoTagBytes;
+	/** The start property tags, as bytes */
+	protected byte[][] startPropertyTagBytes;
+	/** The end property tags, as bytes */
+	protected byte[][] endPropertyTagBytes;
+	/** Holds the content of the current tag */
+	protected final ByteArrayOutputStream tagContent = new ByteArrayOutputStream();
+	/** Holds the content of the current document */
+	protected final ByteArrayOutputStream documentContent = new ByteArrayOutputStream();
 
 
 	/**
@@ -136,6 +159,18 @@ public class TRECCollection extends MultiDocumentFileCollection {
 		end_docTagLength = end_docTag.length();
 		end_docnoTag = tmpEndDocnoTag.toCharArray();
 		end_docnoTagLength = end_docnoTag.length;
+		start_docTagBytes = toBytes(start_docTag);
+		end_docTagBytes = toBytes(end_docTag.toCharArray());
+		start_docnoTagBytes = toBytes(start_docnoTag);
+		end_docnoTagBytes = toBytes(end_docnoTag);
+		if (tags_CaseSensitive && desiredEncoding != null)
+		{
+			try{
+				end_docTagBytes = end_docTag.getBytes(desiredEncoding);
+			} catch (java.io.UnsupportedEncodingException uee) {
+				logger.warn("Unsupported encoding " + desiredEncoding, uee);
+			}
+		}
 
 		// TREC-178: Adding in property tags that can be added to the meta index
 		if (ApplicationSetup.getProperty(TagSet+".propertytags", "").compareTo("")==0) ignoreProperties = true;
@@ -146,11 +181,15 @@ public class TRECCollection extends MultiDocumentFileCollection {
 			propertyTagLengths = new int[this.propertyTags.length];
 			startPropertyTags = new char[this.propertyTags.length][];
 			endPropertyTags = new char[this.propertyTags.length][];
+			startPropertyTagBytes = new byte[this.propertyTags.length][];
+			endPropertyTagBytes = new byte[this.propertyTags.length][];
 			for (int t = 0; t<this.propertyTags.length; t++) {
 				// store the length and start and end tags so we don't need to do this later
 				startPropertyTags[t] = ("<" + this.propertyTags[t] + ">").toCharArray();
 				propertyTagLengths[t] = startPropertyTags[t].length;
 				endPropertyTags[t] = ("</" + this.propertyTags[t] + ">").toCharArray();
+				startPropertyTagBytes[t] = toBytes(startPropertyTags[t]);
+				endPropertyTagBytes[t] = toBytes(endPropertyTags[t]);
 			}
 		}
 		
@@ -277,52 +316,31 @@ public class TRECCollection extends MultiDocumentFileCollection {
 
 		DocProperties = new HashMap<String,String>(15);
 
-		/* state of the parser. This is equal to how many characters have been
-		 * found of the currently desired string */
-		int State = 0;
-		// the most recently found character
-		int c;
 		boolean bScanning = true;
 		scanning:
 		while(bScanning)
 		{
 			try {
-				State = 0;
 				StringBuilder tagcontent = null;
 				StringBuilder[] properties = new StringBuilder[propertyTags.length];
 				//looking for doc tag
-				while (State < start_docTagLength) {
-					if ((c = br.read()) == -1) {
-						//print a warning if no documents found in that file!
-						if (documentsInThisFile == 0)
-						{
-							logger.warn(this.getClass().getSimpleName() + " found no documents in " + currentFilename + ". "
-								+"Perhaps trec.collection.class is wrongly set, TrecDocTags are incorrect, or decompression failed");
-						}
-						
-						if (openNextFile()) {
-							continue scanning;//continue;
-						} else {
-							eoc = true;
-							return false;
-						}
-					}
-					char cc = (char)c;
-					char cu = start_docTag[State];
-					
-					if (!tags_CaseSensitive) {
-						cc= Character.toUpperCase((char)c);
-						cu=Character.toUpperCase((char)cu);
+				if (! br.readUntil(start_docTagBytes, ! tags_CaseSensitive, null)) {
+					//print a warning if no documents found in that file!
+					if (documentsInThisFile == 0)
+					{
+						logger.warn(this.getClass().getSimpleName() + " found no documents in " + currentFilename + ". "
+							+"Perhaps trec.collection.class is wrongly set, TrecDocTags are incorrect, or decompression failed");
 					}
 					
-					if (cc==cu) {
-						State++;
+					if (openNextFile()) {
+						continue scanning;//continue;
 					} else {
-						State = 0;
+						eoc = true;
+						return false;
 					}
 				}
 				//looking for docno tag
-				tagcontent = getTag(start_docnoTagLength, start_docnoTag, end_docnoTag);
+				tagcontent = getTag(start_docnoTagBytes, end_docnoTagBytes);
 				if (tagcontent == null)
 				{
 					if (eoc) return false;
@@ -337,7 +355,7 @@ public class TRECCollection extends MultiDocumentFileCollection {
 				// for each property
 				if (!ignoreProperties){
 					for (int pt = 0; pt<propertyTags.length; pt++) {
-						tagcontent = getTag(propertyTagLengths[pt], startPropertyTags[pt], endPropertyTags[pt]);
+						tagcontent = getTag(startPropertyTagBytes[pt], endPropertyTagBytes[pt]);
 						if (tagcontent == null) {
 							if (eoc) return false;
 							continue scanning;
@@ -351,7 +369,6 @@ public class TRECCollection extends MultiDocumentFileCollection {
 				
 				//got all of the document, phew!
 				
-				State = 0;
 				documentsInThisFile++;
 				
 				/* we check the document blacklist, and if docid matches
@@ -399,91 +416,94 @@ public class TRECCollection extends MultiDocumentFileCollection {
 	 * @throws IOException
 	 */
 	protected StringBuilder getTag(int taglength, char[] startTag, char[] endTag) throws IOException {
-		int readerState = 0;
-		int c;
-		StringBuilder string = new StringBuilder();
-		while (readerState < taglength) {
-			if ((c = br.read()) == -1) {
-				if (openNextFile()) {
-					logger.warn("Forced a skip (1: looking for open "+new String(startTag)+" tag) - is the collection corrupt or do the property tags exist?");
-					continue;
-				} else {
-					eoc = true;
-					return null;
-				}
-			}
-			
-			char cc = (char)c;
-			char cu = startTag[readerState];
-			
-			if (!tags_CaseSensitive) {
-				cc= Character.toUpperCase((char)c);
-				cu=Character.toUpperCase((char)cu);
+		return getTag(toBytes(startTag), toBytes(endTag));
+	}
+
+	/**
+	 * Scans through a document reading in the first occurrence of the specified tag,
+	 * returning its contents as a StringBuilder object
+	 * @param start - the start tag, one byte per character
+	 * @param end - the end tag, one byte per character
+	 * @return - the tag contents
+	 * @throws IOException
+	 * @since 5.2
+	 */
+	protected StringBuilder getTag(byte[] start, byte[] end) throws IOException {
+		while (! br.readUntil(start, ! tags_CaseSensitive, null)) {
+			if (openNextFile()) {
+				logger.warn("Forced a skip (1: looking for open "+new String(start, StandardCharsets.ISO_8859_1)+" tag) - is the collection corrupt or do the property tags exist?");
+			} else {
+				eoc = true;
+				return null;
 			}
-			
-			if (cc==cu)
-				readerState++;
-			else
-				readerState = 0;
 		}
 		//looking for end of docno
-		readerState = 0;
-		while (readerState < (taglength+1)) {
-			if ((c = br.read()) == -1) {
-				if (openNextFile()) {
-					logger.warn("Forced a skip (2: looking for end of "+new String(startTag)+" tag) - is the collection corrupt?");
-					continue;
-				} else {
-					eoc = true;
-					return null;
-				}
-			}
-			
-			char cc = (char)c;
-			char cu = endTag[readerState];
-			
-			//System.err.println((char)cc+" "+cu);
-			
-			if (!tags_CaseSensitive) {
-				cc= Character.toUpperCase((char)c);
-				cu=Character.toUpperCase((char)cu);
-			}
-			
-			if (cc==cu) {
-				readerState++;
+		tagContent.reset();
+		while (! br.readUntil(end, ! tags_CaseSensitive, tagContent)) {
+			if (openNextFile()) {
+				logger.warn("Forced a skip (2: looking for end of "+new String(start, StandardCharsets.ISO_8859_1)+" tag) - is the collection corrupt?");
 			} else {
-				readerState = 0;
-				string.append((char)c);
+				eoc = true;
+				return null;
 			}
 		}
-		return string;
-		
+		//each byte is a character, as when reading the tags
+		return new StringBuilder(new String(tagContent.toByteArray(), StandardCharsets.ISO_8859_1));
+	}
+	
+	/** Returns the bytes of a tag, one byte per character */
+	static byte[] toBytes(char[] tag)
+	{
+		final byte[] rtr = new byte[tag.length];
+		for(int i=0;i<tag.length;i++)
+			rtr[i] = (byte) tag[i];
+		return rtr;
 	}
 	
 	protected void openNewFile() throws Exception 
 	{
-		if (is instanceof CountingInputStream)
-			br = (CountingInputStream) is;
+		if (is instanceof ScanningInputStream)
+			br = (ScanningInputStream) is;
+		else if (is instanceof CountingInputStream)
+			br = new ScanningInputStream(is, ((CountingInputStream) is).getPos());
 		else
-			br = new CountingInputStream(is);
+			br = new ScanningInputStream(is);
+	}
+	
+	/** Reads the remainder of the current document into memory, up to the closing document tag */
+	protected byte[] readDocumentContent() throws IOException
+	{
+		documentContent.reset();
+		br.readUntil(end_docTagBytes, ! tags_CaseSensitive, documentContent);
+		return documentContent.toByteArray();
 	}
 
 	/**
-	 * Returns the current document to process.
+	 * Returns the current document to process. Its content is read into memory.
 	 * @return Document the object of the current document to process.
 	 */
 	@Override
 	public Document getDocument() {
 		try{
-			InputStream is = tags_CaseSensitive
-		        ? new LookAheadStream(br, desiredEncoding == null ? end_docTag.getBytes() : end_docTag.getBytes(desiredEncoding))
-		        : new LookAheadStreamCaseInsensitive(br, end_docTag);
-	    	return documentClass.getConstructor(InputStream.class, Map.class, Tokeniser.class).newInstance(is, DocProperties, tokeniser);
-	    } catch (Exception e) {
-	    	throw new RuntimeException(e);
-	    }
+			final byte[] content = readDocumentContent();
+			return documentClass.getConstructor(InputStream.class, Map.class, Tokeniser.class).newInstance(new ByteArrayInputStream(content), DocProperties, tokeniser);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}	
 
+	/**
+	 * Returns the current document, with its content read into memory. The returned
+	 * document does not read from the underlying collection file, and hence can be 
+	 * parsed after the collection has moved to the next document, for instance by 
+	 * another thread. Since 5.2, this is the same as {@link #getDocument()}.
+	 * @return Document the object of the current document to process.
+	 * @since 5.2
+	 */
+	public Document getDetachedDocument() {
+		return getDocument();
+	}
+
 
 	@Override
 	public void reset() {
@@ -107,6 +107,8 @@ public class TRECWebCollection extends TRECCollection {
 	final static char[] DOCHDR_START = "<DOCHDR>".toCharArray();
 	final static char[] DOCHDR_END = "</DOCHDR>".toCharArray();
 	final static int DOCHDR_START_LENGTH = DOCHDR_START.length;
+	final static byte[] DOCHDR_START_BYTES = toBytes(DOCHDR_START);
+	final static byte[] DOCHDR_END_BYTES = toBytes(DOCHDR_END);
 	final static Pattern CHARSET_PATTERN = Pattern.compile("charset=(\\S+)");
 	final static SimpleDateFormat dateWT2G = new SimpleDateFormat("yyyyMMddHHmmss");
 	static{
@@ -130,7 +132,7 @@ public class TRECWebCollection extends TRECCollection {
 	
 	@Override
 	protected void afterPropertyTags() throws IOException {
-		StringBuilder hdr = super.getTag(DOCHDR_START_LENGTH, DOCHDR_START, DOCHDR_END);
+		StringBuilder hdr = super.getTag(DOCHDR_START_BYTES, DOCHDR_END_BYTES);
 		if (hdr == null) {
 			logger.info("No header found for document " + super.ThisDocID);
 			return;
@@ -25,8 +25,10 @@
  */
 package org.terrier.indexing;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
@@ -36,6 +38,7 @@ import java.util.Map;
 import org.terrier.indexing.tokenisation.Tokeniser;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.FixedSizeInputStream;
+import org.terrier.utility.io.ScanningInputStream;
 
 /**
  * This object is used to parse WARC format web crawls, 0.18. 
@@ -50,6 +53,8 @@ import org.terrier.utility.FixedSizeInputStream;
  * <li><tt>warc018collection.header.docno</tt> - what header has the thing to be used as docno? Defaults to warc-trec-id.</li>
  * <li><tt>warc018collection.header.url</tt> - what header has the thing to be used as url? Defaults to warc-target-url.</li>
  * </ul>
+ * Files are read through a {@link ScanningInputStream}, such that header lines are found by scanning
+ * a buffer of bytes, rather than reading the file one byte at a time.
  * @author Craig Macdonald
  */
 public class WARC018Collection extends MultiDocumentFileCollection implements Collection
@@ -236,46 +241,38 @@ public class WARC018Collection extends MultiDocumentFileCollection implements Co
 
 	
 	int readLineByteCount;
+	/** holds the bytes of the current line */
+	protected final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+	
+	@Override
+	protected void openNewFile() throws Exception {
+		if (! (is instanceof ScanningInputStream))
+			is = new ScanningInputStream(is);
+	}
 	
 	/** read a line from the currently open InputStream is */
 	protected String readLine() throws IOException
 	{
-		final StringBuilder s = new StringBuilder();
-		int c = 0;char ch; char ch2;
-		readLineByteCount = 0;
-		while(true)
+		final ScanningInputStream scanner = (ScanningInputStream) is;
+		final long start = scanner.getPos();
+		lineBuffer.reset();
+		if (! scanner.readLine(lineBuffer))
 		{
-			c = is.read(); readLineByteCount++;
-			if (c == -1)
-			{
-				eof = true;
-				break;
-			}
-			ch = (char)c;
-			if (ch == '\r')
-			{
-				c = is.read(); readLineByteCount++;
-				if (c== -1)
-				{
-					s.append(ch);
-					eof = true;
-					break;
-				}
-				ch2 = (char)c;
-				if (ch2 == '\n')
-					break;
-				s.append(ch); s.append(ch2);
-			}
-			else if (ch == '\n')
-			{
-				break;
-			}
-			else
-			{
-				s.append(ch);
-			}
+			eof = true;
+			//as if the end of the file had been read
+			readLineByteCount = (int) (scanner.getPos() - start) + 1;
+		}
+		else
+		{
+			readLineByteCount = (int) (scanner.getPos() - start);
 		}
-		return s.toString();
+		int length = lineBuffer.size();
+		final byte[] line = lineBuffer.toByteArray();
+		//strip the \r of a \r\n line ending
+		if (! eof && length > 0 && line[length-1] == '\r')
+			length--;
+		//each byte is a character
+		return new String(line, 0, length, StandardCharsets.ISO_8859_1);
 	}
 
 	final static String parseDate(String date)
@@ -25,8 +25,10 @@
  */
 package org.terrier.indexing;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
@@ -37,6 +39,7 @@ import java.util.TimeZone;
 import org.terrier.indexing.tokenisation.Tokeniser;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.FixedSizeInputStream;
+import org.terrier.utility.io.ScanningInputStream;
 
 /**
  * This object is used to parse WARC format web crawls, version 0.9. 
@@ -54,7 +57,8 @@ import org.terrier.utility.FixedSizeInputStream;
  * <ul>
  * <li><tt>trec.document.class</tt> the {@link Document} class to parse individual documents (defaults to {@link TaggedDocument}).</li>
  * </ul>
- * 
+ * Files are read through a {@link ScanningInputStream}, such that header lines are found by scanning
+ * a buffer of bytes, rather than reading the file one byte at a time.
  * 
  * @author Craig Macdonald
  */
@@ -187,43 +191,25 @@ public class WARC09Collection extends MultiDocumentFileCollection
 	}
 
 	
-	/** read a line from the currently open InputStream is */
+	/** the end of a line */
+	static final byte[] CRLF = new byte[]{'\r', '\n'};
+	/** holds the bytes of the current line */
+	protected final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+	
+	@Override
+	protected void openNewFile() throws Exception {
+		if (! (is instanceof ScanningInputStream))
+			is = new ScanningInputStream(is);
+	}
+	
+	/** read a line from the currently open InputStream is. Lines end with \r\n. */
 	protected String readLine() throws IOException
 	{
-		final StringBuilder s = new StringBuilder();
-		int c = 0;char ch; char ch2;
-		while(true)
-		{
-			c = is.read();
-			if (c == -1)
-			{
-				//logger.debug("readLine setting eof @1");
-				eof = true;
-				break;
-			}
-			ch = (char)c;
-			if (ch == '\r')
-			{
-				c = is.read();
-				if (c== -1)
-				{
-					s.append(ch);
-					//logger.debug("readLine setting eof @2");
-					eof = true;
-					break;
-				}
-				ch2 = (char)c;
-				if (ch2 == '\n')
-					break;
-				s.append(ch); s.append(ch2);
-			}
-			else
-			{
-				s.append(ch);
-			}
-		}
-		//logger.debug("readLine: "+ s.toString());
-		return s.toString();
+		lineBuffer.reset();
+		if (! ((ScanningInputStream) is).readUntil(CRLF, false, lineBuffer))
+			eof = true;
+		//each byte is a character
+		return new String(lineBuffer.toByteArray(), StandardCharsets.ISO_8859_1);
 	}
 
 	/** Resets the Collection iterator to the start of the collection. */
@@ -0,0 +1,96 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DirectInvertedImpactOutputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.bit;
+
+import java.io.IOException;
+
+import org.terrier.compression.bit.BitOut;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.SimpleBitIndexPointer;
+import org.terrier.structures.indexing.CompressionFactory.BitImpactCompressionConfiguration;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.structures.postings.bit.ImpactIterablePosting;
+
+/** A BitPosting writing class that writes the frequency of each posting as a 
+ * fixed-size impact, as read by {@link ImpactIterablePosting}. The frequencies
+ * of the postings passed to this class must therefore already be quantised 
+ * scores, between 0 and {@link ImpactIterablePosting#MAX_IMPACT}.
+ * @since 5.2
+ * @see BitImpactCompressionConfiguration
+ */
+public class DirectInvertedImpactOutputStream extends DirectInvertedOutputStream {
+
+	/**
+	 * Constructs an instance of the class with
+	 * @param filename
+	 * @throws IOException
+	 */
+	public DirectInvertedImpactOutputStream(String filename) throws IOException {
+		super(filename);
+	}
+
+	/**
+	 * Constructs an instance of the class with
+	 * @param out
+	 */
+	public DirectInvertedImpactOutputStream(BitOut out) {
+		super(out);
+	}
+	
+	@Override
+	public Class<? extends IterablePosting> getPostingIteratorClass() {
+		return ImpactIterablePosting.class;
+	}
+
+	@Override
+	protected void writePostingNotDocid(Posting p) throws IOException {
+		writeImpact(p.getFrequency());
+	}
+	
+	protected void writeImpact(int impact) throws IOException {
+		assert impact >= 0 && impact <= ImpactIterablePosting.MAX_IMPACT : "impact " + impact + " out of range";
+		output.writeBinary(ImpactIterablePosting.IMPACT_BITS, impact);
+	}
+	
+	@Override
+	protected BitIndexPointer writeNoFieldPostings(final int[][] postings, int offset, final int length, final int firstId) 
+			throws IOException {
+		BitIndexPointer pointer = new SimpleBitIndexPointer();
+		pointer.setOffset(output.getByteOffset(), output.getBitOffset());
+		final int[] postings0 = postings[0];
+		final int[] postings1 = postings[1];
+		output.writeGamma(lastDocid = firstId);
+		writeImpact(postings1[offset]);
+		offset++;
+		for (; offset < length; offset++) {
+			output.writeGamma( (lastDocid = postings0[offset]) - postings0[offset - 1]);
+			writeImpact(postings1[offset]);
+		}
+		return pointer;
+	}
+
+}
@@ -31,8 +31,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
 
 import org.apache.hadoop.io.IntWritable;
@@ -58,6 +66,10 @@ import org.terrier.utility.RuntimeMemoryChecker;
  * <li><tt>metaindex.compressed.max.index.in-mem.mb</tt> - maximum size that a meta index .zdata file will be kept in memory. Defaults to 100(mb).</li>
  * <li><tt>metaindex.compressed.reverse.allow.duplicates</tt> - set this property to true to suppress errors when a reverse meta value is not unique. Default false.</li>
  * <li><tt>metaindex.compressed.crop.long</tt> - set this property to suppress errors with overlong Document metadata, while will instead be cropped.</li>
+ * <li><tt>metaindex.compressed.threads</tt> - number of threads used to compress the records. When greater than 1, each record is 
+ * deflated by a worker thread, while the compressed records are written in docid order by the indexing thread. At most 
+ * {@link #PENDING_PER_THREAD} records per thread await writing, after which the indexing thread waits for the oldest record. 
+ * Default 1, i.e. records are compressed by the indexing thread.</li>
  * </ul>
  * @since 3.0
  * @author Craig Macdonald &amp; Vassilis Plachouras 
@@ -76,6 +88,10 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	protected final int REVERSE_KEY_LOOKUP_WRITING_BUFFER_SIZE = 20000;
 	protected final int DOCS_PER_CHECK = ApplicationSetup.DOCS_CHECK_SINGLEPASS;
 	protected final int ZIP_COMPRESSION_LEVEL = 5;//TODO (auto)configure? 
+	protected final int COMPRESSION_THREADS = 
+			Integer.parseInt(ApplicationSetup.getProperty("metaindex.compressed.threads", "1"));
+	/** number of records per compression thread that can await writing */
+	protected static final int PENDING_PER_THREAD = 64;
 		
 	protected final TObjectIntHashMap<String> key2Index;
 	protected DataOutputStream dataOutput = null;
@@ -105,6 +121,13 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	protected FixedSizeWriteableFactory<Text>[] keyFactories;
 	protected String structureName;
 	
+	/** compresses records, if more than one compression thread is configured */
+	protected ExecutorService compressionPool;
+	/** one deflater for each compression thread */
+	protected BlockingQueue<Deflater> deflaters;
+	/** records being compressed, in docid order */
+	protected ArrayDeque<Future<byte[]>> pendingRecords;
+	
 	/**
 	 * constructor
 	 * @param _index
@@ -146,6 +169,22 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 		}
 		
 		this.zip.setLevel(ZIP_COMPRESSION_LEVEL);
+		if (COMPRESSION_THREADS > 1)
+		{
+			this.compressionPool = Executors.newFixedThreadPool(COMPRESSION_THREADS, r -> {
+				Thread t = new Thread(r, "CompressingMetaIndexBuilder-" + structureName);
+				t.setDaemon(true);
+				return t;
+			});
+			this.deflaters = new ArrayBlockingQueue<Deflater>(COMPRESSION_THREADS);
+			for(int i=0;i<COMPRESSION_THREADS;i++)
+			{
+				Deflater d = new Deflater();
+				d.setLevel(ZIP_COMPRESSION_LEVEL);
+				deflaters.add(d);
+			}
+			this.pendingRecords = new ArrayDeque<Future<byte[]>>(COMPRESSION_THREADS * PENDING_PER_THREAD);
+		}
 		
 		if (_forwardKeys.length == 1 && _forwardKeys[0].length() == 0)
 			_forwardKeys = new String[0];
@@ -242,20 +281,31 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 				baos.write(spaces, 0, valueLensBytes[i]-numberOfBytesToWrite);
 			i++;
 		}
-		zip.reset();
-		zip.setInput(baos.toByteArray());
-		zip.finish();
-		baos.reset();
-		indexOutput.writeLong(currentOffset);
-		currentIndexOffset += 8;
-		int compressedEntrySize = 0;
-		while(! zip.finished())
+		if (compressionPool != null)
 		{
-			final int numOfCompressedBytes = zip.deflate(compressedBuffer);
-			dataOutput.write(compressedBuffer, 0, numOfCompressedBytes);
-			compressedEntrySize += numOfCompressedBytes;
+			final byte[] record = baos.toByteArray();
+			baos.reset();
+			if (pendingRecords.size() >= COMPRESSION_THREADS * PENDING_PER_THREAD)
+				writeCompressedRecord(pendingRecords.poll());
+			pendingRecords.add(compressionPool.submit(() -> compressRecord(record)));
+		}
+		else
+		{
+			zip.reset();
+			zip.setInput(baos.toByteArray());
+			zip.finish();
+			baos.reset();
+			indexOutput.writeLong(currentOffset);
+			currentIndexOffset += 8;
+			int compressedEntrySize = 0;
+			while(! zip.finished())
+			{
+				final int numOfCompressedBytes = zip.deflate(compressedBuffer);
+				dataOutput.write(compressedBuffer, 0, numOfCompressedBytes);
+				compressedEntrySize += numOfCompressedBytes;
+			}
+			currentOffset += compressedEntrySize;
 		}
-		currentOffset += compressedEntrySize;
 		for(i=0;i<forwardKeys.length;i++)
 		{
 			Text key = keyFactories[i].newInstance();
@@ -276,11 +326,60 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 			memCheck.reset();
 		}
 	}
+	
+	/** deflates a record, using one of the deflaters of the compression threads */
+	protected byte[] compressRecord(byte[] record) throws InterruptedException
+	{
+		final Deflater d = deflaters.take();
+		try{
+			d.reset();
+			d.setInput(record);
+			d.finish();
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(record.length / 2 + 16);
+			final byte[] buffer = new byte[1024];
+			while(! d.finished())
+			{
+				final int numOfCompressedBytes = d.deflate(buffer);
+				compressed.write(buffer, 0, numOfCompressedBytes);
+			}
+			return compressed.toByteArray();
+		} finally {
+			deflaters.put(d);
+		}
+	}
+	
+	/** writes the next record, once it has been compressed */
+	protected void writeCompressedRecord(Future<byte[]> pending) throws IOException
+	{
+		final byte[] compressed;
+		try{
+			compressed = pending.get();
+		} catch (InterruptedException ie) {
+			throw new IOException("Interrupted while compressing meta index record", ie);
+		} catch (ExecutionException ee) {
+			throw new IOException("Problem compressing meta index record", ee.getCause());
+		}
+		indexOutput.writeLong(currentOffset);
+		currentIndexOffset += 8;
+		dataOutput.write(compressed);
+		currentOffset += compressed.length;
+	}
+	
+	/** writes all records still being compressed */
+	protected void writePendingRecords() throws IOException
+	{
+		if (pendingRecords == null)
+			return;
+		while(! pendingRecords.isEmpty())
+			writeCompressedRecord(pendingRecords.poll());
+	}
+	
 	/** 
 	 * {@inheritDoc} 
 	 */
 	public void flush() throws IOException {
 		//logger.info("CompressingMetaIndexBuilder flush");
+		writePendingRecords();
 		for(MapFileWriter w : forwardWriters)
 			((Flushable)w).flush();
 			
@@ -290,6 +389,28 @@ public class CompressingMetaIndexBuilder extends MetaIndexBuilder implements Flu
 	 */
 	public void close() throws IOException
 	{
+		if (compressionPool != null)
+		{
+			try{
+				writePendingRecords();
+			} finally {
+				//records not yet compressed are only pending after an error, so are not needed
+				for(Future<byte[]> pending : pendingRecords)
+					pending.cancel(false);
+				compressionPool.shutdown();
+				//the deflaters can only be ended once no worker is still using them
+				boolean terminated = false;
+				try{
+					terminated = compressionPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				if (terminated)
+					for(Deflater d : deflaters)
+						d.end();
+			}
+		}
+		zip.end();
 		dataOutput.close();
 		indexOutput.close();
 		index.addIndexStructure(structureName, "org.terrier.structures.CompressingMetaIndex", "org.terrier.structures.IndexOnDisk,java.lang.String", "index,structureName");
@@ -38,6 +38,7 @@ import org.terrier.structures.bit.BitPostingIndexInputStream;
 import org.terrier.structures.bit.BlockDirectInvertedOutputStream;
 import org.terrier.structures.bit.BlockFieldDirectInvertedOutputStream;
 import org.terrier.structures.bit.DirectInvertedDocidOnlyOuptutStream;
+import org.terrier.structures.bit.DirectInvertedImpactOutputStream;
 import org.terrier.structures.bit.DirectInvertedOutputStream;
 import org.terrier.structures.bit.FieldDirectInvertedOutputStream;
 import org.terrier.structures.postings.IterablePosting;
@@ -46,6 +47,7 @@ import org.terrier.structures.postings.bit.BasicIterablePostingDocidOnly;
 import org.terrier.structures.postings.bit.BlockFieldIterablePosting;
 import org.terrier.structures.postings.bit.BlockIterablePosting;
 import org.terrier.structures.postings.bit.FieldIterablePosting;
+import org.terrier.structures.postings.bit.ImpactIterablePosting;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.ArrayUtils;
 /** Configures the compression to be used when creating an IndexOnDisk.
@@ -206,6 +208,25 @@ public class CompressionFactory {
 		}
 	}
 	
+	/** Configuration for impact posting lists, where each posting records a quantised
+	 * score rather than a frequency. Fields and blocks are not recorded. 
+	 * @since 5.2
+	 */
+	public static class BitImpactCompressionConfiguration extends SpecificCompressionConfiguration
+	{
+		public BitImpactCompressionConfiguration(String structureName, String[] fieldNames, int hasBlocks, int maxBlocks)
+		{
+			super(
+				structureName, new String[0], 0, 0,
+				DirectInvertedImpactOutputStream.class,
+				ImpactIterablePosting.class,
+				BitPostingIndex.class, 
+				BitPostingIndexInputStream.class,
+				BitIn.USUAL_EXTENSION
+			);
+		}
+	}
+	
 	@Deprecated
 	public static CompressionConfiguration getCompressionConfiguration(String structureName, String[] fieldNames, boolean blocks)
 	{
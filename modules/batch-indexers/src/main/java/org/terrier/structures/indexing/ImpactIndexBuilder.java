@@ -0,0 +1,310 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ImpactIndexBuilder.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.applications.CLITool.CLIParsedCLITool;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.matching.models.WeightingModelFactory;
+import org.terrier.structures.AbstractPostingOutputStream;
+import org.terrier.structures.FSOMapFileLexiconOutputStream;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.indexing.CompressionFactory.BitImpactCompressionConfiguration;
+import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+import org.terrier.structures.postings.bit.ImpactIterablePosting;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.TerrierTimer;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Converts the inverted index of an existing index into an impact index, where the 
+ * frequency of each posting is replaced by its score according to a fixed weighting 
+ * model, quantised to {@link ImpactIterablePosting#IMPACT_BITS} bits. The scores are
+ * quantised linearly, such that the largest score in the index obtains the impact
+ * {@link ImpactIterablePosting#MAX_IMPACT}. Impact indices can be used for retrieval
+ * with {@link org.terrier.matching.daat.ImpactFull}, where the score of a document is 
+ * obtained by summing the impacts of its postings.
+ * <p>
+ * <b>NOTE</b>: the inverted index is overwritten by the impact index. Fields and blocks are
+ * not retained in the impact index.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>impact.model</tt> - the weighting model used to compute the impacts. Defaults to BM25.</li>
+ * </ul>
+ * The weighting model, and the scale factor that maps impacts back to scores, are recorded in the
+ * <tt>index.inverted.impact.model</tt> and <tt>index.inverted.impact.scale</tt> index properties.
+ * @since 5.2
+ */
+public class ImpactIndexBuilder {
+	
+	/** CLI command for creating impact indices */
+	public static class Command extends CLIParsedCLITool
+	{
+		@Override
+		protected Options getOptions() {
+			Options options = super.getOptions();
+			options.addOption(Option.builder("w")
+					.argName("wmodel")
+					.longOpt("wmodel")
+					.hasArg()
+					.desc("the weighting model used to compute impacts. This overrides the impact.model property")
+					.build());
+			return options;
+		}
+
+		@Override
+		public Set<String> commandaliases() {
+			return Sets.newHashSet("impacts");
+		}
+
+		@Override
+		public String commandname() {
+			return "impactindex";
+		}
+
+		@Override
+		public String helpsummary() {
+			return "replaces the inverted index with precomputed quantised scores (impacts)";
+		}
+
+		@Override
+		public int run(CommandLine line) throws Exception {
+			Index.setIndexLoadingProfileAsRetrieval(false);
+			IndexOnDisk index = Index.createIndex();
+			if (index == null)
+			{
+				System.err.println("Sorry, no index could be found in default location");
+				return 1;
+			}
+			String modelName = line.hasOption("wmodel")
+					? line.getOptionValue("wmodel")
+					: ApplicationSetup.getProperty("impact.model", "BM25");
+			new ImpactIndexBuilder(index, WeightingModelFactory.newInstance(modelName)).createImpactIndex();
+			index.close();
+			return 0;
+		}
+	}
+	
+	/** An IterablePosting that replaces the frequency of each posting by its impact */
+	protected class QuantisingIterablePosting implements IterablePosting
+	{
+		final IterablePosting parent;
+		final double maxScore;
+		
+		QuantisingIterablePosting(IterablePosting _parent, double _maxScore)
+		{
+			parent = _parent;
+			maxScore = _maxScore;
+		}
+		
+		@Override
+		public int getFrequency() {
+			return quantise(wmodel.score(parent), maxScore);
+		}
+
+		@Override
+		public int getId() {
+			return parent.getId();
+		}
+
+		@Override
+		public int getDocumentLength() {
+			return parent.getDocumentLength();
+		}
+
+		@Override
+		public void setId(int id) {
+			parent.setId(id);
+		}
+
+		@Override
+		public WritablePosting asWritablePosting() {
+			return new BasicPostingImpl(getId(), getFrequency());
+		}
+
+		@Override
+		public void close() throws IOException {
+			parent.close();
+		}
+
+		@Override
+		public int next() throws IOException {
+			return parent.next();
+		}
+
+		@Override
+		public int next(int targetId) throws IOException {
+			return parent.next(targetId);
+		}
+
+		@Override
+		public boolean endOfPostings() {
+			return parent.endOfPostings();
+		}
+	}
+	
+	protected static final Logger logger = LoggerFactory.getLogger(ImpactIndexBuilder.class);
+	
+	protected final IndexOnDisk index;
+	protected final WeightingModel wmodel;
+	
+	/**
+	 * Construct a new instance of this class
+	 * @param _index the index whose inverted index will be replaced
+	 * @param _wmodel the weighting model used to compute the impacts
+	 */
+	public ImpactIndexBuilder(IndexOnDisk _index, WeightingModel _wmodel)
+	{
+		this.index = _index;
+		this.wmodel = _wmodel;
+		this.wmodel.setCollectionStatistics(index.getCollectionStatistics());
+	}
+	
+	/** Quantise the specified score, given the largest score of the index. Positive scores
+	 * obtain an impact of at least 1, while others obtain 0. */
+	public static int quantise(double score, double maxScore)
+	{
+		if (score <= 0)
+			return 0;
+		return Math.min(ImpactIterablePosting.MAX_IMPACT, (int) Math.ceil(score / maxScore * ImpactIterablePosting.MAX_IMPACT));
+	}
+	
+	/** Prepare the weighting model for scoring the postings of the specified term */
+	protected void prepareModel(LexiconEntry le)
+	{
+		wmodel.setEntryStatistics(le);
+		wmodel.setKeyFrequency(1d);
+		wmodel.prepare();
+	}
+	
+	/** Returns the largest score of any posting in the inverted index */
+	@SuppressWarnings("unchecked")
+	public double getMaximumScore() throws IOException
+	{
+		Iterator<Entry<String, LexiconEntry>> lexIn = (Iterator<Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) index.getIndexStructureInputStream("inverted");
+		TerrierTimer tt = new TerrierTimer("Computing maximum score for impacts", index.getCollectionStatistics().getNumberOfPointers());
+		tt.start();
+		double maxScore = 0;
+		try{
+			while(lexIn.hasNext())
+			{
+				Entry<String, LexiconEntry> lee = lexIn.next();
+				IterablePosting ip = postingsIn.next();
+				prepareModel(lee.getValue());
+				while(ip.next() != IterablePosting.EOL)
+				{
+					maxScore = Math.max(maxScore, wmodel.score(ip));
+				}
+				tt.increment(lee.getValue().getDocumentFrequency());
+			}
+		} finally {
+			tt.finished();
+			IndexUtil.close(lexIn);
+			IndexUtil.close(postingsIn);
+		}
+		return maxScore;
+	}
+	
+	/** Replaces the inverted index of the index with an impact index */
+	@SuppressWarnings("unchecked")
+	public void createImpactIndex() throws IOException
+	{
+		assert ! IndexUtil.isStructureOpen(index, "inverted");
+		assert ! IndexUtil.isStructureOpen(index, "lexicon");
+		final double maxScore = getMaximumScore();
+		if (maxScore <= 0)
+			throw new IOException("Cannot create impacts using " + wmodel.getInfo() + ": no posting obtains a positive score");
+		logger.info("Creating impacts using " + wmodel.getInfo() + ", maximum score is " + maxScore);
+		
+		CompressionConfiguration compressionConfig = new BitImpactCompressionConfiguration("tmp-inverted", new String[0], 0, 0);
+		AbstractPostingOutputStream postingsOut = compressionConfig.getPostingOutputStream(
+				index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + "tmp-inverted" + compressionConfig.getStructureFileExtension());
+		Iterator<Entry<String, LexiconEntry>> lexIn = (Iterator<Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) index.getIndexStructureInputStream("inverted");
+		FixedSizeWriteableFactory<LexiconEntry> valueFactory = (FixedSizeWriteableFactory<LexiconEntry>)index.getIndexStructure("lexicon-valuefactory");
+		LexiconOutputStream<String> los = new FSOMapFileLexiconOutputStream(
+				index, "newlex", 
+				(Class<? extends FixedSizeWriteableFactory<LexiconEntry>>) valueFactory.getClass());
+		TerrierTimer tt = new TerrierTimer("Writing impacts", index.getCollectionStatistics().getNumberOfPointers());
+		tt.start();
+		try{
+			while(lexIn.hasNext())
+			{
+				Entry<String, LexiconEntry> lee = lexIn.next();
+				IterablePosting ip = postingsIn.next();
+				prepareModel(lee.getValue());
+				lee.getValue().setPointer(postingsOut.writePostings(new QuantisingIterablePosting(ip, maxScore)));
+				los.writeNextEntry(lee.getKey(), lee.getValue());
+				tt.increment(lee.getValue().getDocumentFrequency());
+			}
+		} finally {
+			tt.finished();
+			postingsOut.close();
+			IndexUtil.close(lexIn);
+			IndexUtil.close(postingsIn);
+			los.close();
+		}
+		compressionConfig.writeIndexProperties(index, "lexicon-entry-inputstream");
+		
+		//replace the inverted index and lexicon
+		IndexUtil.renameIndexStructure(index, "inverted", "invertedbak");
+		IndexUtil.renameIndexStructure(index, "tmp-inverted", "inverted");
+		IndexUtil.deleteStructure(index, "invertedbak");
+		IndexUtil.deleteStructure(index, "invertedbak-inputstream");
+		IndexUtil.renameIndexStructure(index, "lexicon", "lexiconbak");
+		IndexUtil.renameIndexStructure(index, "newlex", "lexicon");		
+		IndexUtil.deleteStructure(index, "lexiconbak");
+		IndexUtil.deleteStructure(index, "lexiconbak-inputstream");
+		IndexUtil.deleteStructure(index, "newlex-keyfactory");
+		IndexUtil.deleteStructure(index, "newlex-valuefactory");
+		IndexUtil.deleteStructure(index, "newlex-entry-inputstream");
+		LexiconBuilder.optimise(index, "lexicon");
+		
+		index.setIndexProperty("index.inverted.impact.model", wmodel.getInfo());
+		index.setIndexProperty("index.inverted.impact.scale", String.valueOf(maxScore / ImpactIterablePosting.MAX_IMPACT));
+		index.flush();
+	}
+}
@@ -274,13 +274,26 @@ public abstract class Indexer
 	 */
 	//@SuppressWarnings("unchecked")
 	protected void load_pipeline()
+	{
+		pipeline_first = createPipeline(getEndOfPipeline());
+	}
+
+	/** 
+	 * Creates a new instance of the term pipeline specified by the property
+	 * <tt>termpipelines</tt>, ending at the specified TermPipeline. This allows
+	 * indexers which process several documents concurrently to obtain one term
+	 * pipeline for each thread.
+	 * @param last the end of the term pipeline
+	 * @return the first TermPipeline of the pipeline
+	 * @since 5.2
+	 */
+	protected TermPipeline createPipeline(final TermPipeline last)
 	{
 		String[] pipes = ApplicationSetup.getProperty(
 				"termpipelines", "Stopwords,PorterStemmer").trim()
 				.split("\\s*,\\s*");
 		
-		TermPipeline next = getEndOfPipeline();
-		final TermPipeline last = next;
+		TermPipeline next = last;
 		TermPipeline tmp;
 		for(int i=pipes.length-1; i>=0; i--)
 		{
@@ -301,9 +314,8 @@ public abstract class Indexer
 		String skipTerms = null;
 		//add SkipTermPipeline as the first pipeline step to allow for special terms to skip the pipeline processing sequence
 		if ((skipTerms = ApplicationSetup.getProperty("termpipelines.skip", null)) != null && skipTerms.trim().length() > 0)
-			pipeline_first = new SkipTermPipeline(next, last);
-		else
-			pipeline_first = next;
+			return new SkipTermPipeline(next, last);
+		return next;
 	}
 
 
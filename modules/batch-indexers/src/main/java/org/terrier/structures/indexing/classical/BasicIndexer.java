@@ -49,6 +49,7 @@ import org.terrier.structures.indexing.Indexer;
 import org.terrier.structures.indexing.LexiconBuilder;
 import org.terrier.structures.indexing.LexiconMap;
 import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.terms.CharTermPipeline;
 import org.terrier.terms.TermPipeline;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.FieldScore;
@@ -76,9 +77,9 @@ public class BasicIndexer extends Indexer
 	/** 
 	 * This class implements an end of a TermPipeline that adds the
 	 * term to the DocumentTree. This TermProcessor does NOT have field
-	 * support.
+	 * support. Terms passed as characters are only made into a String here.
 	 */
-	protected class BasicTermProcessor implements TermPipeline
+	protected class BasicTermProcessor implements CharTermPipeline
 	{
 		//term pipeline implementation
 		public void processTerm(String term)
@@ -92,15 +93,20 @@ public class BasicIndexer extends Indexer
 			}
 		}
 		
+		public void processTerm(char[] buffer, int length)
+		{
+			processTerm(new String(buffer, 0, length));
+		}
+		
 		public boolean reset() {
 			return true;
 		}
 	}
 	/** This class implements an end of a TermPipeline that adds the
 	 *  term to the DocumentTree. This TermProcessor does have field
-	 *  support.
+	 *  support. Terms passed as characters are only made into a String here.
 	 */
-	protected class FieldTermProcessor implements TermPipeline
+	protected class FieldTermProcessor implements CharTermPipeline
 	{
 		final TIntHashSet fields = new TIntHashSet(numFields);
 		final boolean ELSE_ENABLED = fieldNames.containsKey("ELSE");
@@ -129,6 +135,11 @@ public class BasicIndexer extends Indexer
 			}
 		}
 		
+		public void processTerm(char[] buffer, int length)
+		{
+			processTerm(new String(buffer, 0, length));
+		}
+		
 		public boolean reset() {
 			return true;
 		}
@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.terrier.structures.AbstractPostingOutputStream;
 import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.FSOMapFileLexicon;
 import org.terrier.structures.IndexOnDisk;
@@ -97,6 +98,8 @@ import org.terrier.utility.Files;
  * process in each iteration. Defaults to 2,000,000, which specifies that
  * invertedfile.processterms should be read from the lexicon, regardless of the
  * number of pointers.</li>
+ * <li><tt>invertedfile.threads</tt> - the number of iterations whose term ranges
+ * are inverted concurrently, as described in {@link InvertedIndexBuilder}. Defaults to 1.</li>
  * </ul>
  * 
  * @author Douglas Johnson &amp; Vassilis Plachouras &amp; Craig Macdonald
@@ -152,8 +155,6 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 				processTerms = (int) numberOfUniqueTerms;
 
 			long startProcessingLexicon = 0;
-			long startTraversingDirectFile = 0;
-			long startWritingInvertedFile = 0;
 			long numberOfPointersThisIteration = 0;
 
 			int i = 0;
@@ -248,27 +249,15 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 
 				InvertedIndexBuilder.displayMemoryUsage(r);
 
-				// Scan the direct file looking for those terms
-				startTraversingDirectFile = System.currentTimeMillis();
-				traverseDirectFile(codesHashMap, tmpStorage);
-				logger.info("time to traverse direct file: "+ ((System.currentTimeMillis() - startTraversingDirectFile) / 1000D));
-
-				InvertedIndexBuilder.displayMemoryUsage(r);
-
-				// write the inverted file for this part of the lexicon, ie
+				// invert this part of the lexicon, ie
 				// processTerms number of terms
-				startWritingInvertedFile = System.currentTimeMillis();
-				numberOfTokens += writeInvertedFilePart(dos, tmpStorage,
+				numberOfTokens += invertTermRange(dos, codesHashMap, tmpStorage,
 						processTerms);
-				logger.info("time to write inverted file: "	+ ((System.currentTimeMillis() - startWritingInvertedFile) / 1000D));
-
-				InvertedIndexBuilder.displayMemoryUsage(r);
 
 				logger.info("time to perform one iteration: "+ ((System.currentTimeMillis() - startProcessingLexicon) / 1000D));
 				logger.info("number of pointers processed: "+ numberOfPointersThisIteration);
 
 				tmpStorage = null;
-				codesHashMap.clear();
 				codesHashMap = null;
 			}
 
@@ -277,7 +266,7 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 //			this.numberOfUniqueTerms = numberOfUniqueTerms;
 //			this.numberOfTokens = numberOfTokens;
 //			this.numberOfPointers = numberOfPointers;
-			file.close(); file = null;
+			numberOfTokens += finishInvertedFile(dos);
 			
 			if (lexiconStream instanceof Closeable) {
 				((Closeable)lexiconStream).close();
@@ -415,6 +404,8 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 	 * @param dos
 	 *			a temporary data structure that contains the offsets in the
 	 *			inverted index for each term.
+	 * @param out
+	 *			where to write the postings
 	 * @param tmpStorage
 	 *			Occurrences information, as described in traverseDirectFile().
 	 *			This data is consumed by this method - once this method has
@@ -423,8 +414,10 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 	 *			The number of terms being processed in this iteration.
 	 * @return the number of tokens processed in this iteration
 	 */
+	@Override
 	protected long writeInvertedFilePart(
 			final DataOutputStream dos, 
+			final AbstractPostingOutputStream out,
 			TIntArrayList[][] tmpStorage, 
 			final int _processTerms)
 			throws IOException
@@ -453,7 +446,7 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 				}
 				tmpStorage[j] = null;
 								
-				p.setOffset(file.getOffset());
+				p.setOffset(out.getOffset());
 				p.setNumberOfEntries(ids.length);
 				p.write(dos);
 				
@@ -466,7 +459,7 @@ public class BlockInvertedIndexBuilder extends InvertedIndexBuilder {
 				{
 					ip = new ArrayOfBlockIterablePosting(ids, tf, tmpMatrix_blockFreq, tmpMatrix_blockIds);
 				}
-				file.writePostings(ip);
+				out.writePostings(ip);
 
 				numTokens += frequency;				
 			}
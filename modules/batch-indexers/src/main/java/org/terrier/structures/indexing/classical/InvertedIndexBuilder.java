@@ -29,12 +29,21 @@ package org.terrier.structures.indexing.classical;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntIntHashMap;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.io.Text;
 import org.slf4j.Logger;
@@ -58,6 +67,8 @@ import org.terrier.structures.seralization.FixedSizeWriteableFactory;
 import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.Files;
 import org.terrier.utility.Rounding;
+
+import com.google.common.io.ByteStreams;
 /**
  * Builds an inverted index. It optionally saves term-field information as well. 
  * <p><b>Algorithm:</b>
@@ -86,10 +97,17 @@ import org.terrier.utility.Rounding;
  * </li></ul>
  * By default, the 2nd strategy is chosen, unless the <tt>invertedfile.processpointers</tt> has a zero
  * value specified.<P>
+ * <p><b>Concurrent inversion:</b>
+ * If <tt>invertedfile.threads</tt> is greater than 1, the term ranges selected by that many consecutive
+ * iterations are inverted concurrently, each by its own scan of the direct file and into a separate
+ * segment of the inverted file. Once all terms have been processed, the segments are concatenated in
+ * lexicon order, and the offsets of their postings adjusted accordingly. As the postings of all the
+ * concurrent ranges are held in memory at once, memory usage grows with the number of threads.<P>
  * Properties:
  * <ul>
  *  <li><tt>invertedfile.processterms</tt>- the number of terms to process in each iteration. Defaults to 75,000</li>
  *  <li><tt>invertedfile.processpointers</tt> - the number of pointers to process in each iteration. Defaults to 20,000,000</li>
+ *  <li><tt>invertedfile.threads</tt> - the number of iterations whose term ranges are inverted concurrently. Defaults to 1.</li>
  * </ul>
  * @author Craig Macdonald &amp; Vassilis Plachouras
   */
@@ -118,6 +136,26 @@ public class InvertedIndexBuilder {
 		}
 	}
 	
+	/** A range of terms selected by one iteration, awaiting concurrent inversion */
+	protected static class TermRange
+	{
+		final TIntIntHashMap codesHashMap;
+		final TIntArrayList[][] tmpStorage;
+		final int terms;
+		final String segmentFilename;
+		/** the pointers of the terms in the segment, written once inverted */
+		byte[] pointers;
+		long tokens;
+		
+		TermRange(TIntIntHashMap _codesHashMap, TIntArrayList[][] _tmpStorage, int _terms, String _segmentFilename)
+		{
+			codesHashMap = _codesHashMap;
+			tmpStorage = _tmpStorage;
+			terms = _terms;
+			segmentFilename = _segmentFilename;
+		}
+	}
+	
 	protected int fieldCount = 0;
 
 	/** Indicates whether field information is used. */
@@ -140,6 +178,18 @@ public class InvertedIndexBuilder {
 	//protected BitOut file;
 	protected AbstractPostingOutputStream file;
 	protected  CompressionConfiguration compressionConfig;
+	/** The filename of the inverted file being written */
+	protected String invertedFilename;
+	
+	/** The number of term ranges to invert concurrently. This corresponds to the property
+	  * <tt>invertedfile.threads</tt>. Default is 1, i.e. each range is inverted as soon as it is selected. */
+	protected int threads = Integer.parseInt(ApplicationSetup.getProperty("invertedfile.threads", "1"));
+	/** The term ranges selected but not yet inverted */
+	protected final List<TermRange> pendingRanges = new ArrayList<TermRange>();
+	/** The segments of the inverted file written by concurrent inversion, in lexicon order */
+	protected final List<String> segmentFilenames = new ArrayList<String>();
+	/** The length of the segments of the inverted file written so far */
+	protected long segmentsLength = 0;
 
 	/**
 	 * contructor
@@ -152,9 +202,9 @@ public class InvertedIndexBuilder {
 		this.structureName = _structureName;
 		this.compressionConfig = compressionConfig;
 		
+		invertedFilename = index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + structureName + compressionConfig.getStructureFileExtension();
 		try{
-			file = compressionConfig.getPostingOutputStream(
-				index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + structureName + compressionConfig.getStructureFileExtension());
+			file = compressionConfig.getPostingOutputStream(invertedFilename);
 		} catch (Exception ioe) {
 			logger.error("creating PostingOutputStream for writing the inverted file : ", ioe);
 		}
@@ -205,8 +255,6 @@ public class InvertedIndexBuilder {
 			if (processTerms > _numberOfUniqueTerms)
 				processTerms = (int) _numberOfUniqueTerms;
 			long startProcessingLexicon = 0;
-			long startTraversingDirectFile = 0;
-			long startWritingInvertedFile = 0;
 			long numberOfPointersThisIteration = 0;
 			
 			int i=0; int iterationCounter = 0;
@@ -311,23 +359,8 @@ public class InvertedIndexBuilder {
 				
 				displayMemoryUsage(r);	
 				
-				//Scan the direct file looking for those terms
-				startTraversingDirectFile = System.currentTimeMillis();
-				traverseDirectFile(codesHashMap, tmpStorage);
-				if (logger.isDebugEnabled())
-					logger.debug("time to traverse direct file: " + ((System.currentTimeMillis() - startTraversingDirectFile) / 1000D));
-				
-				displayMemoryUsage(r);			
-	
-				//write the inverted file for this part of the lexicon, ie processTerms number of terms
-				startWritingInvertedFile = System.currentTimeMillis();
-				_numberOfTokens += writeInvertedFilePart(dos, tmpStorage, processTerms);
-				if (logger.isDebugEnabled())
-					logger.debug("time to write inverted file: "
-					 + ((System.currentTimeMillis()- startWritingInvertedFile) / 1000D));
-				
-							
-				displayMemoryUsage(r);
+				//invert this part of the lexicon, ie processTerms number of terms
+				_numberOfTokens += invertTermRange(dos, codesHashMap, tmpStorage, processTerms);
 	
 				if (logger.isDebugEnabled()) {
 					logger.debug(
@@ -341,14 +374,12 @@ public class InvertedIndexBuilder {
 				
 				
 				tmpStorage  = null; 
-				codesHashMap.clear(); 
 				codesHashMap = null;
 			}
 			
 			
 			
-			file.close();
-			file = null;
+			_numberOfTokens += finishInvertedFile(dos);
 			IndexUtil.close(lexiconStream);
 			dos.close();
 			
@@ -504,6 +535,166 @@ public class InvertedIndexBuilder {
 		return new IntLongTuple(j, numberOfPointersThisIteration);
 	}
 
+	/**
+	 * Inverts the terms selected by one iteration. If <tt>invertedfile.threads</tt> is 1, the
+	 * direct file is traversed and the postings written to the inverted file immediately.
+	 * Otherwise, the range is queued, and once enough ranges are queued, these are inverted
+	 * concurrently by {@link #invertPendingRanges(DataOutputStream)}.
+	 * @param dos a temporary data structure that contains the offsets in the inverted
+	 *  index for each term.
+	 * @param codesHashMap a mapping from the term identifiers to the index 
+	 *		in the tmpStorage matrix.
+	 * @param tmpStorage place to put postings for the terms of this iteration
+	 * @param _processTerms The number of terms being processed in this iteration.
+	 * @return the number of tokens processed
+	 * @throws IOException if there is a problem while inverting
+	 */
+	protected long invertTermRange(
+			final DataOutputStream dos,
+			TIntIntHashMap codesHashMap,
+			TIntArrayList[][] tmpStorage,
+			final int _processTerms)
+		throws IOException
+	{
+		if (threads <= 1)
+		{
+			final Runtime r = Runtime.getRuntime();
+			//Scan the direct file looking for those terms
+			long startTraversingDirectFile = System.currentTimeMillis();
+			traverseDirectFile(codesHashMap, tmpStorage);
+			if (logger.isDebugEnabled())
+				logger.debug("time to traverse direct file: " + ((System.currentTimeMillis() - startTraversingDirectFile) / 1000D));
+			
+			displayMemoryUsage(r);
+			
+			//write the inverted file for this part of the lexicon
+			long startWritingInvertedFile = System.currentTimeMillis();
+			final long numTokens = writeInvertedFilePart(dos, tmpStorage, _processTerms);
+			if (logger.isDebugEnabled())
+				logger.debug("time to write inverted file: "
+				 + ((System.currentTimeMillis()- startWritingInvertedFile) / 1000D));
+			
+			displayMemoryUsage(r);
+			return numTokens;
+		}
+		pendingRanges.add(new TermRange(codesHashMap, tmpStorage, _processTerms, 
+			invertedFilename + "." + (segmentFilenames.size() + pendingRanges.size())));
+		if (pendingRanges.size() < threads)
+			return 0;
+		return invertPendingRanges(dos);
+	}
+	
+	/**
+	 * Inverts all queued term ranges concurrently, each into its own segment of the
+	 * inverted file, then writes the pointers of their terms, relative to the start of
+	 * the inverted file.
+	 * @param dos a temporary data structure that contains the offsets in the inverted
+	 *  index for each term.
+	 * @return the number of tokens processed
+	 * @throws IOException if there is a problem while inverting
+	 */
+	protected long invertPendingRanges(final DataOutputStream dos) throws IOException
+	{
+		final int ranges = pendingRanges.size();
+		if (ranges == 0)
+			return 0;
+		logger.info("Inverting " + ranges + " term ranges concurrently");
+		final long startInverting = System.currentTimeMillis();
+		final ExecutorService pool = Executors.newFixedThreadPool(ranges);
+		final List<Future<TermRange>> inverted = new ArrayList<Future<TermRange>>(ranges);
+		try{
+			for(final TermRange range : pendingRanges)
+				inverted.add(pool.submit(() -> invertRange(range)));
+		} finally {
+			pool.shutdown();
+		}
+		pendingRanges.clear();
+		
+		long numTokens = 0;
+		final BitIndexPointer p = new SimpleBitIndexPointer();
+		for(Future<TermRange> future : inverted)
+		{
+			final TermRange range;
+			try{
+				range = future.get();
+			} catch (InterruptedException ie) {
+				throw new IOException("Interrupted while inverting term ranges", ie);
+			} catch (ExecutionException ee) {
+				throw new IOException("Problem inverting term range", ee.getCause());
+			}
+			final DataInputStream pointers = new DataInputStream(new ByteArrayInputStream(range.pointers));
+			for(int j=0;j<range.terms;j++)
+			{
+				p.readFields(pointers);
+				p.setOffset(segmentsLength + p.getOffset(), p.getOffsetBits());
+				p.write(dos);
+			}
+			numTokens += range.tokens;
+			segmentsLength += Files.length(range.segmentFilename);
+			segmentFilenames.add(range.segmentFilename);
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("time to invert " + ranges + " term ranges: " + ((System.currentTimeMillis() - startInverting) / 1000D));
+		displayMemoryUsage(Runtime.getRuntime());
+		return numTokens;
+	}
+	
+	/** 
+	 * Traverses the direct file for the terms of the specified range, and writes their
+	 * postings to the segment of the range. Called concurrently for different ranges.
+	 * @param range the range to invert
+	 * @return the range, with its pointers recorded
+	 * @throws IOException if there is a problem while inverting
+	 */
+	protected TermRange invertRange(TermRange range) throws IOException
+	{
+		traverseDirectFile(range.codesHashMap, range.tmpStorage);
+		final ByteArrayOutputStream pointers = new ByteArrayOutputStream();
+		final AbstractPostingOutputStream segment = compressionConfig.getPostingOutputStream(range.segmentFilename);
+		try(DataOutputStream pointersDos = new DataOutputStream(pointers))
+		{
+			range.tokens = writeInvertedFilePart(pointersDos, segment, range.tmpStorage, range.terms);
+		} finally {
+			segment.close();
+		}
+		range.pointers = pointers.toByteArray();
+		return range;
+	}
+	
+	/**
+	 * Completes the inverted file, once all terms have been selected. Any queued term ranges are 
+	 * inverted, and the segments written by concurrent inversion are concatenated to form the 
+	 * inverted file.
+	 * @param dos a temporary data structure that contains the offsets in the inverted
+	 *  index for each term.
+	 * @return the number of tokens processed
+	 * @throws IOException if there is a problem while inverting
+	 */
+	protected long finishInvertedFile(final DataOutputStream dos) throws IOException
+	{
+		final long numTokens = invertPendingRanges(dos);
+		file.close();
+		file = null;
+		if (segmentFilenames.size() > 0)
+		{
+			logger.info("Concatenating " + segmentFilenames.size() + " segments of the inverted file");
+			try(OutputStream invertedFile = Files.writeFileStream(invertedFilename))
+			{
+				for(String segmentFilename : segmentFilenames)
+				{
+					try(InputStream segment = Files.openFileStream(segmentFilename))
+					{
+						ByteStreams.copy(segment, invertedFile);
+					}
+					Files.delete(segmentFilename);
+				}
+			}
+			segmentFilenames.clear();
+			segmentsLength = 0;
+		}
+		return numTokens;
+	}
+
 	/**
 	 * Traverses the direct index and creates the inverted index entries 
 	 * for the terms specified in the codesHashMap and tmpStorage.
@@ -575,6 +766,25 @@ public class InvertedIndexBuilder {
 			TIntArrayList[][] tmpStorage, 
 			final int _processTerms)
 			throws IOException
+	{
+		return writeInvertedFilePart(dos, file, tmpStorage, _processTerms);
+	}
+	
+	/** Writes the section of the inverted file to the specified posting output stream
+	 * @param dos a temporary data structure that contains the offsets in the inverted
+	 *  index for each term.
+	 * @param out where to write the postings
+	 * @param tmpStorage Occurrences information, as described in traverseDirectFile().
+	 *  This data is consumed by this method - once this method has been called, all
+	 *  the data in tmpStorage will be destroyed.
+	 * @param _processTerms The number of terms being processed in this iteration.
+	 * @return the number of tokens processed in this iteration */
+	protected long writeInvertedFilePart(
+			final DataOutputStream dos, 
+			final AbstractPostingOutputStream out,
+			TIntArrayList[][] tmpStorage, 
+			final int _processTerms)
+			throws IOException
 		{
 			BitIndexPointer p = new SimpleBitIndexPointer();
 			//write to the inverted file. We should note that the lexicon 
@@ -598,7 +808,7 @@ public class InvertedIndexBuilder {
 				}
 				tmpStorage[j] = null;
 								
-				p.setOffset(file.getOffset());
+				p.setOffset(out.getOffset());
 				p.setNumberOfEntries(ids.length);
 				p.write(dos);
 				
@@ -611,7 +821,7 @@ public class InvertedIndexBuilder {
 				{
 					ip = new ArrayOfBasicIterablePosting(ids, tf, null);
 				}
-				file.writePostings(ip);
+				out.writePostings(ip);
 
 				numTokens += frequency;				
 			}
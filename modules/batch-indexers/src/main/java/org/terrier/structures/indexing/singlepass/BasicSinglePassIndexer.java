@@ -78,6 +78,10 @@ import org.terrier.utility.UnitUtils;
  * <li><tt>indexing.singlepass.max.postings.memory</tt> - maximum amount of memory that the postings can consume before a run is committed. Default is 0, which is no limit.</li>
  * <li><tt>indexing.singlepass.max.documents.flush</tt> - maximum number of documents before a run is committed. Default is 0, which is no limit.</li>
  * <li><tt>docs.check</tt> - interval of how many documents indexed should the amount of free memory be checked. Default is 20 - check memory consumption every 20 documents.</li>
+ * <li><tt>indexing.singlepass.compact.postings</tt> - if true, the postings are held in memory using {@link CompactMemoryPostings}, 
+ * which consumes less memory per posting, and accounts for it exactly. When <tt>indexing.singlepass.max.postings.memory</tt> is also set,
+ * runs are committed based on this accounting alone, rather than on the free memory of the JVM. Not supported for block indexing. Default is false.</li>
+ * <li><tt>indexing.singlepass.merge.threads</tt> - number of threads used to merge the runs, each merging a separate range of terms using {@link ParallelRunsMerger}. Default is 1.</li>
  * </ul> 
  * @author Roi Blanco
  */
@@ -97,6 +101,12 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 	
 	protected int maxDocsPerFlush;
 	
+	/** Number of threads used to merge the runs */
+	protected int mergeThreads = 1;
+	
+	/** Whether postings are held in memory by CompactMemoryPostings */
+	protected boolean compactPostings = false;
+	
 	/** Runtime system JVM running this instance of Terrier */
 	protected static final Runtime runtime = Runtime.getRuntime();
 
@@ -173,25 +183,11 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 	 */
 	public void createInvertedIndex(Collection[] collections) {
 		logger.info("Creating IF (no direct file)..");
-		long startCollection, endCollection;
-		fileNames = new LinkedList<String[]>();	
-		numberOfDocuments = currentId = numberOfDocsSinceCheck = numberOfDocsSinceFlush = numberOfUniqueTerms = 0;
-		numberOfTokens = numberOfPointers = 0;
-		createMemoryPostings();
-		currentIndex = Index.createNewIndex(path, prefix);
-		docIndexBuilder = new DocumentIndexBuilder(currentIndex, "document");
-		metaBuilder = createMetaIndexBuilder();
-		
-		emptyDocIndexEntry = (FieldScore.FIELDS_COUNT > 0) ? new FieldDocumentIndexEntry(FieldScore.FIELDS_COUNT) : new SimpleDocumentIndexEntry();
-		
-		MAX_DOCS_PER_BUILDER = UnitUtils.parseInt(ApplicationSetup.getProperty("indexing.max.docs.per.builder", "0"));
-		maxMemory = UnitUtils.parseLong(ApplicationSetup.getProperty("indexing.singlepass.max.postings.memory", "0"));
+		long startCollection;
+		initialiseInvertedIndexBuild();
 		final boolean boundaryDocsEnabled = BUILDER_BOUNDARY_DOCUMENTS.size() > 0;
 		final int collections_length = collections.length;
 		boolean stopIndexing = false;
-		System.gc();
-		memoryAfterFlush = runtime.freeMemory();
-		logger.debug("Starting free memory: "+memoryAfterFlush/1000000+"M");
 
 		for(int collectionNo = 0; ! stopIndexing && collectionNo < collections_length; collectionNo++)
 		{
@@ -269,45 +265,78 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 				termsInDocument.clear();
 			}
 			
-			try{
-				forceFlush();
-				endCollection = System.currentTimeMillis();
-				long partialTime = (endCollection-startCollection)/1000;
-				logger.info("Collection #"+collectionNo+ " took "+partialTime+ " seconds to build the runs for "+numberOfDocuments+" documents\n");
-							
-				
-				
-				docIndexBuilder.finishedCollections();
-				if (FieldScore.FIELDS_COUNT > 0)
-				{
-					currentIndex.addIndexStructure("document-factory", FieldDocumentIndexEntry.Factory.class.getName(), "java.lang.String", "${index.inverted.fields.count}");
-				}
-				else
-				{
-					currentIndex.addIndexStructure("document-factory", SimpleDocumentIndexEntry.Factory.class.getName(), "", "");
-				}
-				currentIndex.setIndexProperty("termpipelines", ApplicationSetup.getProperty("termpipelines", "Stopwords,PorterStemmer"));
-				metaBuilder.close();
-				currentIndex.flush();
-				
-				logger.info("Merging "+fileNames.size()+" runs...");
-				startCollection = System.currentTimeMillis();
-				
-				performMultiWayMerge();
-				currentIndex.flush();
-				endCollection = System.currentTimeMillis();
-				logger.info("Collection #"+collectionNo+" took "+((endCollection-startCollection)/1000)+" seconds to merge\n ");
-				logger.info("Collection #"+collectionNo+" total time "+( (endCollection-startCollection)/1000+partialTime));
-				long secs = ((endCollection-startCollection)/1000);
-				if (secs > 3600)
-	                 logger.info("Rate: "+((double)numberOfDocuments/((double)secs/3600.0d))+" docs/hour");
-			} catch (Exception e) {
-				logger.error("Problem finishing index", e);
-			}
+			finishCollection(collectionNo, startCollection);
 		}
 		finishedInvertedIndexBuild();
 	}
 
+	/** resets the counters, and opens the index and the builders of the document and meta indices */
+	protected void initialiseInvertedIndexBuild()
+	{
+		fileNames = new LinkedList<String[]>();	
+		numberOfDocuments = currentId = numberOfDocsSinceCheck = numberOfDocsSinceFlush = numberOfUniqueTerms = 0;
+		numberOfTokens = numberOfPointers = 0;
+		createMemoryPostings();
+		currentIndex = Index.createNewIndex(path, prefix);
+		docIndexBuilder = new DocumentIndexBuilder(currentIndex, "document");
+		metaBuilder = createMetaIndexBuilder();
+		
+		emptyDocIndexEntry = (FieldScore.FIELDS_COUNT > 0) ? new FieldDocumentIndexEntry(FieldScore.FIELDS_COUNT) : new SimpleDocumentIndexEntry();
+		
+		MAX_DOCS_PER_BUILDER = UnitUtils.parseInt(ApplicationSetup.getProperty("indexing.max.docs.per.builder", "0"));
+		maxMemory = UnitUtils.parseLong(ApplicationSetup.getProperty("indexing.singlepass.max.postings.memory", "0"));
+		System.gc();
+		memoryAfterFlush = runtime.freeMemory();
+		logger.debug("Starting free memory: "+memoryAfterFlush/1000000+"M");
+	}
+
+	/**
+	 * Finishes the indexing of a collection: the postings still in memory are flushed
+	 * to a final run, the document and meta indices are closed, and the runs are
+	 * merged to form the inverted index.
+	 * @param collectionNo the number of the collection being finished
+	 * @param startCollection the time at which the indexing of the collection started
+	 */
+	protected void finishCollection(int collectionNo, long startCollection)
+	{
+		long endCollection;
+		try{
+			forceFlush();
+			endCollection = System.currentTimeMillis();
+			long partialTime = (endCollection-startCollection)/1000;
+			logger.info("Collection #"+collectionNo+ " took "+partialTime+ " seconds to build the runs for "+numberOfDocuments+" documents\n");
+						
+			
+			
+			docIndexBuilder.finishedCollections();
+			if (FieldScore.FIELDS_COUNT > 0)
+			{
+				currentIndex.addIndexStructure("document-factory", FieldDocumentIndexEntry.Factory.class.getName(), "java.lang.String", "${index.inverted.fields.count}");
+			}
+			else
+			{
+				currentIndex.addIndexStructure("document-factory", SimpleDocumentIndexEntry.Factory.class.getName(), "", "");
+			}
+			currentIndex.setIndexProperty("termpipelines", ApplicationSetup.getProperty("termpipelines", "Stopwords,PorterStemmer"));
+			metaBuilder.close();
+			currentIndex.flush();
+			
+			logger.info("Merging "+fileNames.size()+" runs...");
+			startCollection = System.currentTimeMillis();
+			
+			performMultiWayMerge();
+			currentIndex.flush();
+			endCollection = System.currentTimeMillis();
+			logger.info("Collection #"+collectionNo+" took "+((endCollection-startCollection)/1000)+" seconds to merge\n ");
+			logger.info("Collection #"+collectionNo+" total time "+( (endCollection-startCollection)/1000+partialTime));
+			long secs = ((endCollection-startCollection)/1000);
+			if (secs > 3600)
+                 logger.info("Rate: "+((double)numberOfDocuments/((double)secs/3600.0d))+" docs/hour");
+		} catch (Exception e) {
+			logger.error("Problem finishing index", e);
+		}
+	}
+
 	/** check to see if a flush is required, and perform if necessary */
 	protected void checkFlush() throws IOException
 	{
@@ -316,7 +345,9 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 		numberOfDocsSinceCheck = 0;
 		final long consumed = mp.getMemoryConsumption();
 		boolean doFlush = false;
-		final boolean memCheck = memoryCheck.checkMemory();
+		//memory consumption of compact postings is known, so need not be checked
+		final boolean exactMemory = maxMemory > 0 && mp instanceof CompactMemoryPostings;
+		final boolean memCheck = ! exactMemory && memoryCheck.checkMemory();
 		String msg = null;
 		logger.debug(msg="Run "+currentFile+" maxAllowedMemory="+maxMemory + " consumed="+consumed + " maxDocsPerFlush="+maxDocsPerFlush
 			+" numberOfDocsSinceFlush="+numberOfDocsSinceFlush + " memcheck="+ memCheck);
@@ -335,6 +366,11 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 			msg += " (posting memory threshold hit)";
 			doFlush = true;
 		}
+		if (mp instanceof CompactMemoryPostings && ((CompactMemoryPostings)mp).isFull())
+		{
+			msg += " (compact postings full)";
+			doFlush = true;
+		}
 		if (doFlush)
 		{
 			logger.info("Flush forced: " + msg);
@@ -405,11 +441,22 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 				createFieldRunMerger(_fileNames);
 			else
 				createRunMerger(_fileNames);
-			merger.beginMerge(_fileNames.length, path + ApplicationSetup.FILE_SEPARATOR + prefix +  ".inverted.bf");
-			while(!merger.isDone()){
-				merger.mergeOne(lexStream);
+			final String invertedFilename = path + ApplicationSetup.FILE_SEPARATOR + prefix +  ".inverted.bf";
+			if (mergeThreads > 1 && merger.runsSource instanceof FileRunIteratorFactory)
+			{
+				ParallelRunsMerger parallelMerger = new ParallelRunsMerger((FileRunIteratorFactory)merger.runsSource, mergeThreads,
+						super.numFields > 0 ? new FieldLexiconEntry.Factory(super.numFields) : new BasicLexiconEntry.Factory());
+				merger = parallelMerger;
+				parallelMerger.merge(_fileNames.length, invertedFilename, lexStream);
+			}
+			else
+			{
+				merger.beginMerge(_fileNames.length, invertedFilename);
+				while(!merger.isDone()){
+					merger.mergeOne(lexStream);
+				}
+				merger.endMerge(lexStream);
 			}
-			merger.endMerge(lexStream);
 			lexStream.close();
 			//the constructor for FieldLexiconEntry is wrong - replace it
 			if (super.numFields > 0)
@@ -485,7 +532,9 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 	 * Hook method that creates the right type of MemoryPostings class.
 	 */
 	protected void createMemoryPostings(){
-		if (useFieldInformation)
+		if (compactPostings)
+			mp = new CompactMemoryPostings(useFieldInformation ? super.numFields : 0);
+		else if (useFieldInformation)
 			mp = new FieldsMemoryPostings();
 		else
 			mp = new MemoryPostings();
@@ -496,6 +545,8 @@ public class BasicSinglePassIndexer extends BasicIndexer{
 		super.load_indexer_properties();
 		docsPerCheck = ApplicationSetup.DOCS_CHECK_SINGLEPASS;
 		maxDocsPerFlush = Integer.parseInt(ApplicationSetup.getProperty("indexing.singlepass.max.documents.flush", "0"));
+		mergeThreads = Integer.parseInt(ApplicationSetup.getProperty("indexing.singlepass.merge.threads", "1"));
+		compactPostings = Boolean.parseBoolean(ApplicationSetup.getProperty("indexing.singlepass.compact.postings", "false"));
 		memoryCheck = new RuntimeMemoryChecker();
 		logger.info("Checking memory usage every " + docsPerCheck + " maxDocPerFlush=" + maxDocsPerFlush);
 	}
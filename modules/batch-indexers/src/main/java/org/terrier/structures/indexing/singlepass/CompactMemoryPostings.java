@@ -0,0 +1,335 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is CompactMemoryPostings.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.terrier.compression.bit.MemorySBOS;
+import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.indexing.FieldDocumentPostingList;
+import org.terrier.utility.UTF8TermDictionary;
+
+/**
+ * Holds the posting lists of a run in memory, without creating objects for each term. 
+ * Each term is assigned a termid by a {@link UTF8TermDictionary}, which indexes arrays holding its statistics. The postings 
+ * themselves are written as variable-byte integers into slices of large shared pages. The slices of
+ * a term are linked by pointers, and grow in size as the posting list grows. 
+ * When the run is written, each posting list is transcoded into the gamma-encoded 
+ * format written by {@link Posting} and {@link FieldPosting}, such that the runs are 
+ * identical to those of {@link MemoryPostings} and {@link FieldsMemoryPostings}.
+ * <p>
+ * As all memory is allocated in known quantities, {@link #getMemoryConsumption()} 
+ * accounts for the memory consumed by the postings, and need not be estimated. 
+ * Block information is not supported.
+ * @since 5.2
+ */
+public class CompactMemoryPostings extends MemoryPostings {
+
+	/** log2 of the size of each page */
+	protected static final int PAGE_BITS = 15;
+	protected static final int PAGE_SIZE = 1 << PAGE_BITS;
+	protected static final int PAGE_MASK = PAGE_SIZE -1;
+	/** pages are addressed by an int, hence this is the maximum number of pages */
+	protected static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+	/** sizes of the successive slices of a posting list, including the 4 byte pointer to the next slice */
+	protected static final int[] SLICE_SIZES = {8, 16, 32, 64, 128, 256, 512, 1024};
+	/** memory per termid, in the arrays below */
+	protected static final int BYTES_PER_TERM = 7 * 4 + 1;
+	
+	/** termid of each term */
+	protected final UTF8TermDictionary termids = new UTF8TermDictionary();
+	protected int[] tfs = new int[1024];
+	protected int[] dfs = new int[1024];
+	protected int[] maxtfs = new int[1024];
+	protected int[] lastDocids = new int[1024];
+	/** address of the first slice of each term */
+	protected int[] heads = new int[1024];
+	/** address where the next byte of each term will be written */
+	protected int[] writeAddresses = new int[1024];
+	/** address of the pointer at the end of the current slice of each term */
+	protected int[] sliceEnds = new int[1024];
+	protected byte[] sliceLevels = new byte[1024];
+	protected int numTerms = 0;
+	
+	protected byte[][] pages = new byte[16][];
+	protected int numPages = 0;
+	/** offset of the next free byte in the last page */
+	protected int pageOffset = PAGE_SIZE;
+	
+	/** number of fields, or 0 if field frequencies are not recorded */
+	protected final int numFields;
+	
+	/** Create a new instance, for postings without fields */
+	public CompactMemoryPostings()
+	{
+		this(0);
+	}
+	
+	/** Create a new instance, for postings with the specified number of fields */
+	public CompactMemoryPostings(int _numFields)
+	{
+		numFields = _numFields;
+	}
+	
+	@Override
+	public void addTerms(DocumentPostingList docPostings, int docid) throws IOException {
+		if (numFields > 0)
+		{
+			final FieldDocumentPostingList fieldPostings = (FieldDocumentPostingList) docPostings;
+			for (String term : docPostings.termSet())
+				add(term, docid, docPostings.getFrequency(term), fieldPostings.getFieldFrequencies(term));
+		}
+		else
+		{
+			for (String term : docPostings.termSet())
+				add(term, docid, docPostings.getFrequency(term));
+		}
+	}
+	
+	@Override
+	public void add(String term, int doc, int frequency) throws IOException {
+		addPosting(term, doc, frequency);
+	}
+	
+	/**
+	 * Adds an occurrence of a term in a document to the posting in memory.
+	 * @param term String representing the term.
+	 * @param doc int containing the document identifier.
+	 * @param frequency int containing the frequency of the term in the document.
+	 * @param fieldFrequencies int[] contains the frequencies of the term in each field
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void add(String term, int doc, int frequency, int[] fieldFrequencies) throws IOException {
+		final int termid = addPosting(term, doc, frequency);
+		for(int field_f : fieldFrequencies)
+			writeVInt(termid, field_f);
+	}
+	
+	/** adds the docid and frequency of a posting, returning the termid */
+	protected int addPosting(String term, int doc, int frequency)
+	{
+		numPointers++;
+		int termid = termids.add(term);
+		if (termid == numTerms)
+		{
+			newTerm(termid);
+			writeVInt(termid, doc + 1);
+		}
+		else
+		{
+			writeVInt(termid, doc - lastDocids[termid]);
+		}
+		writeVInt(termid, frequency);
+		lastDocids[termid] = doc;
+		tfs[termid] += frequency;
+		if (frequency > maxtfs[termid])
+			maxtfs[termid] = frequency;
+		dfs[termid]++;
+		//as per MemoryPostings and FieldsMemoryPostings respectively
+		final int size = numFields > 0 ? tfs[termid] : dfs[termid];
+		if (size > maxSize)
+			maxSize = size;
+		return termid;
+	}
+	
+	/** allocates the arrays and first slice for a new termid */
+	protected void newTerm(final int termid)
+	{
+		numTerms++;
+		if (termid == tfs.length)
+		{
+			final int newLength = tfs.length * 2;
+			tfs = Arrays.copyOf(tfs, newLength);
+			dfs = Arrays.copyOf(dfs, newLength);
+			maxtfs = Arrays.copyOf(maxtfs, newLength);
+			lastDocids = Arrays.copyOf(lastDocids, newLength);
+			heads = Arrays.copyOf(heads, newLength);
+			writeAddresses = Arrays.copyOf(writeAddresses, newLength);
+			sliceEnds = Arrays.copyOf(sliceEnds, newLength);
+			sliceLevels = Arrays.copyOf(sliceLevels, newLength);
+		}
+		final int address = allocateSlice(SLICE_SIZES[0]);
+		heads[termid] = writeAddresses[termid] = address;
+		sliceEnds[termid] = address + SLICE_SIZES[0] - 4;
+	}
+	
+	/** returns the address of a new slice of the specified size */
+	protected int allocateSlice(int size)
+	{
+		if (pageOffset + size > PAGE_SIZE)
+		{
+			if (numPages == MAX_PAGES)
+				throw new IllegalStateException("Postings in memory exceed " + ((long)MAX_PAGES * PAGE_SIZE) + " bytes, run should have been flushed");
+			if (numPages == pages.length)
+				pages = Arrays.copyOf(pages, pages.length * 2);
+			pages[numPages++] = new byte[PAGE_SIZE];
+			pageOffset = 0;
+		}
+		final int address = ((numPages - 1) << PAGE_BITS) | pageOffset;
+		pageOffset += size;
+		return address;
+	}
+	
+	protected final void writeVInt(final int termid, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			writeByte(termid, (byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		writeByte(termid, (byte) value);
+	}
+	
+	protected final void writeByte(final int termid, final byte b)
+	{
+		int address = writeAddresses[termid];
+		if (address == sliceEnds[termid])
+		{
+			//current slice is full: link to a new, larger slice
+			final int level = Math.min(sliceLevels[termid] + 1, SLICE_SIZES.length - 1);
+			final int next = allocateSlice(SLICE_SIZES[level]);
+			final byte[] page = pages[address >>> PAGE_BITS];
+			final int offset = address & PAGE_MASK;
+			page[offset] = (byte) (next >>> 24);
+			page[offset+1] = (byte) (next >>> 16);
+			page[offset+2] = (byte) (next >>> 8);
+			page[offset+3] = (byte) next;
+			sliceLevels[termid] = (byte) level;
+			sliceEnds[termid] = next + SLICE_SIZES[level] - 4;
+			address = next;
+		}
+		pages[address >>> PAGE_BITS][address & PAGE_MASK] = b;
+		writeAddresses[termid] = address + 1;
+	}
+	
+	/** Reads the posting list of a term from the slices */
+	protected class SliceReader
+	{
+		int address;
+		int end;
+		int level = 0;
+		
+		SliceReader(int termid)
+		{
+			address = heads[termid];
+			end = address + SLICE_SIZES[0] - 4;
+		}
+		
+		final byte readByte()
+		{
+			if (address == end)
+			{
+				final byte[] page = pages[address >>> PAGE_BITS];
+				final int offset = address & PAGE_MASK;
+				address = ((page[offset] & 0xFF) << 24) | ((page[offset+1] & 0xFF) << 16) 
+						| ((page[offset+2] & 0xFF) << 8) | (page[offset+3] & 0xFF);
+				level = Math.min(level + 1, SLICE_SIZES.length - 1);
+				end = address + SLICE_SIZES[level] - 4;
+			}
+			final byte b = pages[address >>> PAGE_BITS][address & PAGE_MASK];
+			address++;
+			return b;
+		}
+		
+		final int readVInt()
+		{
+			byte b = readByte();
+			int value = b & 0x7F;
+			for (int shift = 7; (b & 0x80) != 0; shift += 7)
+			{
+				b = readByte();
+				value |= (b & 0x7F) << shift;
+			}
+			return value;
+		}
+	}
+	
+	@Override
+	public void finish(RunWriter runWriter) throws IOException {
+		logger.debug("Writing run "+runWriter.toString());
+		final String[] order = new String[numTerms];
+		for(int i=0;i<numTerms;i++)
+			order[i] = termids.getTerm(i);
+		if (runWriter.writeSorted())
+			Arrays.sort(order);
+		try{
+			if (numTerms > 0)
+			{
+				runWriter.beginWrite(maxSize, numTerms);
+				final Posting posting = numFields > 0 ? new FieldPosting() : new Posting();
+				for(String term : order)
+				{
+					final int termid = termids.lookup(term);
+					posting.setDocs(transcode(termid));
+					posting.setDocF(dfs[termid]);
+					posting.setTF(tfs[termid]);
+					posting.maxtf = maxtfs[termid];
+					runWriter.writeTerm(term, posting);
+				}
+			}
+			runWriter.finishWrite();
+		} catch (IOException | RuntimeException e) {
+			runWriter.abort();
+			throw e;
+		}
+		logger.debug(" done");
+	}
+	
+	/** Returns the postings of the specified term, encoded as per {@link Posting} or {@link FieldPosting} */
+	protected MemorySBOS transcode(int termid) throws IOException
+	{
+		final MemorySBOS docs = new MemorySBOS();
+		final SliceReader reader = new SliceReader(termid);
+		for(int i=0;i<dfs[termid];i++)
+		{
+			docs.writeGamma(reader.readVInt());
+			docs.writeGamma(reader.readVInt());
+			for(int f=0;f<numFields;f++)
+				docs.writeUnary(reader.readVInt() + 1);
+		}
+		return docs;
+	}
+	
+	@Override
+	public int getSize() {
+		return numTerms;
+	}
+	
+	/** Returns the number of bytes consumed by the pages, the per-term arrays and the dictionary of terms */
+	@Override
+	public long getMemoryConsumption() {
+		return (long) numPages * PAGE_SIZE 
+			+ (long) pages.length * 8
+			+ (long) tfs.length * BYTES_PER_TERM
+			+ termids.getMemoryConsumption();
+	}
+	
+	/** Returns true if the pages are close to their maximum addressable size, and hence the run should be flushed */
+	public boolean isFull() {
+		return numPages > MAX_PAGES - 1024;
+	}
+}
@@ -28,10 +28,14 @@ package org.terrier.structures.indexing.singlepass;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.terrier.compression.bit.BitIn;
 import org.terrier.compression.bit.BitInputStream;
+import org.terrier.structures.indexing.singlepass.RunWriter.TermSample;
 import org.terrier.utility.Files;
+import org.terrier.utility.io.RandomDataInput;
 
 /** Reads runs of flushed term posting lists by reading them from files.
   * @since 2.2
@@ -70,6 +74,45 @@ public class FileRunIterator<K extends PostingInRun> extends RunIterator {
 		currentPosting = 0;
 	}
 
+	/** Load a run from files, starting at the posting list of the specified sample.
+	  * @param filename the filename of the file containing the posting lists
+	  * @param termsFile the filename of the file containing the term names
+	  * @param runNo the number of this run
+	  * @param _postingInRunClass the class that all postings in this class have
+	  * @param start the sample to start at, as obtained from {@link #loadSamples(String)}
+	  * @since 5.2
+	  */	
+	public FileRunIterator(String filename, String termsFile, int runNo, Class<? extends PostingInRun> _postingInRunClass, int fieldCount, TermSample start) throws Exception{
+		this(filename, termsFile, runNo, _postingInRunClass, fieldCount);
+		mbis.close();
+		mbis = new BitInputStream(filename);
+		mbis.skipBytes(start.runOffset);
+		long skipped = 0;
+		while(skipped < start.termsOffset)
+			skipped += stringDIS.skip(start.termsOffset - skipped);
+		currentPosting = start.index;
+	}
+	
+	/** 
+	 * Reads the term samples recorded at the end of the terms file of a run by {@link RunWriter}.
+	 * @param termsFile the filename of the file containing the term names
+	 * @return the samples, in term order
+	 * @since 5.2
+	 */
+	public static List<TermSample> loadSamples(String termsFile) throws IOException
+	{
+		final List<TermSample> samples = new ArrayList<>();
+		try(RandomDataInput rdi = Files.openFileRandom(termsFile))
+		{
+			rdi.seek(rdi.length() - 8);
+			rdi.seek(rdi.readLong());
+			final int count = rdi.readInt();
+			for(int i=0;i<count;i++)
+				samples.add(new TermSample(rdi.readUTF(), rdi.readLong(), rdi.readLong(), rdi.readInt()));
+		}
+		return samples;
+	}
+
 	/** Closes the run files being processed */	
 	@Override
 	public void close() throws IOException
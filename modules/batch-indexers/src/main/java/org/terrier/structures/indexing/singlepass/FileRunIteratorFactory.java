@@ -25,6 +25,15 @@
  */
 package org.terrier.structures.indexing.singlepass;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.terrier.compression.bit.BitOut;
+import org.terrier.compression.bit.BitOutputStream;
+import org.terrier.structures.indexing.singlepass.RunWriter.TermSample;
+
+import com.google.common.io.ByteStreams;
+
 /** Creates FileRunIterators, using the specificed filenames as the run data files, and
   * the specified class as the type of the postings in the run files */
 public class FileRunIteratorFactory extends RunIteratorFactory {
@@ -50,5 +59,49 @@ public class FileRunIteratorFactory extends RunIteratorFactory {
 	{
 		return new FileRunIterator<PostingInRun>(files[runNumber][0], files[runNumber][1], runNumber, postingClass, super.numberOfFields);
 	}
+	
+	/** Return the term samples of the specified run
+	 * @since 5.2 */
+	public List<TermSample> getTermSamples(int runNumber) throws IOException
+	{
+		return FileRunIterator.loadSamples(files[runNumber][1]);
+	}
+	
+	/** 
+	 * Return a RunIterator for the specified run, whose current posting is the first with a term 
+	 * not less than startTerm, or null if there is no such posting.
+	 * @param runNumber the run to open
+	 * @param samples the samples of the run, as obtained from {@link #getTermSamples(int)}
+	 * @param startTerm the first term of interest, or null for the start of the run
+	 * @since 5.2
+	 */
+	public RunIterator createRunIterator(int runNumber, List<TermSample> samples, String startTerm) throws Exception
+	{
+		//the last sample before startTerm, if any
+		TermSample start = null;
+		if (startTerm != null)
+			for(TermSample sample : samples)
+			{
+				if (sample.term.compareTo(startTerm) > 0)
+					break;
+				start = sample;
+			}
+		final RunIterator run = start == null
+			? createRunIterator(runNumber)
+			: new FileRunIterator<PostingInRun>(files[runNumber][0], files[runNumber][1], runNumber, postingClass, super.numberOfFields, start);
+		BitOut skipped = null;
+		while(run.hasNext())
+		{
+			run.next();
+			if (startTerm == null || run.current().getTerm().compareTo(startTerm) >= 0)
+				return run;
+			//read past the postings of this term
+			if (skipped == null)
+				skipped = new BitOutputStream(ByteStreams.nullOutputStream());
+			run.current().append(skipped, -1);
+		}
+		run.close();
+		return null;
+	}
 
 }
@@ -61,6 +61,11 @@ public class Inverted2DirectCommand extends CLIParsedCLITool {
 				.longOpt("blocks")
 				.desc("record block (positions) in the index")
 				.build());
+		options.addOption(Option.builder("s")
+				.argName("sort")
+				.longOpt("sort")
+				.desc("scan the inverted index once, sorting its postings by docid (see SortingInverted2DirectIndexBuilder)")
+				.build());
 		return options;
 	}
 
@@ -76,9 +81,12 @@ public class Inverted2DirectCommand extends CLIParsedCLITool {
 		Inverted2DirectIndexBuilder i2d = null;
 		//disabling TR-279 optimisation
 		//LexiconBuilder.reAssignTermIds(i, "lexicon", i.getCollectionStatistics().getNumberOfUniqueTerms());
-		if (line.hasOption('b'))
+		if (line.hasOption('s'))
+			i2d = new SortingInverted2DirectIndexBuilder(i);
+		else if (line.hasOption('b'))
 			i2d = new BlockInverted2DirectIndexBuilder(i);
-		i2d = new Inverted2DirectIndexBuilder(i);
+		else
+			i2d = new Inverted2DirectIndexBuilder(i);
 		i2d.createDirectIndex();
 		i.close();
 		return 0;
@@ -117,27 +117,8 @@ public class Inverted2DirectIndexBuilder {
 	public void createDirectIndex()
 	{
 		final long startTime = System.currentTimeMillis();
-		if( ! index.hasIndexStructure(sourceStructure))
-		{
-			logger.error("This index has no "+sourceStructure+" structure, aborting direct index build");
-			return;
-		}
-		if ( index.hasIndexStructure(destinationStructure))
-		{
-			logger.error("This index already has a "+destinationStructure+" index, no need to create one.");
-			return;
-		}
-		if (index.getIndexProperty("index.terrier.version", "2.0").startsWith("1.") )
-		{
-			logger.error("Index version from Terrier 1.x - it is likely that the termids are not aligned, and hence df creation would not be correct - aborting direct index build");
-			return;
-		}
-		
-		if (! "aligned".equals(index.getIndexProperty("index.lexicon.termids", "")))
-		{
-			logger.error("This index is not supported by " + this.getClass().getName() + " - termids are not strictly ascending. Try Inv2DirectMultiReduce");
+		if (! canCreateDirectIndex())
 			return;
-		}
 		
 		logger.info("Generating a "+destinationStructure+" structure from the "+sourceStructure+" structure");
 		int firstDocid = 0;
@@ -170,40 +151,8 @@ public class Inverted2DirectIndexBuilder {
 				numberOfTokensFound += traverseInvertedFile(iiis, firstDocid, countDocsThisIteration, postings);
 				logger.info("Writing postings for iteration "+iteration+" to disk");
 				for (Posting p : postings) //for each document
-				{	
-					//logger.debug("Document " + id  + " length="+ p.getDocF());
-					
-					//get the offsets
-					long startByte = bos.getByteOffset();
-					byte startBit = bos.getBitOffset();
-					
-					//if the document is non-empty
-					if (p.getDocF() > 0)
-					{					
-						//obtain the compressed memory posting list
-						final MemorySBOS Docs = p.getDocs();
-						//some obscure problem when reading from memory rather than disk.
-						//by padding the posting list with some non zero bytes the problem
-						//is solved. Thanks to Roicho for working this one out.
-						Docs.writeGamma(1);
-						Docs.writeGamma(1);
-						Docs.pad();
-					
-						//use a PostingInRun to decompress the postings stored in memory
-						final PostingInRun pir = getPostingReader();
-						pir.setDf(p.getDocF());
-						pir.setTF(p.getTF());
-						pir.setPostingSource(new BitInputStream(new ByteArrayInputStream(
-							Docs.getMOS().getBuffer())));
-						//System.err.println("temp compressed buffer size="+Docs.getMOS().getPos() + " length="+Docs.getMOS().getBuffer().length);
-						//decompress the memory postings and write out to the direct file
-						pir.append(bos, -1);
-					}
-
-					//take note of the offset for this document in the df
-					offsetsTmpFile.writeLong(startByte);
-					offsetsTmpFile.writeByte(startBit);
-					offsetsTmpFile.writeInt(p.getDocF());
+				{
+					writeDocumentPostings(p, bos, offsetsTmpFile);
 				}// /for document postings
 				iiis.close();
 				firstDocid = firstDocid + countDocsThisIteration;
@@ -217,58 +166,10 @@ public class Inverted2DirectIndexBuilder {
 				logger.warn("Number of tokens found while scanning "+sourceStructure+" structure does not match expected. Expected "
 					+index.getCollectionStatistics().getNumberOfTokens()+ ", found " + numberOfTokensFound);
 			}
-			logger.info("Finishing up: rewriting document index");	
 			offsetsTmpFile.close();
-			//write the offsets to the DocumentIndex
-			final DataInputStream dis = new DataInputStream(Files.openFileStream(offsetsFilename));
-			final DocumentIndexBuilder dios = new DocumentIndexBuilder(index, "document-df");
-			final Iterator<DocumentIndexEntry> docidInput = (Iterator<DocumentIndexEntry>)index.getIndexStructureInputStream("document");
-			
-			DocumentIndexEntry die = null;
-		    while (docidInput.hasNext())
-			{
-		    	DocumentIndexEntry old = docidInput.next();
-		    	if (fieldCount == 0)
-		    	{
-		    		die = new BasicDocumentIndexEntry(old);
-		    	}
-		    	else
-		    	{
-		    		die = old;
-		    	}
-		    	die.setOffset(dis.readLong(), dis.readByte());
-				die.setNumberOfEntries(dis.readInt());
-				dios.addEntryToBuffer(die);
-		    }
-		    IndexUtil.close(docidInput);
 			bos.close();
 			IndexUtil.close(diis);
-			dis.close();
-			Files.delete(offsetsFilename);
-			dios.close();
-			IndexUtil.renameIndexStructure(index, "document-df", "document");
-			
-			//only if no fields do we replace the document-factory type
-			if (fieldCount == 0)
-				index.addIndexStructure("document-factory", BasicDocumentIndexEntry.Factory.class.getName(), "", "");
-
-			
-			//inform the index about the new data structure
-			index.addIndexStructure(
-				destinationStructure, 
-				directIndexClass, 
-				"org.terrier.structures.IndexOnDisk,java.lang.String,java.lang.Class", 
-				"index,structureName,"+ 
-					(fieldCount > 0 ? fieldDirectIndexPostingIteratorClass : basicDirectIndexPostingIteratorClass));
-			index.addIndexStructureInputStream(
-				destinationStructure, 
-				directIndexInputStreamClass,
-				"org.terrier.structures.IndexOnDisk,java.lang.String,java.util.Iterator,java.lang.Class",
-				"index,structureName,document-inputstream,"+ 
-					(fieldCount > 0 ? fieldDirectIndexPostingIteratorClass : basicDirectIndexPostingIteratorClass));
-			index.setIndexProperty("index."+destinationStructure+".fields.count", ""+fieldCount );
-			index.setIndexProperty("index."+destinationStructure+".fields.names", index.getIndexProperty("index."+sourceStructure+".fields.names", ""));
-			index.flush();//save changes
+			finishDirectIndex(offsetsFilename);
 			
 			logger.info("Finished generating a "+destinationStructure+" structure from the "+sourceStructure+" structure. Time elapsed: "+((System.currentTimeMillis() - startTime)/1000) + " seconds");
 
@@ -281,6 +182,127 @@ public class Inverted2DirectIndexBuilder {
 		}
 	}
 
+	/** checks that the index has the structures required to create the direct index, 
+	  * logging the reason if not */
+	protected boolean canCreateDirectIndex()
+	{
+		if( ! index.hasIndexStructure(sourceStructure))
+		{
+			logger.error("This index has no "+sourceStructure+" structure, aborting direct index build");
+			return false;
+		}
+		if ( index.hasIndexStructure(destinationStructure))
+		{
+			logger.error("This index already has a "+destinationStructure+" index, no need to create one.");
+			return false;
+		}
+		if (index.getIndexProperty("index.terrier.version", "2.0").startsWith("1.") )
+		{
+			logger.error("Index version from Terrier 1.x - it is likely that the termids are not aligned, and hence df creation would not be correct - aborting direct index build");
+			return false;
+		}
+		
+		if (! "aligned".equals(index.getIndexProperty("index.lexicon.termids", "")))
+		{
+			logger.error("This index is not supported by " + this.getClass().getName() + " - termids are not strictly ascending. Try Inv2DirectMultiReduce");
+			return false;
+		}
+		return true;
+	}
+	
+	/** writes the postings of a document to the direct file, and its offset and 
+	  * number of postings to the offsets file */
+	protected void writeDocumentPostings(final Posting p, final BitOut bos, final DataOutputStream offsetsTmpFile) throws IOException
+	{
+		//get the offsets
+		long startByte = bos.getByteOffset();
+		byte startBit = bos.getBitOffset();
+		
+		//if the document is non-empty
+		if (p != null && p.getDocF() > 0)
+		{					
+			//obtain the compressed memory posting list
+			final MemorySBOS Docs = p.getDocs();
+			//some obscure problem when reading from memory rather than disk.
+			//by padding the posting list with some non zero bytes the problem
+			//is solved. Thanks to Roicho for working this one out.
+			Docs.writeGamma(1);
+			Docs.writeGamma(1);
+			Docs.pad();
+		
+			//use a PostingInRun to decompress the postings stored in memory
+			final PostingInRun pir = getPostingReader();
+			pir.setDf(p.getDocF());
+			pir.setTF(p.getTF());
+			pir.setPostingSource(new BitInputStream(new ByteArrayInputStream(
+				Docs.getMOS().getBuffer())));
+			//System.err.println("temp compressed buffer size="+Docs.getMOS().getPos() + " length="+Docs.getMOS().getBuffer().length);
+			//decompress the memory postings and write out to the direct file
+			pir.append(bos, -1);
+		}
+
+		//take note of the offset for this document in the df
+		offsetsTmpFile.writeLong(startByte);
+		offsetsTmpFile.writeByte(startBit);
+		offsetsTmpFile.writeInt(p != null ? p.getDocF() : 0);
+	}
+	
+	/** rewrites the document index with the offsets recorded in the offsets file, which is then deleted,
+	  * and records the direct structure in the index properties */
+	@SuppressWarnings("unchecked")
+	protected void finishDirectIndex(final String offsetsFilename) throws IOException
+	{
+		logger.info("Finishing up: rewriting document index");	
+		//write the offsets to the DocumentIndex
+		final DataInputStream dis = new DataInputStream(Files.openFileStream(offsetsFilename));
+		final DocumentIndexBuilder dios = new DocumentIndexBuilder(index, "document-df");
+		final Iterator<DocumentIndexEntry> docidInput = (Iterator<DocumentIndexEntry>)index.getIndexStructureInputStream("document");
+		
+		DocumentIndexEntry die = null;
+	    while (docidInput.hasNext())
+		{
+	    	DocumentIndexEntry old = docidInput.next();
+	    	if (fieldCount == 0)
+	    	{
+	    		die = new BasicDocumentIndexEntry(old);
+	    	}
+	    	else
+	    	{
+	    		die = old;
+	    	}
+	    	die.setOffset(dis.readLong(), dis.readByte());
+			die.setNumberOfEntries(dis.readInt());
+			dios.addEntryToBuffer(die);
+	    }
+	    IndexUtil.close(docidInput);
+		dis.close();
+		Files.delete(offsetsFilename);
+		dios.close();
+		IndexUtil.renameIndexStructure(index, "document-df", "document");
+		
+		//only if no fields do we replace the document-factory type
+		if (fieldCount == 0)
+			index.addIndexStructure("document-factory", BasicDocumentIndexEntry.Factory.class.getName(), "", "");
+
+		
+		//inform the index about the new data structure
+		index.addIndexStructure(
+			destinationStructure, 
+			directIndexClass, 
+			"org.terrier.structures.IndexOnDisk,java.lang.String,java.lang.Class", 
+			"index,structureName,"+ 
+				(fieldCount > 0 ? fieldDirectIndexPostingIteratorClass : basicDirectIndexPostingIteratorClass));
+		index.addIndexStructureInputStream(
+			destinationStructure, 
+			directIndexInputStreamClass,
+			"org.terrier.structures.IndexOnDisk,java.lang.String,java.util.Iterator,java.lang.Class",
+			"index,structureName,document-inputstream,"+ 
+				(fieldCount > 0 ? fieldDirectIndexPostingIteratorClass : basicDirectIndexPostingIteratorClass));
+		index.setIndexProperty("index."+destinationStructure+".fields.count", ""+fieldCount );
+		index.setIndexProperty("index."+destinationStructure+".fields.names", index.getIndexProperty("index."+sourceStructure+".fields.names", ""));
+		index.flush();//save changes
+	}
+
 	/** get an array of posting object of the specified size. These will be used to hold
 	  * the postings for a range of documents */	
 	protected Posting[] getPostings(final int count)
@@ -145,14 +145,19 @@ public class MemoryPostings {
 	 * @throws IOException if an I/O error occurs.
 	 */
 	private void writeToWriter(RunWriter writer, Map<String, Posting> _postings) throws IOException{
-		if (_postings.size() != 0){
-			writer.beginWrite(maxSize, _postings.size());
-			for( Entry<String,Posting> entry : _postings.entrySet())
-			{
-				writer.writeTerm(entry.getKey(), entry.getValue());					
+		try{
+			if (_postings.size() != 0){
+				writer.beginWrite(maxSize, _postings.size());
+				for( Entry<String,Posting> entry : _postings.entrySet())
+				{
+					writer.writeTerm(entry.getKey(), entry.getValue());					
+				}
 			}
+			writer.finishWrite();
+		} catch (IOException | RuntimeException e) {
+			writer.abort();
+			throw e;
 		}
-		writer.finishWrite();
 	}
 }
 
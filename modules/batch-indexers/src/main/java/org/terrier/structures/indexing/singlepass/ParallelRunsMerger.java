@@ -0,0 +1,245 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ParallelRunsMerger.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.compression.bit.BitOutputStream;
+import org.terrier.structures.BasicLexiconEntry;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.structures.indexing.singlepass.RunWriter.TermSample;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+import org.terrier.utility.Files;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Merges a set of N runs using several threads. The terms of the runs are split into ranges of 
+ * approximately equal size in bytes, using the {@link TermSample}s recorded in each run by {@link RunWriter}.
+ * Each range is merged concurrently by its own {@link RunsMerger}, into a separate segment of the inverted
+ * file with its own temporary lexicon. Finally, the segments are concatenated, and their lexicon entries
+ * are written with termids and offsets adjusted accordingly. If the runs are too small to be split, 
+ * they are merged by a single thread, as per {@link RunsMerger}.
+ * @since 5.2
+ */
+public class ParallelRunsMerger extends RunsMerger {
+	
+	protected static final Logger logger = LoggerFactory.getLogger(ParallelRunsMerger.class);
+	
+	/** Writes the lexicon entries of a range to a temporary file */
+	static class TemporaryLexiconOutputStream extends LexiconOutputStream<String>
+	{
+		final DataOutputStream dos;
+		TemporaryLexiconOutputStream(String filename) throws IOException
+		{
+			lexiconStream = dos = new DataOutputStream(Files.writeFileStream(filename));
+		}
+		
+		@Override
+		public int writeNextEntry(String _key, LexiconEntry _value) throws IOException {
+			final int start = dos.size();
+			dos.writeUTF(_key);
+			_value.write(dos);
+			incrementCounters(_value);
+			return dos.size() - start;
+		}
+	}
+	
+	/** number of threads to merge with */
+	protected final int threads;
+	/** creates lexicon entries when reading back the temporary lexicons */
+	protected final FixedSizeWriteableFactory<LexiconEntry> lexiconEntryFactory;
+	
+	/**
+	 * constructor
+	 * @param _runsSource source of the runs to merge
+	 * @param _threads number of threads to merge with
+	 * @param _lexiconEntryFactory factory for the lexicon entries written by the runs
+	 */
+	public ParallelRunsMerger(FileRunIteratorFactory _runsSource, int _threads, FixedSizeWriteableFactory<LexiconEntry> _lexiconEntryFactory)
+	{
+		super(_runsSource);
+		threads = _threads;
+		lexiconEntryFactory = _lexiconEntryFactory;
+	}
+	
+	/**
+	 * Chooses the terms at which each range after the first starts, such that each range 
+	 * contains approximately the same number of bytes of the runs.
+	 * @param samples the term samples of each run
+	 * @param runLengths the length of the postings file of each run
+	 * @param ranges the desired number of ranges
+	 * @return the first term of each range, except the first range. May be fewer than ranges-1.
+	 */
+	protected static List<String> chooseSplits(List<List<TermSample>> samples, long[] runLengths, int ranges)
+	{
+		//weight each sample by the bytes up to the next sample of the same run
+		final List<Map.Entry<String,Long>> weighted = new ArrayList<>();
+		long total = 0;
+		for(int i=0;i<samples.size();i++)
+		{
+			final List<TermSample> runSamples = samples.get(i);
+			for(int j=0;j<runSamples.size();j++)
+			{
+				final long end = j+1 < runSamples.size() ? runSamples.get(j+1).runOffset : runLengths[i];
+				final long weight = end - runSamples.get(j).runOffset;
+				weighted.add(new AbstractMap.SimpleEntry<>(runSamples.get(j).term, weight));
+				total += weight;
+			}
+		}
+		weighted.sort(Map.Entry.comparingByKey());
+		final List<String> splits = new ArrayList<>(ranges - 1);
+		long cumulative = 0;
+		for(Map.Entry<String,Long> sample : weighted)
+		{
+			if (splits.size() == ranges - 1)
+				break;
+			if (cumulative >= total * (splits.size() + 1) / ranges
+				&& (splits.isEmpty() || sample.getKey().compareTo(splits.get(splits.size()-1)) > 0))
+				splits.add(sample.getKey());
+			cumulative += sample.getValue();
+		}
+		return splits;
+	}
+	
+	/**
+	 * Merges all runs, writing the inverted file and the lexicon.
+	 * @param size number of runs to be merged.
+	 * @param fileName output filename.
+	 * @param lexStream LexiconOutputStream used to write the lexicon.
+	 * @throws Exception if an I/O error occurs.
+	 */
+	public void merge(final int size, final String fileName, LexiconOutputStream<String> lexStream) throws Exception
+	{
+		final FileRunIteratorFactory source = (FileRunIteratorFactory) runsSource;
+		final List<List<TermSample>> samples = new ArrayList<>(size);
+		final long[] runLengths = new long[size];
+		for(int i=0;i<size;i++)
+		{
+			samples.add(source.getTermSamples(i));
+			runLengths[i] = Files.length(source.files[i][0]);
+		}
+		final List<String> splits = chooseSplits(samples, runLengths, threads);
+		if (splits.isEmpty())
+		{
+			logger.info("Runs too small to split, merging with a single thread");
+			beginMerge(size, fileName);
+			while(! isDone())
+				mergeOne(lexStream);
+			endMerge(lexStream);
+			return;
+		}
+		
+		final int ranges = splits.size() + 1;
+		logger.info("Merging " + size + " runs in " + ranges + " term ranges");
+		final ExecutorService pool = Executors.newFixedThreadPool(ranges);
+		final List<Future<RunsMerger>> rangeMergers = new ArrayList<>(ranges);
+		try{
+			for(int r=0;r<ranges;r++)
+			{
+				final String startTerm = r == 0 ? null : splits.get(r-1);
+				final String endTerm = r == ranges -1 ? null : splits.get(r);
+				final String rangeFilename = fileName + "." + r;
+				rangeMergers.add(pool.submit(() -> mergeRange(size, samples, startTerm, endTerm, rangeFilename)));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		
+		//concatenate the ranges, in term order
+		long rangeOffset = 0;
+		try(OutputStream invertedFile = Files.writeFileStream(fileName))
+		{
+			for(int r=0;r<ranges;r++)
+			{
+				final RunsMerger rangeMerger = rangeMergers.get(r).get();
+				final String rangeFilename = fileName + "." + r;
+				if (rangeMerger == null)
+					continue;
+				try(DataInputStream lexicon = new DataInputStream(Files.openFileStream(rangeFilename + ".lex")))
+				{
+					for(int i=0;i<rangeMerger.getNumberOfTerms();i++)
+					{
+						final String term = lexicon.readUTF();
+						final LexiconEntry le = lexiconEntryFactory.newInstance();
+						le.readFields(lexicon);
+						final BasicLexiconEntry ble = (BasicLexiconEntry) le;
+						ble.setTermId(currentTerm++);
+						ble.setOffset(rangeOffset + ble.getOffset(), ble.getOffsetBits());
+						lexStream.writeNextEntry(term, le);
+					}
+				}
+				numberOfPointers += rangeMerger.getNumberOfPointers();
+				try(InputStream range = Files.openFileStream(rangeFilename))
+				{
+					rangeOffset += ByteStreams.copy(range, invertedFile);
+				}
+				Files.delete(rangeFilename);
+				Files.delete(rangeFilename + ".lex");
+			}
+		}
+	}
+	
+	/** 
+	 * Merges the terms of the runs from startTerm (inclusive) to endTerm (exclusive).
+	 * @return the merger used, or null if no run contains terms in the range
+	 */
+	protected RunsMerger mergeRange(int size, List<List<TermSample>> samples, String startTerm, String endTerm, String rangeFilename) throws Exception
+	{
+		final FileRunIteratorFactory source = (FileRunIteratorFactory) runsSource;
+		final List<RunIterator> runs = new ArrayList<>(size);
+		for(int i=0;i<size;i++)
+		{
+			RunIterator run = source.createRunIterator(i, samples.get(i), startTerm);
+			if (run != null)
+				runs.add(run);
+		}
+		if (runs.isEmpty())
+			return null;
+		final RunsMerger rangeMerger = new RunsMerger(runsSource);
+		final LexiconOutputStream<String> rangeLexicon = new TemporaryLexiconOutputStream(rangeFilename + ".lex");
+		rangeMerger.beginMerge(runs, new BitOutputStream(rangeFilename), endTerm);
+		while(! rangeMerger.isDone())
+			rangeMerger.mergeOne(rangeLexicon);
+		rangeMerger.endMerge(rangeLexicon);
+		rangeLexicon.close();
+		return rangeMerger;
+	}
+}
@@ -0,0 +1,473 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is PipelinedSinglePassIndexer.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.structures.indexing.singlepass;
+
+import gnu.trove.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.Document;
+import org.terrier.indexing.TRECCollection;
+import org.terrier.structures.indexing.DocumentPostingList;
+import org.terrier.structures.indexing.FieldDocumentPostingList;
+import org.terrier.terms.TermPipeline;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.FieldScore;
+
+/**
+ * A single-pass indexer where the indexing of each document is divided into three stages,
+ * each running in its own thread(s), and connected by bounded queues:
+ * <ol>
+ * <li><i>reading</i>: a single thread reads (and decompresses) the documents from the collections.
+ * Documents of a {@link TRECCollection} are read into memory, and parsed by the next stage. For other
+ * collections, the tokens of each document are extracted by this thread.</li>
+ * <li><i>parsing</i>: several threads parse and tokenise the documents, pass the tokens through a
+ * per-thread term pipeline (e.g. stopwords removal and stemming), and build the
+ * {@link DocumentPostingList} of each document.</li>
+ * <li><i>inversion</i>: a single thread (the one calling {@link #createInvertedIndex(Collection[])})
+ * adds the documents to the in-memory postings, the document index and the meta index, and writes
+ * runs when memory is exhausted, exactly as {@link BasicSinglePassIndexer}.</li>
+ * </ol>
+ * Documents are inverted in the order they were read from the collections, such that the docids
+ * (and hence the resulting index) are identical to those obtained using {@link BasicSinglePassIndexer}.
+ * Documents parsed ahead of a slower document wait for it to be inverted; the number of documents
+ * read but not yet inverted is bounded by twice the queue size plus the number of parsing threads.
+ * Block indexing is not supported.
+ * <p>
+ * <b>Properties:</b>
+ * <ul>
+ * <li><tt>indexing.singlepass.pipelined.threads</tt> - number of parsing threads. Defaults to the number of available processors minus two, with a minimum of one.</li>
+ * <li><tt>indexing.singlepass.pipelined.queue.size</tt> - capacity of each of the queues between the stages, in documents. Default is 256.</li>
+ * </ul>
+ * @since 5.2
+ */
+public class PipelinedSinglePassIndexer extends BasicSinglePassIndexer {
+
+	/** A document travelling through the stages of the indexer */
+	static final class PipelineItem
+	{
+		/** position of the document in the collections */
+		final int sequence;
+		Document document;
+		Map<String,String> properties;
+		DocumentPostingList postings;
+		int numberOfTokens;
+		
+		PipelineItem(int sequence, Document document)
+		{
+			this.sequence = sequence;
+			this.document = document;
+		}
+	}
+	
+	/** marks the end of the documents in a queue */
+	static final PipelineItem END_OF_QUEUE = new PipelineItem(-1, null);
+	
+	/** 
+	 * A document whose tokens have been extracted in memory, such that it can be
+	 * processed by another thread once the collection has moved to the next document.
+	 */
+	static class TokenisedDocument implements Document
+	{
+		final List<String> terms = new ArrayList<String>();
+		final List<Set<String>> fields = new ArrayList<Set<String>>();
+		final Map<String,String> properties;
+		int current = -1;
+		
+		TokenisedDocument(Document source)
+		{
+			Set<String> lastFields = null;
+			String term;
+			while(! source.endOfDocument())
+			{
+				if ((term = source.getNextTerm()) != null && ! term.equals(""))
+				{
+					final Set<String> termFields = source.getFields();
+					//documents often return the same set object, which we cannot keep
+					if (termFields != null && (lastFields == null || ! lastFields.equals(termFields)))
+						lastFields = new HashSet<String>(termFields);
+					terms.add(term);
+					fields.add(termFields == null ? null : lastFields);
+				}
+			}
+			properties = source.getAllProperties();
+		}
+
+		@Override
+		public String getNextTerm() {
+			return terms.get(++current);
+		}
+
+		@Override
+		public Set<String> getFields() {
+			return fields.get(current);
+		}
+
+		@Override
+		public boolean endOfDocument() {
+			return current + 1 >= terms.size();
+		}
+
+		@Override
+		public java.io.Reader getReader() {
+			return null;
+		}
+
+		@Override
+		public String getProperty(String name) {
+			return properties.get(name);
+		}
+
+		@Override
+		public Map<String, String> getAllProperties() {
+			return properties;
+		}
+	}
+	
+	/** 
+	 * A parsing thread. Each has its own term pipeline, ending at a TermPipeline that 
+	 * adds the terms to the DocumentPostingList of the document being parsed.
+	 */
+	protected class ParsingWorker implements Runnable, TermPipeline
+	{
+		final TermPipeline pipeline = createPipeline(this);
+		final TIntHashSet fieldIds = new TIntHashSet(numFields);
+		final boolean ELSE_ENABLED = fieldNames.containsKey("ELSE");
+		final int ELSE_FIELD_ID = fieldNames.get("ELSE") -1;
+		
+		Set<String> termFields;
+		DocumentPostingList postings;
+		int numOfTokens;
+		
+		@Override
+		public void run()
+		{
+			try{
+				PipelineItem item;
+				while((item = inputQueue.take()) != END_OF_QUEUE)
+				{
+					if (! stopPipeline)
+					{
+						try{
+							parse(item);
+						} catch (Throwable t) {
+							fail(new RuntimeException("Failed to parse document "+ item.document.getProperty("docno"), t));
+						}
+					}
+					//release the document
+					item.document = null;
+					outputQueue.put(item);
+				}
+				outputQueue.put(END_OF_QUEUE);
+			} catch (InterruptedException ie) {
+				fail(ie);
+			}
+		}
+		
+		protected void parse(PipelineItem item)
+		{
+			final Document doc = item.document;
+			postings = FieldScore.FIELDS_COUNT > 0
+				? new FieldDocumentPostingList(FieldScore.FIELDS_COUNT)
+				: new DocumentPostingList();
+			numOfTokens = 0;
+			String term;
+			while (!doc.endOfDocument()) {
+				if ((term = doc.getNextTerm())!=null && !term.equals("")) {
+					termFields = doc.getFields();
+					pipeline.processTerm(term);
+				}
+				if (MAX_TOKENS_IN_DOCUMENT > 0 &&
+						numOfTokens > MAX_TOKENS_IN_DOCUMENT)
+					break;
+			}
+			//if we didn't index all tokens from document,
+			//we need to get to the end of the document.
+			while (!doc.endOfDocument())
+				doc.getNextTerm();
+			pipeline.reset();
+			item.postings = postings;
+			item.numberOfTokens = numOfTokens;
+			item.properties = doc.getAllProperties();
+			postings = null;
+		}
+
+		/** end of the term pipeline: adds the term to the postings of the current document */
+		@Override
+		public void processTerm(String term)
+		{
+			/* null means the term has been filtered out (eg stopwords) */
+			if (term == null)
+				return;
+			if (useFieldInformation)
+			{
+				for (String fieldName: termFields)
+				{
+					int tmp = fieldNames.get(fieldName);
+					if (tmp > 0)
+					{
+						fieldIds.add(tmp -1);
+					}
+				}
+				if (ELSE_ENABLED && fieldIds.size() == 0)
+				{
+					fieldIds.add(ELSE_FIELD_ID);
+				}
+				((FieldDocumentPostingList)postings).insert(term,fieldIds.toArray());
+				fieldIds.clear();
+			}
+			else
+			{
+				postings.insert(term);
+			}
+			numOfTokens++;
+		}
+
+		@Override
+		public boolean reset() {
+			return true;
+		}
+	}
+	
+	/** number of parsing threads */
+	protected int numberOfWorkers;
+	/** capacity of the queues between the stages */
+	protected int queueSize;
+	/** documents read, to be parsed */
+	protected BlockingQueue<PipelineItem> inputQueue;
+	/** documents parsed, to be inverted */
+	protected BlockingQueue<PipelineItem> outputQueue;
+	/** permits for documents to be read, released as documents are inverted (or dropped) */
+	protected Semaphore window;
+	/** set when the reading and parsing threads should stop processing documents */
+	protected volatile boolean stopPipeline;
+	/** the first error that occurred in any of the threads */
+	protected final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	
+	/**
+	 * Constructs an instance of a PipelinedSinglePassIndexer, using the given path name
+	 * for storing the data structures.
+	 * @param pathname String the path where the datastructures will be created. This is assumed to be
+	 * absolute.
+	 * @param prefix String the prefix of the index, usually "data".
+	 */
+	public PipelinedSinglePassIndexer(String pathname, String prefix) {
+		super(pathname, prefix);
+		//delay the execution of init() if we are a parent class
+		if (this.getClass() == PipelinedSinglePassIndexer.class) 
+			init();
+	}
+	
+	@Override
+	protected void load_indexer_properties() {
+		super.load_indexer_properties();
+		numberOfWorkers = Integer.parseInt(ApplicationSetup.getProperty("indexing.singlepass.pipelined.threads", 
+				String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() - 2))));
+		queueSize = Integer.parseInt(ApplicationSetup.getProperty("indexing.singlepass.pipelined.queue.size", "256"));
+		logger.info("Pipelined indexing using " + numberOfWorkers + " parsing threads and queues of " + queueSize + " documents");
+	}
+	
+	/** records the first error, and stops the pipeline */
+	protected void fail(Throwable t)
+	{
+		failure.compareAndSet(null, t);
+		stopPipeline = true;
+	}
+	
+	/** 
+	 * Returns the current document of the specified collection, such that it can be parsed
+	 * by another thread once the collection has moved to the next document.
+	 * @param collection the collection being read
+	 * @return the current document, or null if there is none
+	 */
+	protected Document readDocument(Collection collection)
+	{
+		if (collection instanceof TRECCollection)
+			return ((TRECCollection)collection).getDetachedDocument();
+		final Document doc = collection.getDocument();
+		if (doc == null)
+			return null;
+		return new TokenisedDocument(doc);
+	}
+	
+	/** the reading stage */
+	protected void read(Collection[] collections)
+	{
+		int sequence = 0;
+		try{
+			for(int collectionNo = 0; ! stopPipeline && collectionNo < collections.length; collectionNo++)
+			{
+				final Collection collection = collections[collectionNo];
+				while(! stopPipeline && collection.nextDocument())
+				{
+					final Document doc = readDocument(collection);
+					if (doc == null)
+						continue;
+					window.acquire();
+					inputQueue.put(new PipelineItem(sequence++, doc));
+				}
+			}
+		} catch (Throwable t) {
+			fail(t);
+		} finally {
+			try{
+				for(int i=0;i<numberOfWorkers;i++)
+					inputQueue.put(END_OF_QUEUE);
+			} catch (InterruptedException ie) {
+				fail(ie);
+			}
+		}
+	}
+	
+	/**
+	 * Builds the inverted file and lexicon file for the given collections.
+	 * The documents of all collections are read, parsed and inverted by the 
+	 * different stages of the pipeline, and the runs are merged into the inverted
+	 * index once all documents have been indexed.
+	 * @param collections Collection[] the collections to be indexed.
+	 */
+	@Override
+	public void createInvertedIndex(final Collection[] collections) {
+		logger.info("Creating IF (no direct file) using a pipeline of threads..");
+		final long startCollection = System.currentTimeMillis();
+		initialiseInvertedIndexBuild();
+		final boolean boundaryDocsEnabled = BUILDER_BOUNDARY_DOCUMENTS.size() > 0;
+		
+		inputQueue = new ArrayBlockingQueue<PipelineItem>(queueSize);
+		outputQueue = new ArrayBlockingQueue<PipelineItem>(queueSize);
+		window = new Semaphore(2 * queueSize + numberOfWorkers);
+		stopPipeline = false;
+		failure.set(null);
+		
+		final List<Thread> threads = new ArrayList<Thread>(numberOfWorkers+1);
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read(collections);
+			}
+		}, "PipelinedSinglePassIndexer-reader"));
+		for(int i=0;i<numberOfWorkers;i++)
+			threads.add(new Thread(new ParsingWorker(), "PipelinedSinglePassIndexer-parser-" + i));
+		for(Thread t : threads)
+		{
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		//documents parsed out of order, keyed by their sequence number. 
+		//bounded by the window, as the reader waits for nextSequence to be inverted
+		final Map<Integer,PipelineItem> pending = new HashMap<Integer,PipelineItem>();
+		int nextSequence = 0;
+		int finishedWorkers = 0;
+		try{
+			while(finishedWorkers < numberOfWorkers)
+			{
+				PipelineItem item = outputQueue.take();
+				if (item == END_OF_QUEUE)
+				{
+					finishedWorkers++;
+					continue;
+				}
+				if (stopPipeline)
+				{
+					//drop the document, such that the reader does not wait
+					window.release();
+					continue;
+				}
+				pending.put(item.sequence, item);
+				while(! stopPipeline && (item = pending.remove(nextSequence)) != null)
+				{
+					nextSequence++;
+					invert(item);
+					window.release();
+					if (MAX_DOCS_PER_BUILDER>0 && numberOfDocuments >= MAX_DOCS_PER_BUILDER)
+						stopPipeline = true;
+					if (boundaryDocsEnabled && BUILDER_BOUNDARY_DOCUMENTS.contains(item.properties.get("docno")))
+					{
+						logger.warn("Document "+item.properties.get("docno")+" is a builder boundary document. Boundary forced.");
+						stopPipeline = true;
+					}
+				}
+				if (stopPipeline)
+				{
+					window.release(pending.size());
+					pending.clear();
+				}
+			}
+			for(Thread t : threads)
+				t.join();
+		} catch (Exception e) {
+			fail(e);
+		}
+		pending.clear();
+		if (failure.get() != null)
+		{
+			logger.error("Failed to index collection", failure.get());
+			throw new RuntimeException(failure.get());
+		}
+		
+		finishCollection(0, startCollection);
+		finishedInvertedIndexBuild();
+	}
+	
+	/** the inversion stage, for one document */
+	protected void invert(PipelineItem item)
+	{
+		try
+		{
+			if (item.postings.getDocumentLength() == 0)
+			{	/* this document is empty, add the minimum to the document index */
+				indexEmpty(item.properties);
+				if (IndexEmptyDocuments)
+				{
+					currentId++;
+					numberOfDocuments++;
+				}
+			}
+			else
+			{	/* index this document */
+				numberOfTokens += item.numberOfTokens;
+				indexDocument(item.properties, item.postings);
+			}
+		}
+		catch (Exception ioe)
+		{
+			logger.error("Failed to index "+item.properties.get("docno"),ioe);
+			fail(ioe);
+		}
+	}
+}
@@ -29,6 +29,8 @@ package org.terrier.structures.indexing.singlepass;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.terrier.compression.bit.BitOutputStream;
 import org.terrier.compression.bit.MemorySBOS;
@@ -37,15 +39,57 @@ import org.terrier.utility.Files;
  * This class writes a run to disk. The data written depends on the specific subclass.
  * This one, writes the Nt, TF and the &lt;docid, tf&gt; sequence.
  * It also writes the max frequency of a term in the run (useful for allocating memory during the merging phase).
+ * <p>
+ * Every {@link #SAMPLE_INTERVAL} terms, the term and the position of its posting list in both run files are
+ * recorded as a {@link TermSample}. The samples are appended to the terms file once the run is complete, 
+ * after the terms themselves, and allow the run to be split by term range, e.g. by {@link ParallelRunsMerger}.
  * @author Roi Blanco
  */
 public class RunWriter {
+	
+	/** The number of terms between two samples of a run */
+	public static final int SAMPLE_INTERVAL = 128;
+	
+	/** The position in both run files of the posting list of a term
+	 * @since 5.2 */
+	public static class TermSample
+	{
+		/** the term */
+		public final String term;
+		/** the byte offset of the posting list in the postings file */
+		public final long runOffset;
+		/** the byte offset of the term in the terms file */
+		public final long termsOffset;
+		/** the number of posting lists before this one in the run */
+		public final int index;
+		
+		public TermSample(String _term, long _runOffset, long _termsOffset, int _index)
+		{
+			term = _term;
+			runOffset = _runOffset;
+			termsOffset = _termsOffset;
+			index = _index;
+		}
+	}
+	
 	/** Underlying {@link org.terrier.compression.bit.BitOutputStream} to write the compressed objects */
 	protected final BitOutputStream bos;
 	/** Underlying {@link java.io.DataOutputStream} to write the term Strings */
 	protected final DataOutputStream stringDos;
 	/** Debug String representation of this RunWriter */
 	protected String info;
+	/** Samples of the terms written so far */
+	protected final List<TermSample> samples = new ArrayList<>();
+	/** Number of terms written so far */
+	protected int termsWritten = 0;
+	/** Byte offset in the postings file of the next posting list, once aligned */
+	protected long runOffset = 0;
+	/** Bits written to the postings file since it was last aligned */
+	protected long unalignedBits = 0;
+	/** Byte offset in the terms file of the next term. DataOutputStream.size() cannot be used, as it saturates at 2GB */
+	protected long termsOffset = 0;
+	/** Names of the files written by this RunWriter, if known, which are deleted by {@link #abort()} */
+	protected String[] files = new String[0];
 	
 	protected RunWriter()
 	{
@@ -72,6 +116,7 @@ public class RunWriter {
 		bos = new BitOutputStream(fileName);
 		stringDos = new DataOutputStream( Files.writeFileStream(termsFile));
 		this.info = "RunWriter("+fileName+")";
+		this.files = new String[]{fileName, termsFile};
 	}
 	
 	/** Returns true if this RunWriter needs writeTerm() to be called sorted by term */
@@ -87,8 +132,8 @@ public class RunWriter {
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void beginWrite(int maxSize, int size) throws IOException{			
-		bos.writeGamma(maxSize);
-		bos.writeGamma(size);	
+		unalignedBits += bos.writeGamma(maxSize);
+		unalignedBits += bos.writeGamma(size);
 	}
 	
 	/**
@@ -98,16 +143,24 @@ public class RunWriter {
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void writeTerm(final String term, final Posting post) throws IOException{		
+		//the first posting list follows the header, so is not aligned
+		if (termsWritten > 0 && termsWritten % SAMPLE_INTERVAL == 0)
+			samples.add(new TermSample(term, runOffset, termsOffset, termsWritten));
+		termsWritten++;
 		stringDos.writeUTF(term);
-		bos.writeGamma(post.getDocF());
-		bos.writeGamma(post.getMaxtf());
-		bos.writeGamma(post.getTF());		
+		termsOffset += utfLength(term);
+		unalignedBits += bos.writeGamma(post.getDocF());
+		unalignedBits += bos.writeGamma(post.getMaxtf());
+		unalignedBits += bos.writeGamma(post.getTF());		
 		//System.err.println("Writing "+term + " TF="+post.getTF()+ " Nt="+post.getDocF());
 		final MemorySBOS Docs = post.getDocs();
 		Docs.pad();
 		/* when reading, ie RunReader and it's children classes
 		 * an align call is required here. */
 		bos.append(Docs.getMOS().getBuffer(), Docs.getMOS().getPos());
+		//append() pads the bits written so far to a byte boundary
+		runOffset += (unalignedBits + 7) / 8 + Docs.getMOS().getPos();
+		unalignedBits = 0;
 	}
 		
 	/**
@@ -116,8 +169,63 @@ public class RunWriter {
 	 */
 	public void finishWrite() throws IOException{
 		bos.close();
+		writeSamples();
 		stringDos.close();
 	}
+	
+	/** 
+	 * Appends the samples to the terms file, followed by the offset at which they start.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	protected void writeSamples() throws IOException {
+		final long samplesOffset = termsOffset;
+		stringDos.writeInt(samples.size());
+		for(TermSample sample : samples)
+		{
+			stringDos.writeUTF(sample.term);
+			stringDos.writeLong(sample.runOffset);
+			stringDos.writeLong(sample.termsOffset);
+			stringDos.writeInt(sample.index);
+		}
+		stringDos.writeLong(samplesOffset);
+	}
+	
+	/** Returns the number of bytes written by {@link DataOutputStream#writeUTF(String)} for the specified String,
+	 * i.e. the length of its modified UTF-8 encoding, plus 2 bytes for the length itself */
+	static int utfLength(final String s)
+	{
+		int length = 2;
+		for(int i=0;i<s.length();i++)
+		{
+			final char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				length++;
+			else if (c > 0x07FF)
+				length += 3;
+			else
+				length += 2;
+		}
+		return length;
+	}
+	
+	/**
+	 * Closes the output streams and deletes the files of an incomplete run, e.g. after an exception
+	 * while writing it. Errors while closing are ignored, so that the original exception can be propagated.
+	 * @since 5.2
+	 */
+	public void abort()
+	{
+		try{
+			bos.close();
+		} catch (IOException ioe) {}
+		try{
+			stringDos.close();
+		} catch (IOException ioe) {}
+		for(String file : files)
+			if (Files.exists(file))
+				Files.delete(file);
+	}
+	
 	/** 
 	 * {@inheritDoc} 
 	 */
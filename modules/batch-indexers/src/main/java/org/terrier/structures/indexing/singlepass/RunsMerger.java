@@ -30,6 +30,7 @@ package org.terrier.structures.indexing.singlepass;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Comparator;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
 
@@ -94,6 +95,9 @@ public class RunsMerger {
 	protected int numberOfPointers = 0;
 
 	protected BitFilePosition startOffset = new FilePosition(0l,(byte)0);
+	
+	/** Term before which merging stops, or null to merge all terms of the runs */
+	protected String endTerm = null;
 
 	
 	protected RunIteratorFactory runsSource;
@@ -201,6 +205,28 @@ public class RunsMerger {
 	 */
 	public void beginMerge(int size, String fileName) throws Exception{		
 		init(size, fileName);
+		startMerge();
+	}
+	
+	/**
+	 * Begins merging a range of terms of the runs.
+	 * @param runs iterators for the runs, whose current postings are the first of the range. 
+	 * @param invertedFile where to write the merged postings. 
+	 * @param _endTerm the term (exclusive) at which the range ends, or null for the end of the runs. 
+	 * @throws Exception if an I/O error occurs.
+	 * @since 5.2
+	 */
+	public void beginMerge(List<RunIterator> runs, BitOut invertedFile, String _endTerm) throws Exception{
+		endTerm = _endTerm;
+		queue = new PriorityQueue<RunIterator>(Math.max(1, runs.size()), new PostingComparator());
+		bos = invertedFile;
+		for(RunIterator run : runs)
+			offer(run);
+		startMerge();
+	}
+	
+	/** Merges the first term */
+	protected void startMerge() throws Exception{
 		myRun = queue.poll();
 		while(myRun.current().getTerm().equals(" ")) myRun = queue.poll();		
 		lastDocument = myRun.current().append(bos,-1);
@@ -208,12 +234,25 @@ public class RunsMerger {
 		lastFreq = myRun.current().getTF();
 		lastDocFreq = myRun.current().getDf();	
 		lastTermWritten = myRun.current().getTerm();
-		if(myRun.hasNext()){
-			myRun.next();			
-			queue.add(myRun);			
+		advance(myRun);
+	}
+	
+	/** Adds the run to the queue if its current posting is before the end term, otherwise closes it */
+	protected void offer(RunIterator run) throws IOException{
+		if (endTerm == null || run.current().getTerm().compareTo(endTerm) < 0)
+			queue.add(run);
+		else
+			run.close();
+	}
+	
+	/** Moves the run to its next posting. If the run is exhausted, it is closed. */
+	protected void advance(RunIterator run) throws IOException{
+		if(run.hasNext()){
+			run.next();
+			offer(run);
 		}else{
-			myRun.close();
-		}		
+			run.close();
+		}
 	}
 	
 	/**
@@ -246,12 +285,7 @@ public class RunsMerger {
 			lastTermWritten = myRun.current().getTerm();
 			
 		}
-		if(myRun.hasNext()){
-			myRun.next();
-			queue.add(myRun);
-		}else{
-			myRun.close();
-		}
+		advance(myRun);
 	}
 	
 	/**
@@ -0,0 +1,547 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is SortingInverted2DirectIndexBuilder.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.compression.bit.BitIn;
+import org.terrier.compression.bit.BitOutputStream;
+import org.terrier.structures.DocumentIndexEntry;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.bit.BlockFieldIterablePosting;
+import org.terrier.structures.postings.bit.BlockIterablePosting;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+import org.terrier.utility.TerrierTimer;
+import org.terrier.utility.UnitUtils;
+
+import com.google.common.io.ByteStreams;
+
+/** Creates a direct index from an inverted index, using a single scan of the inverted index.
+  * Unlike {@link Inverted2DirectIndexBuilder}, which scans the entire inverted index once for 
+  * each range of documents that fits in memory, the postings are buffered while scanning, and
+  * each time the buffer is full, they are sorted by docid and written to a run on disk. 
+  * The runs are then merged by docid to write the direct index.
+  * <P><B>Algorithm:</b><br>
+  * -Split the documents into ranges with similar numbers of tokens, one per merging thread
+  * -For each term in the inverted index
+  * --Add its postings to the buffer; if full, sort the buffer by docid then termid, and write one run file per range of documents
+  * -For each range of documents (concurrently)
+  * --Merge the run files of that range by docid then termid, writing the postings of each document to a separate direct file
+  * -Concatenate the direct files, adjusting the document offsets
+  * <p>Both block and non-block inverted indices are supported, with or without fields.
+  * As for Inverted2DirectIndexBuilder, termids must be aligned with the lexicographical order of the terms.
+  * <p><b>Properties:</b> 
+  * <ul>
+  * <li><tt>inverted2direct.sort.buffer</tt> - approximate memory used to buffer postings before they are sorted and 
+  * written to a run. Defaults to 256M.</li>
+  * <li><tt>inverted2direct.sort.threads</tt> - number of ranges of documents to merge concurrently. Defaults to 1.</li>
+  * </ul>
+  * @since 5.2 */
+public class SortingInverted2DirectIndexBuilder extends Inverted2DirectIndexBuilder {
+	
+	protected static final Logger logger = LoggerFactory.getLogger(SortingInverted2DirectIndexBuilder.class);
+	
+	/** Postings buffered in memory. Each posting is a record in data, while its key
+	  * holds its docid in the upper 32 bits, and its record number in the lower 32 bits. 
+	  * As the inverted index is scanned in termid order, sorting the keys orders the 
+	  * postings by docid, then termid. The arrays grow by doubling, and are reused by the next run. */
+	static final class PostingsBuffer
+	{
+		long[] keys = new long[16];
+		int[] offsets = new int[16];
+		int[] data = new int[64];
+		int count = 0;
+		int dataLength = 0;
+		
+		/** length in data of the record of a posting */
+		static int recordLength(int[] fieldFs, int[] blockids)
+		{
+			return 2 + (fieldFs != null ? fieldFs.length : 0) + (blockids != null ? 1 + blockids.length : 0);
+		}
+		
+		/** capacity of keys and offsets once another record is added */
+		int keysCapacity()
+		{
+			return count == keys.length ? count * 2 : keys.length;
+		}
+		
+		/** capacity of data once a record of the specified length is added */
+		int dataCapacity(int length)
+		{
+			return dataLength + length > data.length ? Math.max(data.length * 2, dataLength + length) : data.length;
+		}
+		
+		void add(int docid, int termid, int tf, int[] fieldFs, int[] blockids)
+		{
+			if (count == keys.length)
+			{
+				final int capacity = keysCapacity();
+				keys = Arrays.copyOf(keys, capacity);
+				offsets = Arrays.copyOf(offsets, capacity);
+			}
+			final int length = recordLength(fieldFs, blockids);
+			if (dataLength + length > data.length)
+				data = Arrays.copyOf(data, dataCapacity(length));
+			keys[count] = ((long) docid << 32) | count;
+			offsets[count] = dataLength;
+			data[dataLength++] = termid;
+			data[dataLength++] = tf;
+			if (fieldFs != null)
+				for(int f : fieldFs)
+					data[dataLength++] = f;
+			if (blockids != null)
+			{
+				data[dataLength++] = blockids.length;
+				System.arraycopy(blockids, 0, data, dataLength, blockids.length);
+				dataLength += blockids.length;
+			}
+			count++;
+		}
+		
+		/** Returns the number of bytes allocated to the arrays of this buffer */
+		long getMemoryConsumption()
+		{
+			return keys.length * 12l + data.length * 4l;
+		}
+		
+		/** Returns the number of bytes allocated to the arrays of this buffer once a record of the specified length is added */
+		long getMemoryConsumption(int length)
+		{
+			return keysCapacity() * 12l + dataCapacity(length) * 4l;
+		}
+		
+		void clear()
+		{
+			count = 0;
+			dataLength = 0;
+		}
+	}
+	
+	/** Reads the postings of one run for one range of documents, in docid then termid order */
+	final class RunReader implements Comparable<RunReader>, Closeable
+	{
+		final DataInputStream in;
+		int docid;
+		int termid;
+		int tf;
+		final int[] fieldFs = saveTagInformation ? new int[fieldCount] : null;
+		int[] blockids = null;
+		long key;
+		
+		RunReader(String filename) throws IOException
+		{
+			in = new DataInputStream(Files.openFileStream(filename));
+		}
+		
+		boolean next() throws IOException
+		{
+			try{
+				docid = in.readInt();
+			} catch (EOFException eofe) {
+				in.close();
+				return false;
+			}
+			termid = in.readInt();
+			tf = in.readInt();
+			if (fieldFs != null)
+				for(int i=0;i<fieldCount;i++)
+					fieldFs[i] = in.readInt();
+			if (blocks)
+			{
+				blockids = new int[in.readInt()];
+				for(int i=0;i<blockids.length;i++)
+					blockids[i] = in.readInt();
+			}
+			key = ((long) docid << 32) | termid;
+			return true;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			in.close();
+		}
+
+		@Override
+		public int compareTo(RunReader o) {
+			return Long.compare(key, o.key);
+		}
+	}
+	
+	/** does the inverted index contain blocks */
+	protected final boolean blocks;
+	/** approximate memory to use for buffering postings */
+	protected long bufferSize = UnitUtils.parseLong(ApplicationSetup.getProperty("inverted2direct.sort.buffer", "256M"));
+	/** number of threads to use for merging */
+	protected int threads = Integer.parseInt(ApplicationSetup.getProperty("inverted2direct.sort.threads", "1"));
+	
+	/** first docid of each range of documents, followed by the number of documents */
+	protected int[] rangeStarts;
+	/** number of runs written */
+	protected int numberOfRuns = 0;
+	
+	/** Construct a new instance of this builder class */
+	public SortingInverted2DirectIndexBuilder(IndexOnDisk i)
+	{
+		super(i);
+		blocks = index.getIntIndexProperty("index."+sourceStructure+".blocks", 0) > 0;
+		if (blocks)
+		{
+			basicDirectIndexPostingIteratorClass = BlockIterablePosting.class.getName();
+			fieldDirectIndexPostingIteratorClass = BlockFieldIterablePosting.class.getName();
+		}
+	}
+
+	@Override
+	protected Posting[] getPostings(final int count)
+	{
+		if (! blocks)
+			return super.getPostings(count);
+		Posting[] rtr = new Posting[count];
+		for(int i=0;i<count;i++)
+			rtr[i] = saveTagInformation ? new BlockFieldPosting() : new BlockPosting();
+		return rtr;
+	}
+
+	@Override
+	protected PostingInRun getPostingReader()
+	{
+		if (! blocks)
+			return super.getPostingReader();
+		if (saveTagInformation)
+			return new BlockFieldPostingInRun(fieldCount);
+		return new BlockPostingInRun();
+	}
+	
+	protected String getRunFilename(int run, int range)
+	{
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "."+destinationStructure+".run." + run + "." + range;
+	}
+	
+	protected String getRangeFilename(int range)
+	{
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "."+destinationStructure+".range." + range;
+	}
+	
+	/** splits the documents into ranges containing approximately the same number of tokens */
+	@SuppressWarnings("unchecked")
+	protected void chooseRanges() throws IOException
+	{
+		final int numDocs = index.getCollectionStatistics().getNumberOfDocuments();
+		final long totalTokens = index.getCollectionStatistics().getNumberOfTokens();
+		final long tokensPerRange = Math.max(1, (totalTokens + threads - 1) / threads);
+		final List<Integer> starts = new ArrayList<>();
+		starts.add(0);
+		final Iterator<DocumentIndexEntry> diis = (Iterator<DocumentIndexEntry>) index.getIndexStructureInputStream("document");
+		int first = 0;
+		while(first < numDocs)
+		{
+			final int count = scanDocumentIndexForTokens(tokensPerRange, diis);
+			if (count == 0)
+				break;
+			first += count;
+			starts.add(Math.min(first, numDocs));
+		}
+		IndexUtil.close(diis);
+		if (starts.get(starts.size()-1) < numDocs || starts.size() == 1)
+			starts.add(numDocs);
+		rangeStarts = new int[starts.size()];
+		for(int i=0;i<rangeStarts.length;i++)
+			rangeStarts[i] = starts.get(i);
+	}
+	
+	/** sorts the buffered postings, and writes them as a new run, split by range of documents */
+	protected void writeRun(PostingsBuffer buffer) throws IOException
+	{
+		if (buffer.count == 0)
+			return;
+		final int run = numberOfRuns++;
+		logger.info("Writing run " + run + " of " + buffer.count + " postings, buffered in " + buffer.getMemoryConsumption() + " bytes");
+		if (threads > 1)
+			Arrays.parallelSort(buffer.keys, 0, buffer.count);
+		else
+			Arrays.sort(buffer.keys, 0, buffer.count);
+		int range = 0;
+		DataOutputStream out = new DataOutputStream(Files.writeFileStream(getRunFilename(run, range)));
+		try{
+			final int recordLength = 2 + fieldCount;
+			for(int i=0;i<buffer.count;i++)
+			{
+				final int docid = (int) (buffer.keys[i] >>> 32);
+				while(docid >= rangeStarts[range+1])
+				{
+					out.close();
+					out = new DataOutputStream(Files.writeFileStream(getRunFilename(run, ++range)));
+				}
+				out.writeInt(docid);
+				int offset = buffer.offsets[(int) buffer.keys[i]];
+				for(int j=0;j<recordLength;j++)
+					out.writeInt(buffer.data[offset++]);
+				if (blocks)
+				{
+					final int blockCount = buffer.data[offset++];
+					out.writeInt(blockCount);
+					for(int j=0;j<blockCount;j++)
+						out.writeInt(buffer.data[offset++]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		//every range has a file for each run
+		while(++range < rangeStarts.length-1)
+			new DataOutputStream(Files.writeFileStream(getRunFilename(run, range))).close();
+		buffer.clear();
+	}
+	
+	/** scans the inverted index, writing runs each time the buffer is full
+	 * @return the number of tokens found */
+	protected long scanInvertedIndex() throws IOException
+	{
+		final PostingsBuffer buffer = new PostingsBuffer();
+		final PostingIndexInputStream iiis = (PostingIndexInputStream) index.getIndexStructureInputStream(sourceStructure);
+		long tokens = 0;
+		TerrierTimer tt = new TerrierTimer("Inverted index processing", index.getCollectionStatistics().getNumberOfPointers());
+		tt.start();
+		try{
+			while(iiis.hasNext())
+			{
+				final IterablePosting ip = iiis.next();
+				final int termId = ((LexiconEntry) iiis.getCurrentPointer()).getTermId();
+				int docid;
+				while((docid = ip.next()) != IterablePosting.EOL)
+				{
+					tokens += ip.getFrequency();
+					final int[] fieldFs = saveTagInformation ? ((org.terrier.structures.postings.FieldPosting) ip).getFieldFrequencies() : null;
+					final int[] blockids = blocks ? ((org.terrier.structures.postings.BlockPosting) ip).getPositions() : null;
+					//write a run rather than grow the buffer beyond its memory budget
+					if (buffer.count > 0 && buffer.getMemoryConsumption(PostingsBuffer.recordLength(fieldFs, blockids)) > bufferSize)
+						writeRun(buffer);
+					buffer.add(docid, termId, ip.getFrequency(), fieldFs, blockids);
+				}
+				tt.increment(iiis.getNumberOfCurrentPostings());
+			}
+			writeRun(buffer);
+		} finally {
+			tt.finished();
+			iiis.close();
+		}
+		return tokens;
+	}
+	
+	/** adds the current posting of the run reader to the posting object of its document */
+	protected void addPosting(Posting p, boolean first, RunReader r) throws IOException
+	{
+		if (blocks)
+		{
+			if (saveTagInformation)
+			{
+				if (first)
+					((BlockFieldPosting)p).writeFirstDoc(r.termid, r.tf, r.fieldFs, r.blockids);
+				else
+					((BlockFieldPosting)p).insert(r.termid, r.tf, r.fieldFs, r.blockids);
+			}
+			else
+			{
+				if (first)
+					((BlockPosting)p).writeFirstDoc(r.termid, r.tf, r.blockids);
+				else
+					((BlockPosting)p).insert(r.termid, r.tf, r.blockids);
+			}
+		}
+		else if (saveTagInformation)
+		{
+			if (first)
+				((FieldPosting)p).writeFirstDoc(r.termid, r.tf, r.fieldFs);
+			else
+				((FieldPosting)p).insert(r.termid, r.tf, r.fieldFs);
+		}
+		else
+		{
+			if (first)
+				p.writeFirstDoc(r.termid, r.tf);
+			else
+				p.insert(r.termid, r.tf);
+		}
+	}
+	
+	/** merges the runs of a range of documents, writing its direct file and offsets file.
+	 * @return the number of tokens found */
+	protected long mergeRange(int range) throws IOException
+	{
+		final PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, numberOfRuns));
+		final List<RunReader> readers = new ArrayList<>(numberOfRuns);
+		final String rangeFilename = getRangeFilename(range);
+		BitOutputStream bos = null;
+		DataOutputStream offsets = null;
+		long tokens = 0;
+		try{
+			for(int run=0;run<numberOfRuns;run++)
+			{
+				final RunReader r = new RunReader(getRunFilename(run, range));
+				readers.add(r);
+				if (r.next())
+					queue.add(r);
+			}
+			bos = new BitOutputStream(rangeFilename);
+			offsets = new DataOutputStream(Files.writeFileStream(rangeFilename + ".offsets"));
+			int docid = rangeStarts[range];
+			Posting posting = null;
+			while(! queue.isEmpty())
+			{
+				final RunReader r = queue.poll();
+				tokens += r.tf;
+				if (posting == null || r.docid != docid)
+				{
+					if (posting != null)
+					{
+						writeDocumentPostings(posting, bos, offsets);
+						docid++;
+					}
+					//documents without postings
+					for(;docid < r.docid;docid++)
+						writeDocumentPostings(null, bos, offsets);
+					posting = getPostings(1)[0];
+					addPosting(posting, true, r);
+				}
+				else
+				{
+					addPosting(posting, false, r);
+				}
+				if (r.next())
+					queue.add(r);
+			}
+			if (posting != null)
+			{
+				writeDocumentPostings(posting, bos, offsets);
+				docid++;
+			}
+			for(;docid < rangeStarts[range+1];docid++)
+				writeDocumentPostings(null, bos, offsets);
+		} finally {
+			//readers are closed when exhausted, but not if an exception occurred
+			for(RunReader r : readers)
+				r.close();
+			if (bos != null)
+				bos.close();
+			if (offsets != null)
+				offsets.close();
+		}
+		for(int run=0;run<numberOfRuns;run++)
+			Files.delete(getRunFilename(run, range));
+		return tokens;
+	}
+	
+	/** create the direct index when the collection contains an existing inverted index */
+	@Override
+	public void createDirectIndex()
+	{
+		final long startTime = System.currentTimeMillis();
+		if (! canCreateDirectIndex())
+			return;
+		logger.info("Generating a "+destinationStructure+" structure from the "+sourceStructure+" structure, using a single scan");
+		try{
+			chooseRanges();
+			final int ranges = rangeStarts.length -1;
+			long numberOfTokensFound = scanInvertedIndex();
+			logger.info("Merging " + numberOfRuns + " runs in " + ranges + " ranges of documents");
+			
+			final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, ranges));
+			final List<Future<Long>> rangeTokens = new ArrayList<>(ranges);
+			try{
+				for(int r=0;r<ranges;r++)
+				{
+					final int range = r;
+					rangeTokens.add(pool.submit(() -> mergeRange(range)));
+				}
+				numberOfTokensFound = 0;
+				for(Future<Long> f : rangeTokens)
+					numberOfTokensFound += f.get();
+			} finally {
+				pool.shutdown();
+			}
+			
+			//concatenate the ranges, in docid order
+			final String offsetsFilename = index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "."+destinationStructure+".offsets";
+			long rangeOffset = 0;
+			try(DataOutputStream offsetsTmpFile = new DataOutputStream(Files.writeFileStream(offsetsFilename));
+				OutputStream directFile = Files.writeFileStream(index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "."+destinationStructure+ BitIn.USUAL_EXTENSION))
+			{
+				for(int r=0;r<ranges;r++)
+				{
+					final String rangeFilename = getRangeFilename(r);
+					try(DataInputStream offsets = new DataInputStream(Files.openFileStream(rangeFilename + ".offsets")))
+					{
+						for(int docid=rangeStarts[r];docid<rangeStarts[r+1];docid++)
+						{
+							offsetsTmpFile.writeLong(rangeOffset + offsets.readLong());
+							offsetsTmpFile.writeByte(offsets.readByte());
+							offsetsTmpFile.writeInt(offsets.readInt());
+						}
+					}
+					try(InputStream range = Files.openFileStream(rangeFilename))
+					{
+						rangeOffset += ByteStreams.copy(range, directFile);
+					}
+					Files.delete(rangeFilename);
+					Files.delete(rangeFilename + ".offsets");
+				}
+			}
+			
+			final long totalTokens = index.getCollectionStatistics().getNumberOfTokens();
+			if (numberOfTokensFound != totalTokens)
+			{
+				logger.warn("Number of tokens found while scanning "+sourceStructure+" structure does not match expected. Expected "
+					+totalTokens+ ", found " + numberOfTokensFound);
+			}
+			finishDirectIndex(offsetsFilename);
+			logger.info("Finished generating a "+destinationStructure+" structure from the "+sourceStructure+" structure. Time elapsed: "+((System.currentTimeMillis() - startTime)/1000) + " seconds");
+		} catch (Exception e) {
+			logger.error("Couldnt create a "+destinationStructure+" structure from the "+sourceStructure+" structure", e);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BlockMultiStructureMerger.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.merging;
+
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.indexing.CompressionFactory;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.ArrayUtils;
+
+/**
+ * Merges any number of indices created by Terrier with position information (blocks),
+ * and possibly field information, into one.
+ * @see MultiStructureMerger
+ * @see BlockStructureMerger
+ * @since 5.2
+ */
+public class BlockMultiStructureMerger extends MultiStructureMerger {
+
+	/**
+	 * constructor
+	 * @param _srcIndices the indices to merge, in the order of their docids
+	 * @param _destIndex the new index to merge into
+	 */
+	public BlockMultiStructureMerger(IndexOnDisk[] _srcIndices, IndexOnDisk _destIndex)
+	{
+		super(_srcIndices, _destIndex);
+		String[] fieldNames = ArrayUtils.parseCommaDelimitedString(srcIndices[0].getIndexProperty("index.inverted.fields.names", ""));
+		int blocks = srcIndices[0].getIntIndexProperty("index.inverted.blocks", 1);
+		int maxblocks = srcIndices[0].getIntIndexProperty("index.inverted.blocks.max", ApplicationSetup.MAX_BLOCKS);
+		compressionDirectConfig = CompressionFactory.getCompressionConfiguration("direct", fieldNames, blocks, maxblocks);
+		compressionInvertedConfig = CompressionFactory.getCompressionConfiguration("inverted", fieldNames, blocks, maxblocks);
+	}
+}
@@ -94,7 +94,10 @@ public class LexiconMerger {
 			}
 			for(String property : new String[] {"max.term.length", "index.inverted.fields.count"} )
 			{
-				destIndex.setIndexProperty(property, srcIndex1.getIndexProperty(property, null));
+				//indices written by other means may lack some properties
+				final String value = srcIndex1.getIndexProperty(property, null);
+				if (value != null)
+					destIndex.setIndexProperty(property, value);
 			}
 			
 			//setting the output stream
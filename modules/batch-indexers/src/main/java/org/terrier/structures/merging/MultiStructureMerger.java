@@ -0,0 +1,501 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is MultiStructureMerger.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.merging;
+
+import gnu.trove.TIntIntHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.AbstractPostingOutputStream;
+import org.terrier.structures.BasicDocumentIndexEntry;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.DocumentIndexEntry;
+import org.terrier.structures.FSOMapFileLexiconOutputStream;
+import org.terrier.structures.FieldDocumentIndexEntry;
+import org.terrier.structures.FieldLexiconEntry;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.structures.Pointer;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.SimpleBitIndexPointer;
+import org.terrier.structures.SimpleDocumentIndexEntry;
+import org.terrier.structures.indexing.CompressingMetaIndexBuilder;
+import org.terrier.structures.indexing.CompressionFactory;
+import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.structures.indexing.DocumentIndexBuilder;
+import org.terrier.structures.indexing.LexiconBuilder;
+import org.terrier.structures.indexing.MetaIndexBuilder;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.structures.postings.PostingIdComparator;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.ArrayUtils;
+
+/**
+ * Merges any number of indices into one, in a single pass over each of their structures. 
+ * Unlike {@link StructureMerger}, which merges two indices, and hence needs to be applied 
+ * log2(N) times to merge N indices, each posting is only written once. The lexicons of 
+ * the source indices are traversed concurrently, using a priority queue to identify the
+ * next term, and its postings from all source indices are then written in the order of the 
+ * source indices. The docids of the documents of each source index are offset by the number
+ * of documents in the preceding source indices. Termids are assigned in lexicographical order.
+ * <p>
+ * <b>Properties:</b>
+ * <ul>
+ * <li><tt>merge.direct</tt> - merge the direct indices if all indices have them. Set to <tt>true</tt> by default.</li>
+ * <li><tt>merger.meta.reverse</tt> - build the reverse meta index lookups. Set to <tt>true</tt> by default.</li>
+ * </ul>
+ * @see StructureMerger
+ * @since 5.2
+ */
+public class MultiStructureMerger {
+
+	/** the logger used */
+	protected static final Logger logger = LoggerFactory.getLogger(MultiStructureMerger.class);
+	
+	/** The current term of the lexicon of one source index */
+	static class LexiconCursor implements Comparable<LexiconCursor>
+	{
+		final int source;
+		final Iterator<Map.Entry<String,LexiconEntry>> input;
+		Map.Entry<String,LexiconEntry> current;
+		
+		LexiconCursor(int source, Iterator<Map.Entry<String,LexiconEntry>> input)
+		{
+			this.source = source;
+			this.input = input;
+		}
+		
+		boolean next()
+		{
+			if (! input.hasNext())
+			{
+				current = null;
+				return false;
+			}
+			current = input.next();
+			return true;
+		}
+
+		@Override
+		public int compareTo(LexiconCursor o) {
+			final int rtr = current.getKey().compareTo(o.current.getKey());
+			if (rtr != 0)
+				return rtr;
+			return Integer.compare(source, o.source);
+		}
+	}
+	
+	/** the source indices, in the order of their docids */
+	protected final IndexOnDisk[] srcIndices;
+	/** destination index */
+	protected IndexOnDisk destIndex;
+	/** the docid of the first document of each source index in the merged index */
+	protected final int[] docidOffsets;
+	/** for each source index, the mapping from its termids to those of the merged index */
+	protected TIntIntHashMap[] termcodeHashmaps = null;
+	protected boolean keepTermCodeMap = false;
+	
+	/** The number of documents in the merged structures. */
+	protected int numberOfDocuments;
+	/** The number of pointers in the merged structures. */
+	protected long numberOfPointers;
+	/** The number of terms in the merged structures. */
+	protected int numberOfTerms;
+	
+	protected CompressionConfiguration compressionDirectConfig;
+	protected CompressionConfiguration compressionInvertedConfig;
+	
+	protected boolean MetaReverse = Boolean.parseBoolean(ApplicationSetup.getProperty("merger.meta.reverse", "true"));
+	
+	protected final int fieldCount;
+	
+	/**
+	 * constructor
+	 * @param _srcIndices the indices to merge, in the order of their docids
+	 * @param _destIndex the new index to merge into
+	 */
+	public MultiStructureMerger(IndexOnDisk[] _srcIndices, IndexOnDisk _destIndex)
+	{
+		if (_srcIndices.length == 0)
+			throw new IllegalArgumentException("No source indices to merge");
+		this.srcIndices = _srcIndices;
+		this.destIndex = _destIndex;
+		
+		fieldCount = srcIndices[0].getIntIndexProperty("index.inverted.fields.count", 0);
+		for(IndexOnDisk src : srcIndices)
+		{
+			if (src.getIntIndexProperty("index.inverted.fields.count", 0) != fieldCount)
+				throw new Error("FieldCounts in source indices must match");
+			if (! src.getIndexProperty("index.meta.key-names", "docno").equals(srcIndices[0].getIndexProperty("index.meta.key-names", "docno")))
+				throw new Error("Meta fields in source indices must match");
+		}
+		
+		docidOffsets = new int[srcIndices.length];
+		numberOfDocuments = 0;
+		for(int i=0;i<srcIndices.length;i++)
+		{
+			docidOffsets[i] = numberOfDocuments;
+			numberOfDocuments += srcIndices[i].getCollectionStatistics().getNumberOfDocuments();
+		}
+		numberOfPointers = 0;
+		numberOfTerms = 0;
+		
+		String[] fieldNames = ArrayUtils.parseCommaDelimitedString(srcIndices[0].getIndexProperty("index.inverted.fields.names", ""));
+		compressionDirectConfig = CompressionFactory.getCompressionConfiguration("direct", fieldNames, 0,0);
+		compressionInvertedConfig = CompressionFactory.getCompressionConfiguration("inverted", fieldNames, 0,0);
+	}
+	
+	/**
+	 * Merges the lexicons and the inverted files of all source indices. 
+	 */
+	@SuppressWarnings("unchecked")
+	protected void mergeInvertedFiles() {
+		final int n = srcIndices.length;
+		try {
+			if (keepTermCodeMap)
+			{
+				termcodeHashmaps = new TIntIntHashMap[n];
+				for(int i=0;i<n;i++)
+					termcodeHashmaps[i] = new TIntIntHashMap();
+			}
+			
+			for(String property : new String[] {"index.inverted.fields.names", "max.term.length", "index.lexicon-keyfactory.class", "index.lexicon-keyfactory.parameter_values",
+					"index.lexicon-keyfactory.parameter_types", "index.lexicon-valuefactory.class", "index.lexicon-valuefactory.parameter_values",
+					"index.lexicon-valuefactory.parameter_types", "termpipelines"} )
+			{
+				destIndex.setIndexProperty(property, srcIndices[0].getIndexProperty(property, null));
+			}
+			
+			FixedSizeWriteableFactory<LexiconEntry> lvf = 
+				(FixedSizeWriteableFactory<LexiconEntry>)srcIndices[0].getIndexStructure("lexicon-valuefactory");
+			LexiconOutputStream<String> lexOutStream = 
+				new FSOMapFileLexiconOutputStream(destIndex, "lexicon", (Class <FixedSizeWriteableFactory<LexiconEntry>>) lvf.getClass());
+			
+			AbstractPostingOutputStream invOS = null;
+			try{
+				invOS = compressionInvertedConfig.getPostingOutputStream(destIndex.getPath() + ApplicationSetup.FILE_SEPARATOR +  
+						destIndex.getPrefix() + ".inverted"+ compressionInvertedConfig.getStructureFileExtension());
+			} catch (Exception e) {
+				logger.error("Couldn't create specified DirectInvertedOutputStream", e);
+				lexOutStream.close();
+				return;
+			}
+			
+			final PostingIndex<Pointer>[] inverted = new PostingIndex[n];
+			final PriorityQueue<LexiconCursor> queue = new PriorityQueue<LexiconCursor>(n);
+			final List<LexiconCursor> cursors = new ArrayList<LexiconCursor>(n);
+			for(int i=0;i<n;i++)
+			{
+				inverted[i] = (PostingIndex<Pointer>) srcIndices[i].getInvertedIndex();
+				LexiconCursor cursor = new LexiconCursor(i, 
+						(Iterator<Map.Entry<String,LexiconEntry>>)srcIndices[i].getIndexStructureInputStream("lexicon"));
+				cursors.add(cursor);
+				if (cursor.next())
+					queue.add(cursor);
+			}
+			
+			final List<LexiconCursor> sameTerm = new ArrayList<LexiconCursor>(n);
+			int newCodes = 0;
+			while(! queue.isEmpty())
+			{
+				//cursors with equal terms are polled in the order of the source indices
+				final String term = queue.peek().current.getKey();
+				while(! queue.isEmpty() && queue.peek().current.getKey().equals(term))
+					sameTerm.add(queue.poll());
+				
+				final int newCode = newCodes++;
+				LexiconEntry newEntry = null;
+				int lastSource = -1;
+				for(LexiconCursor cursor : sameTerm)
+				{
+					final LexiconEntry le = cursor.current.getValue();
+					//the first docid is written as a delta from the previous posting, in the docid space of this source index
+					final int previousId = lastSource == -1
+						? -(docidOffsets[cursor.source]+1)
+						: invOS.getLastDocidWritten() + docidOffsets[lastSource] - docidOffsets[cursor.source];
+					final BitIndexPointer newPointer = invOS.writePostings(inverted[cursor.source].getPostings(le), previousId);
+					numberOfPointers += newPointer.getNumberOfEntries();
+					if (keepTermCodeMap)
+						termcodeHashmaps[cursor.source].put(le.getTermId(), newCode);
+					if (newEntry == null)
+					{
+						newEntry = le;
+						newEntry.setPointer(newPointer);
+					}
+					else
+					{
+						//don't set numberOfEntries, as LexiconEntry.add() will take care of this.
+						newEntry.add(le);
+					}
+					lastSource = cursor.source;
+				}
+				newEntry.setTermId(newCode);
+				lexOutStream.writeNextEntry(term, newEntry);
+				
+				for(LexiconCursor cursor : sameTerm)
+					if (cursor.next())
+						queue.add(cursor);
+				sameTerm.clear();
+			}
+			numberOfTerms = newCodes;
+			
+			for(int i=0;i<n;i++)
+			{
+				IndexUtil.close(cursors.get(i).input);
+				inverted[i].close();
+			}
+			invOS.close();
+			
+			destIndex.setIndexProperty("num.Documents", ""+numberOfDocuments);
+			destIndex.addIndexStructure(
+						"inverted",
+						compressionInvertedConfig.getStructureClass().getName(),
+						"org.terrier.structures.IndexOnDisk,java.lang.String,org.terrier.structures.DocumentIndex,java.lang.Class", 
+						"index,structureName,document,"+ 
+						compressionInvertedConfig.getPostingIteratorClass().getName() );
+			destIndex.addIndexStructureInputStream(
+						"inverted",
+						compressionInvertedConfig.getStructureInputStreamClass().getName(),
+						"org.terrier.structures.IndexOnDisk,java.lang.String,java.util.Iterator,java.lang.Class",
+						"index,structureName,lexicon-entry-inputstream,"+
+						compressionInvertedConfig.getPostingIteratorClass().getName());
+			destIndex.setIndexProperty("index.inverted.fields.count", ""+fieldCount);
+			lexOutStream.close();
+			if (fieldCount > 0)
+			{
+				destIndex.addIndexStructure("lexicon-valuefactory", FieldLexiconEntry.Factory.class.getName(), "java.lang.String", "${index.inverted.fields.count}");
+			}
+			destIndex.flush();
+		} catch(IOException ioe) {
+			logger.error("IOException while merging lexicons and inverted files.", ioe);
+		}
+	}
+	
+	protected MetaIndexBuilder createMetaIndexBuilder()
+	{
+		final String[] metaTags = ArrayUtils.parseCommaDelimitedString(srcIndices[0].getIndexProperty("index.meta.key-names", "docno"));
+		final int[] metaTagLengths = ArrayUtils.parseCommaDelimitedInts(srcIndices[0].getIndexProperty("index.meta.value-lengths", "20"));
+		final String[] metaReverseTags = MetaReverse
+			? ArrayUtils.parseCommaDelimitedString(srcIndices[0].getIndexProperty("index.meta.reverse-key-names", ""))
+			: new String[0];
+		return new CompressingMetaIndexBuilder(destIndex, metaTags, metaTagLengths, metaReverseTags);
+	}
+	
+	/**
+	 * Merges the direct files, the document index files and the meta files of all source indices.
+	 * The termids of the direct postings are mapped to those of the merged lexicon.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void mergeDirectFiles() {
+		try {
+			final DocumentIndexBuilder docidOutput = new DocumentIndexBuilder(destIndex, "document");
+			final MetaIndexBuilder metaBuilder = createMetaIndexBuilder();
+			final BitIndexPointer emptyPointer = new SimpleBitIndexPointer();
+			final int directFieldCount = srcIndices[0].getIntIndexProperty("index.direct.fields.count", 0);
+			for(String property : new String[] {"index.direct.fields.names","index.direct.fields.count" } )
+			{
+				destIndex.setIndexProperty(property, srcIndices[0].getIndexProperty(property, null));
+			}
+			
+			AbstractPostingOutputStream dfOutput = null;
+			try{
+				dfOutput = compressionDirectConfig.getPostingOutputStream(destIndex.getPath() + ApplicationSetup.FILE_SEPARATOR +  
+					destIndex.getPrefix() + ".direct" + compressionDirectConfig.getStructureFileExtension());
+			} catch (Exception e) {
+				metaBuilder.close();
+				throw new Error("Couldn't create specified DirectInvertedOutputStream", e);
+			}
+			
+			final List<Posting> postingList = new ArrayList<Posting>();
+			final PostingIdComparator comparator = new PostingIdComparator();
+			for(int i=0;i<srcIndices.length;i++)
+			{
+				final TIntIntHashMap termcodeHashmap = termcodeHashmaps[i];
+				final Iterator<DocumentIndexEntry> docidInput = (Iterator<DocumentIndexEntry>)srcIndices[i].getIndexStructureInputStream("document");
+				final PostingIndexInputStream dfInput = (PostingIndexInputStream)srcIndices[i].getIndexStructureInputStream("direct");
+				final Iterator<String[]> metaInput = (Iterator<String[]>)srcIndices[i].getIndexStructureInputStream("meta");
+				while (docidInput.hasNext())
+				{
+					DocumentIndexEntry die = docidInput.next();
+					BitIndexPointer pointerDF = emptyPointer;
+					if (die.getDocumentLength() > 0)
+					{
+						final IterablePosting postings = dfInput.next();
+						while(postings.next() != IterablePosting.EOL)
+						{
+							final Posting p = postings.asWritablePosting();
+							p.setId(termcodeHashmap.get(postings.getId()));
+							postingList.add(p);
+						}
+						Collections.sort(postingList, comparator);
+						pointerDF = dfOutput.writePostings(postingList.iterator());
+						postingList.clear();
+					}
+					die.setBitIndexPointer(pointerDF);
+					docidOutput.addEntryToBuffer(die);
+					metaInput.hasNext();
+					metaBuilder.writeDocumentEntry(metaInput.next());
+				}
+				dfInput.close();
+				IndexUtil.close(docidInput);
+				IndexUtil.close(metaInput);
+			}
+			
+			metaBuilder.close();
+			dfOutput.close();
+			docidOutput.finishedCollections();
+			docidOutput.close();
+			
+			compressionDirectConfig.writeIndexProperties(destIndex, "document-inputstream");
+			if (directFieldCount > 0)
+			{
+				destIndex.addIndexStructure("document-factory", FieldDocumentIndexEntry.Factory.class.getName(), "java.lang.String", "${index.direct.fields.count}");
+			}
+			else
+			{
+				destIndex.addIndexStructure("document-factory", BasicDocumentIndexEntry.Factory.class.getName(), "", "");
+			}
+			destIndex.flush();
+		} catch(IOException ioe) {
+			logger.error("IOException while merging df and docid files.", ioe);
+		}
+	}
+	
+	/**
+	 * Merges the document index files and the meta files of all source indices.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void mergeDocumentIndexFiles() {
+		try {
+			final DocumentIndexBuilder docidOutput = new DocumentIndexBuilder(destIndex, "document");
+			final MetaIndexBuilder metaBuilder = createMetaIndexBuilder();
+			
+			int docFieldCount = fieldCount;
+			if (srcIndices[0].getIndexProperty("index.document-factory.class", "").equals("org.terrier.structures.SimpleDocumentIndexEntry$Factory")
+				|| srcIndices[0].getIndexProperty("index.document-factory.class", "").equals("org.terrier.structures.BasicDocumentIndexEntry$Factory"))
+			{
+				//for some reason, the source document index has not fields. so we shouldn't assume that fields are being used.
+				docFieldCount = 0;
+			}
+			
+			for(IndexOnDisk src : srcIndices)
+			{
+				final Iterator<DocumentIndexEntry> docidInput = (Iterator<DocumentIndexEntry>)src.getIndexStructureInputStream("document");
+				final Iterator<String[]> metaInput = (Iterator<String[]>)src.getIndexStructureInputStream("meta");
+				while(docidInput.hasNext())
+				{
+					metaInput.hasNext();
+					DocumentIndexEntry die = docidInput.next();
+					DocumentIndexEntry dieNew = (docFieldCount > 0) ? die : new SimpleDocumentIndexEntry(die);
+					docidOutput.addEntryToBuffer(dieNew);
+					metaBuilder.writeDocumentEntry(metaInput.next());
+				}
+				IndexUtil.close(docidInput);
+				IndexUtil.close(metaInput);
+			}
+			
+			docidOutput.finishedCollections();
+			docidOutput.close();
+			metaBuilder.close();
+			if (docFieldCount > 0)
+			{
+				destIndex.addIndexStructure("document-factory", FieldDocumentIndexEntry.Factory.class.getName(), "java.lang.String", "${index.inverted.fields.count}");
+			}
+			else
+			{
+				destIndex.addIndexStructure("document-factory", SimpleDocumentIndexEntry.Factory.class.getName(), "", "");
+			}
+			destIndex.flush();
+		} catch(IOException ioe) {
+			logger.error("IOException while merging docid files.", ioe);
+		}
+	}
+	
+	/** 
+	 * creates the final term code to offset file, and the lexicon hash if enabled.
+	 */
+	protected void createLexidFile() {
+		LexiconBuilder.optimise(destIndex, "lexicon");
+	}
+	
+	/**
+	 * Merges the structures of all source indices.
+	 */
+	public void mergeStructures() {
+		boolean allInverted = true;
+		boolean allDirect = true;
+		for(IndexOnDisk src : srcIndices)
+		{
+			allInverted = allInverted && src.hasIndexStructure("inverted");
+			allDirect = allDirect && src.hasIndexStructure("direct");
+		}
+		final long t1 = System.currentTimeMillis();
+		keepTermCodeMap = allDirect && ApplicationSetup.getProperty("merge.direct","true").equals("true");
+		long t2 = 0;
+		long t3 = 0;
+		if (allInverted)
+		{
+			mergeInvertedFiles();
+			createLexidFile();
+			t2 = System.currentTimeMillis();
+			logger.info("merged inverted files of " + srcIndices.length + " indices in " + ((t2-t1)/1000.0d));
+		}
+		else
+		{
+			logger.warn("Not all indices have an inverted index - no merging of lexicons took place");
+			keepTermCodeMap = false;
+			t2 = System.currentTimeMillis();
+		}
+		
+		if (! keepTermCodeMap)
+		{	
+			mergeDocumentIndexFiles();
+			t3 = System.currentTimeMillis();
+			logger.info("merged documentindex files in " + ((t3-t2)/1000.0d));
+		} 
+		else 
+		{
+			mergeDirectFiles();	
+			t3 = System.currentTimeMillis();
+			logger.info("merged direct files in " + ((t3-t2)/1000.0d));
+			//save up some memory
+			termcodeHashmaps = null;
+		}
+	}
+}
@@ -29,12 +29,14 @@ package org.terrier.structures.merging;
 import gnu.trove.TIntIntHashMap;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +44,7 @@ import org.terrier.applications.CLITool;
 import org.terrier.structures.AbstractPostingOutputStream;
 import org.terrier.structures.BasicDocumentIndexEntry;
 import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.DocumentIndexEntry;
 import org.terrier.structures.FSOMapFileLexiconOutputStream;
 import org.terrier.structures.FieldDocumentIndexEntry;
@@ -65,9 +68,11 @@ import org.terrier.structures.indexing.DocumentIndexBuilder;
 import org.terrier.structures.indexing.LexiconBuilder;
 import org.terrier.structures.indexing.MetaIndexBuilder;
 import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.structures.postings.FieldPosting;
 import org.terrier.structures.postings.IterablePosting;
 import org.terrier.structures.postings.Posting;
 import org.terrier.structures.postings.PostingIdComparator;
+import org.terrier.structures.postings.WritablePosting;
 import org.terrier.structures.postings.bit.BasicIterablePosting;
 import org.terrier.structures.postings.bit.FieldIterablePosting;
 import org.terrier.structures.seralization.FixedSizeWriteableFactory;
@@ -76,7 +81,14 @@ import org.terrier.utility.ArrayUtils;
 
 /**
  * This class merges the structures created by Terrier, so that
- * we use fewer and larger inverted and direct files.
+ * we use fewer and larger inverted and direct files. The postings of the documents 
+ * marked in the {@link DeletedDocuments} of the source indices are not merged, such 
+ * that the statistics of the terms exclude the deleted documents. However, the deleted 
+ * documents remain in the document and meta indices of the merged index as placeholders 
+ * of length zero, which are marked in its <tt>deleted</tt> structure, such that documents 
+ * keep the same docids in the merged index as in the source indices (offset by the number 
+ * of documents of the first index). The number of placeholders is recorded in the 
+ * <tt>index.deleted.reclaimed</tt> property of the merged index.
  * <p>
  * <b>Properties:</b>
  * <ul><li><tt>lexicon.use.hash</tt> - build a lexicon hash file for new index. Set to <tt>true</tt> by default.</li>
@@ -128,6 +140,11 @@ public class StructureMerger {
 	protected String fieldInvertedIndexPostingIteratorClass = FieldIterablePosting.class.getName();
 	protected String basicDirectIndexPostingIteratorClass = BasicIterablePosting.class.getName();
 	protected String fieldDirectIndexPostingIteratorClass = FieldIterablePosting.class.getName();
+
+	/** documents deleted from the source indices, whose postings are not merged */
+	protected DeletedDocuments deleted1;
+	protected DeletedDocuments deleted2;
+
 	/**
 	 * constructor
 	 * @param _srcIndex1
@@ -155,6 +172,130 @@ public class StructureMerger {
 		fieldCount = srcFieldCount1;
 		compressionDirectConfig = CompressionFactory.getCompressionConfiguration("direct", fieldNames, 0,0);
 		compressionInvertedConfig = CompressionFactory.getCompressionConfiguration("inverted", fieldNames, 0,0);
+		deleted1 = DeletedDocuments.of(srcIndex1);
+		deleted2 = DeletedDocuments.of(srcIndex2);
+	}
+	
+	/**
+	 * Sets the documents deleted from the source indices, which are not merged. By default,
+	 * these are obtained from the <tt>deleted</tt> structure of each source index.
+	 * @param _deleted1 documents deleted from the first index, or null
+	 * @param _deleted2 documents deleted from the second index, or null
+	 */
+	public void setDeletedDocuments(DeletedDocuments _deleted1, DeletedDocuments _deleted2) {
+		this.deleted1 = _deleted1;
+		this.deleted2 = _deleted2;
+	}
+	
+	/** Returns true if the specified document is deleted */
+	protected static boolean isDeleted(DeletedDocuments deleted, int docid) {
+		return deleted != null && deleted.isDeleted(docid);
+	}
+	
+	/** Makes the specified entry of a deleted document into a placeholder, without length or postings */
+	protected static void makePlaceholder(DocumentIndexEntry die) {
+		die.setDocumentLength(0);
+		die.setNumberOfEntries(0);
+		if (die instanceof FieldDocumentIndexEntry)
+			((FieldDocumentIndexEntry) die).setFieldLengths(new int[((FieldDocumentIndexEntry) die).getFieldLengths().length]);
+	}
+	
+	/** Iterates over the postings of the documents that are not deleted, with their new docids, 
+	 * counting the statistics of the postings. */
+	protected static class MergedPostingIterator implements Iterator<Posting>
+	{
+		final IterablePosting[] postings;
+		final DeletedDocuments[] deleted;
+		final int[] offsets;
+		int current = 0;
+		WritablePosting next = null;
+		int documentFrequency = 0;
+		int frequency = 0;
+		int maxFrequency = 0;
+		final int[] fieldFrequencies;
+		
+		MergedPostingIterator(IterablePosting[] _postings, DeletedDocuments[] _deleted, int[] _offsets, int fieldCount)
+		{
+			postings = _postings;
+			deleted = _deleted;
+			offsets = _offsets;
+			fieldFrequencies = new int[fieldCount];
+		}
+		
+		@Override
+		public boolean hasNext() {
+			// postings are only read once the previous posting has been written
+			if (next != null)
+				return true;
+			try{
+				while(current < postings.length)
+				{
+					final IterablePosting ip = postings[current];
+					if (ip != null && ip.next() != IterablePosting.EOL)
+					{
+						if (isDeleted(deleted[current], ip.getId()))
+							continue;
+						next = ip.asWritablePosting();
+						next.setId(ip.getId() + offsets[current]);
+						documentFrequency++;
+						frequency += ip.getFrequency();
+						maxFrequency = Math.max(maxFrequency, ip.getFrequency());
+						if (fieldFrequencies.length > 0)
+						{
+							final int[] tff = ((FieldPosting) ip).getFieldFrequencies();
+							for(int fi = 0; fi < fieldFrequencies.length; fi++)
+								fieldFrequencies[fi] += tff[fi];
+						}
+						return true;
+					}
+					current++;
+				}
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+			return false;
+		}
+		
+		@Override
+		public Posting next() {
+			if (! hasNext())
+				throw new NoSuchElementException();
+			final Posting rtr = next;
+			next = null;
+			return rtr;
+		}
+	}
+	
+	/**
+	 * Writes the postings of the documents that are not deleted from the specified posting lists of
+	 * the source indices, and updates the pointer and the statistics of the lexicon entry.
+	 * Returns null if no postings remain, unless the term must be kept for the direct index.
+	 * @param invOS the inverted index being written
+	 * @param ip1 postings of the term in the first index, or null
+	 * @param ip2 postings of the term in the second index, or null
+	 * @param le lexicon entry of the term in the merged index
+	 * @param numberOfDocs1 number of documents of the first index
+	 */
+	protected BitIndexPointer writeMergedPostings(AbstractPostingOutputStream invOS, 
+			IterablePosting ip1, IterablePosting ip2, LexiconEntry le, int numberOfDocs1) throws IOException
+	{
+		final MergedPostingIterator postings = new MergedPostingIterator(
+				new IterablePosting[]{ip1, ip2}, new DeletedDocuments[]{deleted1, deleted2}, new int[]{0, numberOfDocs1}, 
+				le instanceof FieldLexiconEntry ? fieldCount : 0);
+		if (! postings.hasNext() && ! keepTermCodeMap)
+			return null;
+		final BitIndexPointer pointer;
+		try{
+			pointer = invOS.writePostings(postings);
+		} catch (UncheckedIOException uioe) {
+			throw uioe.getCause();
+		}
+		le.setPointer(pointer);
+		le.setStatistics(postings.documentFrequency, postings.frequency);
+		le.setMaxFrequencyInDocuments(postings.maxFrequency);
+		if (le instanceof FieldLexiconEntry)
+			((FieldLexiconEntry) le).setFieldFrequencies(postings.fieldFrequencies);
+		return pointer;
 	}
 	
 
@@ -186,6 +327,8 @@ public class StructureMerger {
 			int numberOfDocs2 = srcIndex2.getCollectionStatistics().getNumberOfDocuments();
 						
 			numberOfDocuments = numberOfDocs1 + numberOfDocs2;
+			//are postings of deleted documents to be removed
+			final boolean reclaim = deleted1 != null || deleted2 != null;
 			
 			
 			final int srcFieldCount1 = srcIndex1.getIntIndexProperty("index.inverted.fields.count", 0);
@@ -211,7 +354,10 @@ public class StructureMerger {
 					"index.lexicon-keyfactory.parameter_types", "index.lexicon-valuefactory.class", "index.lexicon-valuefactory.parameter_values",
 					"index.lexicon-valuefactory.parameter_types", "termpipelines"} )
 			{
-				destIndex.setIndexProperty(property, srcIndex1.getIndexProperty(property, null));
+				//indices written by other means may lack some properties
+				final String value = srcIndex1.getIndexProperty(property, null);
+				if (value != null)
+					destIndex.setIndexProperty(property, value);
 			}
 			
 			FixedSizeWriteableFactory<LexiconEntry> lvf = 
@@ -225,8 +371,9 @@ public class StructureMerger {
 					 ? (int)srcIndex1.getCollectionStatistics().getNumberOfUniqueTerms()
 					 : 0;
 			
-			PostingIndex<Pointer> inverted1 = (PostingIndex<Pointer>) srcIndex1.getInvertedIndex();
-			PostingIndex<Pointer> inverted2 = (PostingIndex<Pointer>) srcIndex2.getInvertedIndex();
+			//all postings are read, as the removal of deleted documents is controlled by setDeletedDocuments()
+			PostingIndex<Pointer> inverted1 = (PostingIndex<Pointer>) srcIndex1.getIndexStructure("inverted");
+			PostingIndex<Pointer> inverted2 = (PostingIndex<Pointer>) srcIndex2.getIndexStructure("inverted");
 			
 			AbstractPostingOutputStream invOS = null;
 			try{
@@ -260,12 +407,17 @@ public class StructureMerger {
 				int lexicographicalCompare = term1.compareTo(term2);
 				if (lexicographicalCompare < 0) {
 					//write to inverted file postings for the term that only occurs in 1st index
-					BitIndexPointer newPointer = invOS.writePostings(inverted1.getPostings(lee1.getValue()));
-					lee1.getValue().setPointer(newPointer);
-					numberOfPointers+=newPointer.getNumberOfEntries();
-					if (! keepTermCodeMap)
-						lee1.getValue().setTermId(newCodes++);
-					lexOutStream.writeNextEntry(term1, lee1.getValue());
+					BitIndexPointer newPointer = reclaim
+						? writeMergedPostings(invOS, inverted1.getPostings(lee1.getValue()), null, lee1.getValue(), numberOfDocs1)
+						: invOS.writePostings(inverted1.getPostings(lee1.getValue()));
+					if (newPointer != null)
+					{
+						lee1.getValue().setPointer(newPointer);
+						numberOfPointers+=newPointer.getNumberOfEntries();
+						if (! keepTermCodeMap)
+							lee1.getValue().setTermId(newCodes++);
+						lexOutStream.writeNextEntry(term1, lee1.getValue());
+					}
 					hasMore1 = lexInStream1.hasNext();
 					if (hasMore1)
 						lee1 = lexInStream1.next();
@@ -274,16 +426,41 @@ public class StructureMerger {
 				} else if (lexicographicalCompare > 0) {
 					//write to inverted file postings for the term that only occurs in 2nd index
 					//docids are transformed as we go.
-					BitIndexPointer newPointer = 
-						invOS.writePostings(inverted2.getPostings(lee2.getValue()), -(numberOfDocs1+1));
-					lee2.getValue().setPointer(newPointer);
-					numberOfPointers+=newPointer.getNumberOfEntries();
+					BitIndexPointer newPointer = reclaim
+						? writeMergedPostings(invOS, null, inverted2.getPostings(lee2.getValue()), lee2.getValue(), numberOfDocs1)
+						: invOS.writePostings(inverted2.getPostings(lee2.getValue()), -(numberOfDocs1+1));
+					if (newPointer != null)
+					{
+						lee2.getValue().setPointer(newPointer);
+						numberOfPointers+=newPointer.getNumberOfEntries();
+						
+						int newCode = newCodes++;
+						if (keepTermCodeMap)
+							termcodeHashmap.put(lee2.getValue().getTermId(), newCode);
+						lee2.getValue().setTermId(newCode);
+						lexOutStream.writeNextEntry(term2, lee2.getValue());
+					}
+					hasMore2 = lexInStream2.hasNext();
+					if (hasMore2)
+						lee2 = lexInStream2.next();
+				} else if (reclaim) {
+					//write the postings of the documents merged for a term that occurs in both indices
+					BitIndexPointer newPointer = writeMergedPostings(invOS, 
+						inverted1.getPostings(lee1.getValue()), inverted2.getPostings(lee2.getValue()), lee1.getValue(), numberOfDocs1);
+					if (newPointer != null)
+					{
+						numberOfPointers += newPointer.getNumberOfEntries();
+						if (keepTermCodeMap)
+							termcodeHashmap.put(lee2.getValue().getTermId(), lee1.getValue().getTermId());
+						else
+							lee1.getValue().setTermId(newCodes++);
+						lexOutStream.writeNextEntry(term1, lee1.getValue());
+					}
+					
+					hasMore1 = lexInStream1.hasNext();
+					if (hasMore1)
+						lee1 = lexInStream1.next();
 					
-					int newCode = newCodes++;
-					if (keepTermCodeMap)
-						termcodeHashmap.put(lee2.getValue().getTermId(), newCode);
-					lee2.getValue().setTermId(newCode);
-					lexOutStream.writeNextEntry(term2, lee2.getValue());
 					hasMore2 = lexInStream2.hasNext();
 					if (hasMore2)
 						lee2 = lexInStream2.next();
@@ -324,13 +501,17 @@ public class StructureMerger {
 				lee2 = null;
 				while (hasMore1) {
 					//write to inverted file as well.
-					BitIndexPointer newPointer = invOS.writePostings(
-							inverted1.getPostings(lee1.getValue()));
-					lee1.getValue().setPointer(newPointer);
-					if (! keepTermCodeMap)
-						lee1.getValue().setTermId(newCodes++);
-					numberOfPointers+=newPointer.getNumberOfEntries();
-					lexOutStream.writeNextEntry(lee1.getKey(), lee1.getValue());
+					BitIndexPointer newPointer = reclaim
+						? writeMergedPostings(invOS, inverted1.getPostings(lee1.getValue()), null, lee1.getValue(), numberOfDocs1)
+						: invOS.writePostings(inverted1.getPostings(lee1.getValue()));
+					if (newPointer != null)
+					{
+						lee1.getValue().setPointer(newPointer);
+						if (! keepTermCodeMap)
+							lee1.getValue().setTermId(newCodes++);
+						numberOfPointers+=newPointer.getNumberOfEntries();
+						lexOutStream.writeNextEntry(lee1.getKey(), lee1.getValue());
+					}
 					hasMore1 = lexInStream1.hasNext();
 					if (hasMore1)
 						lee1 = lexInStream1.next();
@@ -339,15 +520,19 @@ public class StructureMerger {
 				lee1 = null;
 				while (hasMore2) {
 					//write to inverted file as well.
-					BitIndexPointer newPointer = invOS.writePostings(
-							inverted2.getPostings(lee2.getValue()), -(numberOfDocs1+1));
-					lee2.getValue().setPointer(newPointer);
-					numberOfPointers+=newPointer.getNumberOfEntries();
-					int newCode = newCodes++;
-					if (keepTermCodeMap)
-						termcodeHashmap.put(lee2.getValue().getTermId(), newCode);
-					lee2.getValue().setTermId(newCode);
-					lexOutStream.writeNextEntry(lee2.getKey(), lee2.getValue());
+					BitIndexPointer newPointer = reclaim
+						? writeMergedPostings(invOS, null, inverted2.getPostings(lee2.getValue()), lee2.getValue(), numberOfDocs1)
+						: invOS.writePostings(inverted2.getPostings(lee2.getValue()), -(numberOfDocs1+1));
+					if (newPointer != null)
+					{
+						lee2.getValue().setPointer(newPointer);
+						numberOfPointers+=newPointer.getNumberOfEntries();
+						int newCode = newCodes++;
+						if (keepTermCodeMap)
+							termcodeHashmap.put(lee2.getValue().getTermId(), newCode);
+						lee2.getValue().setTermId(newCode);
+						lexOutStream.writeNextEntry(lee2.getKey(), lee2.getValue());
+					}
 					hasMore2 = lexInStream2.hasNext();
 					if (hasMore2)
 						lee2 = lexInStream2.next();
@@ -424,7 +609,10 @@ public class StructureMerger {
 			
 			for(String property : new String[] {"index.direct.fields.names","index.direct.fields.count" } )
 			{
-				destIndex.setIndexProperty(property, srcIndex1.getIndexProperty(property, null));
+				//indices written by other means may lack some properties
+				final String value = srcIndex1.getIndexProperty(property, null);
+				if (value != null)
+					destIndex.setIndexProperty(property, value);
 			}
 			
 			AbstractPostingOutputStream dfOutput = null;
@@ -447,6 +635,13 @@ public class StructureMerger {
 			{
 				BitIndexPointer pointerDF = emptyPointer;
 				DocumentIndexEntry die = docidInput1.next();
+				if (isDeleted(deleted1, sourceDocid))
+				{
+					//deleted documents are merged as placeholders without postings
+					if (die.getDocumentLength() > 0)
+						dfInput1.next();
+					makePlaceholder(die);
+				}
 				if (die.getDocumentLength() > 0)
 				{
 					pointerDF = dfOutput.writePostings(dfInput1.next());
@@ -467,6 +662,13 @@ public class StructureMerger {
 			while (docidInput2.hasNext())
 			{
 				DocumentIndexEntry die = docidInput2.next();
+				if (isDeleted(deleted2, sourceDocid))
+				{
+					//deleted documents are merged as placeholders without postings
+					if (die.getDocumentLength() > 0)
+						dfInput2.next();
+					makePlaceholder(die);
+				}
 			
 				BitIndexPointer pointerDF = emptyPointer;
 				if (die.getDocumentLength() > 0)
@@ -570,26 +772,36 @@ public class StructureMerger {
 			}
 			final int fieldCount = srcFieldCount1;
 			
-			//traversing the first set of files, without any change
+			//traversing the first set of files, without any change other than to deleted documents
+			int sourceDocid = 0;
 			while(docidInput1.hasNext())
 			{
 				metaInput1.hasNext();
 				DocumentIndexEntry die = docidInput1.next();
+				String[] meta = metaInput1.next();
+				if (isDeleted(deleted1, sourceDocid++))
+					//deleted documents are merged as placeholders
+					makePlaceholder(die);
 				DocumentIndexEntry dieNew = (fieldCount > 0) ? die : new SimpleDocumentIndexEntry(die);
 				docidOutput.addEntryToBuffer(dieNew);
-				metaBuilder.writeDocumentEntry(metaInput1.next());
+				metaBuilder.writeDocumentEntry(meta);
 			}
 			
 			final Iterator<DocumentIndexEntry> docidInput2 = (Iterator<DocumentIndexEntry>)srcIndex2.getIndexStructureInputStream("document");
 			final Iterator<String[]> metaInput2 = (Iterator<String[]>)srcIndex2.getIndexStructureInputStream("meta");
-			//traversing the 2nd set of files, without any change
+			//traversing the 2nd set of files, without any change other than to deleted documents
+			sourceDocid = 0;
 			while(docidInput2.hasNext())
 			{
 				metaInput2.hasNext();
 				DocumentIndexEntry die = docidInput2.next();
+				String[] meta = metaInput2.next();
+				if (isDeleted(deleted2, sourceDocid++))
+					//deleted documents are merged as placeholders
+					makePlaceholder(die);
 				DocumentIndexEntry dieNew = (fieldCount > 0) ? die : new SimpleDocumentIndexEntry(die);
 				docidOutput.addEntryToBuffer(dieNew);
-				metaBuilder.writeDocumentEntry(metaInput2.next());
+				metaBuilder.writeDocumentEntry(meta);
 			}
 			
 			docidOutput.finishedCollections();
@@ -633,6 +845,15 @@ public class StructureMerger {
 		final boolean bothLexicon = srcIndex1.hasIndexStructure("lexicon") && srcIndex2.hasIndexStructure("lexicon");
 		final long t1 = System.currentTimeMillis();
 		keepTermCodeMap = bothDirect;
+		if (deleted1 != null && deleted1.getNumberOfDeletedDocuments() == 0)
+			deleted1 = null;
+		if (deleted2 != null && deleted2.getNumberOfDeletedDocuments() == 0)
+			deleted2 = null;
+		if ((deleted1 != null || deleted2 != null) && ! bothInverted)
+		{
+			logger.warn("Deleted documents can only be removed when merging inverted indices - all documents will be merged");
+			deleted1 = deleted2 = null;
+		}
 		long t2 = 0;
 		long t3 = 0;
 		long t4 = 0;
@@ -681,6 +902,30 @@ public class StructureMerger {
 			termcodeHashmap.clear();
 			termcodeHashmap = null;
 		}
+		
+		if (deleted1 != null || deleted2 != null)
+		{
+			try{
+				writeDeletedDocuments();
+			} catch (IOException ioe) {
+				logger.error("IOException while writing the deleted documents.", ioe);
+			}
+		}
+	}
+	
+	/** Marks the placeholders of the deleted documents as deleted in the merged index */
+	protected void writeDeletedDocuments() throws IOException {
+		final DeletedDocuments merged = new DeletedDocuments();
+		final int numberOfDocs1 = srcIndex1.getCollectionStatistics().getNumberOfDocuments();
+		if (deleted1 != null)
+			for(int docid = deleted1.nextDeleted(0); docid != -1; docid = deleted1.nextDeleted(docid + 1))
+				merged.delete(docid);
+		if (deleted2 != null)
+			for(int docid = deleted2.nextDeleted(0); docid != -1; docid = deleted2.nextDeleted(docid + 1))
+				merged.delete(docid + numberOfDocs1);
+		merged.write(destIndex);
+		destIndex.setIndexProperty("index.deleted.reclaimed", String.valueOf(merged.getNumberOfDeletedDocuments()));
+		destIndex.flush();
 	}
 	
 	public static class Command extends CLITool
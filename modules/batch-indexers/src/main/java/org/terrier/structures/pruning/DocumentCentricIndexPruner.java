@@ -0,0 +1,135 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DocumentCentricIndexPruner.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.pruning;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.DocumentIndexEntry;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.Pointer;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.PrunedLexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.utility.TerrierTimer;
+
+/**
+ * Document-centric static index pruning, following B&uuml;ttcher &amp; Clarke "A Document-Centric 
+ * Approach to Static Index Pruning in Text Retrieval Systems", CIKM 2006. For each document, its 
+ * terms are ranked by their score, and only the postings of the top terms of each document are retained,
+ * such that each document keeps (at least one and) the target ratio of its postings. Documents are hence 
+ * never entirely removed from the index.
+ * <p>
+ * This strategy requires a direct index. The terms of each document are scored using 
+ * {@link WeightingModel#score(double, double)}, i.e. per-field statistics are not considered.
+ * @since 5.2
+ */
+public class DocumentCentricIndexPruner extends IndexPruner {
+
+	/** the score of the lowest retained posting of each document, indexed by docid */
+	protected double[] documentThresholds;
+	
+	/**
+	 * Construct a new instance of this class
+	 * @param _index the index to prune, which must have a direct index
+	 * @param _wmodel the weighting model used to score postings
+	 * @param _ratio the target ratio of postings to retain
+	 */
+	public DocumentCentricIndexPruner(IndexOnDisk _index, WeightingModel _wmodel, double _ratio) {
+		super(_index, _wmodel, _ratio);
+		if (! index.hasIndexStructure("direct"))
+			throw new IllegalArgumentException("Document-centric pruning requires a direct index");
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void initialise() throws IOException {
+		//obtain the statistics of all terms
+		final EntryStatistics[] termStatistics = new EntryStatistics[index.getCollectionStatistics().getNumberOfUniqueTerms()];
+		Iterator<Entry<String, LexiconEntry>> lexIn = (Iterator<Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		try{
+			while(lexIn.hasNext())
+			{
+				LexiconEntry le = lexIn.next().getValue();
+				termStatistics[le.getTermId()] = new PrunedLexiconEntry(le, fieldCount);
+			}
+		} finally {
+			IndexUtil.close(lexIn);
+		}
+		
+		final int numDocs = index.getCollectionStatistics().getNumberOfDocuments();
+		documentThresholds = new double[numDocs];
+		final DocumentIndex doi = index.getDocumentIndex();
+		final PostingIndex<Pointer> direct = (PostingIndex<Pointer>) index.getDirectIndex();
+		TerrierTimer tt = new TerrierTimer("Computing document-centric pruning thresholds", numDocs);
+		tt.start();
+		double[] scores = new double[0];
+		try{
+			for(int docid=0;docid<numDocs;docid++)
+			{
+				DocumentIndexEntry die = doi.getDocumentEntry(docid);
+				tt.increment();
+				if (die.getNumberOfEntries() == 0)
+					continue;
+				if (scores.length < die.getNumberOfEntries())
+					scores = new double[die.getNumberOfEntries()];
+				final double docLength = die.getDocumentLength();
+				int n = 0;
+				IterablePosting ip = direct.getPostings(die);
+				while(ip.next() != IterablePosting.EOL)
+				{
+					prepareModel(termStatistics[ip.getId()]);
+					scores[n++] = wmodel.score(ip.getFrequency(), docLength);
+				}
+				ip.close();
+				Arrays.sort(scores, 0, n);
+				final int retain = Math.max(1, (int) Math.ceil(ratio * n));
+				documentThresholds[docid] = scores[n - retain];
+			}
+		} finally {
+			tt.finished();
+		}
+	}
+	
+	@Override
+	protected boolean keep(String term, LexiconEntry le, Posting p) {
+		return wmodel.score(p.getFrequency(), p.getDocumentLength()) >= documentThresholds[p.getId()];
+	}
+
+	@Override
+	public String getInfo() {
+		return "document";
+	}
+
+}
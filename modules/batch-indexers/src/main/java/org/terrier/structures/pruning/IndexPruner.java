@@ -0,0 +1,466 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is IndexPruner.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.pruning;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.applications.CLITool.CLIParsedCLITool;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.matching.models.WeightingModelFactory;
+import org.terrier.structures.AbstractPostingOutputStream;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.FSOMapFileLexiconOutputStream;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.LexiconOutputStream;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.PrunedLexiconEntry;
+import org.terrier.structures.indexing.CompressionFactory;
+import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
+import org.terrier.structures.indexing.LexiconBuilder;
+import org.terrier.structures.postings.BlockPosting;
+import org.terrier.structures.postings.FieldPosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.structures.postings.WritablePosting;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.ArrayUtils;
+import org.terrier.utility.Files;
+import org.terrier.utility.TerrierTimer;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Base class for static index pruning, which creates a smaller index from an existing one
+ * by removing the postings that are least likely to affect the top-ranked documents. The pruned
+ * index is written to a new location, while the original index is left untouched. The pruned index
+ * retains the document index and meta index of the original index, as well as its collection 
+ * statistics. The lexicon of the pruned index uses {@link PrunedLexiconEntry}, which records the 
+ * statistics of each term in the original index, such that the scores of documents obtained on the pruned
+ * index are comparable to those obtained on the original index, as well as the largest absolute score of the 
+ * postings of each term that were not retained. The pruned index can therefore be 
+ * used as a first tier, answering most queries from a (memory-resident) smaller index. Terms for which
+ * no posting is retained are removed from the lexicon of the pruned index, and the remaining terms are 
+ * assigned new (contiguous) termids.
+ * <p>
+ * Implementations decide which postings to retain:
+ * <ul>
+ * <li>{@link TermCentricIndexPruner} - term-centric pruning as proposed by Carmel et al.</li>
+ * <li>{@link DocumentCentricIndexPruner} - document-centric pruning as proposed by B&uuml;ttcher &amp; Clarke.</li>
+ * <li>{@link PopularityIndexPruner} - retains the posting lists of the terms that are most popular in a query log.</li>
+ * </ul>
+ * The target size of the pruned index is expressed as the ratio of postings to retain.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>pruning.strategy</tt> - the pruning strategy: term, document, popularity or the name of an IndexPruner class. Defaults to term.</li>
+ * <li><tt>pruning.ratio</tt> - the target ratio of postings to retain. Defaults to 0.5.</li>
+ * <li><tt>pruning.model</tt> - the weighting model used to score postings. Defaults to BM25.</li>
+ * </ul>
+ * The strategy, weighting model, ratio, number of retained postings and location of the original index are recorded in the
+ * <tt>index.pruning.*</tt> properties of the pruned index.
+ * @since 5.2
+ */
+public abstract class IndexPruner {
+	
+	/** CLI command for creating pruned indices */
+	public static class Command extends CLIParsedCLITool
+	{
+		@Override
+		protected Options getOptions() {
+			Options options = super.getOptions();
+			options.addOption(Option.builder("s")
+					.argName("strategy")
+					.longOpt("strategy")
+					.hasArg()
+					.desc("the pruning strategy: term, document or popularity. This overrides the pruning.strategy property")
+					.build());
+			options.addOption(Option.builder("r")
+					.argName("ratio")
+					.longOpt("ratio")
+					.hasArg()
+					.desc("the ratio of postings to retain. This overrides the pruning.ratio property")
+					.build());
+			options.addOption(Option.builder("w")
+					.argName("wmodel")
+					.longOpt("wmodel")
+					.hasArg()
+					.desc("the weighting model used to score postings. This overrides the pruning.model property")
+					.build());
+			options.addOption(Option.builder("q")
+					.argName("file")
+					.longOpt("querylog")
+					.hasArg()
+					.desc("the query log used by the popularity strategy. This overrides the pruning.popularity.querylog property")
+					.build());
+			options.addOption(Option.builder("o")
+					.argName("indexref")
+					.longOpt("output")
+					.hasArg()
+					.desc("the location of the pruned index. Defaults to the prefix of the index suffixed by -pruned")
+					.build());
+			return options;
+		}
+
+		@Override
+		public Set<String> commandaliases() {
+			return Sets.newHashSet("pruning");
+		}
+
+		@Override
+		public String commandname() {
+			return "prune";
+		}
+
+		@Override
+		public String helpsummary() {
+			return "creates a statically pruned copy of an index";
+		}
+
+		@Override
+		public int run(CommandLine line) throws Exception {
+			if (line.hasOption("querylog"))
+				ApplicationSetup.setProperty("pruning.popularity.querylog", line.getOptionValue("querylog"));
+			Index.setIndexLoadingProfileAsRetrieval(false);
+			IndexOnDisk index = Index.createIndex();
+			if (index == null)
+			{
+				System.err.println("Sorry, no index could be found in default location");
+				return 1;
+			}
+			String destPath = index.getPath();
+			String destPrefix = index.getPrefix() + "-pruned";
+			if (line.hasOption("output"))
+			{
+				destPath = FilenameUtils.getFullPath(line.getOptionValue("output"));
+				destPrefix = FilenameUtils.getBaseName(line.getOptionValue("output"));
+			}
+			IndexPruner pruner = getIndexPruner(
+					line.hasOption("strategy") ? line.getOptionValue("strategy") : ApplicationSetup.getProperty("pruning.strategy", "term"),
+					index,
+					WeightingModelFactory.newInstance(line.hasOption("wmodel") ? line.getOptionValue("wmodel") : ApplicationSetup.getProperty("pruning.model", "BM25")),
+					Double.parseDouble(line.hasOption("ratio") ? line.getOptionValue("ratio") : ApplicationSetup.getProperty("pruning.ratio", "0.5")));
+			IndexOnDisk pruned = pruner.prune(destPath, destPrefix);
+			System.err.println("Pruned index written to " + pruned.getPath() + ApplicationSetup.FILE_SEPARATOR + pruned.getPrefix());
+			pruned.close();
+			index.close();
+			return 0;
+		}
+	}
+	
+	/** An IterablePosting over a list of retained postings, which exposes the fields and 
+	 * blocks of the underlying postings, if any. */
+	protected static class PrunedIterablePosting implements IterablePosting, FieldPosting, BlockPosting
+	{
+		final List<WritablePosting> postings;
+		int index = -1;
+		WritablePosting current;
+		
+		PrunedIterablePosting(List<WritablePosting> _postings)
+		{
+			postings = _postings;
+		}
+
+		@Override
+		public int getId() {
+			return current.getId();
+		}
+
+		@Override
+		public int getFrequency() {
+			return current.getFrequency();
+		}
+
+		@Override
+		public int getDocumentLength() {
+			return current.getDocumentLength();
+		}
+
+		@Override
+		public void setId(int id) {
+			current.setId(id);
+		}
+
+		@Override
+		public WritablePosting asWritablePosting() {
+			return current;
+		}
+
+		@Override
+		public int[] getPositions() {
+			return ((BlockPosting)current).getPositions();
+		}
+
+		@Override
+		public int[] getFieldFrequencies() {
+			return ((FieldPosting)current).getFieldFrequencies();
+		}
+
+		@Override
+		public int[] getFieldLengths() {
+			return ((FieldPosting)current).getFieldLengths();
+		}
+
+		@Override
+		public void setFieldLengths(int[] newLengths) {
+			((FieldPosting)current).setFieldLengths(newLengths);
+		}
+
+		@Override
+		public int next() throws IOException {
+			if (++index >= postings.size())
+			{
+				current = null;
+				return EOL;
+			}
+			current = postings.get(index);
+			return current.getId();
+		}
+
+		@Override
+		public int next(int targetId) throws IOException {
+			int id = current == null ? next() : current.getId();
+			while(id != EOL && id < targetId)
+				id = next();
+			return id;
+		}
+
+		@Override
+		public boolean endOfPostings() {
+			return index + 1 >= postings.size();
+		}
+
+		@Override
+		public void close() throws IOException {}
+	}
+	
+	protected static final Logger logger = LoggerFactory.getLogger(IndexPruner.class);
+	
+	protected final IndexOnDisk index;
+	protected final WeightingModel wmodel;
+	protected final double ratio;
+	protected final int fieldCount;
+	
+	/**
+	 * Construct a new instance of this class
+	 * @param _index the index to prune
+	 * @param _wmodel the weighting model used to score postings
+	 * @param _ratio the target ratio of postings to retain, between 0 and 1
+	 */
+	public IndexPruner(IndexOnDisk _index, WeightingModel _wmodel, double _ratio)
+	{
+		if (_ratio <= 0 || _ratio > 1)
+			throw new IllegalArgumentException("Pruning ratio must be in (0,1], was " + _ratio);
+		this.index = _index;
+		this.wmodel = _wmodel;
+		this.ratio = _ratio;
+		this.fieldCount = index.getIntIndexProperty("index.inverted.fields.count", 0);
+		this.wmodel.setCollectionStatistics(index.getCollectionStatistics());
+	}
+	
+	/** Obtain the IndexPruner for the specified strategy, which is one of term, document or popularity, or the
+	 * name of a class extending IndexPruner */
+	public static IndexPruner getIndexPruner(String strategy, IndexOnDisk index, WeightingModel wmodel, double ratio)
+	{
+		switch (strategy.toLowerCase())
+		{
+		case "term":
+			return new TermCentricIndexPruner(index, wmodel, ratio);
+		case "document":
+			return new DocumentCentricIndexPruner(index, wmodel, ratio);
+		case "popularity":
+			return new PopularityIndexPruner(index, wmodel, ratio);
+		}
+		try{
+			if (! strategy.contains("."))
+				strategy = IndexPruner.class.getPackage().getName() + "." + strategy;
+			return ApplicationSetup.getClass(strategy)
+					.asSubclass(IndexPruner.class)
+					.getConstructor(IndexOnDisk.class, WeightingModel.class, Double.TYPE)
+					.newInstance(index, wmodel, ratio);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Unknown pruning strategy " + strategy, e);
+		}
+	}
+	
+	/** Prepare the weighting model for scoring the postings of the specified term */
+	protected void prepareModel(EntryStatistics es)
+	{
+		wmodel.setEntryStatistics(es);
+		wmodel.setKeyFrequency(1d);
+		wmodel.prepare();
+	}
+	
+	/** Returns the number of postings of the original index that should be retained */
+	protected long getTargetPostings()
+	{
+		return (long) Math.ceil(ratio * index.getCollectionStatistics().getNumberOfPointers());
+	}
+	
+	/** Analyses the original index to decide which postings to retain, before any posting is written */
+	protected abstract void initialise() throws IOException;
+	
+	/** Decides if the specified posting should be retained in the pruned index. The weighting model
+	 * has been prepared for the term before this method is called. 
+	 * @param term the term of the posting list
+	 * @param le the statistics of the term in the original index
+	 * @param p the posting to consider
+	 */
+	protected abstract boolean keep(String term, LexiconEntry le, Posting p);
+	
+	/** Returns a description of the pruning strategy */
+	public abstract String getInfo();
+	
+	/** Creates the pruned index at the specified location.
+	 * @return the pruned index, which has been flushed
+	 */
+	@SuppressWarnings("unchecked")
+	public IndexOnDisk prune(String destPath, String destPrefix) throws IOException
+	{
+		initialise();
+		final IndexOnDisk dest = Index.createNewIndex(destPath, destPrefix);
+		if (dest == null)
+			throw new IOException("Could not create pruned index at " + destPath + ApplicationSetup.FILE_SEPARATOR + destPrefix + ": " + Index.getLastIndexLoadError());
+		copyIndex(dest);
+		
+		CompressionConfiguration compressionConfig = CompressionFactory.getCompressionConfiguration("inverted", 
+				ArrayUtils.parseCommaDelimitedString(index.getIndexProperty("index.inverted.fields.names", "")), 
+				index.getIntIndexProperty("index.inverted.blocks", 0), 
+				index.getIntIndexProperty("index.inverted.blocks.max", 0));
+		AbstractPostingOutputStream postingsOut = compressionConfig.getPostingOutputStream(
+				dest.getPath() + ApplicationSetup.FILE_SEPARATOR + dest.getPrefix() + "." + "inverted" + compressionConfig.getStructureFileExtension());
+		Iterator<Entry<String, LexiconEntry>> lexIn = (Iterator<Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) index.getIndexStructureInputStream("inverted");
+		LexiconOutputStream<String> los = new FSOMapFileLexiconOutputStream(dest, "lexicon", PrunedLexiconEntry.Factory.class);
+		final List<WritablePosting> retained = new ArrayList<>();
+		long pointers = 0;
+		int terms = 0;
+		TerrierTimer tt = new TerrierTimer("Pruning index using " + getInfo(), index.getCollectionStatistics().getNumberOfPointers());
+		tt.start();
+		try{
+			while(lexIn.hasNext())
+			{
+				Entry<String, LexiconEntry> lee = lexIn.next();
+				IterablePosting ip = postingsIn.next();
+				prepareModel(lee.getValue());
+				retained.clear();
+				double prunedScoreBound = 0;
+				while(ip.next() != IterablePosting.EOL)
+				{
+					if (keep(lee.getKey(), lee.getValue(), ip))
+						retained.add(ip.asWritablePosting());
+					else
+						prunedScoreBound = Math.max(prunedScoreBound, Math.abs(wmodel.score(ip)));
+				}
+				tt.increment(lee.getValue().getNumberOfEntries());
+				//terms without retained postings are removed from the pruned index
+				if (retained.size() == 0)
+					continue;
+				PrunedLexiconEntry ple = new PrunedLexiconEntry(lee.getValue(), fieldCount);
+				ple.setTermId(terms);
+				//rounded up, such that the recorded score remains an upper bound
+				ple.setPrunedScoreBound(prunedScoreBound > 0 ? Math.nextUp((float) prunedScoreBound) : 0f);
+				ple.setPointer(postingsOut.writePostings(new PrunedIterablePosting(retained)));
+				los.writeNextEntry(lee.getKey(), ple);
+				pointers += retained.size();
+				terms++;
+			}
+		} finally {
+			tt.finished();
+			postingsOut.close();
+			IndexUtil.close(lexIn);
+			IndexUtil.close(postingsIn);
+			los.close();
+		}
+		compressionConfig.writeIndexProperties(dest, "lexicon-entry-inputstream");
+		dest.addIndexStructure("lexicon-valuefactory", PrunedLexiconEntry.Factory.class.getName(), "java.lang.String", "${index.inverted.fields.count}");
+		LexiconBuilder.optimise(dest, "lexicon");
+		//optimising the lexicon recounts the collection statistics from the pruned lexicon
+		copyProperties(dest);
+		
+		dest.setIndexProperty("index.pruning.strategy", getInfo());
+		dest.setIndexProperty("index.pruning.model", wmodel.getInfo());
+		dest.setIndexProperty("index.pruning.ratio", String.valueOf(ratio));
+		dest.setIndexProperty("index.pruning.pointers", String.valueOf(pointers));
+		dest.setIndexProperty("index.pruning.source", index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix());
+		dest.flush();
+		logger.info("Pruned index retains " + pointers + " of " + index.getCollectionStatistics().getNumberOfPointers() 
+				+ " postings, for " + terms + " of " + index.getCollectionStatistics().getNumberOfUniqueTerms() + " terms");
+		return dest;
+	}
+	
+	/** Copies the collection statistics and the other properties of the original index that do not
+	 * describe structures to the pruned index */
+	protected void copyProperties(IndexOnDisk dest)
+	{
+		for(Object o : index.getProperties().keySet())
+		{
+			String key = (String)o;
+			if (! key.startsWith("index."))
+				dest.setIndexProperty(key, index.getIndexProperty(key, null));
+		}
+		//the document index factory refers to the fields of the direct index
+		for(String key : new String[]{"index.direct.fields.count", "index.direct.fields.names"})
+		{
+			if (index.getIndexProperty(key, null) != null)
+				dest.setIndexProperty(key, index.getIndexProperty(key, null));
+		}
+	}
+	
+	/** Copies the collection statistics and all structures other than the inverted index, lexicon 
+	 * and direct index to the pruned index */
+	protected void copyIndex(IndexOnDisk dest) throws IOException
+	{
+		copyProperties(dest);
+		for(String structureName : IndexUtil.getStructures(index))
+		{
+			if (structureName.startsWith("inverted") || structureName.startsWith("lexicon") || structureName.startsWith("direct"))
+				continue;
+			IndexUtil.copyStructure(index, dest, structureName, structureName);
+			//some structures (e.g. the reverse meta lookups) have additional files
+			for(String file : Files.list(index.getPath()))
+			{
+				if (file.startsWith(index.getPrefix() + "." + structureName + "-"))
+					Files.copyFile(
+						index.getPath() + ApplicationSetup.FILE_SEPARATOR + file,
+						dest.getPath() + ApplicationSetup.FILE_SEPARATOR + dest.getPrefix() + file.substring(index.getPrefix().length()));
+			}
+		}
+		dest.flush();
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is PopularityIndexPruner.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.pruning;
+
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TObjectIntHashMap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.terrier.indexing.tokenisation.Tokeniser;
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.Posting;
+import org.terrier.terms.BaseTermPipelineAccessor;
+import org.terrier.terms.TermPipelineAccessor;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+/**
+ * Popularity-based static index pruning, also known as keyword pruning (see Ntoulas &amp; Cho, 
+ * "Pruning Policies for Two-Tiered Inverted Index with Correctness Guarantee", SIGIR 2007). The 
+ * popularity of each term is the number of times it occurs in a query log. The posting lists of the
+ * most popular terms are retained in their entirety, until the target number of postings is reached,
+ * while other terms are removed from the pruned index. The queries are processed using the tokeniser
+ * and term pipeline of the index.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>pruning.popularity.querylog</tt> - the query log, containing one query per line. Required.</li>
+ * </ul>
+ * @since 5.2
+ */
+public class PopularityIndexPruner extends IndexPruner {
+
+	protected final String queryLog;
+	/** the termids of the terms whose posting lists are retained */
+	protected TIntHashSet retainedTerms;
+	
+	/**
+	 * Construct a new instance of this class
+	 * @param _index the index to prune
+	 * @param _wmodel the weighting model (not used by this strategy)
+	 * @param _ratio the target ratio of postings to retain
+	 */
+	public PopularityIndexPruner(IndexOnDisk _index, WeightingModel _wmodel, double _ratio) {
+		super(_index, _wmodel, _ratio);
+		queryLog = ApplicationSetup.getProperty("pruning.popularity.querylog", null);
+		if (queryLog == null)
+			throw new IllegalArgumentException("Popularity pruning requires a query log, specified by the pruning.popularity.querylog property");
+	}
+	
+	/** Counts the occurrences of each (pipelined) term in the query log */
+	protected TObjectIntHashMap<String> getPopularity() throws IOException
+	{
+		final TObjectIntHashMap<String> popularity = new TObjectIntHashMap<String>();
+		final TermPipelineAccessor pipeline = new BaseTermPipelineAccessor(
+				index.getIndexProperty("termpipelines", ApplicationSetup.getProperty("termpipelines", "Stopwords,PorterStemmer")).split("\\s*,\\s*"));
+		final Tokeniser tokeniser = Tokeniser.getTokeniser();
+		final BufferedReader br = Files.openFileReader(queryLog);
+		try{
+			String line;
+			while((line = br.readLine()) != null)
+			{
+				for(String token : tokeniser.getTokens(line))
+				{
+					String term = pipeline.pipelineTerm(token);
+					if (term != null)
+						popularity.adjustOrPutValue(term, 1, 1);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return popularity;
+	}
+	
+	@Override
+	protected void initialise() throws IOException {
+		final TObjectIntHashMap<String> popularity = getPopularity();
+		final Lexicon<String> lexicon = index.getLexicon();
+		final List<LexiconEntry> candidates = new ArrayList<>();
+		final TIntIntHashMap counts = new TIntIntHashMap();
+		for(Object o : popularity.keys())
+		{
+			LexiconEntry le = lexicon.getLexiconEntry((String)o);
+			if (le == null)
+				continue;
+			candidates.add(le);
+			counts.put(le.getTermId(), popularity.get((String)o));
+		}
+		//most popular terms first, cheaper posting lists first for equally popular terms
+		candidates.sort(Comparator
+				.comparingInt((LexiconEntry le) -> - counts.get(le.getTermId()))
+				.thenComparingInt(LexiconEntry::getNumberOfEntries)
+				.thenComparingInt(LexiconEntry::getTermId));
+		
+		retainedTerms = new TIntHashSet();
+		final long target = getTargetPostings();
+		long retained = 0;
+		for(LexiconEntry le : candidates)
+		{
+			if (retained + le.getNumberOfEntries() > target)
+				continue;
+			retainedTerms.add(le.getTermId());
+			retained += le.getNumberOfEntries();
+		}
+		logger.info("Popularity pruning retains the posting lists of " + retainedTerms.size() + " of the " 
+				+ popularity.size() + " terms in the query log " + queryLog);
+	}
+
+	@Override
+	protected boolean keep(String term, LexiconEntry le, Posting p) {
+		return retainedTerms.contains(le.getTermId());
+	}
+
+	@Override
+	public String getInfo() {
+		return "popularity";
+	}
+
+}
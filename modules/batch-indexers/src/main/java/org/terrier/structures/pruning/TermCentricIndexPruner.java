@@ -0,0 +1,151 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TermCentricIndexPruner.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.pruning;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.terrier.matching.models.WeightingModel;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.TerrierTimer;
+
+/**
+ * Term-centric static index pruning, following Carmel et al. "Static Index Pruning for Information
+ * Retrieval Systems", SIGIR 2001. For each term t, z<sub>t</sub> is the k-th highest score in its 
+ * posting list, and the postings with a score lower than &epsilon;&middot;z<sub>t</sub> are removed. 
+ * The top-k postings of each term are hence always retained. A single value of &epsilon; is used for 
+ * all terms, which is chosen by examining the distribution of score/z<sub>t</sub> over all postings, such that 
+ * the target ratio of postings is retained.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>pruning.termcentric.k</tt> - the rank of the posting whose score defines z<sub>t</sub>. Defaults to 10.</li>
+ * </ul>
+ * @since 5.2
+ */
+public class TermCentricIndexPruner extends IndexPruner {
+
+	/** resolution of the distribution of score/z_t */
+	static final int BINS = 10000;
+	
+	protected final int k;
+	/** z_t of each term, indexed by termid */
+	protected double[] termThresholds;
+	protected double epsilon;
+	
+	/**
+	 * Construct a new instance of this class
+	 * @param _index the index to prune
+	 * @param _wmodel the weighting model used to score postings
+	 * @param _ratio the target ratio of postings to retain
+	 */
+	public TermCentricIndexPruner(IndexOnDisk _index, WeightingModel _wmodel, double _ratio) {
+		super(_index, _wmodel, _ratio);
+		k = Integer.parseInt(ApplicationSetup.getProperty("pruning.termcentric.k", "10"));
+	}
+
+	/** Returns score/z_t, the value that is compared to epsilon */
+	static double normalise(double score, double zt)
+	{
+		if (zt <= 0)
+			return score >= zt ? 1d : 0d;
+		return score / zt;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void initialise() throws IOException {
+		termThresholds = new double[index.getCollectionStatistics().getNumberOfUniqueTerms()];
+		final long[] distribution = new long[BINS+1];
+		long total = 0;
+		Iterator<Entry<String, LexiconEntry>> lexIn = (Iterator<Entry<String, LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) index.getIndexStructureInputStream("inverted");
+		TerrierTimer tt = new TerrierTimer("Computing term-centric pruning thresholds", index.getCollectionStatistics().getNumberOfPointers());
+		tt.start();
+		double[] scores = new double[0];
+		try{
+			while(lexIn.hasNext())
+			{
+				Entry<String, LexiconEntry> lee = lexIn.next();
+				IterablePosting ip = postingsIn.next();
+				final LexiconEntry le = lee.getValue();
+				prepareModel(le);
+				if (scores.length < le.getNumberOfEntries())
+					scores = new double[le.getNumberOfEntries()];
+				int n = 0;
+				while(ip.next() != IterablePosting.EOL)
+					scores[n++] = wmodel.score(ip);
+				if (n == 0)
+					continue;
+				final double[] sorted = Arrays.copyOf(scores, n);
+				Arrays.sort(sorted);
+				final double zt = sorted[Math.max(0, n - k)];
+				termThresholds[le.getTermId()] = zt;
+				for(int i=0;i<n;i++)
+				{
+					distribution[(int) Math.min(BINS, Math.max(0, Math.floor(normalise(scores[i], zt) * BINS)))]++;
+				}
+				total += n;
+				tt.increment(n);
+			}
+		} finally {
+			tt.finished();
+			IndexUtil.close(lexIn);
+			IndexUtil.close(postingsIn);
+		}
+		
+		//find the largest epsilon that retains at least the target ratio of postings
+		final long target = (long) Math.ceil(ratio * total);
+		long retained = 0;
+		int bin = BINS;
+		for(;bin > 0;bin--)
+		{
+			retained += distribution[bin];
+			if (retained >= target)
+				break;
+		}
+		epsilon = (double) bin / BINS;
+		logger.info("Term-centric pruning with k=" + k + " uses epsilon=" + epsilon);
+	}
+
+	@Override
+	protected boolean keep(String term, LexiconEntry le, Posting p) {
+		return normalise(wmodel.score(p), termThresholds[le.getTermId()]) >= epsilon;
+	}
+
+	@Override
+	public String getInfo() {
+		return "term(k=" + k + ",epsilon=" + epsilon + ")";
+	}
+	
+}
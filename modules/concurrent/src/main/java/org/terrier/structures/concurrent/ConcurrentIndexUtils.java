@@ -56,9 +56,9 @@ public class ConcurrentIndexUtils {
 			IndexUtil.forceStructure(index, "document", newDoi);
 		}
 		
-		if (index.hasIndexStructure("inverted") && ! index.getInvertedIndex().getClass().isAnnotationPresent(ConcurrentReadable.class) )
+		if (index.hasIndexStructure("inverted") && ! index.getIndexStructure("inverted").getClass().isAnnotationPresent(ConcurrentReadable.class) )
 		{
-			PostingIndex<?> inv = index.getInvertedIndex();
+			PostingIndex<?> inv = (PostingIndex<?>) index.getIndexStructure("inverted");
 			if (inv instanceof BitPostingIndex)
 			{
 				//NB: this does not add the @ConcurrentReadable annotation
@@ -156,6 +156,69 @@ public class CollectionFactory
 		return rtr;
 	}
 
+	/** 
+	 * Splits the files named in the specified collection.spec into at most k partitions, such that the
+	 * partitions have approximately the same total size in bytes, rather than the same number of files.
+	 * Each partition is a contiguous range of the collection.spec, such that indexing the partitions in 
+	 * order retains the order of the documents. Files whose length cannot be obtained are assumed to be 
+	 * empty.
+	 * @since 5.2
+	 */
+	public static List<List<String>> splitCollectionSpecFileListBySize(String CollectionSpecFilename, int k) {
+		List<String> all = loadCollectionSpecFileList(CollectionSpecFilename);
+		long[] sizes = new long[all.size()];
+		for(int i=0;i<sizes.length;i++)
+			sizes[i] = Files.length(all.get(i));
+		return splitListBySize(all, sizes, k);
+	}
+	
+	static <T> List<List<T>> splitListBySize(final List<T> all, final long[] sizes, final int k) {
+		assert all.size() > 0;
+		assert all.size() == sizes.length;
+		long largest = 0;
+		long total = 0;
+		for(long size : sizes)
+		{
+			largest = Math.max(largest, size);
+			total += size;
+		}
+		//no sizes are known
+		if (total == 0)
+			return splitList(all, k);
+		//binary search for the smallest capacity of a partition that needs no more than k ranges
+		long low = largest;
+		long high = total;
+		while(low < high)
+		{
+			final long capacity = low + (high - low) / 2;
+			if (splitRanges(all, sizes, capacity).size() <= k)
+				high = capacity;
+			else
+				low = capacity + 1;
+		}
+		return splitRanges(all, sizes, low);
+	}
+	
+	/** splits into contiguous ranges, each with a total size no larger than capacity, unless a single item is larger */
+	static <T> List<List<T>> splitRanges(final List<T> all, final long[] sizes, final long capacity) {
+		List<List<T>> rtr = new ArrayList<>();
+		List<T> current = new ArrayList<>();
+		long currentSize = 0;
+		for(int i=0;i<sizes.length;i++)
+		{
+			if (! current.isEmpty() && currentSize + sizes[i] > capacity)
+			{
+				rtr.add(current);
+				current = new ArrayList<>();
+				currentSize = 0;
+			}
+			current.add(all.get(i));
+			currentSize += sizes[i];
+		}
+		rtr.add(current);
+		return rtr;
+	}
+
 	public static List<String> loadCollectionSpecFileList(String CollectionSpecFilename) {
 		List<String> FilesToProcess = new ArrayList<String>();
 		//load up the list of files to be processed from the collection.spec
@@ -175,16 +175,17 @@ public class FileDocument implements Document {
 
 		@Override
 		public int read(char[] cbuf, int off, int len) throws IOException {
-			final int readChar = underlyingStream.read(cbuf,off,len);
-			if (abstractwritten<abstractlength) {
-				abstractText.append(cbuf, off, len);
-				abstractwritten++;
+			final int readCount = underlyingStream.read(cbuf,off,len);
+			if (readCount > 0 && abstractwritten<abstractlength) {
+				final int toWrite = Math.min(readCount, abstractlength - abstractwritten);
+				abstractText.append(cbuf, off, toWrite);
+				abstractwritten += toWrite;
 			}
-			if (readChar==-1)
+			if (readCount==-1)
 			{	
 				setProperty(abstractname, abstractText.toString());
 			}
-			return readChar;
+			return readCount;
 		}
 
 		@Override
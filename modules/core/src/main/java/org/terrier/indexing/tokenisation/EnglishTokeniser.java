@@ -75,12 +75,25 @@ public class EnglishTokeniser extends Tokeniser {
 	static final boolean LOWERCASE = Boolean.parseBoolean(ApplicationSetup.getProperty("lowercase", "true"));
 	static final int MAX_TERM_LENGTH = ApplicationSetup.MAX_TERM_LENGTH;
 	
+	/** Number of characters read from the underlying Reader at a time. */
+	static final int READ_BUFFER_SIZE = 256;
+	
+	/** Reads the Reader in bulk into a character buffer, and builds each
+	 * token in a second, reused buffer. A String is only created for tokens
+	 * that pass the checks of this tokeniser.
+	 */
 	static class EnglishTokenStream extends TokenStream
 	{
 		int ch;
 		boolean eos = false;
 		int counter = 0;
 		Reader br;
+		/** characters read from br, but not yet consumed */
+		final char[] readBuffer;
+		int readPos = 0;
+		int readLength = 0;
+		/** the current token */
+		final char[] termBuffer = new char[MAX_TERM_LENGTH];
 
 		public EnglishTokenStream(Reader _br)
 		{
@@ -88,6 +101,11 @@ public class EnglishTokeniser extends Tokeniser {
 			if (this.br == null)
 			{
 				this.eos = true;
+				this.readBuffer = null;
+			}
+			else
+			{
+				this.readBuffer = new char[READ_BUFFER_SIZE];
 			}
 		}
 		
@@ -96,42 +114,53 @@ public class EnglishTokeniser extends Tokeniser {
 			return ! eos;
 		}
 		
+		/** returns the next character, or -1 at the end of the stream */
+		final int read() throws IOException
+		{
+			if (readPos == readLength)
+			{
+				readPos = 0;
+				readLength = br.read(readBuffer, 0, readBuffer.length);
+				if (readLength <= 0)
+				{
+					readLength = 0;
+					return -1;
+				}
+			}
+			return readBuffer[readPos++];
+		}
+		
 		@Override
 		public String next() 
 		{
 			try{
-				ch = this.br.read();
+				ch = read();
 				while(ch != -1)
 				{			
 					/* skip non-alphanumeric charaters */
-					while (ch != -1 && (ch < 'A' || ch > 'Z') && (ch < 'a' || ch > 'z')
-						&& (ch < '0' || ch > '9') 
-						 /* removed by Craig: && ch != '<' && ch != '&' */
-					) 
+					while (ch != -1 && ! isAlphaNumeric(ch)) 
 					{
-						ch = br.read();
+						ch = read();
 						counter++;
 					}
-					final StringBuilder sw = new StringBuilder(MAX_TERM_LENGTH);
+					int length = 0;
 					//now accept all alphanumeric charaters
-					while (ch != -1 && (
-						((ch >= 'A') && (ch <= 'Z'))
-						|| ((ch >= 'a') && (ch <= 'z'))
-						|| ((ch >= '0') && (ch <= '9'))))
+					while (ch != -1 && isAlphaNumeric(ch))
 					{
 						/* add character to word so far */
-						sw.append((char)ch);
-						ch = br.read();
+						if (length < termBuffer.length)
+							termBuffer[length] = (char)ch;
+						length++;
+						ch = read();
 						counter++;
 					}
-					if (sw.length() > MAX_TERM_LENGTH)
+					if (length > MAX_TERM_LENGTH)
 						if (DROP_LONG_TOKENS)
 							return null;
 						else
-							sw.setLength(MAX_TERM_LENGTH);
-					String s = check(sw.toString());
-					if (s.length() > 0)
-						return s;
+							length = MAX_TERM_LENGTH;
+					if (length > 0 && check(termBuffer, length))
+						return new String(termBuffer, 0, length);
 				}
 				eos = true;
 				return null;
@@ -142,6 +171,13 @@ public class EnglishTokeniser extends Tokeniser {
 		
 	}
 	
+	static boolean isAlphaNumeric(final int ch)
+	{
+		return ((ch >= 'A') && (ch <= 'Z'))
+			|| ((ch >= 'a') && (ch <= 'z'))
+			|| ((ch >= '0') && (ch <= '9'));
+	}
+	
 	@Override
 	public TokenStream tokenise(final Reader reader) {
 		return new EnglishTokenStream(reader);
@@ -182,4 +218,40 @@ public class EnglishTokeniser extends Tokeniser {
 		return LOWERCASE ? StringTools.toLowerCase(s) : s;
 	}
 
+	/**
+	 * Checks the alphanumeric term held in the first length characters of
+	 * buffer, as {@link #check(String)}. If the term is valid and lowercasing
+	 * is enabled, the term is lowercased in place.
+	 * @param buffer the characters of the term
+	 * @param length the length of the term
+	 * @return true if the term is valid
+	 */
+	static boolean check(final char[] buffer, final int length) {
+		int counter = 0;
+		int counterdigit = 0;
+		int ch = -1;
+		int chNew = -1;
+		for(int i=0;i<length;i++)
+		{
+			chNew = buffer[i];
+			if (chNew >= 48 && chNew <= 57)//0 to 9
+				counterdigit++;
+			if (ch == chNew)
+				counter++;
+			else
+				counter = 1;
+			ch = chNew;
+			/* if it contains more than 3 consecutive same letters,
+			   or more than 4 digits, then discard the term. */
+			if (counter > maxNumOfSameConseqLettersPerTerm
+				|| counterdigit > maxNumOfDigitsPerTerm)
+				return false;
+		}
+		if (LOWERCASE)
+			for(int i=0;i<length;i++)
+				if (buffer[i] >= 'A' && buffer[i] <= 'Z')
+					buffer[i] += 'a' - 'A';
+		return true;
+	}
+
 }
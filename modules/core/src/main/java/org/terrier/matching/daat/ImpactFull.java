@@ -0,0 +1,106 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ImpactFull.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.matching.daat;
+
+import org.terrier.matching.PostingListManager;
+import org.terrier.structures.Index;
+import org.terrier.structures.postings.ImpactPosting;
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * Document-at-a-time matching for impact indices, i.e. indices where each posting 
+ * records a precomputed and quantised score (see {@link ImpactPosting}) rather than
+ * a term frequency. The score of a document is the sum of the impacts of its postings
+ * (multiplied by the query term weights), such that no weighting model is invoked and
+ * no document lengths are looked up. Impacts are mapped back to the scores of the weighting 
+ * model that created them using the <tt>index.inverted.impact.scale</tt> index property.
+ * Posting lists that do not provide impacts (e.g. those of synonym or phrase operators) 
+ * are scored using their weighting models, as for {@link Full}. Queries mixing both kinds of
+ * posting lists are rejected if the index does not record the scale of its impacts. Impact indices can be created from an existing index using
+ * the <tt>impactindex</tt> command, i.e. <tt>org.terrier.structures.indexing.ImpactIndexBuilder</tt>.
+ * 
+ * @since 5.2
+ */
+public class ImpactFull extends Full {
+
+	/** impact postings for each term, or null if a term's postings do not have impacts */
+	protected ImpactPosting[] impactPostings;
+	/** query weight of each term, multiplied by the impact scale */
+	protected double[] keyFrequencies;
+	/** the score of an impact of one, or NaN if the index does not record it */
+	protected final double impactScale;
+	
+	/** Create a new Matching instance based on the specified index */
+	public ImpactFull(Index index) {
+		super(index);
+		final String scale = index.getIndexProperty("index.inverted.impact.scale", null);
+		impactScale = scale != null ? Double.parseDouble(scale) : Double.NaN;
+	}
+	
+	@Override
+	protected void initialisePostings(PostingListManager plm) {
+		super.initialisePostings(plm);
+		impactPostings = new ImpactPosting[plm.size()];
+		keyFrequencies = new double[plm.size()];
+		int nonImpact = 0;
+		for(int i=0;i<plm.size();i++)
+		{
+			IterablePosting ip = plm.getPosting(i);
+			if (ip instanceof ImpactPosting)
+				impactPostings[i] = (ImpactPosting) ip;
+			else
+				nonImpact++;
+			keyFrequencies[i] = plm.getKeyFrequency(i) * (Double.isNaN(impactScale) ? 1d : impactScale);
+		}
+		if (nonImpact > 0)
+		{
+			if (nonImpact < plm.size() && Double.isNaN(impactScale))
+				throw new IllegalArgumentException("Cannot match a query mixing impact and non-impact posting lists: " 
+					+ "index.inverted.impact.scale is not set for this index");
+			logger.debug(nonImpact + " posting lists do not have impacts, and will be scored by weighting models");
+		}
+	}
+
+	@Override
+	protected void assignScore(final int i, CandidateResult cc) {
+		final ImpactPosting ip = impactPostings[i];
+		if (ip == null)
+		{
+			cc.updateScore(plm.score(i));
+		}
+		else
+		{
+			cc.updateScore(keyFrequencies[i] * ip.getImpact());
+		}
+		cc.updateOccurrence((i < 16) ? (short)(1 << i) : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getInfo() {
+		return "daat.ImpactFull";
+	}
+}
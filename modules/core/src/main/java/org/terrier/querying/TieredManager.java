@@ -0,0 +1,369 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TieredManager.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.querying;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.MatchingQueryTerms.QueryTermProperties;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.matchops.MultiTermOp;
+import org.terrier.matching.matchops.Operator;
+import org.terrier.matching.matchops.SingleTermOp;
+import org.terrier.querying.parser.Query;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PrunedLexiconEntry;
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * A Manager that retrieves from two tiers of indices. Each query is first evaluated on a small
+ * first-tier index (for instance, a statically pruned index created by the <tt>prune</tt> command,
+ * or an index of the documents with the highest static prior), and is evaluated again on the full
+ * index only when the first tier cannot answer it:
+ * <ul>
+ * <li>when fewer than <tt>tiered.min.results</tt> documents were retrieved from the first tier (default 10), or</li>
+ * <li>when the first tier is a pruned index, and the postings that were pruned could change the top 
+ * <tt>tiered.min.results</tt> documents. The lexicon of the pruned index records the largest absolute score
+ * of the pruned postings of each term, such that the score that any document could obtain or lose from the 
+ * pruned postings is bounded. The first tier answers the query if the lowest score that its k-th document 
+ * could have on the full index is not smaller than the highest score that any other document could have, 
+ * i.e. the first tier retrieves the same top k documents as the full index, although their order and scores may differ. This check can be disabled by 
+ * setting <tt>tiered.guarantee</tt> to false, such that the first tier answers all queries for which it retrieves 
+ * enough documents.</li>
+ * </ul>
+ * The bound assumes that the query is scored by the weighting model used for pruning, and that scores grow at 
+ * most linearly with the weight of a query term. Queries scored by another weighting model, or with 
+ * operators other than terms are checked on the full index if any of their postings were pruned. Queries 
+ * containing operators other than terms, phrases, synonyms and windows are always checked on the full index 
+ * when the first tier is a pruned index. The properties are read when the TieredManager is created. The tier that answered each query is 
+ * recorded in the <tt>tiered.tier</tt> control of the request (first or full).
+ * <p>
+ * As a pruned first tier has the same docids as the full index, documents deleted from the full index 
+ * (see {@link DeletedDocuments}) are not retrieved from the first tier either.
+ * <p>
+ * A TieredManager can be obtained from {@link ManagerFactory} using an IndexRef of the form 
+ * <tt>tiered:/path/to/first.properties,/path/to/full.properties</tt>. If the location of the full index
+ * is omitted, then the original index recorded by the pruning of the first tier is used.
+ * @since 5.2
+ */
+public class TieredManager implements Manager {
+	
+	/** prefix of the IndexRefs supported by this Manager */
+	public static final String PREFIX = "tiered:";
+	
+	public static class Builder implements ManagerFactory.Builder
+	{
+		@Override
+		public boolean supports(IndexRef ref) {
+			return ref.toString().startsWith(PREFIX);
+		}
+
+		@Override
+		public Manager fromIndex(IndexRef ref) {
+			String[] locations = ref.toString().substring(PREFIX.length()).split(",");
+			Index first = IndexFactory.of(IndexRef.of(locations[0]));
+			if (first == null)
+				throw new IllegalArgumentException("Could not load first tier index " + locations[0]);
+			String fullLocation = locations.length > 1 
+					? locations[1] 
+					: first.getIndexProperty("index.pruning.source", null);
+			if (fullLocation == null)
+				throw new IllegalArgumentException("No full index specified for tiered index " + ref.toString());
+			if (! fullLocation.endsWith(".properties"))
+				fullLocation += ".properties";
+			Index full = IndexFactory.of(IndexRef.of(fullLocation));
+			if (full == null)
+				throw new IllegalArgumentException("Could not load full index " + fullLocation);
+			return new TieredManager(new LocalManager(first), new LocalManager(full), ref);
+		}
+	}
+	
+	protected static final Logger logger = LoggerFactory.getLogger(TieredManager.class);
+	
+	protected final LocalManager firstTier;
+	protected final LocalManager fullTier;
+	protected final IndexRef ref;
+	/** is the first tier a pruned index */
+	protected final boolean firstTierPruned;
+	/** the weighting model used to prune the first tier, if known */
+	protected final String pruningModel;
+	/** minimum number of documents retrieved by the first tier, i.e. the number of top-ranked documents to guarantee */
+	protected final int minResults;
+	/** should the top-ranked documents of a pruned first tier be guaranteed */
+	protected final boolean guarantee;
+	
+	protected final AtomicLong queries = new AtomicLong();
+	protected final AtomicLong fallbacks = new AtomicLong();
+	
+	/** Construct a TieredManager using the specified managers. The IndexRef of this manager 
+	 * refers to the indices of both managers. */
+	public TieredManager(LocalManager _firstTier, LocalManager _fullTier)
+	{
+		this(_firstTier, _fullTier, 
+			IndexRef.of(PREFIX + _firstTier.getIndexRef().toString() + "," + _fullTier.getIndexRef().toString()));
+	}
+	
+	protected TieredManager(LocalManager _firstTier, LocalManager _fullTier, IndexRef _ref)
+	{
+		this.firstTier = _firstTier;
+		this.fullTier = _fullTier;
+		this.ref = _ref;
+		this.firstTierPruned = firstTier.getIndex().getIndexProperty("index.pruning.strategy", null) != null;
+		this.pruningModel = firstTier.getIndex().getIndexProperty("index.pruning.model", null);
+		this.minResults = Integer.parseInt(ApplicationSetup.getProperty("tiered.min.results", "10"));
+		this.guarantee = Boolean.parseBoolean(ApplicationSetup.getProperty("tiered.guarantee", "true"));
+		if (firstTierPruned && firstTier.getIndex() instanceof IndexOnDisk)
+			// the pruned first tier has the docids of the full tier, and hence its deleted documents
+			DeletedDocuments.share(fullTier.getIndex(), (IndexOnDisk) firstTier.getIndex());
+	}
+	
+	@Override
+	public SearchRequest newSearchRequest() {
+		return firstTier.newSearchRequest();
+	}
+
+	@Override
+	public SearchRequest newSearchRequest(String QueryID) {
+		return firstTier.newSearchRequest(QueryID);
+	}
+
+	@Override
+	public SearchRequest newSearchRequest(String QueryID, String query) {
+		return firstTier.newSearchRequest(QueryID, query);
+	}
+
+	@Override
+	public SearchRequest newSearchRequestFromQuery(String query) {
+		return firstTier.newSearchRequestFromQuery(query);
+	}
+
+	@Override
+	public void setProperty(String key, String value) {
+		firstTier.setProperty(key, value);
+		fullTier.setProperty(key, value);
+	}
+
+	@Override
+	public void setProperties(Properties p) {
+		firstTier.setProperties(p);
+		fullTier.setProperties(p);
+	}
+	
+	@Override
+	public IndexRef getIndexRef() {
+		return ref;
+	}
+	
+	/** Returns the manager of the first tier */
+	public LocalManager getFirstTier() {
+		return firstTier;
+	}
+
+	/** Returns the manager of the full tier */
+	public LocalManager getFullTier() {
+		return fullTier;
+	}
+	
+	/** Returns the number of queries run by this manager */
+	public long getNumberOfQueries() {
+		return queries.get();
+	}
+	
+	/** Returns the number of queries that were run on the full tier */
+	public long getNumberOfFallbacks() {
+		return fallbacks.get();
+	}
+
+	@Override
+	public void runSearchRequest(SearchRequest srq) {
+		final Request rq = (Request)srq;
+		final Request original = copy(rq);
+		queries.incrementAndGet();
+		
+		rq.setIndex(firstTier.getIndex());
+		firstTier.runSearchRequest(rq);
+		if (answeredByFirstTier(rq))
+		{
+			rq.setControl("tiered.tier", "first");
+			return;
+		}
+		
+		fallbacks.incrementAndGet();
+		logger.debug("Query " + rq.getQueryID() + " could not be answered by the first tier, using the full tier");
+		restore(rq, original);
+		rq.setIndex(fullTier.getIndex());
+		fullTier.runSearchRequest(rq);
+		rq.setControl("tiered.tier", "full");
+	}
+	
+	/** Returns true if the results obtained from the first tier can be used to answer the specified request */
+	protected boolean answeredByFirstTier(Request rq)
+	{
+		final ResultSet rs = rq.getResultSet();
+		if (rs == null || rs.getResultSize() < minResults)
+			return false;
+		if (firstTierPruned && guarantee)
+			return isTopRankedComplete(rq.getMatchingQueryTerms(), rs);
+		return true;
+	}
+	
+	/** Returns true if the pruned postings of the query terms cannot change the top-ranked 
+	 * <tt>tiered.min.results</tt> documents retrieved from the first tier. */
+	protected boolean isTopRankedComplete(MatchingQueryTerms mqt, ResultSet rs)
+	{
+		if (mqt == null)
+			return false;
+		//sum and minimum of the bounds of each term
+		double bound = 0;
+		double minBound = Double.POSITIVE_INFINITY;
+		for(Map.Entry<Operator, QueryTermProperties> e : mqt)
+		{
+			final double termBound = getPrunedScoreBound(e.getKey(), e.getValue());
+			if (Double.isInfinite(termBound))
+				return false;
+			bound += termBound;
+			minBound = Math.min(minBound, termBound);
+		}
+		if (bound == 0 || minResults <= 0)
+			return true;
+		final double[] scores = rs.getScores();
+		//a retrieved document matched at least one term in the first tier, which was not pruned for it
+		final double retrievedBound = bound - minBound;
+		final double minKthScore = scores[minResults-1] - retrievedBound;
+		//a document not retrieved by the first tier can only obtain the scores of pruned postings
+		double maxOtherScore = bound;
+		if (rs.getResultSize() > minResults)
+			maxOtherScore = Math.max(maxOtherScore, scores[minResults] + retrievedBound);
+		return minKthScore >= maxOtherScore;
+	}
+	
+	/** Returns an upper bound on the absolute score that a document can obtain from the postings of the
+	 * specified query term that were pruned from the first tier, or positive infinity if no bound 
+	 * can be obtained. */
+	protected double getPrunedScoreBound(Operator op, QueryTermProperties qtp)
+	{
+		//negated terms cannot be checked on a pruned index
+		if (qtp.required != null && ! qtp.required)
+			return isComplete(op) ? 0 : Double.POSITIVE_INFINITY;
+		if (! (op instanceof SingleTermOp))
+			return isComplete(op) ? 0 : Double.POSITIVE_INFINITY;
+		final String term = ((SingleTermOp)op).getTerm();
+		final LexiconEntry le = firstTier.getIndex().getLexicon().getLexiconEntry(term);
+		if (le == null)
+			//all postings of the term were pruned
+			return fullTier.getIndex().getLexicon().getLexiconEntry(term) != null ? Double.POSITIVE_INFINITY : 0;
+		if (le.getNumberOfEntries() >= le.getDocumentFrequency())
+			return 0;
+		if (! (le instanceof PrunedLexiconEntry) || pruningModel == null 
+				|| qtp.termModels.size() != 1 || ! pruningModel.equals(qtp.termModels.get(0).getInfo()))
+			return Double.POSITIVE_INFINITY;
+		return Math.max(1d, qtp.getWeight()) * ((PrunedLexiconEntry)le).getPrunedScoreBound();
+	}
+	
+	/** Returns true if no posting of any of the terms of the specified operator was pruned 
+	 * from the first tier. */
+	protected boolean isComplete(Operator op)
+	{
+		final List<String> terms = new ArrayList<>();
+		if (! getTerms(op, terms))
+			return false;
+		final Lexicon<String> firstLex = firstTier.getIndex().getLexicon();
+		final Lexicon<String> fullLex = fullTier.getIndex().getLexicon();
+		for(String term : terms)
+		{
+			LexiconEntry le = firstLex.getLexiconEntry(term);
+			if (le == null)
+			{
+				//all postings of the term were pruned
+				if (fullLex.getLexiconEntry(term) != null)
+					return false;
+			}
+			else if (le.getNumberOfEntries() < le.getDocumentFrequency())
+				return false;
+		}
+		return true;
+	}
+	
+	/** Adds the terms of the specified operator to the list. Returns false if an operator
+	 * that does not consist of terms is found */
+	static boolean getTerms(Operator op, List<String> terms)
+	{
+		if (op instanceof SingleTermOp)
+		{
+			terms.add(((SingleTermOp)op).getTerm());
+			return true;
+		}
+		if (op instanceof MultiTermOp)
+		{
+			for(Operator child : ((MultiTermOp)op).getConstituents())
+				if (! getTerms(child, terms))
+					return false;
+			return true;
+		}
+		return false;
+	}
+	
+	/** Records the state of the request before it is run, such that it can be run again */
+	static Request copy(Request rq)
+	{
+		Request copy = new Request();
+		copy.QueryID = rq.QueryID;
+		copy.EmptyQuery = rq.EmptyQuery;
+		copy.originalQuery = rq.originalQuery;
+		copy.q = rq.q == null ? null : (Query) rq.q.clone();
+		copy.matchingTerms = rq.matchingTerms == null ? null : rq.matchingTerms.clone();
+		copy.resultSet = rq.resultSet;
+		copy.Control = new HashMap<String,String>(rq.Control);
+		copy.contextObjects = new HashMap<String,Object>(rq.contextObjects);
+		return copy;
+	}
+	
+	/** Restores the request to its recorded state */
+	static void restore(Request rq, Request copy)
+	{
+		rq.QueryID = copy.QueryID;
+		rq.EmptyQuery = copy.EmptyQuery;
+		rq.originalQuery = copy.originalQuery;
+		rq.q = copy.q;
+		rq.matchingTerms = copy.matchingTerms;
+		rq.resultSet = copy.resultSet;
+		rq.numOfDocsAfterFiltering = 0;
+		rq.Control = copy.Control;
+		rq.contextObjects = copy.contextObjects;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DeletedDocuments.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.structures;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.terrier.structures.postings.DeletedDocumentsIterablePosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+/**
+ * The documents deleted from an index, as a bitset over the docids of the index, stored
+ * as the <tt>deleted</tt> index structure. Deleted documents remain in the other structures
+ * of the index, including its statistics, but the posting lists of the inverted index 
+ * obtained from {@link Index#getInvertedIndex()} skip them - see {@link #filter(PostingIndex)}. 
+ * Hence, they are not retrieved by any matching strategy. Their postings are only
+ * reclaimed when the index is merged with another by the StructureMerger, which keeps 
+ * them as deleted placeholders, such that the docids of the documents do not change.
+ * <p>
+ * Deletions can be made while the index is being searched: {@link #isDeleted(int)} 
+ * does not lock, and a deletion becomes visible to searches shortly after {@link #delete(int)} 
+ * returns. Deletions made to an index on disk are persisted by {@link #write(IndexOnDisk)}.
+ * 
+ * @since 5.2
+ */
+public class DeletedDocuments {
+
+	/** name of the index structure */
+	public static final String STRUCTURE_NAME = "deleted";
+	/** extension of the file containing the bitset */
+	public static final String EXTENSION = ".bitset";
+
+	protected volatile long[] words;
+	protected int deleted;
+
+	/** Creates an empty set of deleted documents */
+	public DeletedDocuments() {
+		words = new long[0];
+	}
+
+	/** Loads the deleted documents of the specified index */
+	public DeletedDocuments(IndexOnDisk index, String structureName) throws IOException {
+		try (DataInputStream in = new DataInputStream(Files.openFileStream(getFilename(index, structureName)))) {
+			final long[] w = new long[in.readInt()];
+			for (int i = 0; i < w.length; i++)
+			{
+				w[i] = in.readLong();
+				deleted += Long.bitCount(w[i]);
+			}
+			words = w;
+		}
+	}
+
+	/** Returns true if the specified document has been deleted */
+	public final boolean isDeleted(int docid) {
+		final long[] w = words;
+		final int i = docid >>> 6;
+		return i < w.length && (w[i] & (1L << docid)) != 0;
+	}
+
+	/** Marks the specified document as deleted. Returns false if it was already deleted. */
+	public synchronized boolean delete(int docid) {
+		if (docid < 0)
+			throw new IllegalArgumentException("Invalid docid " + docid);
+		if (isDeleted(docid))
+			return false;
+		long[] w = words;
+		final int i = docid >>> 6;
+		if (i >= w.length)
+			w = Arrays.copyOf(w, Math.max(i + 1, w.length * 2));
+		w[i] |= 1L << docid;
+		deleted++;
+		// publish the deletion
+		words = w;
+		return true;
+	}
+
+	/** Marks as deleted all documents deleted in the specified set */
+	public synchronized void deleteAll(DeletedDocuments other) {
+		for (int docid = other.nextDeleted(0); docid != -1; docid = other.nextDeleted(docid + 1))
+			delete(docid);
+	}
+
+	/** Returns the first deleted docid no smaller than the specified docid, or -1 if there is none */
+	public int nextDeleted(int docid) {
+		final long[] w = words;
+		int i = docid >>> 6;
+		if (i >= w.length)
+			return -1;
+		long word = w[i] & (-1L << docid);
+		while (word == 0)
+		{
+			if (++i == w.length)
+				return -1;
+			word = w[i];
+		}
+		return (i << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/** Returns the number of deleted documents */
+	public synchronized int getNumberOfDeletedDocuments() {
+		return deleted;
+	}
+
+	/** Returns a copy of the documents deleted so far */
+	public synchronized DeletedDocuments copy() {
+		final DeletedDocuments rtr = new DeletedDocuments();
+		rtr.words = words.clone();
+		rtr.deleted = deleted;
+		return rtr;
+	}
+
+	/** Writes the deleted documents to the specified index, adding the <tt>deleted</tt> 
+	 * structure to the index if necessary. */
+	public synchronized void write(IndexOnDisk index) throws IOException {
+		final long[] w = words;
+		try (DataOutputStream out = new DataOutputStream(Files.writeFileStream(getFilename(index, STRUCTURE_NAME)))) {
+			out.writeInt(w.length);
+			for (long word : w)
+				out.writeLong(word);
+		}
+		if (! index.hasIndexStructure(STRUCTURE_NAME))
+		{
+			index.addIndexStructure(STRUCTURE_NAME, DeletedDocuments.class.getName(), 
+				"org.terrier.structures.IndexOnDisk,java.lang.String", "index,structureName");
+			index.flush();
+		}
+	}
+
+	/** A posting index whose posting lists skip the deleted documents */
+	protected static class FilteredPostingIndex<P extends Pointer> implements PostingIndex<P>
+	{
+		final PostingIndex<P> parent;
+		final DeletedDocuments deleted;
+
+		FilteredPostingIndex(PostingIndex<P> _parent, DeletedDocuments _deleted)
+		{
+			parent = _parent;
+			deleted = _deleted;
+		}
+
+		@Override
+		public IterablePosting getPostings(Pointer pointer) throws IOException {
+			return DeletedDocumentsIterablePosting.of(parent.getPostings(pointer), deleted);
+		}
+
+		@Override
+		public void close() throws IOException {
+			parent.close();
+		}
+	}
+
+	/** Returns a posting index whose posting lists skip the documents deleted so far 
+	 * and in future, or null if the specified posting index is null */
+	public <P extends Pointer> PostingIndex<P> filter(PostingIndex<P> postings) {
+		if (postings == null)
+			return null;
+		return new FilteredPostingIndex<P>(postings, this);
+	}
+
+	protected static String getFilename(IndexOnDisk index, String structureName) {
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + structureName + EXTENSION;
+	}
+
+	/** Returns the deleted documents of the specified index, or null if no documents 
+	 * have been deleted from it. */
+	public static DeletedDocuments of(Index index) {
+		final Object rtr;
+		if (index instanceof IndexOnDisk)
+		{
+			if (! index.hasIndexStructure(STRUCTURE_NAME))
+			{
+				// deletions may be shared from another index - see share()
+				final Index source = ((IndexOnDisk) index).deletedDocumentsSource;
+				return source == null ? null : of(source);
+			}
+			else
+				// the structure must only be loaded once, as deletions are made to the loaded instance
+				synchronized (index) {
+					rtr = index.getIndexStructure(STRUCTURE_NAME);
+				}
+		}
+		else
+			rtr = index.getIndexStructure(STRUCTURE_NAME);
+		return rtr instanceof DeletedDocuments ? (DeletedDocuments) rtr : null;
+	}
+
+	/** Makes the posting lists of an index that has the same docids as another index, 
+	 * such as a pruned index, skip the documents deleted from the other index, including
+	 * those deleted after this call. Should be called once, before the target index is searched.
+	 * @param source index whose deleted documents are shared
+	 * @param target index without deleted documents of its own
+	 */
+	public static void share(Index source, IndexOnDisk target) {
+		if (source != target)
+			target.deletedDocumentsSource = source;
+	}
+
+	/** Returns the deleted documents of the specified index, first adding an 
+	 * empty <tt>deleted</tt> structure to the index if it has none. */
+	public static DeletedDocuments create(IndexOnDisk index) throws IOException {
+		synchronized (index) {
+			if (! index.hasIndexStructure(STRUCTURE_NAME))
+				new DeletedDocuments().write(index);
+			return (DeletedDocuments) index.getIndexStructure(STRUCTURE_NAME);
+		}
+	}
+}
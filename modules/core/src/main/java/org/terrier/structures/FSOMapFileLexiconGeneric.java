@@ -197,7 +197,7 @@ public abstract class FSOMapFileLexiconGeneric<K1,K2 extends WritableComparable>
 	 * An iterator over the lexicon
 	 */
 	public abstract static class MapFileLexiconIterator<T1,T2 extends WritableComparable<?>> 
-		implements Iterator<Entry<String, LexiconEntry>>, Closeable
+		implements Iterator<Entry<String, LexiconEntry>>, Closeable, Skipable
 	{
 		protected Iterator<Entry<T2, LexiconEntry>> parent;
 		/**
@@ -270,6 +270,16 @@ public abstract class FSOMapFileLexiconGeneric<K1,K2 extends WritableComparable>
 			if (parent instanceof Closeable)
 				((Closeable)parent).close();
 		}
+		/** 
+		 * {@inheritDoc} 
+		 */
+		public void skip(int numEntries) throws IOException {
+			if (numEntries == 0)
+				return;
+			if (! (parent instanceof Skipable))
+				throw new UnsupportedOperationException("Skipping not supported");
+			((Skipable)parent).skip(numEntries);
+		}
 	}
 	
 	/** Iterate through the values in order */
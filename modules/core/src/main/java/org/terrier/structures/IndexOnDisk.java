@@ -58,6 +58,9 @@ public class IndexOnDisk extends Index {
 	/** Cache of all opened index structures, but not input streams */
 	protected final HashMap<String, Object> structureCache = new HashMap<String, Object>(
 			10);
+	/** Another index with the same docids, whose deleted documents this index also skips, 
+	 * or null - see {@link DeletedDocuments#share(Index, IndexOnDisk)} */
+	protected volatile Index deletedDocumentsSource = null;
 
 	/** Set to true if loading an index succeeds */
 	protected boolean loadSuccess = true;
@@ -222,9 +225,14 @@ public class IndexOnDisk extends Index {
 		return loadIndexStructure(structureName + "-inputstream");
 	}
 
+	/** {@inheritDoc} 
+	 * If documents have been deleted from this index, its posting lists skip them - 
+	 * see {@link DeletedDocuments}. The <tt>inverted</tt> structure includes all documents. */
 	@Override
 	public PostingIndex<?> getInvertedIndex() {
-		return (PostingIndex<?>) getIndexStructure("inverted");
+		final PostingIndex<?> inverted = (PostingIndex<?>) getIndexStructure("inverted");
+		final DeletedDocuments deleted = DeletedDocuments.of(this);
+		return deleted == null ? inverted : deleted.filter(inverted);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -0,0 +1,177 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is PrunedLexiconEntry.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+
+/** A lexicon entry for a statically pruned index. The statistics of the term (document frequency, 
+ * frequency, field frequencies) are those of the original unpruned index, such that scores obtained
+ * on the pruned index are comparable to those of the original index, while the pointer records the
+ * (smaller) number of postings actually retained in the pruned posting list, and the largest absolute score
+ * (according to the weighting model used for pruning) of the postings that were not retained.
+ * @see org.terrier.structures.pruning.IndexPruner
+ * @since 5.2
+ */
+public class PrunedLexiconEntry extends FieldLexiconEntry {
+	private static final long serialVersionUID = 1L;
+	
+	/** 
+	 * Factory for creating PrunedLexiconEntry objects
+	 */
+	public static class Factory implements FixedSizeWriteableFactory<LexiconEntry>
+	{	
+		protected int fieldCount;
+		/**
+		 * Constructs an instance of Factory for an index without fields.
+		 */
+		public Factory()
+		{
+			this(0);
+		}
+		/**
+		 * Constructs an instance of Factory.
+		 * @param _fieldCount number of fields
+		 */
+		public Factory(int _fieldCount)
+		{
+			this.fieldCount = _fieldCount;
+		}
+		/**
+		 * Constructs an instance of Factory.
+		 * @param _fieldCount number of fields
+		 */
+		public Factory(String _fieldCount)
+		{
+			this(Integer.parseInt(_fieldCount));
+		}
+		/** 
+		 * {@inheritDoc} 
+		 */
+		public int getSize() {
+			return (5*4) + 8 + 1 + this.fieldCount * 4 + 4;
+		}
+		/** 
+		 * {@inheritDoc} 
+		 */
+		public LexiconEntry newInstance() {
+			return new PrunedLexiconEntry(fieldCount);
+		}
+	}
+	
+	/** the number of postings in the pruned posting list */
+	public int entries;
+	/** the largest absolute score of the postings that were not retained, 0 if all were retained */
+	public float prunedScoreBound;
+	
+	/** Create an empty PrunedLexiconEntry with the specified number of fields */
+	public PrunedLexiconEntry(int fieldCount)
+	{
+		super(fieldCount);
+	}
+	
+	/** Create a PrunedLexiconEntry with the same statistics as the specified original entry. The
+	 * pointer is not copied. */
+	public PrunedLexiconEntry(EntryStatistics original, int fieldCount)
+	{
+		super(fieldCount);
+		this.termId = original.getTermId();
+		this.n_t = original.getDocumentFrequency();
+		this.TF = original.getFrequency();
+		this.maxtf = original.getMaxFrequencyInDocuments();
+		if (fieldCount > 0 && original instanceof FieldEntryStatistics)
+			setFieldFrequencies(((FieldEntryStatistics)original).getFieldFrequencies());
+	}
+
+	/** 
+	 * {@inheritDoc} 
+	 */
+	@Override
+	public int getNumberOfEntries() {
+		return entries;
+	}
+	
+	/** 
+	 * {@inheritDoc} 
+	 */
+	@Override
+	public void setNumberOfEntries(int n) {
+		entries = n;
+	}
+	
+	/** 
+	 * {@inheritDoc} 
+	 */
+	@Override
+	public void setBitIndexPointer(BitIndexPointer pointer) {
+		entries = pointer.getNumberOfEntries();
+		setOffset(pointer);
+		startBitOffset += (byte)(pointer.getFileNumber() << FILE_SHIFT);
+	}
+	
+	/** 
+	 * {@inheritDoc} 
+	 */
+	@Override
+	public void setPointer(Pointer p) {
+		entries = p.getNumberOfEntries();
+		startOffset = ((BitIndexPointer)p).getOffset();
+		startBitOffset = ((BitIndexPointer)p).getOffsetBits();
+	}
+
+	/** Returns the largest absolute score of the postings of the original index that were not retained, 
+	 * with a query term weight of 1. This is 0 if all postings were retained. */
+	public float getPrunedScoreBound() {
+		return prunedScoreBound;
+	}
+	
+	/** Sets the largest absolute score of the postings of the original index that were not retained */
+	public void setPrunedScoreBound(float bound) {
+		prunedScoreBound = bound;
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		super.readFields(in);
+		entries = in.readInt();
+		prunedScoreBound = in.readFloat();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeInt(entries);
+		out.writeFloat(prunedScoreBound);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " entries=" + entries + " prunedScoreBound=" + prunedScoreBound;
+	}
+}
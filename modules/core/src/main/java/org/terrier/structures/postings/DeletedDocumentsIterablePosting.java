@@ -0,0 +1,277 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is DeletedDocumentsIterablePosting.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.postings;
+
+import java.io.IOException;
+
+import org.terrier.structures.DeletedDocuments;
+
+/** This class takes an IterablePosting list, and skips the postings of the documents
+ * marked in a {@link DeletedDocuments}. Use {@link #of(IterablePosting, DeletedDocuments)}
+ * to obtain an instance that implements the same posting interfaces (fields, blocks, impacts)
+ * as the wrapped posting list.
+ * <p>
+ * {@link #endOfPostings()} is exact: it returns true if all remaining postings are deleted.
+ * To find out, it advances the wrapped posting list to the next posting that is not deleted, 
+ * after saving the current posting, which is then returned by the getters.
+ * @since 5.2
+ */
+public class DeletedDocumentsIterablePosting implements IterablePosting {
+
+	protected final IterablePosting parent;
+	protected final DeletedDocuments deleted;
+	/** the id of the current posting, -1 before the first */
+	protected int currentId = -1;
+	/** true if the parent is positioned ahead of the current posting, at the lookahead */
+	protected boolean ahead = false;
+	/** the id of the next posting that is not deleted, or EOL, when ahead */
+	protected int lookahead;
+	/** the current posting, as saved when the parent was advanced ahead of it */
+	protected WritablePosting saved;
+	protected int savedFrequency;
+	protected int savedDocumentLength;
+
+	protected DeletedDocumentsIterablePosting(IterablePosting _parent, DeletedDocuments _deleted)
+	{
+		this.parent = _parent;
+		this.deleted = _deleted;
+	}
+
+	/** advances the parent to its next posting that is not deleted */
+	protected int nextNotDeleted() throws IOException {
+		int id = parent.next();
+		while (id != EOL && deleted.isDeleted(id))
+			id = parent.next();
+		return id;
+	}
+
+	/** saves the current posting of the parent, before the parent is advanced */
+	protected void save() {
+		saved = parent.asWritablePosting();
+		savedFrequency = parent.getFrequency();
+		savedDocumentLength = parent.getDocumentLength();
+	}
+
+	@Override
+	public int next() throws IOException {
+		if (ahead)
+		{
+			ahead = false;
+			return currentId = lookahead;
+		}
+		return currentId = nextNotDeleted();
+	}
+
+	@Override
+	public int next(int targetId) throws IOException {
+		if (ahead)
+		{
+			ahead = false;
+			if (lookahead == EOL || lookahead >= targetId)
+				return currentId = lookahead;
+		}
+		final int id = parent.next(targetId);
+		if (id != EOL && deleted.isDeleted(id))
+			return next();
+		return currentId = id;
+	}
+
+	@Override
+	public boolean endOfPostings() {
+		if (ahead)
+			return lookahead == EOL;
+		if (parent.endOfPostings())
+			return true;
+		if (currentId != -1)
+			save();
+		try {
+			lookahead = nextNotDeleted();
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+		ahead = true;
+		return lookahead == EOL;
+	}
+
+	@Override
+	public int getId() {
+		return ahead ? currentId : parent.getId();
+	}
+
+	@Override
+	public int getFrequency() {
+		return ahead ? savedFrequency : parent.getFrequency();
+	}
+
+	@Override
+	public int getDocumentLength() {
+		return ahead ? savedDocumentLength : parent.getDocumentLength();
+	}
+
+	@Override
+	public void setId(int id) {
+		if (! ahead)
+		{
+			parent.setId(id);
+			return;
+		}
+		currentId = id;
+		if (saved != null)
+			saved.setId(id);
+	}
+
+	@Override
+	public WritablePosting asWritablePosting() {
+		return ahead ? saved.asWritablePosting() : parent.asWritablePosting();
+	}
+
+	@Override
+	public void close() throws IOException {
+		parent.close();
+	}
+
+	@Override
+	public String toString() {
+		return ahead ? String.valueOf(saved) : parent.toString();
+	}
+
+	static class Field extends DeletedDocumentsIterablePosting implements FieldPosting
+	{
+		int[] savedFieldFrequencies;
+		int[] savedFieldLengths;
+
+		Field(IterablePosting _parent, DeletedDocuments _deleted) {
+			super(_parent, _deleted);
+		}
+
+		@Override
+		protected void save() {
+			super.save();
+			savedFieldFrequencies = ((FieldPosting) parent).getFieldFrequencies().clone();
+			savedFieldLengths = ((FieldPosting) parent).getFieldLengths().clone();
+		}
+
+		@Override
+		public int[] getFieldFrequencies() {
+			return ahead ? savedFieldFrequencies : ((FieldPosting) parent).getFieldFrequencies();
+		}
+
+		@Override
+		public int[] getFieldLengths() {
+			return ahead ? savedFieldLengths : ((FieldPosting) parent).getFieldLengths();
+		}
+
+		@Override
+		public void setFieldLengths(int[] newLengths) {
+			if (ahead)
+				savedFieldLengths = newLengths;
+			else
+				((FieldPosting) parent).setFieldLengths(newLengths);
+		}
+	}
+
+	static class Block extends DeletedDocumentsIterablePosting implements BlockPosting
+	{
+		int[] savedPositions;
+
+		Block(IterablePosting _parent, DeletedDocuments _deleted) {
+			super(_parent, _deleted);
+		}
+
+		@Override
+		protected void save() {
+			super.save();
+			savedPositions = ((BlockPosting) parent).getPositions().clone();
+		}
+
+		@Override
+		public int[] getPositions() {
+			return ahead ? savedPositions : ((BlockPosting) parent).getPositions();
+		}
+	}
+
+	static class BlockField extends Field implements BlockPosting
+	{
+		int[] savedPositions;
+
+		BlockField(IterablePosting _parent, DeletedDocuments _deleted) {
+			super(_parent, _deleted);
+		}
+
+		@Override
+		protected void save() {
+			super.save();
+			savedPositions = ((BlockPosting) parent).getPositions().clone();
+		}
+
+		@Override
+		public int[] getPositions() {
+			return ahead ? savedPositions : ((BlockPosting) parent).getPositions();
+		}
+	}
+
+	static class Impact extends DeletedDocumentsIterablePosting implements ImpactPosting
+	{
+		int savedImpact;
+
+		Impact(IterablePosting _parent, DeletedDocuments _deleted) {
+			super(_parent, _deleted);
+		}
+
+		@Override
+		protected void save() {
+			super.save();
+			savedImpact = ((ImpactPosting) parent).getImpact();
+		}
+
+		@Override
+		public int getImpact() {
+			return ahead ? savedImpact : ((ImpactPosting) parent).getImpact();
+		}
+	}
+
+	/** Returns a posting list that skips the deleted documents of the specified posting list,
+	 * or the posting list itself if either is null.
+	 * @param ip posting list to filter, may be null
+	 * @param deleted documents to skip, may be null
+	 */
+	public static IterablePosting of(IterablePosting ip, DeletedDocuments deleted)
+	{
+		if (ip == null || deleted == null)
+			return ip;
+		if (ip instanceof ImpactPosting)
+			return new Impact(ip, deleted);
+		final boolean fields = ip instanceof FieldPosting;
+		final boolean blocks = ip instanceof BlockPosting;
+		if (fields && blocks)
+			return new BlockField(ip, deleted);
+		if (fields)
+			return new Field(ip, deleted);
+		if (blocks)
+			return new Block(ip, deleted);
+		return new DeletedDocumentsIterablePosting(ip, deleted);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ImpactIterablePosting.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.postings.bit;
+
+import java.io.IOException;
+
+import org.terrier.compression.bit.BitIn;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.postings.ImpactPosting;
+
+/** Posting iterator class for impact posting lists, where the frequency of
+ * each posting has been replaced by a precomputed score, quantised to 
+ * {@link #IMPACT_BITS} bits. Docids are d-gapped and encoded with gamma, 
+ * while impacts are encoded in binary. The impact is also returned by 
+ * getFrequency().
+ * 
+ * @since 5.2
+ */
+@SuppressWarnings("serial")
+public class ImpactIterablePosting extends BasicIterablePosting implements ImpactPosting {
+	
+	/** number of bits used to record each impact */
+	public static final int IMPACT_BITS = 8;
+	/** largest impact that can be recorded */
+	public static final int MAX_IMPACT = (1 << IMPACT_BITS) - 1;
+	
+	/** Create a new posting iterator */
+	public ImpactIterablePosting(){}
+	
+	/** Create a new posting iterator
+	 * @param _bitFileReader BitIn to read the postings from
+	 * @param _numEntries number of postings in the list
+	 * @param _doi document index to use to satisfy getDocumentLength()
+	 * @throws IOException thrown in an IO exception occurs
+	 */
+	public ImpactIterablePosting(BitIn _bitFileReader, int _numEntries, DocumentIndex _doi) throws IOException {
+		super(_bitFileReader, _numEntries, _doi);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public int next() throws IOException {
+		if (numEntries <= 0)
+			return id = EOL;
+		numEntries--;
+		id = bitFileReader.readGamma() + id;
+		tf = bitFileReader.readBinary(IMPACT_BITS);
+		return id;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getImpact() {
+		return tf;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "ID(" + id + ") IMPACT(" + tf + ")";
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is CharTermPipeline.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.terms;
+
+/**
+ * A {@link TermPipeline} component that can also process a term held in a
+ * character buffer. Passing terms between such components as characters avoids
+ * creating a String for each intermediate form of the term - a String is
+ * then only created by the component that needs one, typically the end of the
+ * pipeline that adds the term to the index.
+ * <p>
+ * The buffer belongs to the caller, and is only valid for the duration of
+ * the call; implementations must not retain it, but may modify it.
+ * @since 5.2
+ */
+public interface CharTermPipeline extends TermPipeline
+{
+	/**
+	 * Processes the term contained in the first length characters of buffer,
+	 * and passes the output to the next pipeline component, if the term has
+	 * not been discarded.
+	 * @param buffer the characters of the term to process
+	 * @param length the length of the term
+	 */
+	void processTerm(char[] buffer, int length);
+
+	/**
+	 * Passes the term contained in the first length characters of buffer to
+	 * the next pipeline component - as characters if it is a CharTermPipeline,
+	 * or otherwise as a String.
+	 * @param next the next pipeline component
+	 * @param buffer the characters of the term
+	 * @param length the length of the term
+	 */
+	static void forward(final TermPipeline next, final char[] buffer, final int length)
+	{
+		if (next instanceof CharTermPipeline)
+			((CharTermPipeline)next).processTerm(buffer, length);
+		else
+			next.processTerm(new String(buffer, 0, length));
+	}
+}
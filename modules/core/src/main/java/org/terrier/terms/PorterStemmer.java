@@ -72,7 +72,7 @@ import java.io.*;
 * @since 3.0
 */
 
-public class PorterStemmer extends StemmerTermPipeline
+public class PorterStemmer extends StemmerTermPipeline implements CharTermPipeline
 {  
 	protected char[] b;
 	protected int i,     /* offset into b */
@@ -469,12 +469,91 @@ public class PorterStemmer extends StemmerTermPipeline
 	   }
 	}
 
+	/** Adds the characters of s to the word being stemmed. */
+	protected void add(String s)
+	{  final int sLen = s.length();
+	   if (i+sLen >= b.length)
+	   {  char[] new_b = new char[i+sLen+INC];
+	      for (int c = 0; c < i; c++) new_b[c] = b[c];
+	      b = new_b;
+	   }
+	   s.getChars(0, sLen, b, i);
+	   i += sLen;
+	}
+
 	/* Stemmer implementation */
 	/** {@inheritDoc} */
 	public String stem(String s) {
-		this.add(s.toCharArray(), s.length());
+		this.add(s);
 		this.stem();
 		return this.toString();
 	}
+	
+	/** 
+	 * Stems the given term and passes onto the next object in the term pipeline,
+	 * as characters if it is a {@link CharTermPipeline}.
+	 * @param t String the term to stem.
+	 */
+	@Override
+	public void processTerm(String t)
+	{
+		if (t == null)
+			return;
+		if (cache != null)
+		{
+			final String s = cache.get(t);
+			if (s != null)
+			{
+				forwardStem(s);
+				return;
+			}
+		}
+		this.add(t);
+		this.stem();
+		if (cache != null)
+			cache.put(t, this.toString());
+		CharTermPipeline.forward(next, b, i_end);
+	}
+
+	/** 
+	 * Stems the term in buffer and passes onto the next object in the term pipeline,
+	 * as characters if it is a {@link CharTermPipeline}.
+	 * @param buffer the characters of the term to stem.
+	 * @param length the length of the term.
+	 */
+	@Override
+	public void processTerm(char[] buffer, int length)
+	{
+		if (cache != null)
+		{
+			final String s = cache.get(buffer, length);
+			if (s != null)
+			{
+				forwardStem(s);
+				return;
+			}
+			final String t = new String(buffer, 0, length);
+			this.add(buffer, length);
+			this.stem();
+			cache.put(t, this.toString());
+		}
+		else
+		{
+			this.add(buffer, length);
+			this.stem();
+		}
+		CharTermPipeline.forward(next, b, i_end);
+	}
+	
+	/** Passes a cached stem onto the next object in the term pipeline, via the stemmer buffer */
+	protected void forwardStem(String s)
+	{
+		final int length = s.length();
+		if (length > b.length)
+			b = new char[length + INC];
+		s.getChars(0, length, b, 0);
+		i = 0;
+		CharTermPipeline.forward(next, b, length);
+	}
 }
 
@@ -0,0 +1,209 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is StemCache.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.terms;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * A bounded cache of the stems of terms. A single cache is shared by all instances
+ * of a given {@link StemmerTermPipeline} class, such that the pipelines of concurrent 
+ * indexing threads, or of successive queries, benefit from each others' stems.
+ * <p>
+ * The cache is direct-mapped: each term can only occupy the slot determined by its 
+ * hash code, and replaces whichever term previously occupied that slot. Slots are read 
+ * and written without locking - entries are immutable, so a reader sees either an 
+ * old or a new entry in full, and at worst a racing term is stemmed twice. 
+ * The numbers of hits and misses are counted, to permit the hit-rate to be monitored.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>stemmer.cache.size</tt> - the number of slots of the cache of each stemmer class,
+ * rounded up to a power of two. 0 disables caching. Defaults to 65536.</li>
+ * </ul>
+ * @since 5.2
+ */
+public class StemCache {
+
+	static final class Entry
+	{
+		final int hash;
+		final String term;
+		final String stem;
+		
+		Entry(int _hash, String _term, String _stem)
+		{
+			this.hash = _hash;
+			this.term = _term;
+			this.stem = _stem;
+		}
+	}
+	
+	static final Map<String,StemCache> caches = new ConcurrentHashMap<String,StemCache>();
+	
+	/** 
+	 * Returns the cache shared by all instances of the specified stemmer class, 
+	 * or null if caching is disabled. 
+	 */
+	public static StemCache getCache(Class<? extends Stemmer> stemmerClass)
+	{
+		final int size = Integer.parseInt(ApplicationSetup.getProperty("stemmer.cache.size", "65536"));
+		if (size <= 0)
+			return null;
+		return caches.computeIfAbsent(stemmerClass.getName(), k -> new StemCache(size));
+	}
+	
+	/** Returns the caches of all stemmer classes that have been used, keyed by class name */
+	public static Map<String,StemCache> getCaches()
+	{
+		return Collections.unmodifiableMap(caches);
+	}
+	
+	protected final Entry[] table;
+	protected final int mask;
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	
+	/** 
+	 * Constructs a new cache
+	 * @param size number of slots, rounded up to a power of two
+	 */
+	public StemCache(int size)
+	{
+		final int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << (size > 1 ? 1 : 0);
+		table = new Entry[capacity];
+		mask = capacity - 1;
+	}
+	
+	static int slot(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+	
+	/** 
+	 * Returns the stem of the specified term, or null if it is not in the cache 
+	 * @param term the unstemmed term
+	 */
+	public String get(String term)
+	{
+		final int hash = term.hashCode();
+		final Entry e = table[slot(hash) & mask];
+		if (e != null && e.hash == hash && e.term.equals(term))
+		{
+			hits.increment();
+			return e.stem;
+		}
+		misses.increment();
+		return null;
+	}
+	
+	/** 
+	 * Returns the stem of the term contained in the first length characters 
+	 * of buffer, or null if it is not in the cache 
+	 * @param buffer the characters of the unstemmed term
+	 * @param length the length of the term
+	 */
+	public String get(char[] buffer, int length)
+	{
+		//same as String.hashCode()
+		int hash = 0;
+		for(int i=0;i<length;i++)
+			hash = 31 * hash + buffer[i];
+		final Entry e = table[slot(hash) & mask];
+		if (e != null && e.hash == hash && equals(e.term, buffer, length))
+		{
+			hits.increment();
+			return e.stem;
+		}
+		misses.increment();
+		return null;
+	}
+	
+	static boolean equals(String term, char[] buffer, int length)
+	{
+		if (term.length() != length)
+			return false;
+		for(int i=0;i<length;i++)
+			if (term.charAt(i) != buffer[i])
+				return false;
+		return true;
+	}
+	
+	/** 
+	 * Records the stem of a term in the cache
+	 * @param term the unstemmed term
+	 * @param stem the stem of term
+	 */
+	public void put(String term, String stem)
+	{
+		final int hash = term.hashCode();
+		table[slot(hash) & mask] = new Entry(hash, term, stem);
+	}
+	
+	/** Returns the number of slots in this cache */
+	public int capacity()
+	{
+		return table.length;
+	}
+	
+	/** Returns the number of lookups that found a stem */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+	
+	/** Returns the number of lookups that did not find a stem */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+	
+	/** Returns the proportion of lookups that found a stem, or 0 if there were none */
+	public double getHitRate()
+	{
+		final long h = hits.sum();
+		final long total = h + misses.sum();
+		return total == 0 ? 0d : (double) h / (double) total;
+	}
+	
+	/** Empties the cache, and resets the counts of hits and misses */
+	public void clear()
+	{
+		Arrays.fill(table, null);
+		hits.reset();
+		misses.reset();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "StemCache(capacity=" + table.length + ", hits=" + getHits() + ", misses=" + getMisses() + ", hitrate=" + String.format("%.3f", getHitRate()) + ")";
+	}
+}
@@ -27,13 +27,18 @@
  */
 package org.terrier.terms;
 
-/** Abstract base class for Stemmers that are also TermPipeline instances
+/** Abstract base class for Stemmers that are also TermPipeline instances.
+ * Since 5.2, the stems of terms passing through the pipeline are recorded in a 
+ * {@link StemCache} shared by all instances of the same class - 
+ * see property <tt>stemmer.cache.size</tt>.
  * @since 3.0
  * @author Craig Macdonald and Giovanni Stilo
  */
 public abstract class StemmerTermPipeline implements Stemmer, TermPipeline {
 
 	protected TermPipeline next;
+	/** cache of stems shared by all instances of this class, or null if caching is disabled */
+	protected final StemCache cache = StemCache.getCache(this.getClass());
 	
 	protected StemmerTermPipeline()
 	{
@@ -56,7 +61,31 @@ public abstract class StemmerTermPipeline implements Stemmer, TermPipeline {
 	{
 		if (t == null)
 			return;
-		next.processTerm(stem(t));
+		next.processTerm(cachedStem(t));
+	}
+	
+	/**
+	 * Returns the stem of the given term, from the cache if possible.
+	 * @param t String the term to stem.
+	 * @return the stem of t
+	 */
+	protected String cachedStem(String t)
+	{
+		if (cache == null)
+			return stem(t);
+		String s = cache.get(t);
+		if (s == null)
+		{
+			s = stem(t);
+			cache.put(t, s);
+		}
+		return s;
+	}
+	
+	/** Returns the cache of stems used by this stemmer, or null if caching is disabled */
+	public StemCache getCache()
+	{
+		return cache;
 	}
 	
     /**
@@ -32,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gnu.trove.THashSet;
+import gnu.trove.TObjectHashingStrategy;
 
 import org.terrier.utility.ApplicationSetup;
 /** 
@@ -46,9 +47,11 @@ import org.terrier.utility.ApplicationSetup;
  * save on GC costs during indexing.</li>
  * <li><tt>stopwords.encoding</tt> - encoding of the file containing the stopwords
  * and if that is not set, onto the default system encoding.</li></ul>
+ * Terms passed as characters (see {@link CharTermPipeline}) are checked against the
+ * stopword list without creating a String.
  * @author Craig Macdonald
   */
-public class Stopwords implements TermPipeline
+public class Stopwords implements CharTermPipeline
 {
 	/** The logger used */
 	private static Logger logger = LoggerFactory.getLogger(Stopwords.class);
@@ -57,8 +60,64 @@ public class Stopwords implements TermPipeline
 	/** The next component in the term pipeline. */
 	protected final TermPipeline next;
 
-	/** The hashset that contains all the stop words.*/
-	protected final THashSet<String> stopWords = new THashSet<String>();
+	/** Hashes and compares Strings and {@link CharsView}s by their characters. */
+	@SuppressWarnings("serial")
+	static final TObjectHashingStrategy<CharSequence> CHARS_STRATEGY = new TObjectHashingStrategy<CharSequence>() {
+		@Override
+		public int computeHashCode(CharSequence cs) {
+			int h = 0;
+			final int l = cs.length();
+			for(int i=0;i<l;i++)
+				h = 31*h + cs.charAt(i);
+			return h;
+		}
+
+		@Override
+		public boolean equals(CharSequence cs1, CharSequence cs2) {
+			final int l = cs1.length();
+			if (l != cs2.length())
+				return false;
+			for(int i=0;i<l;i++)
+				if (cs1.charAt(i) != cs2.charAt(i))
+					return false;
+			return true;
+		}
+	};
+
+	/** A reusable CharSequence view on a term buffer, for looking up stopwords. */
+	static final class CharsView implements CharSequence
+	{
+		char[] buffer;
+		int length;
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return buffer[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(buffer, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, 0, length);
+		}
+	}
+
+	/** The hashset that contains all the stop words. It can also be probed
+	 * using any CharSequence, as its entries are hashed by their characters.*/
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected final THashSet<String> stopWords = new THashSet<String>((TObjectHashingStrategy)CHARS_STRATEGY);
+	
+	/** view used to lookup terms passed as characters */
+	protected final CharsView view = new CharsView();
 	/** 
 	 * Makes a new stopword termpipeline object. The stopwords 
 	 * file is loaded from the application setup file, 
@@ -175,6 +234,23 @@ public class Stopwords implements TermPipeline
 		next.processTerm(t);
 	}
 	
+	/** 
+	 * Checks to see if the term in buffer is a stopword. If not, then
+	 * it is passed on to the next TermPipeline object, as characters where possible.
+	 * @param buffer the characters of the term to be checked.
+	 * @param length the length of the term.
+	 */
+	public void processTerm(final char[] buffer, final int length)
+	{
+		view.buffer = buffer;
+		view.length = length;
+		final boolean stop = stopWords.contains(view);
+		view.buffer = null;
+		if (stop)
+			return;
+		CharTermPipeline.forward(next, buffer, length);
+	}
+	
 	/** {@inheritDoc} */
 	public boolean reset() {
 		return next.reset();
@@ -55,6 +55,7 @@ import org.apache.hadoop.io.compress.BZip2Codec;
 import org.terrier.utility.io.FileSystem;
 import org.terrier.utility.io.HTTPFileSystem;
 import org.terrier.utility.io.LocalFileSystem;
+import org.terrier.utility.io.ParallelGZIPInputStream;
 import org.terrier.utility.io.ResourceFileSystem;
 import org.terrier.utility.io.RandomDataInput;
 import org.terrier.utility.io.RandomDataOutput;
@@ -72,6 +73,8 @@ import org.terrier.utility.io.WrappedIOException;
   * <br><br><b>Additional Compression Support</b>
   * <p>
   * Support for additional stream compression &amp; decompression can be plugged in by calling addFilterInputStreamMapping().
+  * If the property <tt>files.gz.parallel</tt> is set to true, then <tt>.gz</tt> and <tt>.bgz</tt> files are decompressed 
+  * on background threads using a {@link ParallelGZIPInputStream}. 
   * </p>
   * <br><br><b>File Caching</b>
   * <p>Terrier can cache files which will see heavy IO activity. In particular, files mentioned in the <tt>files.to.cache</tt> property
@@ -207,14 +210,17 @@ public class Files
 	/** initialise the default compression mappings */
 	protected static void initialise_mappings()
 	{
-		addFilterInputStreamMapping(".+\\.gz$", GZIPInputStream.class, GZIPOutputStream.class);
-		addFilterInputStreamMapping(".+\\.GZ$", GZIPInputStream.class, GZIPOutputStream.class);
+		final boolean parallelGzip = Boolean.parseBoolean(ApplicationSetup.getProperty("files.gz.parallel", "false"));
+		final Class<? extends InputStream> gzipClass = parallelGzip ? ParallelGZIPInputStream.class : GZIPInputStream.class;
+		addFilterInputStreamMapping(".+\\.gz$", gzipClass, GZIPOutputStream.class);
+		addFilterInputStreamMapping(".+\\.GZ$", gzipClass, GZIPOutputStream.class);
 
 		addFilterInputStreamMapping(".+\\.bz2", BZip2InputStream.class, BZip2OutputStream.class);
 		addFilterInputStreamMapping(".+\\.BZ2$", BZip2InputStream.class, BZip2OutputStream.class);
 		
-		addFilterInputStreamMapping(".+\\.bgz", BlockCompressedInputStream.class, BlockCompressedOutputStream.class);
-		addFilterInputStreamMapping(".+\\.BGZ$", BlockCompressedInputStream.class, BlockCompressedOutputStream.class);
+		final Class<? extends InputStream> bgzipClass = parallelGzip ? ParallelGZIPInputStream.class : BlockCompressedInputStream.class;
+		addFilterInputStreamMapping(".+\\.bgz", bgzipClass, BlockCompressedOutputStream.class);
+		addFilterInputStreamMapping(".+\\.BGZ$", bgzipClass, BlockCompressedOutputStream.class);
 		
 		// new BlockCompressedInputStream(new File(filename));
 	}
@@ -24,7 +24,9 @@
  *   Vassilis Plachouras <vassilis{a.}dcs.gla.ac.uk> (original author)
  */
 package org.terrier.utility;
-import gnu.trove.TObjectIntHashMap;
+
+import java.util.Arrays;
+
 /**
  * <p>This class is used for assigning codes to terms as we 
  * index a document collection.</p>
@@ -35,6 +37,8 @@ import gnu.trove.TObjectIntHashMap;
  * <p>The second property is <tt>termcodes.garbagecollect</tt>, 
  * which enables or disables garbage collection during the call 
  * of the method reset(). The default value is <tt>true</tt>.
+ * <p>Terms are held in a {@link UTF8TermDictionary}, which stores each term once
+ * as UTF-8 bytes, rather than as a String object in a hash map.</p>
  *
  * @author Vassilis Plachouras
  */
@@ -43,17 +47,20 @@ public class TermCodes {
 	private static int hashMapCapacity;
 	
 	/** 
-	 * The hashmap that stores the mapping 
-	 * from terms hash codes to code.
+	 * The dictionary that stores the terms. Unless setTermCode() 
+	 * has been used, the code of each term is its id in the dictionary.
 	 */
-	private final TObjectIntHashMap<String> map = new TObjectIntHashMap<String>(hashMapCapacity);
+	private final UTF8TermDictionary dictionary = new UTF8TermDictionary(hashMapCapacity);
+	/** 
+	 * The code of each term in the dictionary, only used once setTermCode()
+	 * has been called.
+	 */
+	private int[] codes = null;
 	/** 
 	 * The counter that represents the new 
 	 * code for the next not already encountered term.
 	 */
 	private int counter = 0;
-	/** A buffer variable.*/
-	private int code = 0;
 	/** 
 	 * The property that enables or disables 
 	 * garbage collection during reseting.
@@ -93,21 +100,29 @@ public class TermCodes {
 	 */
 	public final int getCode(final String term) {
 		/* if we have encountered a new term, add it to the
-		 * hash map and return the new term code, otherwise
+		 * dictionary and return the new term code, otherwise
 		 * return the already assigned term code */
-		if ((code = map.get(term)) == 0)
-			map.put(term, (code = ++counter ));
-		return --code;
-
-		/* NB: because the GNU trove TObjectIntHashMap returns 0
-		 * for not found, we store 1 above the true termcode for
-		 * every term. Eg the first term has true termcode 0, but
-		 * the value 1 is stored in the map*/
+		final int size = dictionary.size();
+		final int id = dictionary.add(term);
+		if (codes == null)
+		{
+			//codes are the ids in the dictionary
+			if (id == size)
+				counter++;
+			return id;
+		}
+		if (id == size)
+		{
+			if (id == codes.length)
+				codes = Arrays.copyOf(codes, codes.length * 2);
+			codes[id] = counter++;
+		}
+		return codes[id];
 	}
 	
 	
 	/**
-	 * Resets the hashmap that contains the mapping 
+	 * Resets the dictionary that contains the mapping 
 	 * from the terms to the term ids. If the property 
 	 * <tt>garbageCollection</tt> is <tt>true</tt>, 
 	 * then it performs garbage collection in order to 
@@ -121,13 +136,13 @@ public class TermCodes {
 	public void reset() {
 		if (counter == 0)
 			return;
-		map.clear();
+		dictionary.clear();
+		codes = null;
 
 		if (garbageCollection)
 			System.gc();
 
 		counter = 0;
-		code = 0;
 	}
 
 	/** For when you manually want to set the term for a given term, and you
@@ -135,6 +150,15 @@ public class TermCodes {
 	  * this method. <b>NB:</b> counter variable above probably needs to be
 	  * considered in this method. */
 	public void setTermCode(final String term, final int termCode) {
-		map.put(term, termCode+1);
+		if (codes == null)
+		{
+			codes = new int[Math.max(16, dictionary.size() * 2)];
+			for(int i=0;i<dictionary.size();i++)
+				codes[i] = i;
+		}
+		final int id = dictionary.add(term);
+		if (id == codes.length)
+			codes = Arrays.copyOf(codes, codes.length * 2);
+		codes[id] = termCode;
 	}
 }
@@ -0,0 +1,304 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is UTF8TermDictionary.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dictionary that assigns dense integer ids to terms, as encountered during indexing.
+ * Rather than holding a String object and a hash table entry for each term, each term is 
+ * stored once as UTF-8 bytes in large shared pages, and is located using an open-addressing
+ * hash table of int ids. The per-term overhead is therefore around 16 bytes, plus the length of 
+ * the term in bytes. The first term added has id 0, the second id 1, etc.
+ * <p>
+ * The terms may occupy at most 65536 pages of 32KB, i.e. 2GB. This class is not thread-safe.
+ * @since 5.2
+ */
+public class UTF8TermDictionary {
+
+	/** log2 of the size of each page */
+	protected static final int PAGE_BITS = 15;
+	protected static final int PAGE_SIZE = 1 << PAGE_BITS;
+	protected static final int PAGE_MASK = PAGE_SIZE -1;
+	/** pages are addressed by an int, hence this is the maximum number of pages */
+	protected static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+	/** maximum size of the hash table */
+	protected static final int MAX_TABLE_SIZE = 1 << 30;
+	
+	/** id+1 of the term in each slot, or 0 for empty slots */
+	protected int[] table;
+	/** table.length -1 */
+	protected int mask;
+	/** address of the bytes of each term */
+	protected int[] addresses;
+	/** hash of each term */
+	protected int[] hashes;
+	protected int size = 0;
+	
+	protected byte[][] pages = new byte[16][];
+	protected int numPages = 0;
+	/** offset of the next free byte in the last page */
+	protected int pageOffset = PAGE_SIZE;
+	
+	/** UTF-8 encoding of the last term looked up */
+	protected byte[] scratch = new byte[64];
+	protected int scratchLength;
+	
+	/** Create a dictionary with a default initial capacity */
+	public UTF8TermDictionary()
+	{
+		this(1024);
+	}
+	
+	/** Create a dictionary that can hold the specified number of terms before growing */
+	public UTF8TermDictionary(int initialCapacity)
+	{
+		initialCapacity = Math.max(16, initialCapacity);
+		int tableSize = Integer.highestOneBit(Math.min(initialCapacity, MAX_TABLE_SIZE / 2) - 1) << 2;
+		table = new int[tableSize];
+		mask = tableSize - 1;
+		addresses = new int[initialCapacity];
+		hashes = new int[initialCapacity];
+	}
+	
+	/** Returns the number of terms in this dictionary */
+	public int size()
+	{
+		return size;
+	}
+	
+	/** Returns the id of the specified term, or -1 if it is not in this dictionary */
+	public int lookup(final CharSequence term)
+	{
+		final int hash = encode(term);
+		final int slot = find(hash);
+		return table[slot] - 1;
+	}
+	
+	/** Returns the id of the specified term, adding it to this dictionary if it is not already present */
+	public int add(final CharSequence term)
+	{
+		final int hash = encode(term);
+		final int slot = find(hash);
+		if (table[slot] != 0)
+			return table[slot] - 1;
+		final int id = size++;
+		if (id == addresses.length)
+		{
+			final int newLength = (int) Math.min(Integer.MAX_VALUE - 8, (long) addresses.length * 2);
+			addresses = Arrays.copyOf(addresses, newLength);
+			hashes = Arrays.copyOf(hashes, newLength);
+		}
+		addresses[id] = store(scratch, scratchLength);
+		hashes[id] = hash;
+		table[slot] = id + 1;
+		if (size > (table.length >>> 1) && table.length < MAX_TABLE_SIZE)
+			rehash(table.length << 1);
+		return id;
+	}
+	
+	/** Returns the term with the specified id */
+	public String getTerm(final int id)
+	{
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("No term with id " + id);
+		final int address = addresses[id];
+		final byte[] page = pages[address >>> PAGE_BITS];
+		int offset = address & PAGE_MASK;
+		int length = 0;
+		byte b;
+		int shift = 0;
+		do {
+			b = page[offset++];
+			length |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return new String(page, offset, length, StandardCharsets.UTF_8);
+	}
+	
+	/** Removes all terms, and releases the memory of the pages */
+	public void clear()
+	{
+		Arrays.fill(table, 0);
+		pages = new byte[16][];
+		numPages = 0;
+		pageOffset = PAGE_SIZE;
+		size = 0;
+	}
+	
+	/** Returns the number of bytes consumed by this dictionary */
+	public long getMemoryConsumption()
+	{
+		return (long) numPages * PAGE_SIZE 
+			+ (long) pages.length * 8
+			+ (long) table.length * 4
+			+ (long) addresses.length * 8;
+	}
+	
+	/** returns the slot containing the term in scratch, or the empty slot where it should be added */
+	protected final int find(final int hash)
+	{
+		int slot = hash & mask;
+		int id;
+		while((id = table[slot]) != 0)
+		{
+			id--;
+			if (hashes[id] == hash && matches(addresses[id]))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/** does the term at the specified address equal the term in scratch */
+	protected final boolean matches(final int address)
+	{
+		final byte[] page = pages[address >>> PAGE_BITS];
+		int offset = address & PAGE_MASK;
+		int length = 0;
+		byte b;
+		int shift = 0;
+		do {
+			b = page[offset++];
+			length |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		if (length != scratchLength)
+			return false;
+		for(int i=0;i<length;i++)
+			if (page[offset+i] != scratch[i])
+				return false;
+		return true;
+	}
+	
+	protected void rehash(final int newSize)
+	{
+		table = new int[newSize];
+		mask = newSize - 1;
+		for(int id=0;id<size;id++)
+		{
+			int slot = hashes[id] & mask;
+			while(table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id + 1;
+		}
+	}
+	
+	/** appends the term to the pages, returning its address */
+	protected int store(final byte[] bytes, final int length)
+	{
+		final int required = length + 5;
+		if (pageOffset + required > PAGE_SIZE)
+		{
+			if (numPages == MAX_PAGES)
+				throw new IllegalStateException("Terms in dictionary exceed " + MAX_PAGES + " pages");
+			if (numPages == pages.length)
+				pages = Arrays.copyOf(pages, pages.length * 2);
+			if (required > PAGE_SIZE)
+			{
+				//a term longer than a page has a page of its own
+				final byte[] large = new byte[required];
+				write(large, 0, bytes, length);
+				pages[numPages++] = large;
+				pageOffset = PAGE_SIZE;
+				return (numPages - 1) << PAGE_BITS;
+			}
+			pages[numPages++] = new byte[PAGE_SIZE];
+			pageOffset = 0;
+		}
+		final int address = ((numPages - 1) << PAGE_BITS) | pageOffset;
+		pageOffset = write(pages[numPages-1], pageOffset, bytes, length);
+		return address;
+	}
+	
+	/** writes length then bytes to page at offset, returning the offset after */
+	protected static int write(final byte[] page, int offset, final byte[] bytes, int length)
+	{
+		int l = length;
+		while ((l & ~0x7F) != 0)
+		{
+			page[offset++] = (byte) ((l & 0x7F) | 0x80);
+			l >>>= 7;
+		}
+		page[offset++] = (byte) l;
+		System.arraycopy(bytes, 0, page, offset, length);
+		return offset + length;
+	}
+	
+	/** encodes the term as UTF-8 into scratch, returning its hash */
+	protected final int encode(final CharSequence term)
+	{
+		final int charLength = term.length();
+		if (scratch.length < charLength * 3)
+			scratch = new byte[charLength * 3];
+		final byte[] s = scratch;
+		int l = 0;
+		int hash = 0;
+		for(int i=0;i<charLength;i++)
+		{
+			final char c = term.charAt(i);
+			if (c < 0x80)
+			{
+				s[l++] = (byte) c;
+			}
+			else if (c < 0x800)
+			{
+				s[l++] = (byte) (0xC0 | (c >> 6));
+				s[l++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c) && i+1 < charLength && Character.isLowSurrogate(term.charAt(i+1)))
+			{
+				final int cp = Character.toCodePoint(c, term.charAt(++i));
+				s[l++] = (byte) (0xF0 | (cp >> 18));
+				s[l++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				s[l++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				s[l++] = (byte) (0x80 | (cp & 0x3F));
+			}
+			else if (Character.isSurrogate(c))
+			{
+				//unpaired surrogates are replaced, as per String.getBytes()
+				s[l++] = (byte) '?';
+			}
+			else
+			{
+				s[l++] = (byte) (0xE0 | (c >> 12));
+				s[l++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				s[l++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		for(int i=0;i<l;i++)
+			hash = 31 * hash + s[i];
+		scratchLength = l;
+		//spread the bits, as per the MurmurHash3 finaliser
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
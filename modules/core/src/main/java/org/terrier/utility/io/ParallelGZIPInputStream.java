@@ -0,0 +1,323 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ParallelGZIPInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * Decompresses a gzip stream ahead of its reader, on background threads. 
+ * Multi-member gzip files are supported. Members whose header records their 
+ * compressed size (as written by bgzip, i.e. the BGZF format of 
+ * <tt>.bgz</tt> files) are read whole, and decompressed concurrently by a pool of 
+ * threads shared by all instances. Other members can only be delimited by 
+ * decompressing them, and are hence decompressed sequentially, by the background 
+ * thread of this stream. In both cases, decompressed blocks are read in order, 
+ * from a bounded queue.
+ * <p>
+ * This class can replace GZIPInputStream for <tt>.gz</tt> files opened through 
+ * {@link org.terrier.utility.Files}, by setting <tt>files.gz.parallel</tt> to true.
+ * <p><b>Properties:</b>
+ * <ul>
+ * <li><tt>files.gz.parallel.threads</tt> - number of threads decompressing BGZF blocks. 
+ * Defaults to the number of available processors.</li>
+ * </ul>
+ * @since 5.2
+ */
+public class ParallelGZIPInputStream extends ReadAheadInputStream {
+
+	static final int GZIP_MAGIC = 0x8b1f;
+	static final int FHCRC = 2;
+	static final int FEXTRA = 4;
+	static final int FNAME = 8;
+	static final int FCOMMENT = 16;
+	
+	static ExecutorService pool = null;
+	
+	static synchronized ExecutorService getPool()
+	{
+		if (pool == null)
+		{
+			final int threads = Integer.parseInt(ApplicationSetup.getProperty("files.gz.parallel.threads", 
+					String.valueOf(Runtime.getRuntime().availableProcessors())));
+			pool = Executors.newFixedThreadPool(threads, r -> {
+				final Thread t = new Thread(r, ParallelGZIPInputStream.class.getSimpleName() + "-inflater");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+	
+	protected final PushbackInputStream raw;
+	/** length of the header of the member being read */
+	protected int headerLength;
+	
+	/**
+	 * Constructs a new ParallelGZIPInputStream
+	 * @param _in compressed stream
+	 */
+	public ParallelGZIPInputStream(InputStream _in)
+	{
+		this(_in, DEFAULT_CHUNK_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructs a new ParallelGZIPInputStream
+	 * @param _in compressed stream
+	 * @param _chunkSize size of each decompressed chunk, for members not in BGZF format
+	 * @param numChunks maximum number of blocks or chunks to be decompressed ahead
+	 */
+	public ParallelGZIPInputStream(InputStream _in, int _chunkSize, int numChunks)
+	{
+		super(_in, _chunkSize, numChunks, false);
+		raw = new PushbackInputStream(_in, _chunkSize);
+		start();
+	}
+	
+	@Override
+	protected void produce() throws Exception
+	{
+		boolean first = true;
+		final Inflater inflater = new Inflater(true);
+		final byte[] inBuffer = new byte[chunkSize];
+		try{
+			while(true)
+			{
+				final int blockSize = readHeader(first);
+				if (blockSize == -2)
+					return;
+				first = false;
+				if (blockSize >= 0)
+				{
+					final int remaining = blockSize + 1 - headerLength;
+					if (remaining < 8)
+						throw new ZipException("Corrupt BGZF block size");
+					final byte[] block = new byte[remaining];
+					readFully(block, 0, remaining);
+					emit(getPool().submit(() -> inflateBlock(block)));
+				}
+				else
+				{
+					inflateMember(inflater, inBuffer);
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	/** decompresses a member which was read whole, including its trailer */
+	static byte[] inflateBlock(byte[] block) throws IOException
+	{
+		final int length = block.length - 8;
+		final int size = readInt(block, length + 4);
+		final byte[] out = new byte[size];
+		final Inflater inflater = new Inflater(true);
+		try{
+			inflater.setInput(block, 0, length);
+			int n = 0;
+			while(n < size)
+			{
+				final int read = inflater.inflate(out, n, size - n);
+				if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					throw new ZipException("Corrupt GZIP trailer");
+				n += read;
+			}
+			if (size == 0 && inflater.inflate(new byte[1]) != 0)
+				throw new ZipException("Corrupt GZIP trailer");
+		} catch (DataFormatException dfe) {
+			throw new ZipException(dfe.getMessage());
+		} finally {
+			inflater.end();
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(out, 0, size);
+		if (readInt(block, length) != (int) crc.getValue())
+			throw new ZipException("Corrupt GZIP trailer");
+		return out;
+	}
+	
+	/** decompresses a member of unknown compressed size, emitting chunks as they fill */
+	protected void inflateMember(Inflater inflater, byte[] inBuffer) throws Exception
+	{
+		inflater.reset();
+		final CRC32 crc = new CRC32();
+		byte[] out = new byte[chunkSize];
+		int outLength = 0;
+		int inLength = 0;
+		long size = 0;
+		while(! inflater.finished())
+		{
+			if (inflater.needsInput())
+			{
+				inLength = raw.read(inBuffer, 0, inBuffer.length);
+				if (inLength == -1)
+					throw new EOFException("Unexpected end of ZLIB input stream");
+				inflater.setInput(inBuffer, 0, inLength);
+			}
+			if (inflater.needsDictionary())
+				throw new ZipException("Dictionary needed");
+			final int n;
+			try{
+				n = inflater.inflate(out, outLength, out.length - outLength);
+			} catch (DataFormatException dfe) {
+				throw new ZipException(dfe.getMessage());
+			}
+			crc.update(out, outLength, n);
+			outLength += n;
+			size += n;
+			if (outLength == out.length)
+			{
+				emit(out);
+				out = new byte[chunkSize];
+				outLength = 0;
+			}
+		}
+		if (outLength > 0)
+			emit(Arrays.copyOf(out, outLength));
+		final int unused = inflater.getRemaining();
+		if (unused > 0)
+			raw.unread(inBuffer, inLength - unused, unused);
+		final byte[] trailer = new byte[8];
+		readFully(trailer, 0, 8);
+		if (readInt(trailer, 0) != (int) crc.getValue() || readInt(trailer, 4) != (int) size)
+			throw new ZipException("Corrupt GZIP trailer");
+	}
+	
+	/** 
+	 * Reads the header of the next member. Returns -2 at the end of the stream, the
+	 * BGZF block size (BSIZE) if recorded in the header, or -1 otherwise. As for 
+	 * GZIPInputStream, data following the last member which is not a gzip header is ignored. 
+	 */
+	protected int readHeader(boolean first) throws IOException
+	{
+		final int b1 = raw.read();
+		if (b1 == -1 && ! first)
+			return -2;
+		final int b2 = raw.read();
+		if ((b1 | (b2 << 8)) != GZIP_MAGIC)
+		{
+			if (first)
+				throw new ZipException("Not in GZIP format");
+			return -2;
+		}
+		if (readUByte() != 8)
+			throw new ZipException("Unsupported compression method");
+		final int flags = readUByte();
+		skipFully(6);
+		headerLength = 10;
+		int blockSize = -1;
+		if ((flags & FEXTRA) != 0)
+		{
+			final int xlen = readUShort();
+			headerLength += 2 + xlen;
+			int read = 0;
+			while(read + 4 <= xlen)
+			{
+				final int si1 = readUByte();
+				final int si2 = readUByte();
+				final int slen = readUShort();
+				read += 4;
+				if (si1 == 'B' && si2 == 'C' && slen == 2 && read + 2 <= xlen)
+				{
+					blockSize = readUShort();
+				}
+				else
+				{
+					skipFully(Math.min(slen, xlen - read));
+				}
+				read += Math.min(slen, xlen - read);
+			}
+			skipFully(xlen - read);
+		}
+		if ((flags & FNAME) != 0)
+			headerLength += skipString();
+		if ((flags & FCOMMENT) != 0)
+			headerLength += skipString();
+		if ((flags & FHCRC) != 0)
+		{
+			skipFully(2);
+			headerLength += 2;
+		}
+		return blockSize;
+	}
+	
+	static int readInt(byte[] b, int offset)
+	{
+		return (b[offset] & 0xFF) | ((b[offset+1] & 0xFF) << 8) | ((b[offset+2] & 0xFF) << 16) | ((b[offset+3] & 0xFF) << 24);
+	}
+	
+	protected int readUByte() throws IOException
+	{
+		final int b = raw.read();
+		if (b == -1)
+			throw new EOFException();
+		return b;
+	}
+	
+	protected int readUShort() throws IOException
+	{
+		return readUByte() | (readUByte() << 8);
+	}
+	
+	protected int skipString() throws IOException
+	{
+		int length = 1;
+		while(readUByte() != 0)
+			length++;
+		return length;
+	}
+	
+	protected void skipFully(int n) throws IOException
+	{
+		for(int i=0;i<n;i++)
+			readUByte();
+	}
+	
+	protected void readFully(byte[] b, int off, int len) throws IOException
+	{
+		while(len > 0)
+		{
+			final int n = raw.read(b, off, len);
+			if (n == -1)
+				throw new EOFException("Unexpected end of GZIP input stream");
+			off += n;
+			len -= n;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ReadAheadInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An InputStream which reads its underlying stream ahead of the reader, using a 
+ * background thread. Bytes are read in chunks into a bounded queue, such that at most 
+ * <tt>numChunks</tt> chunks are held in memory. When the underlying stream decompresses 
+ * its input (e.g. a GZIPInputStream), the decompression therefore happens on the 
+ * background thread, and the reader only waits when the queue is empty.
+ * <p>
+ * Subclasses can replace how the chunks are produced by overriding {@link #produce()}; 
+ * chunks are queued as Futures, so that they may be computed concurrently, while still 
+ * being read in order. Exceptions of the background thread are rethrown to the reader. 
+ * This class is not thread-safe for concurrent readers.
+ * @since 5.2
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	/** default size of each chunk */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	/** default number of chunks that can be read ahead */
+	public static final int DEFAULT_NUM_CHUNKS = 16;
+	
+	/** marks the end of the stream in the queue */
+	static final Future<byte[]> EOF = CompletableFuture.completedFuture(null);
+	
+	protected final InputStream in;
+	protected final int chunkSize;
+	protected final BlockingQueue<Future<byte[]>> queue;
+	protected Thread producer;
+	protected volatile boolean closed = false;
+	
+	/** chunk currently being read, or null at end of stream */
+	protected byte[] current = new byte[0];
+	/** position in current of the next byte to be read */
+	protected int pos = 0;
+	
+	/**
+	 * Constructs a new ReadAheadInputStream, using the default chunk size and number of chunks
+	 * @param _in stream to read ahead
+	 */
+	public ReadAheadInputStream(InputStream _in)
+	{
+		this(_in, DEFAULT_CHUNK_SIZE, DEFAULT_NUM_CHUNKS);
+	}
+	
+	/**
+	 * Constructs a new ReadAheadInputStream
+	 * @param _in stream to read ahead
+	 * @param _chunkSize size of each chunk, in bytes
+	 * @param numChunks maximum number of chunks to be read ahead
+	 */
+	public ReadAheadInputStream(InputStream _in, int _chunkSize, int numChunks)
+	{
+		this(_in, _chunkSize, numChunks, true);
+	}
+	
+	/**
+	 * Constructs a new ReadAheadInputStream. Subclasses that need to initialise their
+	 * own state before the background thread runs should pass false, and call 
+	 * {@link #start()} at the end of their constructor.
+	 * @param _in stream to read ahead
+	 * @param _chunkSize size of each chunk, in bytes
+	 * @param numChunks maximum number of chunks to be read ahead
+	 * @param start whether to start reading ahead immediately
+	 */
+	protected ReadAheadInputStream(InputStream _in, int _chunkSize, int numChunks, boolean start)
+	{
+		this.in = _in;
+		this.chunkSize = _chunkSize;
+		this.queue = new ArrayBlockingQueue<Future<byte[]>>(numChunks);
+		if (start)
+			start();
+	}
+	
+	/** Starts the background thread reading ahead */
+	protected void start()
+	{
+		producer = new Thread(() -> {
+			try{
+				produce();
+				queue.put(EOF);
+			} catch (InterruptedException ie) {
+				//closed
+			} catch (Throwable t) {
+				if (closed)
+					return;
+				final CompletableFuture<byte[]> failed = new CompletableFuture<byte[]>();
+				failed.completeExceptionally(t);
+				try{
+					queue.put(failed);
+				} catch (InterruptedException ie) {}
+			}
+		}, this.getClass().getSimpleName() + "-" + this.hashCode());
+		producer.setDaemon(true);
+		producer.start();
+	}
+	
+	/** 
+	 * Reads the underlying stream, calling {@link #emit(byte[])} for each chunk read. 
+	 * Returns at the end of the underlying stream.
+	 */
+	protected void produce() throws Exception
+	{
+		while(true)
+		{
+			final byte[] chunk = new byte[chunkSize];
+			int length = 0;
+			int read;
+			while(length < chunkSize && (read = in.read(chunk, length, chunkSize - length)) != -1)
+				length += read;
+			if (length == 0)
+				return;
+			emit(length == chunkSize ? chunk : Arrays.copyOf(chunk, length));
+			if (length < chunkSize)
+				return;
+		}
+	}
+	
+	/** Queues a chunk of bytes to be read, blocking while the queue is full */
+	protected final void emit(byte[] chunk) throws InterruptedException
+	{
+		emit(CompletableFuture.completedFuture(chunk));
+	}
+	
+	/** Queues a chunk of bytes that may not yet be computed, blocking while the queue is full */
+	protected final void emit(Future<byte[]> chunk) throws InterruptedException
+	{
+		queue.put(chunk);
+	}
+	
+	/** Moves to the next non-empty chunk. Returns false at the end of the stream */
+	protected boolean nextChunk() throws IOException
+	{
+		if (closed)
+			throw new IOException("Stream closed");
+		while(current != null && pos >= current.length)
+		{
+			try{
+				current = queue.take().get();
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			} catch (ExecutionException ee) {
+				current = null;
+				final Throwable cause = ee.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				throw new WrappedIOException(cause);
+			}
+			pos = 0;
+		}
+		return current != null;
+	}
+	
+	@Override
+	public int read() throws IOException 
+	{
+		if (current == null || (pos >= current.length && ! nextChunk()))
+			return -1;
+		return current[pos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException 
+	{
+		if (len == 0)
+			return 0;
+		if (current == null || (pos >= current.length && ! nextChunk()))
+			return -1;
+		final int n = Math.min(len, current.length - pos);
+		System.arraycopy(current, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException 
+	{
+		long skipped = 0;
+		while(skipped < n)
+		{
+			if (current == null || (pos >= current.length && ! nextChunk()))
+				break;
+			final int step = (int) Math.min(n - skipped, current.length - pos);
+			pos += step;
+			skipped += step;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException 
+	{
+		return current == null ? 0 : current.length - pos;
+	}
+	
+	@Override
+	public void close() throws IOException 
+	{
+		if (closed)
+			return;
+		closed = true;
+		//subsequent reads fail in nextChunk()
+		current = new byte[0];
+		pos = 0;
+		if (producer != null)
+			producer.interrupt();
+		for(Future<byte[]> f : queue)
+			f.cancel(true);
+		queue.clear();
+		in.close();
+	}
+}
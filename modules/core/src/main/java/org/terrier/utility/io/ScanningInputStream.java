@@ -0,0 +1,307 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ScanningInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A buffered {@link CountingInputStream}, which can also scan its buffer in bulk for a 
+ * pattern of bytes, such as an SGML tag or a line ending. This avoids reading a collection
+ * file one byte at a time through a chain of wrapped streams, while looking for document 
+ * boundaries. Bytes are not decoded into characters; the bytes preceding a pattern can be 
+ * obtained as-is, and decoded later, e.g. by the Document that parses them.
+ * <p>
+ * {@link #getPos()} returns the number of bytes consumed by the reader of this stream, 
+ * not the number of bytes read from the underlying stream. This class is not thread-safe.
+ * @since 5.2
+ */
+public class ScanningInputStream extends CountingInputStream {
+
+	/** default size of the buffer */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	/** folds each byte to uppercase, as per Character.toUpperCase() for the corresponding char */
+	static final byte[] UPPER = new byte[256];
+	static {
+		for(int i=0;i<256;i++)
+		{
+			final char upper = Character.toUpperCase((char) i);
+			UPPER[i] = (byte) (upper < 256 ? upper : i);
+		}
+	}
+	
+	protected byte[] buffer;
+	/** position of the next byte to be consumed in buffer */
+	protected int pos = 0;
+	/** end of the valid bytes in buffer */
+	protected int limit = 0;
+	/** has the end of the underlying stream been reached */
+	protected boolean eof = false;
+	
+	/**
+	 * Constructs a new ScanningInputStream
+	 * @param _in InputStream to wrap
+	 */
+	public ScanningInputStream(InputStream _in)
+	{
+		this(_in, 0, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Constructs a new ScanningInputStream
+	 * @param _in InputStream to wrap
+	 * @param offset Offset in bytes for which the counter should start
+	 */
+	public ScanningInputStream(InputStream _in, long offset)
+	{
+		this(_in, offset, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Constructs a new ScanningInputStream
+	 * @param _in InputStream to wrap
+	 * @param offset Offset in bytes for which the counter should start
+	 * @param bufferSize initial size of the buffer
+	 */
+	public ScanningInputStream(InputStream _in, long offset, int bufferSize)
+	{
+		super(_in, offset);
+		buffer = new byte[bufferSize];
+	}
+	
+	/** Ensures that at least n bytes are available in the buffer, unless the end 
+	 * of the underlying stream is reached first. 
+	 * @return the number of bytes available in the buffer */
+	protected final int fill(final int n) throws IOException
+	{
+		if (pos == limit)
+			pos = limit = 0;
+		while (limit - pos < n && ! eof)
+		{
+			if (limit == buffer.length)
+			{
+				if (pos > 0)
+				{
+					System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+					limit -= pos;
+					pos = 0;
+				}
+				else
+				{
+					buffer = Arrays.copyOf(buffer, Math.max(n, buffer.length * 2));
+				}
+			}
+			final int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0)
+				eof = true;
+			else
+				limit += read;
+		}
+		return limit - pos;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		if (pos == limit && fill(1) == 0)
+			return -1;
+		count++;
+		return buffer[pos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+		if (pos == limit)
+		{
+			//large reads bypass the buffer
+			if (len >= buffer.length && ! eof)
+			{
+				final int read = in.read(b, off, len);
+				if (read > 0)
+					count += read;
+				else if (read < 0)
+					eof = true;
+				return read;
+			}
+			if (fill(1) == 0)
+				return -1;
+		}
+		final int n = Math.min(len, limit - pos);
+		System.arraycopy(buffer, pos, b, off, n);
+		pos += n;
+		count += n;
+		return n;
+	}
+	
+	/** Skips n bytes, unless the end of the stream is reached first.
+	 * @return the number of bytes skipped */
+	@Override
+	public long skip(final long n) throws IOException
+	{
+		if (n <= 0)
+			return 0;
+		long skipped = Math.min(n, limit - pos);
+		pos += skipped;
+		while(skipped < n && ! eof)
+		{
+			final long s = in.skip(n - skipped);
+			if (s > 0)
+			{
+				skipped += s;
+			}
+			else
+			{
+				//skip() may not detect the end of the stream
+				if (fill(1) == 0)
+					break;
+				final int m = (int) Math.min(n - skipped, limit - pos);
+				pos += m;
+				skipped += m;
+			}
+		}
+		count += skipped;
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException
+	{
+		return (limit - pos) + (eof ? 0 : in.available());
+	}
+	
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+	
+	@Override
+	public synchronized void mark(int readlimit) {}
+	
+	@Override
+	public synchronized void reset() throws IOException
+	{
+		throw new IOException("mark/reset not supported");
+	}
+	
+	/**
+	 * Consumes the bytes of this stream up to and including the next occurrence of pattern.
+	 * If the pattern does not occur, all remaining bytes are consumed.
+	 * @param pattern the bytes to look for
+	 * @param ignoreCase whether bytes should be compared ignoring case, as per 
+	 * Character.toUpperCase() applied to the char of the same value
+	 * @param out where the bytes preceding the pattern are written, or null if they are not required
+	 * @return true if the pattern was found, false if the end of the stream was reached.
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean readUntil(final byte[] pattern, final boolean ignoreCase, final ByteArrayOutputStream out) throws IOException
+	{
+		final int plen = pattern.length;
+		final byte[] p = ignoreCase ? upper(pattern) : pattern;
+		final byte first = p[0];
+		while(true)
+		{
+			if (fill(plen) < plen)
+			{
+				consume(limit, out);
+				return false;
+			}
+			final byte[] b = buffer;
+			//last position where a match could start
+			final int last = limit - plen;
+			for(int i=pos;i<=last;i++)
+			{
+				if ((ignoreCase ? UPPER[b[i] & 0xFF] : b[i]) != first)
+					continue;
+				int j = 1;
+				if (ignoreCase)
+					while(j < plen && UPPER[b[i+j] & 0xFF] == p[j])
+						j++;
+				else
+					while(j < plen && b[i+j] == p[j])
+						j++;
+				if (j == plen)
+				{
+					consume(i, out);
+					pos += plen;
+					count += plen;
+					return true;
+				}
+			}
+			consume(last + 1, out);
+		}
+	}
+	
+	/**
+	 * Consumes a line of this stream, up to and including the next \n. The \n is not 
+	 * written to out, while any preceding \r is.
+	 * @param out where the bytes of the line are written
+	 * @return true if the line was terminated, false if the end of the stream was reached.
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean readLine(final ByteArrayOutputStream out) throws IOException
+	{
+		while(fill(1) > 0)
+		{
+			final byte[] b = buffer;
+			for(int i=pos;i<limit;i++)
+			{
+				if (b[i] == '\n')
+				{
+					consume(i, out);
+					pos++;
+					count++;
+					return true;
+				}
+			}
+			consume(limit, out);
+		}
+		return false;
+	}
+	
+	/** consumes the buffer up to end, writing the bytes to out if it is not null */
+	protected final void consume(final int end, final ByteArrayOutputStream out)
+	{
+		if (out != null)
+			out.write(buffer, pos, end - pos);
+		count += end - pos;
+		pos = end;
+	}
+	
+	static byte[] upper(final byte[] pattern)
+	{
+		final byte[] rtr = new byte[pattern.length];
+		for(int i=0;i<pattern.length;i++)
+			rtr[i] = UPPER[pattern[i] & 0xFF];
+		return rtr;
+	}
+}
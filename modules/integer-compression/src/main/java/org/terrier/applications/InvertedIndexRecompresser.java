@@ -28,11 +28,26 @@
 
 package org.terrier.applications;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.compression.integer.codec.IntegerCodec;
@@ -45,6 +60,8 @@ import org.terrier.structures.IndexUtil;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.LexiconOutputStream;
 import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.SimpleBitIndexPointer;
+import org.terrier.structures.Skipable;
 import org.terrier.structures.indexing.CompressionFactory;
 import org.terrier.structures.indexing.CompressionFactory.CompressionConfiguration;
 import org.terrier.structures.indexing.LexiconBuilder;
@@ -55,6 +72,7 @@ import org.terrier.utility.ApplicationSetup;
 import org.terrier.utility.ArrayUtils;
 import org.terrier.utility.Files;
 import org.terrier.utility.TerrierTimer;
+import org.terrier.utility.io.WrappedIOException;
 
 /**
  * NOTE: BE CAREFUL, THIS APPLICATION OVERWRITES THE INDEX!!
@@ -87,6 +105,11 @@ import org.terrier.utility.TerrierTimer;
  * indexing.tmp-inverted.compression.configuration=IntegerCodecCompressionConfiguration
  * compression.integer.chunk.size=1024
  * 
+ * The recompression can be performed using multiple threads, using the <tt>-p</tt> option,
+ * or the <tt>recompress.threads</tt> property (defaults to 1). In this case, the lexicon is
+ * partitioned into ranges of terms having approximately the same number of postings. Each range
+ * is recompressed into a temporary file by a separate thread, and the temporary files
+ * are then concatenated, updating the lexicon pointers accordingly.
  * 
  * <b>NOTE</b>: BE CAREFUL, THIS APPLICATION OVERWRITES THE INDEX!!
  * 
@@ -94,18 +117,34 @@ import org.terrier.utility.TerrierTimer;
  * @since 4.0
  *
  */
-public class InvertedIndexRecompresser extends CLITool {
+public class InvertedIndexRecompresser extends CLITool.CLIParsedCLITool {
 	
 	@Override
-	public int run(String[] args) {
-		try{
-			IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
-			IndexOnDisk index = Index.createIndex();
-			recompressInverted(index);	
-			index.close();
-		}catch (Exception e) {
-			throw new RuntimeException(e);
+	protected Options getOptions() {
+		Options options = super.getOptions();
+		options.addOption(Option.builder("p")
+				.argName("threads")
+				.longOpt("parallel")
+				.optionalArg(true)
+				.desc("use multiple threads for recompressing, and optionally specify the number of threads")
+				.build());
+		return options;
+	}
+	
+	@Override
+	public int run(CommandLine line) throws Exception {
+		int threads = Integer.parseInt(ApplicationSetup.getProperty("recompress.threads", "1"));
+		if (line.hasOption("parallel"))
+		{
+			String value = line.getOptionValue("parallel");
+			threads = value != null
+					? Integer.parseInt(value)
+					: Runtime.getRuntime().availableProcessors();
 		}
+		IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+		IndexOnDisk index = Index.createIndex();
+		recompressInverted(index, threads);	
+		index.close();
 		return 0;
 	}
 
@@ -114,11 +153,6 @@ public class InvertedIndexRecompresser extends CLITool {
 		return "recompress";
 	}
 
-	@Override
-	public String help() {
-		return helpsummary();
-	}
-
 	@Override
 	public String helpsummary() {
 		return "allows an inverted index to be recompressed, changing compression";
@@ -178,24 +212,225 @@ public class InvertedIndexRecompresser extends CLITool {
 		}
 	}
 	
-	public static void recompressInverted(IndexOnDisk index) throws Exception 
+	/** Splits the lexicon into at most the specified number of ranges of terms, each having
+	 * roughly the same number of postings. Returns the first term of each range, followed
+	 * by the number of terms in the lexicon.
+	 */
+	static int[] partitionLexicon(IndexOnDisk index, int partitions) throws IOException {
+		final int numTerms = index.getCollectionStatistics().getNumberOfUniqueTerms();
+		final long numPointers = index.getCollectionStatistics().getNumberOfPointers();
+		final List<Integer> boundaries = new ArrayList<>(partitions+1);
+		boundaries.add(0);
+		@SuppressWarnings("unchecked")
+		Iterator<LexiconEntry> iterator = (Iterator<LexiconEntry>) index.getIndexStructureInputStream("lexicon-entry");
+		long postings = 0;
+		int termCount = 0;
+		try{
+			while(iterator.hasNext() && boundaries.size() < partitions)
+			{
+				postings += iterator.next().getDocumentFrequency();
+				termCount++;
+				if (postings >= boundaries.size() * (numPointers / partitions) && termCount < numTerms)
+					boundaries.add(termCount);
+			}
+		} finally {
+			IndexUtil.close(iterator);
+		}
+		boundaries.add(numTerms);
+		int[] rtr = new int[boundaries.size()];
+		for(int i=0;i<rtr.length;i++)
+			rtr[i] = boundaries.get(i);
+		return rtr;
+	}
+	
+	/** Advance the specified iterator by numEntries, using {@link Skipable} if possible */
+	static void skip(Iterator<?> iterator, int numEntries) throws IOException {
+		if (iterator instanceof Skipable)
+		{
+			((Skipable)iterator).skip(numEntries);
+			return;
+		}
+		for(int i=0;i<numEntries;i++)
+			iterator.next();
+	}
+	
+	/** Recompress a range of terms, writing the posting lists to icpw and their
+	 * pointers to pointersOut. Both iterators are positioned at the start of the
+	 * range before recompressing. The timer is shared by all threads, so is updated
+	 * while holding its lock.
+	 */
+	static void compressInvertedRange(
+			Iterator<Entry<String, LexiconEntry>> iterator, PostingIndexInputStream iiis, 
+			int firstTerm, int numTerms, 
+			AbstractPostingOutputStream icpw, DataOutputStream pointersOut, 
+			TerrierTimer tt) throws IOException
 	{
+		try{
+			skip(iterator, firstTerm);
+			skip(iiis, firstTerm);
+			final SimpleBitIndexPointer pointer = new SimpleBitIndexPointer();
+			for(int i=0;i<numTerms;i++)
+			{
+				Entry<String,LexiconEntry> lee = iterator.next();
+				IterablePosting postingList = iiis.next();
+				pointer.setBitIndexPointer(icpw.writePostings(postingList));
+				pointer.write(pointersOut);
+				synchronized (tt) {
+					tt.increment(lee.getValue().getDocumentFrequency());
+				}
+			}
+		} finally {
+			icpw.close();
+			pointersOut.close();
+			IndexUtil.close(iterator);
+			IndexUtil.close(iiis);
+		}
+	}
+	
+	/** Recompress the inverted index using the specified number of threads, each processing
+	 * a range of terms. The resulting posting lists are written to filename, while the lexicon
+	 * is written to the "newlex" structure.
+	 */
+	@SuppressWarnings("unchecked")
+	static void compressInvertedParallel(IndexOnDisk index, String filename, int threads) throws IOException {
 		Logger logger = LoggerFactory.getLogger(InvertedIndexRecompresser.class);
-		assert ! IndexUtil.isStructureOpen(index, "inverted");
-		assert ! IndexUtil.isStructureOpen(index, "lexicon");
+		final long startTime = System.currentTimeMillis();
+		final int[] boundaries = partitionLexicon(index, threads);
+		final int partitions = boundaries.length - 1;
+		final String[] partFilenames = new String[partitions];
+		final String[] pointerFilenames = new String[partitions];
+		final String partPrefix = index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + "tmp-inverted-part";
+		logger.info("Recompressing " + partitions + " ranges of terms using " + threads + " threads");
 		
+		final long numPointers = index.getCollectionStatistics().getNumberOfPointers();
+		final TerrierTimer tt = new TerrierTimer("Recompressing inverted index", numPointers);
+		//structures are obtained from the index here, as the index is not thread-safe  
+		index.getDocumentIndex();
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final List<Future<?>> results = new ArrayList<>(partitions);
+		tt.start();
+		try{
+			for(int i=0;i<partitions;i++)
+			{
+				final int firstTerm = boundaries[i];
+				final int numTerms = boundaries[i+1] - boundaries[i];
+				final CompressionConfiguration compressionConfig = getCompressionConfiguration(index);
+				partFilenames[i] = partPrefix + i + compressionConfig.getStructureFileExtension();
+				pointerFilenames[i] = partPrefix + i + ".pointers";
+				final Iterator<Entry<String, LexiconEntry>> iterator = (Iterator<Entry<String, LexiconEntry>>) 
+						index.getIndexStructureInputStream("lexicon");
+				final PostingIndexInputStream iiis = (PostingIndexInputStream) index.getIndexStructureInputStream("inverted");
+				final AbstractPostingOutputStream icpw = compressionConfig.getPostingOutputStream(partFilenames[i]);
+				final DataOutputStream pointersOut = new DataOutputStream(new BufferedOutputStream(Files.writeFileStream(pointerFilenames[i])));
+				results.add(pool.submit(() -> {
+					compressInvertedRange(iterator, iiis, firstTerm, numTerms, icpw, pointersOut, tt);
+					logger.debug("Finished recompressing terms " + firstTerm + " to " + (firstTerm + numTerms - 1));
+					return null;
+				}));
+			}
+			for(Future<?> f : results)
+				f.get();
+		} catch (InterruptedException ie) {
+			throw new WrappedIOException(ie);
+		} catch (ExecutionException ee) {
+			throw new WrappedIOException(ee.getCause());
+		} finally {
+			pool.shutdownNow();
+			tt.finished();
+		}
+		final long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+		logger.info("Recompressed " + numPointers + " postings in " + tt.elapsed() 
+				+ " (" + (numPointers * 1000l / elapsed) + " postings/sec)");
+		
+		//concatenate the partial posting files, recording where each starts
+		final long[] partOffsets = new long[partitions];
+		final byte[] buffer = new byte[1024*1024];
+		long offset = 0;
+		try(OutputStream out = new BufferedOutputStream(Files.writeFileStream(filename)))
+		{
+			for(int i=0;i<partitions;i++)
+			{
+				partOffsets[i] = offset;
+				try(InputStream in = Files.openFileStream(partFilenames[i]))
+				{
+					int read;
+					while((read = in.read(buffer)) >= 0)
+					{
+						out.write(buffer, 0, read);
+						offset += read;
+					}
+				}
+				Files.delete(partFilenames[i]);
+			}
+		}
 		
-		CompressionConfiguration compressionConfig = CompressionFactory.getCompressionConfiguration("tmp-inverted", 
+		//write the new lexicon, rebasing the pointers of each range
+		FixedSizeWriteableFactory<LexiconEntry> valueFactory = (FixedSizeWriteableFactory<LexiconEntry>)index.getIndexStructure("lexicon-valuefactory");
+		LexiconOutputStream<String> los = new FSOMapFileLexiconOutputStream(
+				index, "newlex", 
+				(Class<? extends FixedSizeWriteableFactory<LexiconEntry>>) valueFactory.getClass());
+		Iterator<Entry<String, LexiconEntry>> iterator = (Iterator<Entry<String, LexiconEntry>>) 
+				index.getIndexStructureInputStream("lexicon");
+		final SimpleBitIndexPointer pointer = new SimpleBitIndexPointer();
+		try{
+			for(int i=0;i<partitions;i++)
+			{
+				try(DataInputStream pointersIn = new DataInputStream(new BufferedInputStream(Files.openFileStream(pointerFilenames[i]))))
+				{
+					for(int termId=boundaries[i];termId<boundaries[i+1];termId++)
+					{
+						Entry<String,LexiconEntry> lee = iterator.next();
+						pointer.readFields(pointersIn);
+						pointer.setOffset(pointer.getOffset() + partOffsets[i], pointer.getOffsetBits());
+						lee.getValue().setPointer(pointer);
+						los.writeNextEntry(lee.getKey(), lee.getValue());
+					}
+				}
+				Files.delete(pointerFilenames[i]);
+			}
+		} finally {
+			IndexUtil.close(iterator);
+			los.close();
+		}
+	}
+	
+	static CompressionConfiguration getCompressionConfiguration(IndexOnDisk index) {
+		return CompressionFactory.getCompressionConfiguration("tmp-inverted", 
 				ArrayUtils.parseCommaDelimitedString(index.getIndexProperty("index.inverted.fields.names", "")), 
 				index.getIntIndexProperty("index.inverted.blocks", 0), 
 				index.getIntIndexProperty("index.inverted.blocks.max", 0));
+	}
+	
+	/** Recompress the inverted index of the specified index, using the number of threads 
+	 * specified by the <tt>recompress.threads</tt> property (defaults to 1). */
+	public static void recompressInverted(IndexOnDisk index) throws Exception 
+	{
+		recompressInverted(index, Integer.parseInt(ApplicationSetup.getProperty("recompress.threads", "1")));
+	}
+	
+	/** Recompress the inverted index of the specified index, using the specified number of threads. */
+	public static void recompressInverted(IndexOnDisk index, int threads) throws Exception 
+	{
+		Logger logger = LoggerFactory.getLogger(InvertedIndexRecompresser.class);
+		assert ! IndexUtil.isStructureOpen(index, "inverted");
+		assert ! IndexUtil.isStructureOpen(index, "lexicon");
+		
+		
+		CompressionConfiguration compressionConfig = getCompressionConfiguration(index);
 		logger.info("Recompressing inverted structure using " + compressionConfig.toString());
 		
-		AbstractPostingOutputStream icpw = compressionConfig.getPostingOutputStream(
-				index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + "tmp-inverted" + compressionConfig.getStructureFileExtension());
-				
+		final String filename = index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + "tmp-inverted" + compressionConfig.getStructureFileExtension();
+		
 		//recompress
-		compressInverted(index, icpw, null);
+		if (threads > 1 && index.getCollectionStatistics().getNumberOfUniqueTerms() > threads)
+		{
+			compressInvertedParallel(index, filename, threads);
+		}
+		else
+		{
+			AbstractPostingOutputStream icpw = compressionConfig.getPostingOutputStream(filename);
+			compressInverted(index, icpw, null);
+		}
 		
 		//if (ApplicationSetup.getProperty("trec.topics", "").isEmpty()) {
 		//	compressInverted(index, icpw, null);
@@ -205,7 +440,7 @@ public class InvertedIndexRecompresser extends CLITool {
 		//}	
 		
 		compressionConfig.writeIndexProperties(index, "lexicon-entry-inputstream");
-		logger.info("New inverted file size: "+ Files.length(index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + "tmp-inverted" + compressionConfig.getStructureFileExtension()));
+		logger.info("New inverted file size: "+ Files.length(filename));
 		
 		
 		//2. rename lexicon and inverted structures, old and new				
@@ -0,0 +1,129 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is EliasFanoCodec.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.compression.integer.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.terrier.compression.integer.ByteIn;
+import org.terrier.compression.integer.ByteOut;
+import org.terrier.compression.integer.codec.util.EliasFano;
+
+/**
+ * IntegerCodec implementation which uses Elias-Fano encoding. The (non-negative)
+ * integers to compress are prefix-summed, and the resulting monotone sequence
+ * is Elias-Fano encoded. When used for docids, each chunk of postings is
+ * therefore an Elias-Fano partition.
+ * <p>
+ * The format of a compressed block is the number of words (vint), the number
+ * of low bits (vint), followed by the words themselves.
+ *
+ * @see EliasFano
+ * @since 5.2
+ */
+public class EliasFanoCodec extends IntegerCodec {
+
+	protected long[] values = new long[0];
+	protected long[] words = new long[0];
+
+	@Override
+	public void compress(final int[] in, final int len, final ByteOut out) throws IOException {
+		if (values.length < len)
+			values = new long[len];
+		long sum = 0;
+		for (int i = 0; i < len; i++)
+		{
+			assert in[i] >= 0;
+			values[i] = sum += in[i];
+		}
+		compressMonotone(values, len, out);
+	}
+
+	/**
+	 * Compress and write down a non-decreasing array of non-negative longs
+	 * @param in the array to compress
+	 * @param len number of in's elements to compress
+	 * @param out the output channel
+	 * @throws IOException
+	 */
+	public void compressMonotone(final long[] in, final int len, final ByteOut out) throws IOException {
+		final int L = EliasFano.numLowBits(in[len-1], len);
+		final int numWords = EliasFano.numWords(in[len-1], len, L);
+		if (words.length < numWords)
+			words = new long[numWords * 2];
+		EliasFano.encode(in, len, L, words);
+
+		final int bytes = numWords * 8;
+		if (outBuffer.capacity() < bytes)
+			outBuffer = ByteBuffer.allocate(bytes * 2);
+		else
+			outBuffer.position(0);
+		outBuffer.asLongBuffer().put(words, 0, numWords);
+
+		out.writeVInt(numWords);
+		out.writeVInt(L);
+		out.write(outBuffer.array(), 0, bytes);
+	}
+
+	@Override
+	public void decompress(final ByteIn in, final int[] out, final int num) throws IOException {
+		final int numWords = in.readVInt();
+		final int L = in.readVInt();
+		final int highStart = EliasFano.numLowWords(num, L);
+		readWords(in, numWords);
+
+		long prev = 0;
+		long highPos = -1;
+		for (int i = 0; i < num; i++)
+		{
+			highPos = EliasFano.nextOne(words, highStart, highPos + 1);
+			final long v = ((highPos - i) << L) | EliasFano.lowBits(words, i, L);
+			out[i] = (int) (v - prev);
+			prev = v;
+		}
+	}
+
+	protected final void readWords(final ByteIn in, final int numWords) throws IOException {
+		final int bytes = numWords * 8;
+		if (inBuffer.capacity() < bytes)
+			inBuffer = ByteBuffer.allocate(bytes * 2);
+		else
+			inBuffer.position(0);
+		in.readFully(inBuffer.array(), 0, bytes);
+		if (words.length < numWords)
+			words = new long[numWords * 2];
+		inBuffer.asLongBuffer().get(words, 0, numWords);
+	}
+
+	@Override
+	public void skip(final ByteIn in) throws IOException {
+		final int numWords = in.readVInt();
+		in.readVInt();
+		in.skipBytes(numWords * 8l);
+	}
+
+}
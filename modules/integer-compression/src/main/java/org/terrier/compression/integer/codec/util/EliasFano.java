@@ -0,0 +1,155 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is EliasFano.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.compression.integer.codec.util;
+
+/**
+ * Utility class for Elias-Fano encoding of a non-decreasing sequence of
+ * non-negative integers. The sequence is represented by an array of longs,
+ * with the <tt>L</tt> low bits of each element packed first, followed
+ * (starting at the next word boundary) by the high bits, written in
+ * negated-unary. Element <tt>i</tt> with high part <tt>h</tt> sets the bit
+ * <tt>h+i</tt> of the high bits.
+ *
+ * @since 5.2
+ */
+public final class EliasFano {
+
+	/**
+	 * Returns the number of low bits to use for n elements whose largest value is upper
+	 * @param upper the largest value in the sequence
+	 * @param n the number of elements
+	 * @return the number of low bits, L
+	 */
+	public final static int numLowBits(final long upper, final int n) {
+		final long ratio = (upper + 1) / n;
+		return ratio <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(ratio);
+	}
+
+	/**
+	 * Returns the number of words used to store the low bits
+	 * @param n the number of elements
+	 * @param L the number of low bits
+	 */
+	public final static int numLowWords(final int n, final int L) {
+		return (int) (((long) n * L + 63) >>> 6);
+	}
+
+	/**
+	 * Returns the total number of words needed to encode n elements
+	 * @param upper the largest value in the sequence
+	 * @param n the number of elements
+	 * @param L the number of low bits
+	 */
+	public final static int numWords(final long upper, final int n, final int L) {
+		final long highBits = n + (upper >>> L) + 1;
+		return numLowWords(n, L) + (int) ((highBits + 63) >>> 6);
+	}
+
+	/**
+	 * Encodes the given sequence
+	 * @param values the non-decreasing values to encode
+	 * @param n the number of elements of values to consider
+	 * @param L the number of low bits
+	 * @param words the destination array, of at least {@link #numWords(long, int, int)} length
+	 * @return the number of words used
+	 */
+	public final static int encode(final long[] values, final int n, final int L, final long[] words) {
+		final int numWords = numWords(values[n-1], n, L);
+		final int highStart = numLowWords(n, L);
+		java.util.Arrays.fill(words, 0, numWords, 0L);
+		final long lowMask = (1L << L) - 1;
+		for (int i = 0; i < n; i++) {
+			final long v = values[i];
+			assert v >= 0;
+			assert i == 0 || v >= values[i-1];
+			if (L > 0) {
+				final long pos = (long) i * L;
+				final int w = (int) (pos >>> 6);
+				final int off = (int) (pos & 63);
+				final long low = v & lowMask;
+				words[w] |= low << off;
+				if (off + L > 64)
+					words[w+1] |= low >>> (64 - off);
+			}
+			final long hpos = (v >>> L) + i;
+			words[highStart + (int) (hpos >>> 6)] |= 1L << (hpos & 63);
+		}
+		return numWords;
+	}
+
+	/**
+	 * Returns the low bits of element i
+	 * @param words the encoded sequence
+	 * @param i the index of the element
+	 * @param L the number of low bits
+	 */
+	public final static long lowBits(final long[] words, final int i, final int L) {
+		if (L == 0)
+			return 0;
+		final long pos = (long) i * L;
+		final int w = (int) (pos >>> 6);
+		final int off = (int) (pos & 63);
+		long v = words[w] >>> off;
+		if (off + L > 64)
+			v |= words[w+1] << (64 - off);
+		return v & ((1L << L) - 1);
+	}
+
+	/**
+	 * Returns the position of the first set bit in the high bits at or after position from
+	 * @param words the encoded sequence
+	 * @param highStart the word where the high bits start
+	 * @param from the bit position (relative to the start of the high bits) to start from
+	 */
+	public final static long nextOne(final long[] words, final int highStart, final long from) {
+		int w = highStart + (int) (from >>> 6);
+		long word = words[w] & (-1L << (from & 63));
+		while (word == 0)
+			word = words[++w];
+		return ((long) (w - highStart) << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Returns the position of the k-th (counting from zero) unset bit in the high bits.
+	 * All elements with high part at most k are before this position, all others after.
+	 * @param words the encoded sequence
+	 * @param highStart the word where the high bits start
+	 * @param k the number of the unset bit to find
+	 */
+	public final static long selectZero(final long[] words, final int highStart, long k) {
+		int w = highStart;
+		int zeros;
+		while (k >= (zeros = 64 - Long.bitCount(words[w]))) {
+			k -= zeros;
+			w++;
+		}
+		long inverted = ~words[w];
+		for (; k > 0; k--)
+			inverted &= inverted - 1;
+		return ((long) (w - highStart) << 6) + Long.numberOfTrailingZeros(inverted);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is EliasFanoCompressionConfiguration.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.structures.integer;
+
+import java.util.Iterator;
+
+import org.terrier.compression.integer.codec.EliasFanoCodec;
+import org.terrier.compression.integer.codec.IntegerCodec;
+import org.terrier.structures.AbstractPostingOutputStream;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.integer.EliasFanoIterablePosting;
+
+/**
+ * Compresses docids using partitioned Elias-Fano, where each chunk of postings is
+ * a partition. For structures without fields and blocks, postings are read using
+ * {@link EliasFanoIterablePosting}, which skips partitions and
+ * locates docids within a partition without any separate skip structure.
+ * Structures with fields or blocks are written in the usual integer coding format,
+ * with the docids of each chunk compressed by {@link EliasFanoCodec}.
+ * <p>
+ * The codecs for the other payloads are configured as per {@link IntegerCodecCompressionConfiguration}.
+ * For instance:
+ * <pre>
+ * indexing.inverted.compression.configuration=EliasFanoCompressionConfiguration
+ * index.inverted.compression.integer.tfs.codec=LemireFastPFORVBCodec
+ * index.inverted.compression.integer.chunk.size=128
+ * </pre>
+ *
+ * @since 5.2
+ */
+public class EliasFanoCompressionConfiguration extends IntegerCodecCompressionConfiguration {
+
+	public EliasFanoCompressionConfiguration(String structureName, String[] fieldNames, int hasBlocks, int maxBlocks) {
+		super(structureName, fieldNames, hasBlocks, maxBlocks);
+		if (! isPartitioned())
+			log.info("Index structure " + structureName + " has fields or blocks, partitioned Elias-Fano postings will not be used");
+	}
+
+	/** are the postings of this structure written as partitioned Elias-Fano? */
+	protected boolean isPartitioned() {
+		return fieldCount == 0 && hasBlocks == 0;
+	}
+
+	@Override
+	public IntegerCodec loadCodecForType(String type) throws Exception {
+		if (! "ids".equals(type))
+			return super.loadCodecForType(type);
+		this.props.setProperty(compressionPrefix + "." + type + ".codec", EliasFanoCodec.class.getName());
+		return new EliasFanoCodec();
+	}
+
+	@Override
+	public AbstractPostingOutputStream getPostingOutputStream(String filename) {
+		if (! isPartitioned())
+			return super.getPostingOutputStream(filename);
+		try{
+			return new EliasFanoPostingOutputStream(filename, chunkSize, (EliasFanoCodec) newCodecForType("ids"), newCodecForType("tfs"));
+		}catch (Exception e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	@Override
+	public Class<? extends IterablePosting> getPostingIteratorClass() {
+		return isPartitioned() ? EliasFanoIterablePosting.class : super.getPostingIteratorClass();
+	}
+
+	@Override
+	public Class<? extends PostingIndex<?>> getStructureClass() {
+		return isPartitioned() ? EliasFanoPostingIndex.class : super.getStructureClass();
+	}
+
+	@Override
+	public Class<? extends Iterator<IterablePosting>> getStructureInputStreamClass() {
+		return isPartitioned() ? EliasFanoPostingIndexInputStream.class : super.getStructureInputStreamClass();
+	}
+
+}
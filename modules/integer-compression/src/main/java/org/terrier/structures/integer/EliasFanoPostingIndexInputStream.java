@@ -0,0 +1,56 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is EliasFanoPostingIndexInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.structures.integer;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.terrier.compression.integer.ByteIn;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.integer.EliasFanoIterablePosting;
+
+/**
+ * Input stream for an {@link EliasFanoPostingIndex}.
+ *
+ * @since 5.2
+ */
+public class EliasFanoPostingIndexInputStream extends IntegerCodingPostingIndexInputStream {
+
+	public EliasFanoPostingIndexInputStream(IndexOnDisk _index, String _structureName,
+			Iterator<? extends BitIndexPointer> _pointerList) throws IOException {
+		super(_index, _structureName, _pointerList);
+	}
+
+	@Override
+	protected IterablePosting createPostingIterator(ByteIn in, int numberOfEntries, DocumentIndex fixedDi) throws IOException {
+		return new EliasFanoIterablePosting(in, numberOfEntries, fixedDi, chunkSize, tfsCodec);
+	}
+
+}
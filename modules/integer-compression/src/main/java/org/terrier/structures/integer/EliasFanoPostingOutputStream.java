@@ -0,0 +1,97 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is EliasFanoPostingOutputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.structures.integer;
+
+import java.io.IOException;
+
+import org.terrier.compression.integer.ByteOut;
+import org.terrier.compression.integer.codec.EliasFanoCodec;
+import org.terrier.compression.integer.codec.IntegerCodec;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.integer.EliasFanoIterablePosting;
+
+/**
+ * Writes posting lists (docids and frequencies only) using partitioned Elias-Fano
+ * for the docids. Each chunk of postings forms a partition, which starts with the
+ * largest docid of the partition (relative to the start of the partition), such that
+ * {@link EliasFanoIterablePosting#next(int)} can skip entire partitions without
+ * decoding them. The frequencies are compressed using the specified {@link IntegerCodec}.
+ *
+ * @since 5.2
+ */
+public class EliasFanoPostingOutputStream extends IntegerCodingPostingOutputStream {
+
+	/** the first docid that can appear in the current partition */
+	protected int partitionBase;
+	protected long[] values;
+
+	/**
+	 * @param filename the file where to write
+	 * @param chunkSize the chunk (partition) size (in term of number of posting)
+	 * @param idsCodec the EliasFanoCodec to use to compress ids
+	 * @param tfsCodec the IntegerCodec to use to compress tfs
+	 * @throws IOException
+	 */
+	public EliasFanoPostingOutputStream(String filename, int chunkSize, EliasFanoCodec idsCodec, IntegerCodec tfsCodec) throws IOException {
+		super(filename, chunkSize, 0, 0, 0, idsCodec, tfsCodec, null, null);
+		values = new long[chunkSize];
+	}
+
+	/**
+	 * @param output the output channel
+	 * @param chunkSize the chunk (partition) size (in term of number of posting)
+	 * @param idsCodec the EliasFanoCodec to use to compress ids
+	 * @param tfsCodec the IntegerCodec to use to compress tfs
+	 * @throws IOException
+	 */
+	public EliasFanoPostingOutputStream(ByteOut output, int chunkSize, EliasFanoCodec idsCodec, IntegerCodec tfsCodec) throws IOException {
+		super(output, chunkSize, 0, 0, 0, idsCodec, tfsCodec, null, null);
+		values = new long[chunkSize];
+	}
+
+	@Override
+	public Class<? extends IterablePosting> getPostingIteratorClass() {
+		return EliasFanoIterablePosting.class;
+	}
+
+	@Override
+	public BitIndexPointer writePostings(IterablePosting postings) throws IOException {
+		partitionBase = 0;
+		return super.writePostings(postings);
+	}
+
+	@Override
+	protected void writeIds(int i) throws IOException {
+		for (int j = 0; j < i; j++)
+			values[j] = ids[j] - partitionBase;
+		output.writeVInt((int) values[i-1]);
+		((EliasFanoCodec) idsCodec).compressMonotone(values, i, output);
+		partitionBase = ids[i-1] + 1;
+	}
+
+}
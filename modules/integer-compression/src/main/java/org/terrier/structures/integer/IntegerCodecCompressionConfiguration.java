@@ -152,6 +152,16 @@ public class IntegerCodecCompressionConfiguration extends
 		}
 	}
 	
+	/** 
+	 * Returns a new instance of the codec configured for the specified payload type. 
+	 * As codecs keep buffers, each posting output stream obtains its own codecs, such 
+	 * that several streams can be written concurrently.
+	 */
+	protected IntegerCodec newCodecForType(String type) throws Exception
+	{
+		return loadCodec(props.getProperty(compressionPrefix + "." + type + ".codec"));
+	}
+	
 	@Override
 	public AbstractPostingOutputStream getPostingOutputStream(String filename) {
 		AbstractPostingOutputStream rtr;
@@ -159,10 +169,10 @@ public class IntegerCodecCompressionConfiguration extends
 			rtr = new IntegerCodingPostingOutputStream(
 				filename,
 				chunkSize, fieldCount, hasBlocks, maxBlocks, 
-						idsCodec, 
-						tfsCodec, 
-						fieldsCodec, 
-						blocksCodec
+						newCodecForType("ids"), 
+						newCodecForType("tfs"), 
+						newCodecForType("fields"), 
+						newCodecForType("blocks")
 			);
 		}catch (Exception e) {
 			throw new IllegalArgumentException(e);
@@ -192,21 +192,32 @@ public class IntegerCodingPostingIndex implements PostingIndex<BitIndexPointer>
 		DocumentIndex fixedDi = pointer instanceof DocumentIndexEntry
 				? new PostingIndex.DocidSpecificDocumentIndex(documentIndex, (DocumentIndexEntry)pointer)
 				: documentIndex;
-			
+		return createPostingIterator(in, pointer.getNumberOfEntries(), fixedDi);
+//		return new IntegerCodingIterablePosting(in,
+//				lEntry.getNumberOfEntries(), documentIndex, chunkSize,
+//				fieldsCount, hasBlocks, idsCodec, tfsCodec, fieldsCodec,
+//				blocksCodec);
+	}
+	
+	/**
+	 * Create the IterablePosting reading the postings from the specified input channel
+	 * @param in the input channel, positioned at the start of the posting list
+	 * @param numberOfEntries the number of postings
+	 * @param fixedDi the document index to use for document lengths
+	 * @return an IterablePosting for the posting list
+	 * @throws IOException
+	 */
+	protected IterablePosting createPostingIterator(ByteIn in, int numberOfEntries, DocumentIndex fixedDi) throws IOException {
 		if (hasBlocks > 0)
 			if (fieldsCount > 0)
-				return new BlockFieldIntegerCodingIterablePosting(in, pointer.getNumberOfEntries(), fixedDi, chunkSize, fieldsCount, hasBlocks, maxBlocks, idsCodec, tfsCodec, fieldsCodec, blocksCodec);
+				return new BlockFieldIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, fieldsCount, hasBlocks, maxBlocks, idsCodec, tfsCodec, fieldsCodec, blocksCodec);
 			else
-				return new BlockIntegerCodingIterablePosting(in, pointer.getNumberOfEntries(), fixedDi, chunkSize, hasBlocks, maxBlocks, idsCodec, tfsCodec, blocksCodec);
+				return new BlockIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, hasBlocks, maxBlocks, idsCodec, tfsCodec, blocksCodec);
 		else
 			if (fieldsCount > 0)
-				return new FieldIntegerCodingIterablePosting(in, pointer.getNumberOfEntries(), fixedDi, chunkSize, fieldsCount, idsCodec, tfsCodec, fieldsCodec);
+				return new FieldIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, fieldsCount, idsCodec, tfsCodec, fieldsCodec);
 			else
-				return new BasicIntegerCodingIterablePosting(in, pointer.getNumberOfEntries(), fixedDi, chunkSize, idsCodec, tfsCodec);
-//		return new IntegerCodingIterablePosting(in,
-//				lEntry.getNumberOfEntries(), documentIndex, chunkSize,
-//				fieldsCount, hasBlocks, idsCodec, tfsCodec, fieldsCodec,
-//				blocksCodec);
+				return new BasicIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, idsCodec, tfsCodec);
 	}
 
 }
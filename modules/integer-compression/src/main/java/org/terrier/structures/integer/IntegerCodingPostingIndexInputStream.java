@@ -301,16 +301,7 @@ public class IntegerCodingPostingIndexInputStream implements
 					: documentIndex;
 			
 			
-			if (hasBlocks > 0)
-				if (fieldsCount > 0)
-					rtr = new BlockFieldIntegerCodingIterablePosting(file, pointer.getNumberOfEntries(), fixedDi, chunkSize, fieldsCount, hasBlocks, maxBlocks, idsCodec, tfsCodec, fieldsCodec, blocksCodec);
-				else
-					rtr = new BlockIntegerCodingIterablePosting(file, pointer.getNumberOfEntries(), fixedDi, chunkSize, hasBlocks, maxBlocks, idsCodec, tfsCodec, blocksCodec);
-			else
-				if (fieldsCount > 0)
-					rtr = new FieldIntegerCodingIterablePosting(file, pointer.getNumberOfEntries(), fixedDi, chunkSize, fieldsCount, idsCodec, tfsCodec, fieldsCodec);
-				else
-					rtr = new BasicIntegerCodingIterablePosting(file, pointer.getNumberOfEntries(), fixedDi, chunkSize, idsCodec, tfsCodec);
+			rtr = createPostingIterator(file, pointer.getNumberOfEntries(), fixedDi);
 
 //			rtr = new IntegerCodingIterablePosting(
 //					file, 
@@ -328,6 +319,27 @@ public class IntegerCodingPostingIndexInputStream implements
 		return rtr;
 	}
 
+	/**
+	 * Create the IterablePosting reading the postings from the specified input channel
+	 * @param in the input channel, positioned at the start of the posting list
+	 * @param numberOfEntries the number of postings
+	 * @param fixedDi the document index to use for document lengths
+	 * @return an IterablePosting for the posting list
+	 * @throws IOException
+	 */
+	protected IterablePosting createPostingIterator(ByteIn in, int numberOfEntries, DocumentIndex fixedDi) throws IOException {
+		if (hasBlocks > 0)
+			if (fieldsCount > 0)
+				return new BlockFieldIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, fieldsCount, hasBlocks, maxBlocks, idsCodec, tfsCodec, fieldsCodec, blocksCodec);
+			else
+				return new BlockIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, hasBlocks, maxBlocks, idsCodec, tfsCodec, blocksCodec);
+		else
+			if (fieldsCount > 0)
+				return new FieldIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, fieldsCount, idsCodec, tfsCodec, fieldsCodec);
+			else
+				return new BasicIntegerCodingIterablePosting(in, numberOfEntries, fixedDi, chunkSize, idsCodec, tfsCodec);
+	}
+
 	protected DocumentIndex getDocumentIndex(BitIndexPointer pointer) {
 		return documentIndex;
 	}
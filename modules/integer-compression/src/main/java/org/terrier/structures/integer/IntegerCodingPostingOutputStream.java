@@ -274,8 +274,7 @@ public class IntegerCodingPostingOutputStream extends AbstractPostingOutputStrea
 	 */
 	protected void write(int i, int cnt) throws IOException {
 		
-		Delta.delta(ids, i);
-		idsCodec.compress(ids, i, output);
+		writeIds(i);
 		//System.err.println("tfs="+ Arrays.toString(Arrays.copyOf(tfs, i)));
 		tfsCodec.compress(tfs, i, output);
 		 
@@ -310,6 +309,18 @@ public class IntegerCodingPostingOutputStream extends AbstractPostingOutputStrea
 		}				
 	}
 	
+	/**
+	 * compress and write down the document ids of the current chunk of postings
+	 * 
+	 * @param i number of postings
+	 * @throws IOException
+	 */
+	protected void writeIds(int i) throws IOException {
+		
+		Delta.delta(ids, i);
+		idsCodec.compress(ids, i, output);
+	}
+	
 	static boolean arrayEquals(final int[] a, final int[] b, final int l)
 	{
 		for(int i=0;i<l;i++)
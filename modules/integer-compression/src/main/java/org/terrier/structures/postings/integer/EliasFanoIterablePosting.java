@@ -0,0 +1,260 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is EliasFanoIterablePosting.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.structures.postings.integer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.compression.integer.ByteIn;
+import org.terrier.compression.integer.codec.IntegerCodec;
+import org.terrier.compression.integer.codec.util.EliasFano;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.integer.EliasFanoPostingOutputStream;
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * An IterablePosting implementation for posting lists written by
+ * {@link EliasFanoPostingOutputStream}, where docids are encoded using
+ * partitioned Elias-Fano.
+ * <p>
+ * {@link #next(int)} is implemented natively: partitions whose largest docid is smaller
+ * than the target are skipped by reading their header only, while within a
+ * partition the target is located by a select on the high bits of the
+ * Elias-Fano representation, without decoding the preceding postings.
+ * Frequencies of a partition are only decoded once a posting of that partition
+ * is reached.
+ *
+ * @since 5.2
+ */
+public class EliasFanoIterablePosting implements IterablePosting {
+
+	/** The logger used */
+	protected static final Logger logger = LoggerFactory.getLogger(EliasFanoIterablePosting.class);
+
+	protected final ByteIn input;
+	protected DocumentIndex documentIndex;
+	protected final IntegerCodec tfsCodec;
+	protected final int chunkSize;
+
+	/** number of postings in the partitions after the current one */
+	protected int remaining;
+	/** number of postings in the current partition */
+	protected int partitionSize = 0;
+	/** index of the current posting within the current partition */
+	protected int currentPosting = -1;
+	/** first docid that can appear in the current partition */
+	protected int partitionBase = 0;
+	/** largest docid of the current partition */
+	protected int partitionUpper = -1;
+
+	protected int numWords;
+	protected int L;
+	protected int highStart;
+	protected long highPos;
+	protected long[] words = new long[0];
+	protected ByteBuffer inBuffer = ByteBuffer.allocate(0);
+
+	/** have the Elias-Fano words of the current partition been read */
+	protected boolean loaded;
+	/** have the tfs of the current partition been read */
+	protected boolean decompressed;
+
+	protected int id = -1;
+	protected int tf = -1;
+	protected final int[] tfs;
+
+	/**
+	 * @param input the input channel
+	 * @param numberOfEntries the number of postings
+	 * @param documentIndex the document index
+	 * @param chunkSize the size of the chunk (partition)
+	 * @param tfsCodec the IntegerCodec to use to decode term frequencies
+	 * @throws IOException
+	 */
+	public EliasFanoIterablePosting(
+			ByteIn input,
+			int numberOfEntries,
+			DocumentIndex documentIndex,
+			int chunkSize,
+			IntegerCodec tfsCodec) throws IOException {
+		this.input = input;
+		this.remaining = numberOfEntries;
+		this.documentIndex = documentIndex;
+		this.chunkSize = chunkSize;
+		this.tfsCodec = tfsCodec;
+		this.tfs = new int[Math.min(chunkSize, numberOfEntries)];
+	}
+
+	@Override
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	public int getFrequency() {
+		return tf;
+	}
+
+	@Override
+	public int getDocumentLength() {
+		try{
+			return documentIndex.getDocumentLength(id);
+		} catch (Exception e) {
+			logger.error("Problem looking for doclength for document "+ id, e);
+			return -1;
+		}
+	}
+
+	@Override
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	@Override
+	public WritablePosting asWritablePosting() {
+		return new BasicPostingImpl(id, tf);
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+	@Override
+	public boolean endOfPostings() {
+		return remaining == 0 && currentPosting + 1 >= partitionSize;
+	}
+
+	/** read the header of the next partition */
+	protected void readHeader() throws IOException {
+		if (partitionSize > 0)
+			finishPartition();
+		partitionSize = Math.min(chunkSize, remaining);
+		remaining -= partitionSize;
+		partitionUpper = partitionBase + input.readVInt();
+		numWords = input.readVInt();
+		L = input.readVInt();
+		highStart = EliasFano.numLowWords(partitionSize, L);
+		currentPosting = -1;
+		highPos = -1;
+		loaded = false;
+		decompressed = false;
+	}
+
+	/** skip over whatever remains unread of the current partition */
+	protected void finishPartition() throws IOException {
+		if (! loaded)
+			input.skipBytes(numWords * 8l);
+		if (! decompressed)
+			tfsCodec.skip(input);
+		partitionBase = partitionUpper + 1;
+	}
+
+	/** read the Elias-Fano words and the frequencies of the current partition */
+	protected void load() throws IOException {
+		final int bytes = numWords * 8;
+		if (inBuffer.capacity() < bytes)
+			inBuffer = ByteBuffer.allocate(bytes * 2);
+		else
+			inBuffer.position(0);
+		input.readFully(inBuffer.array(), 0, bytes);
+		if (words.length < numWords)
+			words = new long[numWords * 2];
+		inBuffer.asLongBuffer().get(words, 0, numWords);
+		loaded = true;
+		tfsCodec.decompress(input, tfs, partitionSize);
+		decompressed = true;
+	}
+
+	/** move to the posting after the current one in the current (loaded) partition */
+	protected final int advance() {
+		currentPosting++;
+		highPos = EliasFano.nextOne(words, highStart, highPos + 1);
+		id = partitionBase + (int) (((highPos - currentPosting) << L) | EliasFano.lowBits(words, currentPosting, L));
+		tf = tfs[currentPosting];
+		return id;
+	}
+
+	@Override
+	public int next() throws IOException {
+		if (endOfPostings())
+			return id = EOL;
+		if (currentPosting + 1 >= partitionSize)
+			readHeader();
+		if (! loaded)
+			load();
+		return advance();
+	}
+
+	@Override
+	public int next(int targetId) throws IOException {
+		if (targetId <= id)
+			return id;
+		// skip partitions without decoding them
+		while (partitionSize == 0 || targetId > partitionUpper)
+		{
+			if (remaining == 0)
+			{
+				currentPosting = partitionSize;
+				return id = EOL;
+			}
+			readHeader();
+		}
+		if (! loaded)
+			load();
+		// position just before the first posting with the same high bits as the target
+		final long high = ((long) (targetId - partitionBase)) >>> L;
+		if (high > 0)
+		{
+			final long zeroPos = EliasFano.selectZero(words, highStart, high - 1);
+			final int before = (int) (zeroPos - (high - 1));
+			if (before > currentPosting + 1)
+			{
+				currentPosting = before - 1;
+				highPos = zeroPos;
+			}
+		}
+		// targetId is no larger than the last docid in this partition
+		while (advance() < targetId);
+		return id;
+	}
+
+	/** Makes a human readable form of this posting */
+	@Override
+	public String toString()
+	{
+		return "(" + id + "," + tf + ")";
+	}
+
+	public long getCurrentAddress() {
+		return input.getByteOffset();
+	}
+}
@@ -34,7 +34,9 @@ import org.terrier.integer.structure.TestIntegerCoding;
 import org.terrier.integer.structure.TestIntegerCoding2;
 import org.terrier.integer.structure.TestNext;
 import org.terrier.integer.tests.BasicShak;
+import org.terrier.integer.tests.BasicShakFastPFORParallelRecompress;
 import org.terrier.integer.tests.BasicShakFastPFORRecompress;
+import org.terrier.integer.tests.BasicShakNullParallelRecompress;
 import org.terrier.integer.tests.BasicShakNullRecompress;
 import org.terrier.integer.tests.BasicShakSmallChunk;
 import org.terrier.integer.tests.BlockShak;
@@ -50,6 +52,8 @@ import org.terrier.integer.tests.BlockShakSmallMaxBlockSize;
 	BasicShak.class,
 	BasicShakFastPFORRecompress.class,
 	BasicShakNullRecompress.class,
+	BasicShakFastPFORParallelRecompress.class,
+	BasicShakNullParallelRecompress.class,
 	BasicShakSmallChunk.class,
 	BlockShak.class,
 	BlockShakSmallMaxBlockSize.class,
@@ -29,11 +29,15 @@ package org.terrier.integer;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.terrier.integer.structure.TestEliasFano;
 import org.terrier.integer.structure.TestIntegerCoding;
 import org.terrier.integer.structure.TestIntegerCoding2;
 import org.terrier.integer.structure.TestNext;
 import org.terrier.integer.tests.BasicShak;
+import org.terrier.integer.tests.BasicShakEliasFano;
+import org.terrier.integer.tests.BasicShakFastPFORParallelRecompress;
 import org.terrier.integer.tests.BasicShakFastPFORRecompress;
+import org.terrier.integer.tests.BasicShakNullParallelRecompress;
 import org.terrier.integer.tests.BasicShakNullRecompress;
 import org.terrier.integer.tests.BasicShakSmallChunk;
 import org.terrier.integer.tests.BlockShak;
@@ -52,9 +56,13 @@ import org.terrier.integer.tests.BlockShakSmallMaxBlockSize;
 	TestIntegerCoding.class,
 	TestIntegerCoding2.class,
 	TestNext.class,
+	TestEliasFano.class,
 	BasicShak.class,
+	BasicShakEliasFano.class,
 	BasicShakFastPFORRecompress.class,
 	BasicShakNullRecompress.class,
+	BasicShakFastPFORParallelRecompress.class,
+	BasicShakNullParallelRecompress.class,
 	BasicShakSmallChunk.class,
 	BlockShak.class,
 	BlockShakSmallMaxBlockSize.class	
@@ -75,7 +75,8 @@ public class TestIntCompressionConfiguration extends TestCompressionConfig {
 				"KamikazePForDeltaVBCodec",
 				"GammaCodec",
 				"UnaryCodec",
-				"VIntCodec"
+				"VIntCodec",
+				"EliasFanoCodec"
 		};
 		for(String a : factories)
 		{
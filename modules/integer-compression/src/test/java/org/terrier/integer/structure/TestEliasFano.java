@@ -0,0 +1,179 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestEliasFano.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.integer.structure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.compression.integer.ByteFileBuffered;
+import org.terrier.compression.integer.ByteIn;
+import org.terrier.compression.integer.ByteOutputStream;
+import org.terrier.compression.integer.codec.EliasFanoCodec;
+import org.terrier.compression.integer.codec.IntegerCodec;
+import org.terrier.compression.integer.codec.UnaryCodec;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.integer.EliasFanoPostingOutputStream;
+import org.terrier.structures.postings.ArrayOfBasicIterablePosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.integer.EliasFanoIterablePosting;
+
+public class TestEliasFano {
+
+	final Random random = new Random(42);
+	
+	int[][] makeList(int length, int maxGap)
+	{
+		int[] ids = new int[length];
+		int[] tfs = new int[length];
+		int id = -1;
+		for(int i=0;i<length;i++)
+		{
+			ids[i] = id += 1 + random.nextInt(maxGap);
+			tfs[i] = 1 + random.nextInt(5);
+		}
+		return new int[][]{ids, tfs};
+	}
+	
+	@Test public void testCodec() throws Exception
+	{
+		int[][] inputs = new int[][]{
+			{1},
+			{5, 1, 1, 1},
+			{1, 0, 0, 3, 0},
+			{1000000, 1, 2, 3, 400000, 5}
+		};
+		File tmpFile = File.createTempFile("tmp", ByteIn.USUAL_EXTENSION);
+		ByteOutputStream out = new ByteOutputStream(tmpFile.toString());
+		IntegerCodec codec = new EliasFanoCodec();
+		for(int[] in : inputs)
+			codec.compress(in, in.length, out);
+		out.close();
+		
+		ByteFileBuffered file = new ByteFileBuffered(tmpFile.toString());
+		ByteIn in = file.readReset(0);
+		for(int i=0;i<inputs.length;i++)
+		{
+			if (i == 1)
+			{
+				codec.skip(in);
+				continue;
+			}
+			int[] decoded = new int[inputs[i].length];
+			codec.decompress(in, decoded, decoded.length);
+			assertArrayEquals(inputs[i], decoded);
+		}
+		file.close();
+		tmpFile.delete();
+	}
+	
+	@Test public void testPostings() throws Exception
+	{
+		for(int chunkSize : new int[]{1, 3, 128, 1024})
+		{
+			List<int[][]> lists = new ArrayList<>();
+			lists.add(new int[][]{{0}, {1}});
+			lists.add(new int[][]{{0,1,2,3,4,5}, {1,2,3,4,5,6}});
+			lists.add(makeList(1000, 2));
+			lists.add(makeList(5000, 1000));
+			lists.add(new int[][]{{Integer.MAX_VALUE-1}, {1}});
+			
+			File tmpFile = File.createTempFile("tmp", ByteIn.USUAL_EXTENSION);
+			IntegerCodec tfsCodec = new UnaryCodec();
+			EliasFanoPostingOutputStream pos = new EliasFanoPostingOutputStream(tmpFile.toString(), chunkSize, new EliasFanoCodec(), tfsCodec);
+			List<BitIndexPointer> pointers = new ArrayList<>();
+			for(int[][] list : lists)
+				pointers.add(pos.writePostings(new ArrayOfBasicIterablePosting(list[0], list[1])));
+			pos.close();
+			
+			ByteFileBuffered file = new ByteFileBuffered(tmpFile.toString());
+			
+			//sequential iteration of consecutive posting lists
+			ByteIn in = file.readReset(0);
+			for(int l=0;l<lists.size();l++)
+			{
+				int[][] list = lists.get(l);
+				assertEquals(list[0].length, pointers.get(l).getNumberOfEntries());
+				IterablePosting ip = new EliasFanoIterablePosting(in, list[0].length, null, chunkSize, tfsCodec);
+				for(int i=0;i<list[0].length;i++)
+				{
+					assertEquals(list[0][i], ip.next());
+					assertEquals(list[1][i], ip.getFrequency());
+				}
+				assertTrue(ip.endOfPostings());
+				assertEquals(IterablePosting.EOL, ip.next());
+			}
+			
+			//skipping
+			for(int l=0;l<lists.size();l++)
+			{
+				int[][] list = lists.get(l);
+				int[] ids = list[0];
+				IterablePosting ip = new EliasFanoIterablePosting(
+						file.readReset(pointers.get(l).getOffset()), ids.length, null, chunkSize, tfsCodec);
+				int i = -1;
+				while(true)
+				{
+					int target;
+					if (random.nextBoolean())
+					{
+						if (++i >= ids.length)
+						{
+							assertEquals(IterablePosting.EOL, ip.next());
+							break;
+						}
+						assertEquals(ids[i], ip.next());
+					}
+					else
+					{
+						target = ip.getId() + 1 + random.nextInt(3000);
+						int found = ip.next(target);
+						i = Math.max(i, 0);
+						while(i < ids.length && ids[i] < target)
+							i++;
+						if (i == ids.length)
+						{
+							assertEquals(IterablePosting.EOL, found);
+							break;
+						}
+						assertEquals(ids[i], found);
+					}
+					assertEquals(list[1][i], ip.getFrequency());
+				}
+				assertTrue(ip.endOfPostings());
+			}
+			file.close();
+			tmpFile.delete();
+		}
+	}
+}
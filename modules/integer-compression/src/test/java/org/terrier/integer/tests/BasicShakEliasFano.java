@@ -0,0 +1,44 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BasicShakEliasFano.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.integer.tests;
+
+import org.terrier.compression.integer.codec.UnaryCodec;
+import org.terrier.structures.integer.EliasFanoCompressionConfiguration;
+import org.terrier.tests.BasicShakespeareEndToEndTest;
+
+public class BasicShakEliasFano extends BasicShakespeareEndToEndTest {
+
+	public BasicShakEliasFano()
+	{
+		indexingOptions.add("-Dindexing.direct.compression.configuration="+EliasFanoCompressionConfiguration.class.getName());
+		indexingOptions.add("-Dindexing.inverted.compression.configuration="+EliasFanoCompressionConfiguration.class.getName());
+		indexingOptions.add("-Dcompression.integer.chunk.size=8");
+		indexingOptions.add("-Dcompression.direct.integer.tfs.codec="+UnaryCodec.class.getName());
+		indexingOptions.add("-Dcompression.inverted.integer.tfs.codec="+UnaryCodec.class.getName());
+	}
+	
+}
@@ -0,0 +1,49 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is BasicShakFastPFORParallelRecompress.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.integer.tests;
+
+import org.terrier.tests.BasicShakespeareEndToEndTest;
+import org.terrier.tests.BatchEndToEndTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class BasicShakFastPFORParallelRecompress extends BasicShakespeareEndToEndTest {
+
+	static class PForDoParallelRecompress extends BasicShakFastPFORRecompress.PForDoRecompress
+	{
+		@Override
+		public void finishedIndexing(BatchEndToEndTest test) throws Exception {
+			ApplicationSetup.setProperty("recompress.threads", "3");
+			super.finishedIndexing(test);
+		}
+	}
+	
+	public BasicShakFastPFORParallelRecompress()
+	{
+		super.testHooks.add(new PForDoParallelRecompress());
+	}
+	
+}
@@ -51,7 +51,8 @@ public interface UpdatableIndex {
 
 	
 	/** Removes a document from the index. Returns true if successful.
-	 * No known operable implementations at this time. */
+	 * Removed documents are marked in the DeletedDocuments of the index, 
+	 * which matching skips; their space is only reclaimed by merging. */
 	public boolean removeDocument(int docid);
 	
 	/** Adds specified content contents to the named document id.
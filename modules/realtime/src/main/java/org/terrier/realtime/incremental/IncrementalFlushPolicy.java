@@ -33,6 +33,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 
@@ -85,31 +86,52 @@ public class IncrementalFlushPolicy implements Runnable {
 	}
 
 	/**
-	 * Flush contents of in-memory index to disk.
+	 * Flush contents of in-memory index to disk. The index flushed is the one
+	 * before the current memory index.
 	 */
 	public void run() {
+		MemoryIndex memory;
+		synchronized (indices) {
+			// List position indices.size()-2.
+			memory = (MemoryIndex) indices.get(indices.size() - 2);
+		}
+		run(memory);
+	}
 
-		// Index prefix and prefix ID.
+	/**
+	 * Flush contents of the specified in-memory index to disk. The memory
+	 * index remains searchable until the on-disk index replaces it in the
+	 * list of indices.
+	 * @since 5.2
+	 */
+	public void run(MemoryIndex memory) {
+
+		// Index prefix and prefix ID (incremented).
 		String partition = index.prefix + "-"
-				+ index.prefixID;
+				+ index.nextPrefixID();
 
 		// Write in-memory index to disk.
-		// List position indices.size()-2.
 		try {
-			((MemoryIndex) indices.get(indices.size() - 2)).write(
-					index.path, partition);
+			memory.write(index.path, partition);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-
-		// Increment prefix ID.
-		index.prefixID++;
 		
 		// Update list of indices (replace memory with the disk index).
 		IndexOnDisk indexOnDisk = (IndexOnDisk) Index.createIndex(
 				index.path, partition);
+		index.createLexiconFilter(indexOnDisk);
 		synchronized (indices) {
-			indices.set(indices.size() - 2, indexOnDisk);
+			// documents may have been removed from memory since it was written
+			DeletedDocuments deleted = DeletedDocuments.of(memory);
+			if (deleted != null) {
+				try {
+					DeletedDocuments.create(indexOnDisk).deleteAll(deleted);
+				} catch (IOException e) {
+					logger.error("Could not record the documents deleted from " + partition, e);
+				}
+			}
+			indices.set(indices.indexOf(memory), indexOnDisk);
 		}
 
 		logger.info("***REALTIME*** IncrementalIndex flushed: " + partition);
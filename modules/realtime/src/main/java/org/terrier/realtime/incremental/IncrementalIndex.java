@@ -34,6 +34,10 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,8 +47,11 @@ import org.terrier.indexing.Document;
 import org.terrier.querying.IndexRef;
 import org.terrier.realtime.UpdatableIndex;
 import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.realtime.multi.LexiconBloomFilter;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexFactory;
+import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.indexing.DocumentPostingList;
 import org.terrier.utility.ApplicationSetup;
 
@@ -57,8 +64,25 @@ import org.terrier.utility.ApplicationSetup;
  * 
  * <p><b>Properties</b></p>
  * <ul><li>incremental.flush: the flush policy to use. Four possible values are supported: noflush (default), flushdocs, flushmem, flushtime</li></ul>
- * <ul><li>incremental.merge: the merge policy to use. Three possible values are supported: nomerge (default), single, geometric</li></ul>
+ * <ul><li>incremental.merge: the merge policy to use. Four possible values are supported: nomerge (default), single, geometric, tiered</li></ul>
  * <ul><li>incremental.delete: the delete policy to use. Two possible values are supported: nodelete (default), deleteFixedSize</li></ul>
+ * <ul><li>incremental.flush.background: whether flushes, and the subsequent delete and merges, are executed by a background 
+ * thread rather than by the thread indexing the document that triggered the flush. Defaults to true.</li></ul>
+ * <ul><li>incremental.flush.maxpending: the maximum number of background flushes that can be pending before indexing 
+ * blocks. Defaults to 2.</li></ul>
+ * <ul><li>incremental.lexicon.bloom: whether a {@link LexiconBloomFilter} is created for each shard flushed or merged to disk,
+ * allowing term lookups to skip shards that do not contain the term. Defaults to true.</li></ul>
+ * 
+ * <p>During a background flush, the full memory index remains searchable, alongside the new memory index
+ * receiving documents, until its on-disk replacement is swapped into the list of indices.</p>
+ * 
+ * <p>Documents can be removed by removeDocument(), which marks them in the {@link DeletedDocuments}
+ * of their shard, such that matching skips them. Deleted documents continue to count in the
+ * statistics of the index, until the merge policy merges their shard with another, which removes
+ * their postings, but keeps a placeholder for each, such that docids are stable: a document keeps 
+ * its docid across flushes and merges, and only the delete policy, by removing the oldest shards, 
+ * renumbers the documents. The deletions of the shards on disk are written when the index is 
+ * closed.</p>
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -122,6 +146,20 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 	
 	/** A lock that stops multiple indexing operations from happening at once **/
     Object indexingLock = new Object();
+
+	/** Are flushes executed in the background? */
+	protected final boolean backgroundFlush = Boolean.parseBoolean(
+			ApplicationSetup.getProperty("incremental.flush.background", "true"));
+	/** Permits for pending background flushes; indexing blocks when none are left */
+	protected final Semaphore pendingFlushes = new Semaphore(Integer.parseInt(
+			ApplicationSetup.getProperty("incremental.flush.maxpending", "2")));
+	/** Executes the background flushes (and merges), one at a time */
+	protected ExecutorService flushExecutor;
+	/** The last background flush submitted */
+	protected Future<?> lastFlush;
+	/** Are lexicon Bloom filters created for the shards written to disk? */
+	protected final boolean lexiconFilters = Boolean.parseBoolean(
+			ApplicationSetup.getProperty("incremental.lexicon.bloom", "true"));
 	
 	
 	/**
@@ -306,16 +344,59 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 		}
 	}
 
-	/** {@inheritDoc} */
+	/** {@inheritDoc}
+	 * <p>When incremental.flush.background is set, the memory index is written
+	 * to disk by a background thread. Blocks if too many flushes are pending.
+	 */
 	public void flush() throws IOException {
 
+		synchronized(indexingLock) {
+
+		if (backgroundFlush) {
+			try {
+				pendingFlushes.acquire();
+			} catch (InterruptedException ie) {
+				throw new IOException(ie);
+			}
+		}
+		
 		// Create new (empty) in-memory index.
+		final MemoryIndex full;
 		synchronized (super.indices) {
+			full = memory;
 			super.indices.add(memory = new MemoryIndex());
 		}
 
+		if (! backgroundFlush) {
+			flush(full);
+			return;
+		}
+		
+		if (flushExecutor == null) {
+			flushExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "IncrementalIndex-flush");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		lastFlush = flushExecutor.submit(() -> {
+			try {
+				flush(full);
+			} catch (Exception e) {
+				logger.error("Background flush of " + prefix + " failed", e);
+			} finally {
+				pendingFlushes.release();
+			}
+		});
+		
+		}
+	}
+
+	/** Flushes the specified memory index to disk, then applies the delete and merge policies */
+	protected void flush(MemoryIndex full) {
+		
 		// Flush old (full) in-memory index to disk.
-		flushPolicy.run();
+		flushPolicy.run(full);
 
 		// Run delete policy to remove old indices if any
 		if (delete && deletePolicy.deletePolicy() == true) {
@@ -325,14 +406,69 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 		// Check merge.
 		if (merge && mergePolicy.mergeCheck() == true)
 			((Runnable) mergePolicy).run();
-		
+	}
 
+	/** Creates the lexicon Bloom filter of a shard that has been flushed or merged to disk, if enabled */
+	protected void createLexiconFilter(IndexOnDisk shard) {
+		if (! lexiconFilters)
+			return;
+		try {
+			LexiconBloomFilter.create(shard);
+		} catch (IOException e) {
+			logger.warn("Could not create lexicon filter for " + shard.getPrefix(), e);
+		}
+	}
+
+	/** Returns the prefix ID for a new on-disk index, and increments it. Merges may
+	 * obtain prefix IDs concurrently with flushes. */
+	public synchronized int nextPrefixID() {
+		return prefixID++;
+	}
+
+	/** Waits for all background flushes (and merges) to complete */
+	public void waitForFlushes() throws IOException {
+		final Future<?> last;
+		synchronized(indexingLock) {
+			last = lastFlush;
+		}
+		if (last != null) {
+			try {
+				last.get();
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+		if (merge)
+			mergePolicy.waitForMerges();
 	}
 
 	/** {@inheritDoc} */
 	public void close() throws IOException {
 		if (flush && flushPolicy.flushCheck() == true)
 			flush();
+		waitForFlushes();
+		synchronized(indexingLock) {
+			if (flushExecutor != null) {
+				flushExecutor.shutdown();
+				flushExecutor = null;
+			}
+		}
+		if (merge)
+			mergePolicy.close();
+		writeDeletedDocuments();
+	}
+
+	/** Writes the deleted documents of the on-disk shards */
+	protected void writeDeletedDocuments() throws IOException {
+		synchronized (indices) {
+			for (Index shard : indices) {
+				if (! (shard instanceof IndexOnDisk))
+					continue;
+				DeletedDocuments deleted = DeletedDocuments.of(shard);
+				if (deleted != null)
+					deleted.write((IndexOnDisk) shard);
+			}
+		}
 	}
 	
 	/** This method prints out the last time this index was updated as a String in GMT format **/
@@ -358,16 +494,37 @@ public class IncrementalIndex extends org.terrier.realtime.multi.MultiIndex impl
 		this.prefix = prefix;
 	}
 
-	public int getPrefixID() {
+	public synchronized int getPrefixID() {
 		return prefixID;
 	}
 
-	public void setPrefixID(int prefixID) {
+	public synchronized void setPrefixID(int prefixID) {
 		this.prefixID = prefixID;
 	}
 
+	/** {@inheritDoc}
+	 * <p>The document is marked as deleted in the shard that contains it.
+	 * Returns false if the document does not exist or was already deleted.
+	 */
 	@Override
 	public boolean removeDocument(int docid) {
+		synchronized (indices) {
+			int offset = 0;
+			for (Index shard : indices) {
+				final int docs = shard.getCollectionStatistics().getNumberOfDocuments();
+				if (docid >= offset && docid < offset + docs) {
+					if (shard instanceof UpdatableIndex)
+						return ((UpdatableIndex) shard).removeDocument(docid - offset);
+					try {
+						return DeletedDocuments.create((IndexOnDisk) shard).delete(docid - offset);
+					} catch (IOException e) {
+						logger.error("Could not remove document " + docid, e);
+						return false;
+					}
+				}
+				offset += docs;
+			}
+		}
 		return false;
 	}
 
@@ -27,12 +27,15 @@
 
 package org.terrier.realtime.incremental;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
 
 /**
  * A policy for merging different indices together on disk
@@ -68,6 +71,8 @@ public class IncrementalMergePolicy {
 			return new IncrementalMergeSingle(index);
 		if (policy.equals("geometric"))
 			return new IncrementalMergeGeometric(index);
+		if (policy.equals("tiered"))
+			return new IncrementalMergeTiered(index);
 		return new IncrementalMergePolicy(index);
 	}
 
@@ -81,6 +86,49 @@ public class IncrementalMergePolicy {
 			logger.info(String.valueOf(index));
 	}
 
+	/**
+	 * Returns a copy of the documents deleted from each of the specified partitions,
+	 * null where none are deleted. The postings of the documents deleted when merging 
+	 * begins are removed by the merge.
+	 */
+	protected static DeletedDocuments[] getDeletedDocuments(List<Index> partitions) {
+		synchronized (indices) {
+			DeletedDocuments[] rtr = new DeletedDocuments[partitions.size()];
+			for (int i = 0; i < rtr.length; i++) {
+				DeletedDocuments deleted = DeletedDocuments.of(partitions.get(i));
+				if (deleted != null)
+					rtr[i] = deleted.copy();
+			}
+			return rtr;
+		}
+	}
+
+	/**
+	 * Marks as deleted in the merged partition the documents deleted from the merged
+	 * partitions while the merge was taking place. The documents of the merged partition
+	 * keep their docids, offset by the number of documents of the preceding partitions. 
+	 * Should be called with the lock on the list of indices held, before the merged 
+	 * partitions are replaced.
+	 * @param partitions the partitions merged, in order
+	 * @param reclaimed the documents deleted from each partition when merging began, as 
+	 * returned by getDeletedDocuments(), which the merge marked as deleted
+	 * @param mergedIndex the merged partition
+	 */
+	protected static void carryDeletedDocuments(List<Index> partitions, 
+			DeletedDocuments[] reclaimed, IndexOnDisk mergedIndex) throws IOException {
+		int offset = 0;
+		for (int i = 0; i < partitions.size(); i++) {
+			final DeletedDocuments before = reclaimed[i];
+			final DeletedDocuments now = DeletedDocuments.of(partitions.get(i));
+			if (now != null) {
+				for (int docid = now.nextDeleted(0); docid != -1; docid = now.nextDeleted(docid + 1))
+					if (before == null || ! before.isDeleted(docid))
+						DeletedDocuments.create(mergedIndex).delete(offset + docid);
+			}
+			offset += partitions.get(i).getCollectionStatistics().getNumberOfDocuments();
+		}
+	}
+
 	/**
 	 * No merge.
 	 */
@@ -94,4 +142,17 @@ public class IncrementalMergePolicy {
 	public boolean mergeCheck() {
 		return false;
 	}
+
+	/**
+	 * Waits for any merges executing in the background to complete. 
+	 * Merges are synchronous by default.
+	 */
+	public void waitForMerges() throws IOException {
+	}
+
+	/**
+	 * Releases any resources used by the policy.
+	 */
+	public void close() {
+	}
 }
@@ -27,8 +27,14 @@
 
 package org.terrier.realtime.incremental;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.merging.StructureMerger;
@@ -58,15 +64,27 @@ public class IncrementalMergeSingle extends IncrementalMergePolicy implements
 	 * Is merging required?
 	 */
 	public boolean mergeCheck() {
-		return indices.size() > 2;
+		// memory indices waiting to be flushed are not merged
+		int onDisk = 0;
+		synchronized (indices) {
+			for (Index i : indices)
+				if (! (i instanceof MemoryIndex))
+					onDisk++;
+		}
+		return onDisk > 1;
 	}
 
 	/** Merge flushed index partitions into a single partition. */
 	public void run() {
 
-		// Partitions to merge.
-		int partition1 = index.prefixID - 2;
-		int partition2 = index.prefixID - 1;
+		// Partitions to merge, and the documents deleted from them, which the merge removes.
+		final List<Index> partitions;
+		synchronized (indices) {
+			partitions = new ArrayList<Index>(indices.subList(0, 2));
+		}
+		final DeletedDocuments[] reclaimed = getDeletedDocuments(partitions);
+		int partition1 = index.getPrefixID() - 2;
+		int partition2 = index.getPrefixID() - 1;
 
 		// Source index 1.
 		IndexOnDisk src1 = Index.createIndex(index.path,
@@ -77,24 +95,29 @@ public class IncrementalMergeSingle extends IncrementalMergePolicy implements
 				index.prefix + "-" + partition2);
 
 		// Destination index.
+		final int partitionD = index.nextPrefixID();
 		IndexOnDisk indexD = Index.createNewIndex(index.path,
-				index.prefix + "-" + index.prefixID);
+				index.prefix + "-" + partitionD);
 
 		// Merge the index structures.
 		StructureMerger merger = new StructureMerger(src1, src2, indexD);
+		merger.setDeletedDocuments(reclaimed[0], reclaimed[1]);
 		merger.mergeStructures();
+		index.createLexiconFilter(indexD);
 
 		logger.info("***REALTIME*** IncrementalIndex merged: " + partition1
-				+ " and " + partition2 + " into " + index.prefixID);
-
-		// Increment prefix ID.
-		index.prefixID++;
+				+ " and " + partition2 + " into " + partitionD);
 
 		// Update list of indices.
 		merged.add(partition1);
 		merged.add(partition2);
 		purgeMerged();
 		synchronized (indices) {
+			try {
+				carryDeletedDocuments(partitions, reclaimed, indexD);
+			} catch (IOException e) {
+				logger.error("Could not record the documents deleted during the merge", e);
+			}
 			indices.remove(0);
 			indices.remove(0);
 			indices.add(0, indexD);
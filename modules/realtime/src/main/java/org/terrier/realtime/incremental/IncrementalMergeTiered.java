@@ -0,0 +1,363 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is IncrementalMergeTiered.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.incremental;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.merging.StructureMerger;
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * Tiered merge implementation. Runs of <i>k</i> adjacent on-disk index partitions
+ * of similar size are merged into a single partition. The size of a partition is its 
+ * number of documents that are not deleted, where partitions smaller than a floor size
+ * are considered to be of the floor size, such that small flushes are merged together
+ * promptly. Partitions are of similar size when the size of each partition of the run 
+ * is within a ratio of the size of its neighbours. As merged partitions are larger than 
+ * their sources by a factor of about <i>k</i>, each document is only rewritten a 
+ * logarithmic number of times. As only adjacent partitions are merged, documents 
+ * retain their order in the IncrementalIndex.
+ * <p>
+ * Should flushes of uneven sizes leave more than <i>k</i> partitions for each factor 
+ * <i>k</i> between the floor size and the total size of the partitions, then the 
+ * run of <i>k</i> adjacent partitions with the least skewed sizes is merged, 
+ * regardless of the ratio. This bounds the number of partitions.
+ * <p>
+ * Merges take place in the background, such that several merges, as well as 
+ * flushes, can proceed concurrently. Partitions being merged remain searchable 
+ * until the merged partition replaces them. The postings of the documents deleted 
+ * from the partitions are removed by the merge, while all documents keep their 
+ * docids. Among the merges possible, those reclaiming the largest proportion of 
+ * deleted documents are preferred, followed by the smallest merges. 
+ * 
+ * <p><b>Properties</b></p>
+ * <ul>
+ * <li><tt>incremental.tiered.k</tt> - the number of partitions merged at once. Defaults to 4.</li>
+ * <li><tt>incremental.tiered.floor</tt> - the floor size of a partition, in documents. Defaults to 1000.</li>
+ * <li><tt>incremental.tiered.ratio</tt> - the maximum ratio between the sizes of neighbouring partitions
+ * of a merge. Defaults to <i>k</i>.</li>
+ * <li><tt>incremental.tiered.maxdocs</tt> - the maximum number of documents in a merged partition. 
+ * Partitions with more than half this number of documents are not merged further. Defaults to 0, meaning unlimited.</li>
+ * <li><tt>incremental.tiered.maxmerges</tt> - the maximum number of merges executing concurrently. Defaults to 2.</li>
+ * </ul>
+ * 
+ * @since 5.2
+ */
+public class IncrementalMergeTiered extends IncrementalMergePolicy implements
+		Runnable {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(IncrementalMergeTiered.class);
+
+	/** number of partitions to merge at once */
+	protected final int k = Math.max(2, Integer.parseInt(ApplicationSetup.getProperty(
+			"incremental.tiered.k", "4")));
+	/** size below which partitions are considered to be of the same size */
+	protected final int floor = Math.max(1, Integer.parseInt(ApplicationSetup.getProperty(
+			"incremental.tiered.floor", "1000")));
+	/** maximum ratio between the sizes of neighbouring partitions of a merge */
+	protected final double ratio = Math.max(1d, Double.parseDouble(ApplicationSetup.getProperty(
+			"incremental.tiered.ratio", String.valueOf(k))));
+	/** maximum number of documents in a merged partition, 0 for unlimited */
+	protected final int maxDocs = Integer.parseInt(ApplicationSetup.getProperty(
+			"incremental.tiered.maxdocs", "0"));
+	/** maximum number of concurrent merges */
+	protected final int maxMerges = Math.max(1, Integer.parseInt(ApplicationSetup.getProperty(
+			"incremental.tiered.maxmerges", "2")));
+
+	/** partitions currently being merged */
+	protected final Set<Index> merging = new HashSet<Index>();
+	/** number of merges currently executing */
+	protected int running = 0;
+	protected ExecutorService mergeExecutor;
+
+	public IncrementalMergeTiered(IncrementalIndex index) {
+		super(index);
+	}
+
+	/**
+	 * Is merging configured?
+	 */
+	public boolean mergePolicy() {
+		return true;
+	}
+
+	/**
+	 * Is merging required? Merges are selected by run().
+	 */
+	public boolean mergeCheck() {
+		return true;
+	}
+
+	/**
+	 * Select and start as many merges as the concurrent merge budget allows.
+	 */
+	public synchronized void run() {
+		while (running < maxMerges) {
+			List<Index> candidate = findMerge();
+			if (candidate == null)
+				return;
+			merging.addAll(candidate);
+			running++;
+			if (mergeExecutor == null) {
+				mergeExecutor = Executors.newFixedThreadPool(maxMerges, r -> {
+					Thread t = new Thread(r, "IncrementalIndex-merge");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			mergeExecutor.submit(() -> {
+				boolean succeeded = false;
+				try {
+					merge(candidate);
+					succeeded = true;
+				} catch (Throwable t) {
+					logger.error("***REALTIME*** IncrementalIndex merge failed", t);
+				} finally {
+					synchronized (IncrementalMergeTiered.this) {
+						merging.removeAll(candidate);
+						running--;
+						// the merged partition may complete a tier
+						if (succeeded)
+							run();
+						IncrementalMergeTiered.this.notifyAll();
+					}
+				}
+			});
+		}
+	}
+
+	/** Returns the number of deleted documents in the specified partition whose postings 
+	 * would be reclaimed by merging it, i.e. excluding the placeholders left by earlier merges. */
+	protected int getNumberOfDeletedDocuments(Index partition) {
+		final DeletedDocuments deleted = DeletedDocuments.of(partition);
+		if (deleted == null)
+			return 0;
+		return deleted.getNumberOfDeletedDocuments() - partition.getIntIndexProperty("index.deleted.reclaimed", 0);
+	}
+
+	/** Returns the number of documents of the specified partition that are not deleted */
+	protected int getNumberOfLiveDocuments(Index partition) {
+		final DeletedDocuments deleted = DeletedDocuments.of(partition);
+		return partition.getCollectionStatistics().getNumberOfDocuments() 
+			- (deleted == null ? 0 : deleted.getNumberOfDeletedDocuments());
+	}
+
+	/** Returns the size of a partition with the specified number of documents, after applying the floor size */
+	protected long getFlooredSize(int docs) {
+		return Math.max(floor, docs);
+	}
+
+	/** Returns the number of partitions allowed before merges disregard the ratio between
+	 * partition sizes: k partitions for each factor k between the floor and the total size */
+	protected int getAllowedPartitions(long totalDocs) {
+		int levels = 1;
+		for (long size = (long) floor * k; size <= totalDocs; size *= k)
+			levels++;
+		return k * levels;
+	}
+
+	/** Finds the best run of k adjacent partitions of similar size to merge, or null if none. 
+	 * If there are too many partitions, the run with the least skewed sizes is found instead. */
+	protected List<Index> findMerge() {
+		List<Index> best = null;
+		double bestDeleted = 0;
+		long bestDocs = 0;
+		List<Index> leastSkewed = null;
+		double leastSkew = 0;
+		long leastSkewedDocs = 0;
+		synchronized (indices) {
+			final int n = indices.size();
+			// the number of partitions that could be merged, and their documents
+			int mergeable = 0;
+			long totalDocs = 0;
+			for (int start = 0; start < n; start++) {
+				// documents, after deletions, and deleted documents
+				long docs = 0;
+				long deleted = 0;
+				long flooredDocs = 0;
+				long largest = 0;
+				long previous = -1;
+				boolean similar = true;
+				List<Index> run = new ArrayList<Index>(k);
+				for (int i = start; i < n && run.size() < k; i++) {
+					final Index partition = indices.get(i);
+					if (! (partition instanceof IndexOnDisk) || merging.contains(partition))
+						break;
+					final int partitionDeleted = getNumberOfDeletedDocuments(partition);
+					final int partitionDocs = getNumberOfLiveDocuments(partition);
+					if (maxDocs > 0 && (partitionDocs > maxDocs / 2 || docs + partitionDocs > maxDocs))
+						break;
+					if (i == start) {
+						mergeable++;
+						totalDocs += partitionDocs;
+					}
+					final long size = getFlooredSize(partitionDocs);
+					if (previous != -1 && (size > ratio * previous || previous > ratio * size))
+						similar = false;
+					previous = size;
+					flooredDocs += size;
+					largest = Math.max(largest, size);
+					run.add(partition);
+					docs += partitionDocs;
+					deleted += partitionDeleted;
+				}
+				if (run.size() < k)
+					continue;
+				final double deletedRatio = (double) deleted / Math.max(1, docs + deleted);
+				if (similar && (best == null || deletedRatio > bestDeleted || (deletedRatio == bestDeleted && docs < bestDocs))) {
+					best = run;
+					bestDeleted = deletedRatio;
+					bestDocs = docs;
+				}
+				// the proportion of the merge taken by its largest partition
+				final double skew = (double) largest / flooredDocs;
+				if (leastSkewed == null || skew < leastSkew || (skew == leastSkew && docs < leastSkewedDocs)) {
+					leastSkewed = run;
+					leastSkew = skew;
+					leastSkewedDocs = docs;
+				}
+			}
+			if (best == null && mergeable > getAllowedPartitions(totalDocs))
+				return leastSkewed;
+		}
+		return best;
+	}
+
+	/** Merges the specified adjacent partitions, replacing them with the merged partition */
+	protected void merge(List<Index> partitions) throws IOException {
+
+		// Merge pairs of adjacent partitions, until one partition remains.
+		// The postings of the documents deleted so far are removed when first merged.
+		final DeletedDocuments[] reclaimed = getDeletedDocuments(partitions);
+		final Map<IndexOnDisk,DeletedDocuments> sourceDeleted = new HashMap<IndexOnDisk,DeletedDocuments>();
+		List<IndexOnDisk> sources = new ArrayList<IndexOnDisk>(partitions.size());
+		for (int i = 0; i < partitions.size(); i++) {
+			IndexOnDisk source = Index.createIndex(index.path, ((IndexOnDisk) partitions.get(i)).getPrefix());
+			sourceDeleted.put(source, reclaimed[i]);
+			sources.add(source);
+		}
+		final Set<IndexOnDisk> intermediate = new HashSet<IndexOnDisk>();
+		while (sources.size() > 1) {
+			List<IndexOnDisk> merges = new ArrayList<IndexOnDisk>((sources.size() + 1) / 2);
+			for (int i = 0; i + 1 < sources.size(); i += 2) {
+				IndexOnDisk src1 = sources.get(i);
+				IndexOnDisk src2 = sources.get(i + 1);
+				String prefix = index.prefix + "-" + index.nextPrefixID();
+				IndexOnDisk indexD = Index.createNewIndex(index.path, prefix);
+				StructureMerger merger = new StructureMerger(src1, src2, indexD);
+				merger.setDeletedDocuments(sourceDeleted.get(src1), sourceDeleted.get(src2));
+				merger.mergeStructures();
+				indexD.close();
+				for (IndexOnDisk src : new IndexOnDisk[]{src1, src2}) {
+					src.close();
+					if (intermediate.remove(src))
+						IndexUtil.deleteIndex(index.path, src.getPrefix());
+				}
+				indexD = Index.createIndex(index.path, prefix);
+				// the placeholders of the deleted documents remain deleted in later merges
+				sourceDeleted.put(indexD, DeletedDocuments.of(indexD));
+				intermediate.add(indexD);
+				merges.add(indexD);
+			}
+			if (sources.size() % 2 == 1)
+				merges.add(sources.get(sources.size() - 1));
+			sources = merges;
+		}
+		final IndexOnDisk indexD = sources.get(0);
+		index.createLexiconFilter(indexD);
+
+		// Update list of indices, if the partitions have not since been deleted.
+		boolean replaced = false;
+		synchronized (indices) {
+			final int first = indices.indexOf(partitions.get(0));
+			if (first != -1 && first + partitions.size() <= indices.size()
+				&& indices.subList(first, first + partitions.size()).equals(partitions))
+			{
+				carryDeletedDocuments(partitions, reclaimed, indexD);
+				indices.subList(first, first + partitions.size()).clear();
+				indices.add(first, indexD);
+				replaced = true;
+			}
+		}
+		if (! replaced) {
+			logger.warn("***REALTIME*** IncrementalIndex merge of " + partitions.size()
+				+ " partitions into " + indexD.getPrefix() + " discarded, as partitions were removed");
+			indexD.close();
+			IndexUtil.deleteIndex(index.path, indexD.getPrefix());
+			return;
+		}
+
+		logger.info("***REALTIME*** IncrementalIndex merged " + partitions.size()
+				+ " partitions into " + indexD.getPrefix());
+		synchronized (merged) {
+			for (Index partition : partitions) {
+				String prefix = ((IndexOnDisk) partition).getPrefix();
+				merged.add(Integer.parseInt(prefix.substring(prefix.lastIndexOf('-') + 1)));
+			}
+			purgeMerged();
+		}
+	}
+
+	/**
+	 * Waits for the running merges, including any merges they trigger, to complete.
+	 */
+	@Override
+	public synchronized void waitForMerges() throws IOException {
+		try {
+			while (running > 0)
+				wait();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Stops the merge threads, once running merges complete.
+	 */
+	@Override
+	public synchronized void close() {
+		if (mergeExecutor != null) {
+			mergeExecutor.shutdown();
+			mergeExecutor = null;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ParallelShardMatching.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.matching;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.matching.Matching;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.MatchingQueryTerms.QueryTermProperties;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.CandidateResult;
+import org.terrier.matching.daat.CandidateResultSet;
+import org.terrier.matching.matchops.Operator;
+import org.terrier.realtime.multi.MultiIndex;
+import org.terrier.realtime.multi.MultiStats;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+/**
+ * Matches a query on each shard of a {@link MultiIndex} separately, on a pool of threads,
+ * and merges the top-ranked documents of each shard into a single ResultSet. Each shard
+ * is matched by its own instance of the delegate Matching class (daat.Full by default),
+ * which is given the statistics of the whole MultiIndex, such that the documents of 
+ * each shard obtain the same scores as when the MultiIndex is matched as a whole. As each shard
+ * retrieves up to <tt>matching.retrieved_set_size</tt> documents, the merged ResultSet 
+ * contains the same top-ranked documents. Document score modifiers are applied by the delegate 
+ * Matching on each shard.
+ * <p>
+ * For indices other than a MultiIndex, matching is performed by the delegate on the index itself.
+ * 
+ * <p><b>Properties</b></p>
+ * <ul>
+ * <li><tt>multiindex.parallel.matching</tt> - the Matching class used to match each shard, default org.terrier.matching.daat.Full.</li>
+ * <li><tt>multiindex.parallel.threads</tt> - the number of threads used to match the shards, shared by all instances. Defaults to the number of available processors.</li>
+ * </ul>
+ * 
+ * @since 5.2
+ */
+public class ParallelShardMatching implements Matching {
+
+	protected static final Logger logger = LoggerFactory.getLogger(ParallelShardMatching.class);
+
+	static ExecutorService pool;
+
+	/** returns the thread pool shared by all instances */
+	static synchronized ExecutorService getPool() {
+		if (pool == null)
+		{
+			final int threads = Integer.parseInt(ApplicationSetup.getProperty("multiindex.parallel.threads",
+					String.valueOf(Runtime.getRuntime().availableProcessors())));
+			pool = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(r, "ParallelShardMatching");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+
+	protected final Index index;
+	protected final Class<? extends Matching> delegateClass;
+	protected CollectionStatistics collectionStatistics;
+
+	/** Create a new Matching instance based on the specified index */
+	public ParallelShardMatching(Index index) {
+		this.index = index;
+		final String delegateName = ApplicationSetup.getProperty(
+				"multiindex.parallel.matching", "org.terrier.matching.daat.Full");
+		try {
+			this.delegateClass = ApplicationSetup.getClass(delegateName).asSubclass(Matching.class);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown matching " + delegateName, e);
+		}
+	}
+
+	protected Matching getDelegate(Index shard, CollectionStatistics cs) throws IOException {
+		try {
+			Matching rtr = delegateClass.getConstructor(Index.class).newInstance(shard);
+			if (cs != null)
+				rtr.setCollectionStatistics(cs);
+			return rtr;
+		} catch (Exception e) {
+			throw new IOException("Could not instantiate matching " + delegateClass.getName(), e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ResultSet match(String queryNumber, MatchingQueryTerms queryTerms) throws IOException {
+		if (! (index instanceof MultiIndex))
+			return getDelegate(index, collectionStatistics).match(queryNumber, queryTerms);
+
+		final List<Index> shards = ((MultiIndex) index).getSelectedIndices();
+		final int shardCount = shards.size();
+		final int[] offsets = new int[shardCount];
+		final CollectionStatistics[] shardStats = new CollectionStatistics[shardCount];
+		int offset = 0;
+		for (int i = 0; i < shardCount; i++)
+		{
+			shardStats[i] = shards.get(i).getCollectionStatistics();
+			offsets[i] = offset;
+			offset += shardStats[i].getNumberOfDocuments();
+		}
+		final CollectionStatistics globalStats = collectionStatistics != null
+				? collectionStatistics
+				: MultiStats.factory(shardStats);
+
+		// the statistics of each term are obtained from the MultiIndex, such that each shard is scored identically
+		for (Map.Entry<Operator, QueryTermProperties> entry : queryTerms)
+		{
+			if (entry.getValue().stats != null)
+				continue;
+			Pair<EntryStatistics,IterablePosting> pair = entry.getKey().getPostingIterator(index);
+			if (pair.getRight() != null)
+				pair.getRight().close();
+			entry.getValue().stats = pair.getLeft();
+		}
+
+		final List<Future<ResultSet>> shardResults = new ArrayList<>(shardCount);
+		for (int i = 0; i < shardCount; i++)
+		{
+			final Matching shardMatching = getDelegate(shards.get(i), globalStats);
+			final MatchingQueryTerms shardQueryTerms = queryTerms.clone();
+			shardResults.add(getPool().submit(() -> shardMatching.match(queryNumber, shardQueryTerms)));
+		}
+
+		final int RETRIEVED_SET_SIZE = Integer.parseInt(ApplicationSetup.getProperty("matching.retrieved_set_size", "1000"));
+		final List<CandidateResult> merged = new ArrayList<>();
+		for (int i = 0; i < shardCount; i++)
+		{
+			final ResultSet rs;
+			try {
+				rs = shardResults.get(i).get();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException(e.getCause());
+			}
+			final int[] docids = rs.getDocids();
+			final double[] scores = rs.getScores();
+			final short[] occurrences = rs.getOccurrences();
+			for (int j = 0; j < rs.getResultSize(); j++)
+			{
+				CandidateResult cr = new CandidateResult(docids[j] + offsets[i]);
+				cr.updateScore(scores[j]);
+				cr.updateOccurrence(occurrences[j]);
+				merged.add(cr);
+			}
+		}
+		// descending score, ties broken by ascending docid
+		Collections.sort(merged, (a, b) -> a.getScore() != b.getScore()
+				? Double.compare(b.getScore(), a.getScore())
+				: Integer.compare(a.getDocId(), b.getDocId()));
+		final List<CandidateResult> top = RETRIEVED_SET_SIZE != 0 && merged.size() > RETRIEVED_SET_SIZE
+				? merged.subList(0, RETRIEVED_SET_SIZE)
+				: merged;
+		final ResultSet rtr = new CandidateResultSet(top);
+		logger.debug("query " + queryNumber + " matched on " + shardCount + " shards, " + rtr.getResultSize() + " documents retrieved");
+		return rtr;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setCollectionStatistics(CollectionStatistics cs) {
+		collectionStatistics = cs;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getInfo() {
+		return "ParallelShardMatching";
+	}
+
+}
@@ -0,0 +1,485 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is CompressedMemoryPostingList.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.memory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * A posting list (docids and frequencies) held in memory in compressed form.
+ * Postings are appended to a small uncompressed tail; once the tail reaches
+ * {@link #BLOCK_SIZE} postings, it is sealed into a block, where docids are
+ * delta-encoded and both docid gaps and frequencies are written using variable-byte
+ * encoding. The last docid of each block is kept uncompressed, such that
+ * {@link PostingIterator#next(int)} can skip entire blocks without decoding them.
+ * A posting typically takes 2-3 bytes rather than the 8 bytes of a pair of int arrays.
+ * <p>
+ * As for the other MemoryIndex structures, postings are added by one writer at a
+ * time, while any number of readers may iterate over the list. The content of the
+ * list is published as an immutable {@link State}, followed by the number of postings:
+ * the only parts of the arrays that are written in place are those beyond the
+ * postings visible to the readers, or the frequencies of postings in the tail. Inserting
+ * a posting, or updating a frequency within a sealed block, rebuilds the list.
+ * 
+ * @since 5.2
+ */
+public class CompressedMemoryPostingList implements MemoryPostingList {
+
+	/** number of postings in each compressed block */
+	public static final int BLOCK_SIZE = 128;
+	/** initial capacity of the tail */
+	protected static final int INITIAL_CAPACITY = 2;
+	/** maximum number of bytes taken by a compressed block */
+	protected static final int MAX_BLOCK_BYTES = BLOCK_SIZE * 2 * 5;
+
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final int[] NO_INTS = new int[0];
+
+	/** The published content of a posting list */
+	protected static final class State {
+		/** the compressed blocks */
+		final byte[] bytes;
+		/** the offset of the end of each block in bytes */
+		final int[] blockEnds;
+		/** the last docid of each block */
+		final int[] blockLast;
+		/** the number of sealed blocks */
+		final int blocks;
+		/** the uncompressed postings after the last block */
+		final int[] tailDocs;
+		final int[] tailFreqs;
+
+		State(byte[] bytes, int[] blockEnds, int[] blockLast, int blocks, int[] tailDocs, int[] tailFreqs) {
+			this.bytes = bytes;
+			this.blockEnds = blockEnds;
+			this.blockLast = blockLast;
+			this.blocks = blocks;
+			this.tailDocs = tailDocs;
+			this.tailFreqs = tailFreqs;
+		}
+
+		/** offset of the start of the specified block */
+		int blockStart(int block) {
+			return block == 0 ? 0 : blockEnds[block-1];
+		}
+
+		/** docid preceding the first docid of the specified block, or -1 */
+		int blockPrevious(int block) {
+			return block == 0 ? -1 : blockLast[block-1];
+		}
+	}
+
+	private volatile State state;
+	/** number of postings visible to readers */
+	private volatile int size;
+
+	public CompressedMemoryPostingList() {
+		state = new State(NO_BYTES, NO_INTS, NO_INTS, 0, new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY]);
+	}
+
+	public CompressedMemoryPostingList(int[] docids, int[] docfreqs) {
+		state = build(docids, docfreqs, docids.length);
+		size = docids.length;
+	}
+
+	/** Appends a posting, whose docid must be larger than any docid in the list */
+	public void add(int docid, int docfreq) {
+		final int n = size;
+		State s = state;
+		int t = n - s.blocks * BLOCK_SIZE;
+		if (t == s.tailDocs.length)
+		{
+			s = t == BLOCK_SIZE ? seal(s) : growTail(s, t, Math.min(BLOCK_SIZE, t * 2));
+			state = s;
+			t = n - s.blocks * BLOCK_SIZE;
+		}
+		s.tailDocs[t] = docid;
+		s.tailFreqs[t] = docfreq;
+		size = n + 1;
+	}
+
+	/** Returns the frequency of the specified document, or -1 if it does not have a posting */
+	public int getFreq(int docid) {
+		final int n = size;
+		final State s = state;
+		final int t = n - s.blocks * BLOCK_SIZE;
+		if (s.blocks == 0 || docid > s.blockLast[s.blocks-1])
+		{
+			final int index = Arrays.binarySearch(s.tailDocs, 0, Math.max(0, t), docid);
+			return index >= 0 ? s.tailFreqs[index] : -1;
+		}
+		int block = Arrays.binarySearch(s.blockLast, 0, s.blocks, docid);
+		if (block < 0)
+			block = -(block + 1);
+		final int[] docs = new int[BLOCK_SIZE];
+		final int[] freqs = new int[BLOCK_SIZE];
+		decodeBlock(s, block, docs, freqs, 0);
+		final int index = Arrays.binarySearch(docs, docid);
+		return index >= 0 ? freqs[index] : -1;
+	}
+
+	/** Returns true iff we did not already have a posting for this document */
+	public boolean addOrUpdateFreq(int docid, int freq) {
+		final int n = size;
+		final State s = state;
+		final int t = n - s.blocks * BLOCK_SIZE;
+		if (s.blocks == 0 || docid > s.blockLast[s.blocks-1])
+		{
+			int index = Arrays.binarySearch(s.tailDocs, 0, t, docid);
+			if (index >= 0)
+			{
+				s.tailFreqs[index] += freq;
+				return false;
+			}
+			index = -(index + 1);
+			if (index == t)
+			{
+				add(docid, freq);
+				return true;
+			}
+			if (t < BLOCK_SIZE)
+			{
+				// copy-on-write, such that postings never move under a reader
+				final State updated = growTail(s, t, Math.max(s.tailDocs.length, t + 1));
+				System.arraycopy(s.tailDocs, index, updated.tailDocs, index + 1, t - index);
+				System.arraycopy(s.tailFreqs, index, updated.tailFreqs, index + 1, t - index);
+				updated.tailDocs[index] = docid;
+				updated.tailFreqs[index] = freq;
+				state = updated;
+				size = n + 1;
+				return true;
+			}
+		}
+		// the list is rebuilt for changes within sealed blocks
+		final int[] docs = new int[n + 1];
+		final int[] freqs = new int[n + 1];
+		decode(s, n, docs, freqs);
+		int index = Arrays.binarySearch(docs, 0, n, docid);
+		if (index >= 0)
+		{
+			freqs[index] += freq;
+			state = build(docs, freqs, n);
+			return false;
+		}
+		index = -(index + 1);
+		System.arraycopy(docs, index, docs, index + 1, n - index);
+		System.arraycopy(freqs, index, freqs, index + 1, n - index);
+		docs[index] = docid;
+		freqs[index] = freq;
+		state = build(docs, freqs, n + 1);
+		size = n + 1;
+		return true;
+	}
+
+	/** Returns the number of postings in this list */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the number of bytes used by the compressed blocks */
+	public int getCompressedBytes() {
+		final State s = state;
+		return s.blocks == 0 ? 0 : s.blockEnds[s.blocks-1];
+	}
+
+	/** Returns an iterator over the postings published so far, which
+	 * is not affected by postings added later */
+	public IterablePosting iterator(DocumentIndex doi) {
+		final int n = size;
+		return new PostingIterator(state, n, doi);
+	}
+
+	/** Returns the docids of the postings published so far */
+	public int[] getDocids() {
+		final int n = size;
+		final int[] docs = new int[n];
+		decode(state, n, docs, new int[n]);
+		return docs;
+	}
+
+	/** Returns the frequencies of the postings published so far */
+	public int[] getFrequencies() {
+		final int n = size;
+		final int[] freqs = new int[n];
+		decode(state, n, new int[n], freqs);
+		return freqs;
+	}
+
+	/** returns a copy of the specified state with a tail of the specified capacity */
+	protected static State growTail(State s, int t, int capacity) {
+		return new State(s.bytes, s.blockEnds, s.blockLast, s.blocks, 
+			Arrays.copyOf(s.tailDocs, capacity), Arrays.copyOf(s.tailFreqs, capacity));
+	}
+
+	/** compresses the (full) tail of the specified state into a new block */
+	protected static State seal(State s) {
+		final int start = s.blockStart(s.blocks);
+		final byte[] block = new byte[MAX_BLOCK_BYTES];
+		final int length = encodeBlock(s.tailDocs, s.tailFreqs, 0, BLOCK_SIZE, s.blockPrevious(s.blocks), block, 0);
+		// grow by a quarter only, as the slack would otherwise outweigh the compression
+		byte[] bytes = s.bytes;
+		if (bytes.length - start < length)
+			bytes = Arrays.copyOf(bytes, Math.max(start + length, start + (start >> 2)));
+		System.arraycopy(block, 0, bytes, start, length);
+		int[] blockEnds = s.blockEnds;
+		int[] blockLast = s.blockLast;
+		if (s.blocks == blockEnds.length)
+		{
+			final int capacity = Math.max(4, s.blocks * 2);
+			blockEnds = Arrays.copyOf(blockEnds, capacity);
+			blockLast = Arrays.copyOf(blockLast, capacity);
+		}
+		blockEnds[s.blocks] = start + length;
+		blockLast[s.blocks] = s.tailDocs[BLOCK_SIZE-1];
+		return new State(bytes, blockEnds, blockLast, s.blocks + 1, new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY]);
+	}
+
+	/** builds the state representing the first n postings of the specified arrays */
+	protected static State build(int[] docs, int[] freqs, int n) {
+		final int blocks = n / BLOCK_SIZE;
+		final byte[] bytes = new byte[blocks * MAX_BLOCK_BYTES];
+		final int[] blockEnds = new int[blocks];
+		final int[] blockLast = new int[blocks];
+		int offset = 0;
+		for (int block = 0; block < blocks; block++)
+		{
+			final int first = block * BLOCK_SIZE;
+			offset = blockEnds[block] = encodeBlock(docs, freqs, first, BLOCK_SIZE, first == 0 ? -1 : docs[first-1], bytes, offset);
+			blockLast[block] = docs[first + BLOCK_SIZE - 1];
+		}
+		final int t = n - blocks * BLOCK_SIZE;
+		final int capacity = Math.max(INITIAL_CAPACITY, t);
+		final int[] tailDocs = new int[capacity];
+		final int[] tailFreqs = new int[capacity];
+		System.arraycopy(docs, blocks * BLOCK_SIZE, tailDocs, 0, t);
+		System.arraycopy(freqs, blocks * BLOCK_SIZE, tailFreqs, 0, t);
+		return new State(Arrays.copyOf(bytes, offset), blockEnds, blockLast, blocks, tailDocs, tailFreqs);
+	}
+
+	/** decodes the first n postings of the specified state */
+	protected static void decode(State s, int n, int[] docs, int[] freqs) {
+		int i = 0;
+		for (int block = 0; block < s.blocks && i < n; block++)
+		{
+			if (n - i >= BLOCK_SIZE)
+				decodeBlock(s, block, docs, freqs, i);
+			else
+			{
+				final int[] blockDocs = new int[BLOCK_SIZE];
+				final int[] blockFreqs = new int[BLOCK_SIZE];
+				decodeBlock(s, block, blockDocs, blockFreqs, 0);
+				System.arraycopy(blockDocs, 0, docs, i, n - i);
+				System.arraycopy(blockFreqs, 0, freqs, i, n - i);
+			}
+			i += BLOCK_SIZE;
+		}
+		if (i < n)
+		{
+			System.arraycopy(s.tailDocs, 0, docs, i, n - i);
+			System.arraycopy(s.tailFreqs, 0, freqs, i, n - i);
+		}
+	}
+
+	/** encodes len postings starting at first into bytes, returning the offset after the block */
+	protected static int encodeBlock(int[] docs, int[] freqs, int first, int len, int previous, byte[] bytes, int offset) {
+		for (int i = first; i < first + len; i++)
+		{
+			offset = writeVByte(docs[i] - previous, bytes, offset);
+			previous = docs[i];
+		}
+		for (int i = first; i < first + len; i++)
+			offset = writeVByte(freqs[i], bytes, offset);
+		return offset;
+	}
+
+	/** decodes the specified block into docs and freqs, from position i */
+	protected static void decodeBlock(State s, int block, int[] docs, int[] freqs, int i) {
+		final byte[] bytes = s.bytes;
+		int offset = s.blockStart(block);
+		int docid = s.blockPrevious(block);
+		for (int j = i; j < i + BLOCK_SIZE; j++)
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			docs[j] = docid += value;
+		}
+		for (int j = i; j < i + BLOCK_SIZE; j++)
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			freqs[j] = value;
+		}
+	}
+
+	/** writes a non-negative integer using variable-byte encoding, returning the offset after it */
+	protected static int writeVByte(int value, byte[] bytes, int offset) {
+		while ((value & ~0x7F) != 0)
+		{
+			bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+
+	/** An iterator over the postings of a given State, which decodes one block at a time.
+	 * It extends MemoryIterablePosting, as returned by MemoryInvertedIndex, but does not
+	 * use its lists. */
+	public static class PostingIterator extends MemoryIterablePosting {
+
+		protected final State state;
+		/** number of postings not yet loaded into docs */
+		protected int remaining;
+		/** next block to load */
+		protected int block = 0;
+		protected int[] docs;
+		protected int[] freqs;
+		/** number of postings in docs */
+		protected int count = 0;
+		protected int id = -1;
+		protected int tf = 0;
+
+		PostingIterator(State state, int size, DocumentIndex doi) {
+			super(doi, null, null);
+			this.state = state;
+			this.remaining = size;
+		}
+
+		/** loads the next block or the tail, returning false if none are left */
+		protected boolean load() {
+			if (remaining == 0)
+				return false;
+			if (block < state.blocks)
+			{
+				if (docs == null || docs == state.tailDocs)
+				{
+					docs = new int[BLOCK_SIZE];
+					freqs = new int[BLOCK_SIZE];
+				}
+				decodeBlock(state, block++, docs, freqs, 0);
+				count = Math.min(BLOCK_SIZE, remaining);
+			}
+			else
+			{
+				docs = state.tailDocs;
+				freqs = state.tailFreqs;
+				count = remaining;
+			}
+			remaining -= count;
+			index = -1;
+			return true;
+		}
+
+		/** {@inheritDoc} */
+		public int next() throws IOException {
+			if (id == EOL)
+				return EOL;
+			if (++index >= count && ! load())
+				return id = EOL;
+			if (index == -1)
+				index = 0;
+			tf = freqs[index];
+			return id = docs[index];
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public int next(int targetId) throws IOException {
+			if (id == EOL || targetId <= id)
+				return id;
+			// skip blocks whose last docid is smaller than the target, without decoding them
+			if (count == 0 || docs[count-1] < targetId)
+			{
+				while (block < state.blocks && state.blockLast[block] < targetId && remaining > BLOCK_SIZE)
+				{
+					block++;
+					remaining -= BLOCK_SIZE;
+				}
+				if (! load())
+					return id = EOL;
+			}
+			while (next() != EOL && id < targetId);
+			return id;
+		}
+
+		/** {@inheritDoc} */
+		public boolean endOfPostings() {
+			return id == EOL || (remaining == 0 && index + 1 >= count);
+		}
+
+		/** {@inheritDoc} */
+		public int getId() {
+			return id;
+		}
+
+		/** {@inheritDoc} */
+		public int getFrequency() {
+			return tf;
+		}
+
+		/** {@inheritDoc} */
+		public int getDocumentLength() {
+			try {
+				return doi.getDocumentLength(id);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return -1;
+			}
+		}
+
+		/** Not implemented. */
+		public void setId(int id) {
+		}
+
+		/** {@inheritDoc} */
+		public WritablePosting asWritablePosting() {
+			return new BasicPostingImpl(id, tf);
+		}
+
+		/** {@inheritDoc} */
+		public void close() throws IOException {
+			doi = null;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is ConcurrentIntArrayList.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.memory;
+
+import gnu.trove.TIntArrayList;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.util.Arrays;
+
+/**
+ * A TIntArrayList that can be read by any number of threads while a single
+ * thread (or several threads holding a common lock) appends to it. Writers
+ * update the underlying array as usual, then publish it along with the new
+ * size through volatile fields; readers only use the published values, and
+ * hence never observe a partially written element or a stale array. Inserts
+ * are copy-on-write, such that the elements seen by a reader never move.
+ * <p>Only {@link #get(int)}, {@link #getQuick(int)}, {@link #size()},
+ * {@link #isEmpty()}, {@link #toNativeArray()} and {@link #snapshot()} are safe to
+ * call concurrently with the writer.
+ * 
+ * @since 5.2
+ */
+public class ConcurrentIntArrayList extends TIntArrayList {
+
+	private static final long serialVersionUID = 1L;
+
+	/** the array last published by the writer */
+	protected volatile int[] published;
+	/** the number of published elements */
+	protected volatile int publishedSize;
+
+	public ConcurrentIntArrayList() {
+		super();
+		publish();
+	}
+
+	public ConcurrentIntArrayList(int capacity) {
+		super(capacity);
+		publish();
+	}
+
+	/** makes the current content of the list visible to readers */
+	protected final void publish() {
+		published = _data;
+		publishedSize = _pos;
+	}
+
+	@Override
+	public void add(int val) {
+		super.add(val);
+		publish();
+	}
+
+	@Override
+	public void add(int[] vals, int offset, int length) {
+		super.add(vals, offset, length);
+		publish();
+	}
+
+	@Override
+	public void insert(int offset, int[] values, int valOffset, int len) {
+		_data = Arrays.copyOf(_data, Math.max(_data.length, _pos + len));
+		super.insert(offset, values, valOffset, len);
+		publish();
+	}
+
+	@Override
+	public void insert(int offset, int value) {
+		insert(offset, new int[]{value}, 0, 1);
+	}
+
+	@Override
+	public void set(int offset, int val) {
+		super.set(offset, val);
+		publish();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		publish();
+	}
+
+	@Override
+	public Object clone() {
+		ConcurrentIntArrayList clone = (ConcurrentIntArrayList) super.clone();
+		clone.publish();
+		return clone;
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+		publish();
+	}
+
+	@Override
+	public int get(int offset) {
+		if (offset >= publishedSize)
+			throw new ArrayIndexOutOfBoundsException(offset);
+		return published[offset];
+	}
+
+	@Override
+	public int getQuick(int offset) {
+		return published[offset];
+	}
+
+	@Override
+	public int size() {
+		return publishedSize;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return publishedSize == 0;
+	}
+
+	@Override
+	public int[] toNativeArray() {
+		final int size = publishedSize;
+		return Arrays.copyOf(published, size);
+	}
+
+	/** Returns a read-only view of the elements published so far */
+	public TIntArrayList snapshot() {
+		final int size = publishedSize;
+		return view(published, size);
+	}
+
+	/** 
+	 * Returns a TIntArrayList containing the first length elements of data, without copying
+	 * them. The view detaches itself from data before growing, but should otherwise be
+	 * treated as read-only.
+	 */
+	public static TIntArrayList view(int[] data, int length) {
+		return new View(data, length);
+	}
+
+	static class View extends TIntArrayList {
+		private static final long serialVersionUID = 1L;
+		private boolean shared = true;
+
+		View(int[] data, int length) {
+			super(0);
+			_data = data;
+			_pos = length;
+		}
+
+		@Override
+		public void ensureCapacity(int capacity) {
+			if (shared)
+			{
+				_data = Arrays.copyOf(_data, Math.max(capacity, _pos));
+				shared = false;
+			}
+			super.ensureCapacity(capacity);
+		}
+	}
+}
@@ -41,7 +41,9 @@ import org.terrier.structures.collections.MapEntry;
 
 /**
  * An in-memory version of the Document index. Stores the length
- * of each document.
+ * of each document. Lengths are held in a {@link ConcurrentIntArrayList},
+ * such that the document index can be read while documents are being
+ * added.
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -50,7 +52,7 @@ public class MemoryDocumentIndex implements DocumentIndex,Serializable {
 
 	private static final long serialVersionUID = -7639008149037297229L;
 	/* Document lengths. */
-	public TIntArrayList docLengths = new TIntArrayList();
+	public TIntArrayList docLengths = new ConcurrentIntArrayList();
 
 	/**
 	 * Constructor.
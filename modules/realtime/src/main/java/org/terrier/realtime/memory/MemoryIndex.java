@@ -46,6 +46,7 @@ import org.terrier.structures.AbstractPostingOutputStream;
 import org.terrier.structures.BasicLexiconEntry;
 import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.DocumentIndexEntry;
 import org.terrier.structures.FSOMapFileLexiconOutputStream;
@@ -79,6 +80,19 @@ import org.terrier.utility.ArrayUtils;
  * A MemoryIndex is also writable, i.e. it has a write() method that will convert
  * it to an IndexOnDisk and write it out to the location specified by terrier.index.path
  * and with prefix terrier.index.prefix.
+ * <p>
+ * Documents can be indexed by several threads at once: each thread passes its
+ * documents through its own term pipeline, and only the addition of the resulting
+ * postings to the index structures is serialised, in a short critical section that
+ * assigns the docid. The index can be searched while documents are being added,
+ * without locking: the lexicon, posting lists, document index and meta index can
+ * all be read concurrently with a writer, and a document becomes visible once its
+ * postings are added, after its length and metadata. Each posting list obtained for
+ * a query is a snapshot, which is not affected by documents indexed afterwards.
+ * <p>
+ * Documents removed by removeDocument() are recorded in the {@link DeletedDocuments}
+ * of the index, and are skipped by the posting lists of getInvertedIndex(). Their postings remain in the index, and are
+ * written to disk by write() along with the deleted documents.
  * 
  * @author Richard McCreadie, Dyaa Albakour 
  * @since 4.0
@@ -114,6 +128,8 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	protected MemoryDocumentIndex document;
 	protected MemoryCollectionStatistics stats;
 	protected MemoryDirectIndex direct;
+	/** documents removed from the index, null if none */
+	protected volatile DeletedDocuments deleted;
 	
     // Blocks and fields.
     public final static boolean      blocks    = (ApplicationSetup.getProperty("block.indexing", "").equals("")) ? false : true;
@@ -176,7 +192,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		if (structureName.equalsIgnoreCase("lexicon"))
 			return getLexicon();
 		if (structureName.equalsIgnoreCase("inverted"))
-			return getInvertedIndex();
+			return inverted;
 		if (structureName.equalsIgnoreCase("meta"))
 			return getMetaIndex();
 		if (structureName.equalsIgnoreCase("document"))
@@ -185,6 +201,8 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 			return getCollectionStatistics();
 		if (structureName.equalsIgnoreCase("direct") && enableDirect)
 			return direct;
+		if (structureName.equalsIgnoreCase(DeletedDocuments.STRUCTURE_NAME))
+			return deleted;
 		else
 			return null;
 	}
@@ -194,9 +212,11 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		return lexicon;
 	}
 
-	/** {@inheritDoc} */
+	/** {@inheritDoc} 
+	 * The posting lists skip the documents removed from this index. */
 	public PostingIndex<?> getInvertedIndex() {
-		return inverted;
+		final DeletedDocuments removed = deleted;
+		return removed == null ? inverted : removed.filter(inverted);
 	}
 
 	/** {@inheritDoc} */
@@ -241,18 +261,12 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	 */
 	public void indexDocument(Document doc) throws Exception {
 
-		synchronized(indexingLock) {
-			// Don't index null documents.
-			if (doc == null)
-				return;
-	
-			// Process terms through term pipeline.
-			docPostings = new DocumentPostingList();
-			while (!doc.endOfDocument())
-				pipeline_first.processTerm(doc.getNextTerm());
-	
-			indexDocument(doc.getAllProperties(), docPostings);
-		}
+		// Don't index null documents.
+		if (doc == null)
+			return;
+
+		// Process terms through term pipeline, outside of the lock.
+		indexDocument(doc.getAllProperties(), processTerms(doc));
 	}
 	
 	
@@ -275,7 +289,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		// Add the document's length to the document index.
 		document.addDocument(docContents.getDocumentLength());
 
-		int docid = stats.getNumberOfDocuments();
+		final int docid = stats.getNumberOfDocuments();
 		
 		// For each term in the document:
 		for (String term : docContents.termSet()) {
@@ -287,8 +301,7 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 					tf));
 
 			// Add document posting to inverted file.
-			inverted.add(termid, stats.getNumberOfDocuments(),
-					tf);
+			inverted.add(termid, docid, tf);
 			
 			if (enableDirect) {
 				direct.add(docid, termid, tf);
@@ -318,18 +331,12 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	 */
 	public void indexUnDocument(Document doc) throws Exception {
 
-		synchronized(indexingLock) {
-			// Don't index null documents.
-			if (doc == null)
-				return;
-	
-			// Process terms through term pipeline.
-			docPostings = new DocumentPostingList();
-			while (!doc.endOfDocument())
-				pipeline_first.processTerm(doc.getNextTerm());
-	
-			indexUnDocument(doc.getAllProperties(), docPostings);
-		}
+		// Don't index null documents.
+		if (doc == null)
+			return;
+
+		// Process terms through term pipeline, outside of the lock.
+		indexUnDocument(doc.getAllProperties(), processTerms(doc));
 	}
 	
 	
@@ -391,13 +398,8 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		if (doc == null)
 			return false;
 		
-		synchronized(indexingLock) {
-			// Process terms through term pipeline.
-			docPostings = new DocumentPostingList();
-			while (!doc.endOfDocument())
-				pipeline_first.processTerm(doc.getNextTerm());
-			return addToDocument(docid, docPostings);
-		}
+		// Process terms through term pipeline, outside of the lock.
+		return addToDocument(docid, processTerms(doc));
 	}
 
 	/** {@inheritDoc}
@@ -572,6 +574,11 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		// optimise lexicon
 		LexiconBuilder.optimise(newIndex, "lexicon");
 
+		// documents removed remain deleted
+		final DeletedDocuments removed = deleted;
+		if (removed != null)
+			removed.write(newIndex);
+
 		// final write
 		newIndex.flush();
 
@@ -752,12 +759,12 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 	 * FIXME.
 	 */
 
-	/** FIXME */
-	protected DocumentPostingList docPostings;
-
 	/** FIXME */
 	protected TermPipeline pipeline_first;
 
+	/** The term pipeline used by each indexing thread */
+	protected final ThreadLocal<BasicTermProcessor> termProcessors = ThreadLocal.withInitial(() -> new BasicTermProcessor());
+
 	/** FIXME */
 	protected final static String PIPELINE_NAMESPACE = "org.terrier.terms.";
 
@@ -768,12 +775,22 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 
 	/** FIXME */
 	protected void load_pipeline() {
+		pipeline_first = createPipeline(getEndOfPipeline());
+	}
+
+	/** 
+	 * Creates a new instance of the term pipeline specified by the property
+	 * <tt>termpipelines</tt>, ending at the specified TermPipeline.
+	 * @param last the end of the term pipeline
+	 * @return the first TermPipeline of the pipeline
+	 * @since 5.2
+	 */
+	protected TermPipeline createPipeline(final TermPipeline last) {
 		String[] pipes = ApplicationSetup
 				.getProperty("termpipelines", "Stopwords,PorterStemmer").trim()
 				.split("\\s*,\\s*");
 
-		TermPipeline next = getEndOfPipeline();
-		final TermPipeline last = next;
+		TermPipeline next = last;
 		TermPipeline tmp;
 		for (int i = pipes.length - 1; i >= 0; i--) {
 			try {
@@ -798,13 +815,33 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		// terms to skip the pipeline processing sequence
 		if ((skipTerms = ApplicationSetup.getProperty("termpipelines.skip",
 				null)) != null && skipTerms.trim().length() > 0)
-			pipeline_first = new SkipTermPipeline(next, last);
-		else
-			pipeline_first = next;
+			return new SkipTermPipeline(next, last);
+		return next;
 	}
 
-	/** FIXME */
-	private class BasicTermProcessor implements TermPipeline {
+	/** 
+	 * Passes the terms of the specified document through the term pipeline
+	 * of the current thread.
+	 * @return the postings of the document
+	 * @since 5.2
+	 */
+	protected DocumentPostingList processTerms(Document doc) {
+		final BasicTermProcessor processor = termProcessors.get();
+		if (processor.first == null)
+			processor.first = createPipeline(processor);
+		final DocumentPostingList docPostings = processor.docPostings = new DocumentPostingList();
+		while (!doc.endOfDocument())
+			processor.first.processTerm(doc.getNextTerm());
+		processor.docPostings = null;
+		return docPostings;
+	}
+
+	/** Adds terms to the postings of the document being processed */
+	protected class BasicTermProcessor implements TermPipeline {
+		/** the start of the term pipeline ending at this processor */
+		TermPipeline first;
+		DocumentPostingList docPostings;
+
 		public void processTerm(String term) {
 			if (term != null) {
 				docPostings.insert(term);
@@ -816,9 +853,21 @@ public class MemoryIndex extends Index implements UpdatableIndex,WritableIndex {
 		}
 	}
 	
+	/** {@inheritDoc}
+	 * <p>The document is marked as deleted, such that it is no longer retrieved.
+	 * Returns false if the document does not exist or was already deleted. 
+	 */
 	@Override
-	public boolean removeDocument(int docid) {		
-		return false;
+	public boolean removeDocument(int docid) {
+		if (docid < 0 || docid >= stats.getNumberOfDocuments())
+			return false;
+		if (deleted == null) {
+			synchronized(this) {
+				if (deleted == null)
+					deleted = new DeletedDocuments();
+			}
+		}
+		return deleted.delete(docid);
 	}
 	
 	
@@ -28,12 +28,13 @@
 package org.terrier.realtime.memory;
 
 import gnu.trove.TIntArrayList;
-import gnu.trove.TIntObjectHashMap;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.IndexUtil;
@@ -48,6 +49,9 @@ import org.terrier.structures.postings.IterablePosting;
  * A basic inverted file implementation for use with MemoryIndex structures.
  * This version does not support fields or blocks. Since it is a memory-based
  * structure, access is via a MemoryPointer rather than BitIndexPointer.
+ * Posting lists are held compressed (see {@link CompressedMemoryPostingList}),
+ * and can be read while postings are being added: each call to getPostings()
+ * iterates over the postings present at the time of the call.
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -60,7 +64,7 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	 */
 	protected DocumentIndex doi;
 	protected Lexicon<String> lex;
-	protected TIntObjectHashMap<MemoryPostingList> postings;
+	protected ConcurrentMap<Integer,MemoryPostingList> postings;
 
 	/**
 	 * Constructor.
@@ -68,71 +72,34 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	public MemoryInvertedIndex(Lexicon<String> lex, DocumentIndex doi) {
 		this.lex = lex;
 		this.doi = doi;
-		postings = new TIntObjectHashMap<MemoryPostingList>();
+		postings = new ConcurrentHashMap<Integer,MemoryPostingList>();
 	}
 
 	/*
-	 * Postings list.
+	 * Postings list, compressed in blocks. Postings are appended by one writer at a time,
+	 * while any number of readers may iterate over the list.
 	 */
-	public class BasicMemoryPostingList implements MemoryPostingList {
-		private TIntArrayList pl_doc;
-		private TIntArrayList pl_freq;
+	public class BasicMemoryPostingList extends CompressedMemoryPostingList {
 
 		public BasicMemoryPostingList() {
-			pl_doc = new TIntArrayList();
-			pl_freq = new TIntArrayList();
+			super();
 		}
 		
 		public BasicMemoryPostingList(int[] docids, int[] docfreqs) {
-			pl_doc = new TIntArrayList();
-			pl_freq = new TIntArrayList();
-			pl_doc.add(docids);
-			pl_freq.add(docfreqs);
+			super(docids, docfreqs);
 		}
 
 		public BasicMemoryPostingList(int docid, int docfreq) {
-			pl_doc = new TIntArrayList();
-			pl_freq = new TIntArrayList();
-			pl_doc.add(docid);
-			pl_freq.add(docfreq);
+			super();
+			add(docid, docfreq);
 		}
 
-		public void add(int docid, int docfreq) {
-			pl_doc.add(docid);
-			pl_freq.add(docfreq);
-		}
-		
-		public int getFreq(int docid) {
-			int index = pl_doc.binarySearch(docid);
-			if (index >= 0)
-			{
-				return pl_freq.get(index);
-			}
-			return -1;
-		}
-		
-		/** Returns true iff we did not already have a posting for this document */
-		public boolean addOrUpdateFreq(int docid, int freq) {
-			int index = pl_doc.binarySearch(docid);
-			if (index >= 0)
-			{
-				pl_freq.setQuick(index, freq + pl_freq.get(index));	
-				return false;
-			} else {
-				pl_doc.insert( -(index +1), docid);
-				pl_freq.insert( -(index +1), freq);	
-				return true;
-			}
-			
-		}
-		
-
 		public TIntArrayList getPl_doc() {
-			return pl_doc;
+			return new TIntArrayList(getDocids());
 		}
 
 		public TIntArrayList getPl_freq() {
-			return pl_freq;
+			return new TIntArrayList(getFrequencies());
 		}
 	}
 
@@ -140,8 +107,9 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	 * Add posting to inverted file.
 	 */
 	public void add(int ptr, int docid, int freq) {
-		if (postings.containsKey(ptr))
-			((BasicMemoryPostingList)postings.get(ptr)).add(docid, freq);
+		BasicMemoryPostingList pl = (BasicMemoryPostingList) postings.get(ptr);
+		if (pl != null)
+			pl.add(docid, freq);
 		else
 			postings.put(ptr, new BasicMemoryPostingList(docid, freq));
 	}
@@ -152,9 +120,9 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	public boolean addOrUpdate(int ptr, int docid, int freq) {
 		assert freq > 0;
 		
-		if (postings.containsKey(ptr))
+		BasicMemoryPostingList bmpl = (BasicMemoryPostingList) postings.get(ptr);
+		if (bmpl != null)
 		{
-			BasicMemoryPostingList bmpl = (BasicMemoryPostingList) postings.get(ptr);
 			return bmpl.addOrUpdateFreq(docid, freq);			
 		}
 		else
@@ -169,7 +137,7 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	 * @param ptr
 	 */
 	public void remove(int ptr) {
-		if (postings.containsKey(ptr)) postings.remove(ptr);
+		postings.remove(ptr);
 	}
 
 	/** {@inheritDoc} */
@@ -177,9 +145,9 @@ public class MemoryInvertedIndex implements PostingIndex<MemoryPointer>,Serializ
 	public IterablePosting getPostings(Pointer pointer) throws IOException {
 		BasicMemoryPostingList pl = ((BasicMemoryPostingList)postings.get(((MemoryPointer)pointer).getPointer()));
 		if (pl==null) {
-			pl = new BasicMemoryPostingList();
+			return new MemoryIterablePosting(doi, new TIntArrayList(), new TIntArrayList());
 		}
-		return new MemoryIterablePosting(doi, pl.getPl_doc(), pl.getPl_freq());
+		return pl.iterator(doi);
 	}
 
 	/** {@inheritDoc} */
@@ -48,6 +48,9 @@ import org.terrier.utility.ApplicationSetup;
 /**
  * The lexicon structure for a MemoryIndex. Since this is a memory structure,
  * the lexicon entries are of type MemoryPointers rather than BitIndexPointer.
+ * Terms are held in a {@link WConcurrentSkipListMap}: new terms are added while
+ * holding the modification lock, but lookups do not take any lock, and hence
+ * are not blocked by indexing.
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -56,15 +59,45 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 
 	private static final long serialVersionUID = 6642638617614776293L;
 
+	/** number of terms in the lexicon, as size() is not constant-time for the map */
+	protected volatile int numberOfEntries = 0;
+
 	/**
 	 * Constructor.
 	 */
 	public MemoryLexicon() {
-		super(new WTreeMap<Text, LexiconEntry>());
+		super(new WConcurrentSkipListMap<Text, LexiconEntry>());
 		super.keyFactory = new FixedSizeTextFactory(
 				ApplicationSetup.MAX_TERM_LENGTH);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public LexiconEntry getLexiconEntry(String term) {
+		Text key = keyFactory.newInstance();
+		setK2(term, key);
+		return map.get(key);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map.Entry<String,LexiconEntry> getIthLexiconEntry(int index) {
+		Map.Entry<Text,LexiconEntry> entry = ((OrderedMap<Text, LexiconEntry>)map).get(index);
+		return new LexiconFileEntry<String>(toK1(entry.getKey()), entry.getValue());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Map.Entry<String,LexiconEntry> getLexiconEntry(int termid) {
+		return getIthLexiconEntry(termid);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int numberOfEntries() {
+		return numberOfEntries;
+	}
+
 	/**
 	 * Add new term, or update existing term.
 	 * 
@@ -78,11 +111,12 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 			le.add(es);
 			return le.getTermId();
 		}
-		int termid = super.map.size();
+		int termid = numberOfEntries;
 		Text key = keyFactory.newInstance();
 		key.set(term);
 		((LexiconEntry) es).setTermId(termid);
 		super.map.put(key, (LexiconEntry) es);
+		numberOfEntries++;
 		return termid;
 		
 		}
@@ -100,6 +134,7 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 		key.set(term);
 		((LexiconEntry) es).setTermId(termid);
 		super.map.put(key, (LexiconEntry) es);
+		numberOfEntries++;
 		return termid;
 		
 		}
@@ -119,6 +154,7 @@ public class MemoryLexicon extends MapLexicon<String,Text> implements Serializab
 				removed++;
 			}
 		}
+		numberOfEntries -= removed;
 		return removed;
 		
 		}
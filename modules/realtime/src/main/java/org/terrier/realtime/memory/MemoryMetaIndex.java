@@ -31,11 +31,12 @@ import gnu.trove.TObjectIntHashMap;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.terrier.structures.MetaIndex;
 import org.terrier.structures.indexing.MetaIndexBuilder;
@@ -46,7 +47,8 @@ import org.terrier.utility.ArrayUtils;
  * An in-memory version of a Meta-data index. It stores additional information
  * about each document, e.g. the docno or title. Access to the memory versions 
  * of the meta index are faster than the on-disk versions, but can use up large
- * amounts of RAM to store.
+ * amounts of RAM to store. Records can be looked up while new documents are
+ * being written.
  * 
  * <p><b>Properties</b></p>
  * <ul><li>indexer.meta.forward.keys</tt> - key names to store in the meta index</li>
@@ -63,12 +65,14 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	/*
 	 * Meta-data index structures.
 	 */
-	private List<String[]> metadata;
+	/* records, published by setting numberOfRecords after writing them */
+	private volatile String[][] metadata;
+	private volatile int numberOfRecords;
 	private TObjectIntHashMap<String> key2meta;
 	private int[] keylengths;
 	private boolean[] isReverse;
 
-	private Map<String,TObjectIntHashMap<String>> key2value2id;
+	private Map<String,ConcurrentHashMap<String,Integer>> key2value2id;
 	/*
 	 * Keys and key lengths.
 	 */
@@ -100,15 +104,16 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 			throw new IllegalArgumentException("Meta keys and keylens mismatch.");
 		}
 		
-		metadata = new ArrayList<String[]>();
+		metadata = new String[16][];
+		numberOfRecords = 0;
 		key2meta = new TObjectIntHashMap<String>();
 		int i = 0;
 		for (String key : keys)
 			key2meta.put(key, i++);
 		
-		key2value2id = new HashMap<String,TObjectIntHashMap<String>>(revKeys.length);
+		key2value2id = new HashMap<String,ConcurrentHashMap<String,Integer>>(revKeys.length);
 		for (String revkey : this.revkeys)
-			key2value2id.put(revkey, new TObjectIntHashMap<String>());
+			key2value2id.put(revkey, new ConcurrentHashMap<String,Integer>());
 		isReverse = new boolean[keys.length];
 		for(i=0;i<keys.length;i++){
 			isReverse[i] = key2value2id.containsKey(keys[i]);
@@ -124,13 +129,20 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	/** {@inheritDoc} */
 	@Override
 	public String getItem(String key, int docid) throws IOException {
-		return metadata.get(docid)[key2meta.get(key)];
+		return getRecord(docid)[key2meta.get(key)];
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public String[] getAllItems(int docid) throws IOException {
-		return metadata.get(docid);
+		return getRecord(docid);
+	}
+
+	/** returns the record of the specified document */
+	private String[] getRecord(int docid) {
+		if (docid >= numberOfRecords)
+			throw new IndexOutOfBoundsException("Index: " + docid + ", Size: " + numberOfRecords);
+		return metadata[docid];
 	}
 
 	/** {@inheritDoc} */
@@ -139,7 +151,7 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 		String[] data = new String[docids.length];
 		int index = key2meta.get(key);
 		for (int i = 0; i < docids.length; i++)
-			data[i] = metadata.get(docids[i])[index];
+			data[i] = getRecord(docids[i])[index];
 		return data;
 	}
 
@@ -147,8 +159,9 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	@Override
 	public String[] getItems(String[] keys, int docid) throws IOException {
 		String[] data = new String[keys.length];
+		final String[] record = getRecord(docid);
 		for (int i = 0; i < keys.length; i++)
-			data[i] = metadata.get(docid)[key2meta.get(keys[i])];
+			data[i] = record[key2meta.get(keys[i])];
 		return data;
 	}
 
@@ -199,7 +212,12 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	@Override
 	public void writeDocumentEntry(String[] data) {
 		//forward metadata
-		metadata.add(data);
+		final int docid = numberOfRecords;
+		String[][] records = metadata;
+		if (docid == records.length)
+			metadata = records = Arrays.copyOf(records, docid * 2);
+		records[docid] = data;
+		numberOfRecords = docid + 1;
 		
 		//reverse metadata
 		if (revkeys.length == 0)
@@ -208,17 +226,17 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 		{
 			if (! isReverse[i])
 				continue;
-			int docid = metadata.size() -1;
-			key2value2id.get(this.keys[i]).put(data[i], docid+1);
+			key2value2id.get(this.keys[i]).put(data[i], docid);
 		}
 	}
 	
 	@Override
 	public int getDocument(String key, String value) throws IOException {
-		TObjectIntHashMap<String> map = key2value2id.get(key);
+		Map<String,Integer> map = key2value2id.get(key);
 		if (map == null)
 			return -1;
-		return map.get(value) -1;
+		Integer docid = map.get(value);
+		return docid == null ? -1 : docid;
 	}
 	
 	@Override
@@ -232,9 +250,10 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	 */
 	@Override
 	public void close() throws IOException {
-		metadata.clear();
+		numberOfRecords = 0;
+		metadata = new String[16][];
 		if (key2meta!=null) key2meta.clear();
-		for (TObjectIntHashMap<String> map : key2value2id.values())
+		for (Map<String,Integer> map : key2value2id.values())
 			map.clear();
 	}
 
@@ -249,14 +268,18 @@ public class MemoryMetaIndex extends MetaIndexBuilder implements MetaIndex,Seria
 	 * Meta-data index iterator.
 	 */
 	private class MetaIterator implements Iterator<String[]> {
-		Iterator<String[]> iter = metadata.iterator();
+		final int size = numberOfRecords;
+		final String[][] records = metadata;
+		int index = 0;
 
 		public boolean hasNext() {
-			return iter.hasNext();
+			return index < size;
 		}
 
 		public String[] next() {
-			return iter.next();
+			if (index >= size)
+				throw new NoSuchElementException();
+			return records[index++];
 		}
 
 		public void remove() {
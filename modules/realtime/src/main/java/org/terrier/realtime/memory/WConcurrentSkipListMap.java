@@ -0,0 +1,73 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is WConcurrentSkipListMap.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.memory;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.terrier.structures.collections.MapEntry;
+import org.terrier.structures.collections.OrderedMap;
+
+/**
+ * Wrapper around ConcurrentSkipListMap implementing OrderedMap. Like {@link WTreeMap},
+ * the index of an entry is the order in which its key was first inserted. Lookups,
+ * by key or by index, do not block and can proceed concurrently with insertions, which
+ * should be made by one thread at a time.
+ * @since 5.2
+ */
+@SuppressWarnings("serial")
+public class WConcurrentSkipListMap<K, V> extends ConcurrentSkipListMap<K, V> implements OrderedMap<K, V> {
+
+	/** keys in insertion order */
+	private volatile Object[] ordering = new Object[16];
+	/** number of keys in ordering */
+	private volatile int orderingSize = 0;
+
+	@Override
+	public V put(K key, V value) {
+		V val = super.put(key,value);
+		if (val == null)
+		{
+			final int n = orderingSize;
+			Object[] keys = ordering;
+			if (n == keys.length)
+				ordering = keys = Arrays.copyOf(keys, n * 2);
+			keys[n] = key;
+			orderingSize = n + 1;
+		}
+		return val;
+	}
+
+	/** {@inheritDoc} */
+	@SuppressWarnings("unchecked")
+	public java.util.Map.Entry<K, V> get(int index) {
+		if (index >= orderingSize)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + orderingSize);
+		K key = (K) ordering[index];
+		return new MapEntry<K, V>(key, super.get(key));
+	}
+}
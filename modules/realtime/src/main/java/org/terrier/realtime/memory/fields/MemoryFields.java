@@ -30,6 +30,7 @@ import gnu.trove.TIntHashSet;
 
 import java.util.Set;
 
+import org.terrier.indexing.Document;
 import org.terrier.realtime.memory.MemoryCollectionStatistics;
 import org.terrier.realtime.memory.MemoryIndex;
 import org.terrier.structures.FieldDocumentIndex;
@@ -53,8 +54,6 @@ public abstract class MemoryFields extends MemoryIndex {
         for (int i = 0; i < fieldtags.length; i++)
             fieldTokens[i] = 0;
         stats = new MemoryCollectionStatistics(0, 0, 0, 0, fieldTokens);
-        load_pipeline();
-        pipeline = pipeline_first;
     }
 
     /** {@inheritDoc} */
@@ -129,15 +128,43 @@ public abstract class MemoryFields extends MemoryIndex {
      * Term pipeline.
      */
 
-    protected TermPipeline             pipeline;
-    protected FieldDocumentPostingList fdpl;
-    protected Set<String>              docFields;
+    /** The term pipeline used by each indexing thread */
+    protected final ThreadLocal<FieldTermProcessor> fieldTermProcessors = ThreadLocal.withInitial(() -> new FieldTermProcessor());
 
-   protected TermPipeline getEndOfPipeline() {
-        return new TermProcessor();
+    protected TermPipeline getEndOfPipeline() {
+        return new FieldTermProcessor();
     }
 
-    private class TermProcessor implements TermPipeline {
+    /**
+     * Passes the terms of the specified document, along with the fields in which 
+     * they occur, through the term pipeline of the current thread.
+     * @return the postings of the document, with their field frequencies
+     * @since 5.2
+     */
+    protected FieldDocumentPostingList processFieldTerms(Document doc) {
+        final FieldTermProcessor processor = fieldTermProcessors.get();
+        if (processor.first == null)
+            processor.first = createPipeline(processor);
+        final FieldDocumentPostingList docPostings = processor.fdpl = new FieldDocumentPostingList(fieldtags.length);
+        while (!doc.endOfDocument()) {
+            String term = doc.getNextTerm();
+            if (term == null || term.equals(""))
+                continue;
+            processor.docFields = doc.getFields();
+            processor.first.processTerm(term);
+        }
+        processor.fdpl = null;
+        processor.docFields = null;
+        return docPostings;
+    }
+
+    /** Adds terms to the field postings of the document being processed */
+    protected class FieldTermProcessor implements TermPipeline {
+        /** the start of the term pipeline ending at this processor */
+        TermPipeline first;
+        FieldDocumentPostingList fdpl;
+        Set<String> docFields;
+
         public void processTerm(String term) {
             if (term != null) {
                 TIntHashSet freqs = new TIntHashSet(0);
@@ -145,7 +172,7 @@ public abstract class MemoryFields extends MemoryIndex {
                     freqs.add(fieldIDs.get(docField));
                 if (fieldIDs.containsKey("ELSE") && freqs.size() == 0)
                     freqs.add(fieldIDs.get("ELSE"));
-                ((FieldDocumentPostingList) fdpl).insert(term, freqs.toArray());
+                fdpl.insert(term, freqs.toArray());
             }
         }
 
@@ -156,4 +183,4 @@ public abstract class MemoryFields extends MemoryIndex {
 
 
 
-}
+}
\ No newline at end of file
@@ -119,17 +119,8 @@ public class MemoryFieldsIndex extends MemoryFields {
         if (doc == null)
             return;
 
-        // Process terms through term pipeline.
-        fdpl = new FieldDocumentPostingList(fieldtags.length);
-        while (!doc.endOfDocument()) {
-            String term = doc.getNextTerm();
-            if (term == null || term.equals(""))
-                continue;
-            docFields = doc.getFields();
-            pipeline.processTerm(term);
-        }
-
-        indexDocument(doc.getAllProperties(), fdpl);
+        // Process terms through the term pipeline of this thread, outside of the lock.
+        indexDocument(doc.getAllProperties(), processFieldTerms(doc));
 
     }
 
@@ -108,24 +108,24 @@ public class MemoryFieldsInvertedIndex extends MemoryInvertedIndex {
         }
 
         /* Add posting. */
-        void add(int docid, int freq, int[] fields) {
+        synchronized void add(int docid, int freq, int[] fields) {
             docids.add(docid);
             freqs.add(freq);
             this.fields.put(docid, Arrays.copyOf(fields, fields.length));
         }
 
         /* Get docids. */
-        TIntArrayList docids() {
+        synchronized TIntArrayList docids() {
             return new TIntArrayList(docids.toNativeArray());
         }
 
         /* Get freqs. */
-        TIntArrayList freqs() {
+        synchronized TIntArrayList freqs() {
             return new TIntArrayList(freqs.toNativeArray());
         }
 
         /* Get fields. */
-        TIntObjectHashMap<int[]> fields() {
+        synchronized TIntObjectHashMap<int[]> fields() {
             TIntObjectHashMap<int[]> tmp = new TIntObjectHashMap<int[]>(fields.size());
             for (int docid : fields.keys())
                 tmp.put(docid, Arrays.copyOf(fields.get(docid), fields.get(docid).length));
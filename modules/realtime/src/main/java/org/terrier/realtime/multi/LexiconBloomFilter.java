@@ -0,0 +1,119 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is LexiconBloomFilter.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.multi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * A Bloom filter over the vocabulary of one index shard, stored alongside the
+ * lexicon as the <tt>lexicon-bloom</tt> index structure. A {@link MultiLexicon}
+ * uses the filter of each shard to avoid looking up terms in shards that
+ * cannot contain them. Filters are created by {@link #create(IndexOnDisk)}
+ * when an IncrementalIndex shard is flushed to disk or merged, and are only
+ * valid as long as the lexicon of the shard does not change.
+ * 
+ * <p><b>Properties</b></p>
+ * <ul>
+ * <li><tt>lexicon.bloom.fpp</tt> - the false positive probability of the filters created, default 0.01.</li>
+ * </ul>
+ * 
+ * @since 5.2
+ */
+public class LexiconBloomFilter {
+
+	protected static final Logger logger = LoggerFactory.getLogger(LexiconBloomFilter.class);
+
+	/** name of the index structure */
+	public static final String STRUCTURE_NAME = "lexicon-bloom";
+	/** extension of the file containing the filter */
+	public static final String EXTENSION = ".bloom";
+
+	protected final BloomFilter<CharSequence> filter;
+
+	/** Loads the filter of the specified index */
+	public LexiconBloomFilter(IndexOnDisk index, String structureName) throws IOException {
+		try (InputStream in = Files.openFileStream(getFilename(index, structureName))) {
+			filter = BloomFilter.readFrom(in, Funnels.stringFunnel(StandardCharsets.UTF_8));
+		}
+	}
+
+	protected LexiconBloomFilter(BloomFilter<CharSequence> filter) {
+		this.filter = filter;
+	}
+
+	/** Returns false if the term definitely does not occur in the lexicon.
+	 * A return of true means that the term may occur in the lexicon. */
+	public boolean mightContain(String term) {
+		return filter.mightContain(term);
+	}
+
+	protected static String getFilename(IndexOnDisk index, String structureName) {
+		return index.getPath() + ApplicationSetup.FILE_SEPARATOR + index.getPrefix() + "." + structureName + EXTENSION;
+	}
+
+	/** Creates the filter for the lexicon of the specified index, and adds the
+	 * <tt>lexicon-bloom</tt> structure to the index. */
+	public static LexiconBloomFilter create(IndexOnDisk index) throws IOException {
+		final double fpp = Double.parseDouble(ApplicationSetup.getProperty("lexicon.bloom.fpp", "0.01"));
+		final int numTerms = index.getIntIndexProperty("num.Terms", 0);
+		final BloomFilter<CharSequence> filter = BloomFilter.create(
+				Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1, numTerms), fpp);
+		@SuppressWarnings("unchecked")
+		Iterator<Map.Entry<String,LexiconEntry>> lexIn = 
+			(Iterator<Map.Entry<String,LexiconEntry>>) index.getIndexStructureInputStream("lexicon");
+		while(lexIn.hasNext())
+			filter.put(lexIn.next().getKey());
+		IndexUtil.close(lexIn);
+		
+		try (OutputStream out = Files.writeFileStream(getFilename(index, STRUCTURE_NAME))) {
+			filter.writeTo(out);
+		}
+		index.addIndexStructure(STRUCTURE_NAME, LexiconBloomFilter.class.getName(), 
+			"org.terrier.structures.IndexOnDisk,java.lang.String", "index,structureName");
+		index.flush();
+		logger.debug("Created "+STRUCTURE_NAME+" for " + numTerms + " terms of index " + index.getPrefix());
+		return new LexiconBloomFilter(filter);
+	}
+}
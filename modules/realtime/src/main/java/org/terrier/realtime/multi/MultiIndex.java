@@ -113,31 +113,41 @@ public class MultiIndex extends Index {
 	/** {@inheritDoc} */
 	@SuppressWarnings("unchecked")
 	public Lexicon<String> getLexicon() {
-		int indexCount = indices.size();
+		List<Index> selected = getSelectedIndices();
+		int indexCount = selected.size();
 		int[] offsets = new int[indexCount];
+		int[] docOffsets = new int[indexCount];
 		Lexicon<String>[] lexicons = new Lexicon[indexCount];
+		LexiconBloomFilter[] filters = new LexiconBloomFilter[indexCount];
 
 		int i = 0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		int docOffset = 0;
+		for (Index index : selected) {
 			lexicons[i] = index.getLexicon();
+			if (index.hasIndexStructure(LexiconBloomFilter.STRUCTURE_NAME))
+				filters[i] = (LexiconBloomFilter) index.getIndexStructure(LexiconBloomFilter.STRUCTURE_NAME);
 			offsets[i] = index.getCollectionStatistics()
 					.getNumberOfUniqueTerms();
+			docOffsets[i] = docOffset;
+			docOffset += index.getCollectionStatistics().getNumberOfDocuments();
 			i++;
 		}
 
-		return new MultiLexicon(lexicons, offsets);
+		// entries record the shards they were obtained from, in case the shards change before their postings are read
+		return new MultiLexicon(lexicons, filters, offsets, selected.toArray(new Index[indexCount]), docOffsets);
 	}
 
 	/** {@inheritDoc} */
 	@SuppressWarnings("unchecked")
 	public PostingIndex<?> getInvertedIndex() {
-		int ondisk = indices.size();
+		List<Index> selected = getSelectedIndices();
+		int ondisk = selected.size();
 		int[] offsets = new int[ondisk];
 		PostingIndex<?>[] postings = new PostingIndex[ondisk];
 
 		int currentoffset = 0;
 		int i = 0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : selected) {
 			postings[i] = index.getInvertedIndex();
 			offsets[i] = currentoffset;
 			currentoffset += index.getCollectionStatistics()
@@ -150,12 +160,13 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public MetaIndex getMetaIndex() {
-		int ondisk = indices.size();
+		List<Index> selected = getSelectedIndices();
+		int ondisk = selected.size();
 		int[] offsets = new int[ondisk];
 		MetaIndex[] metas = new MetaIndex[ondisk];
 
 		int i =0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : selected) {
 			metas[i] = index.getMetaIndex();
 			offsets[i] = index.getCollectionStatistics()
 					.getNumberOfDocuments();
@@ -167,12 +178,13 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public DocumentIndex getDocumentIndex() {
-		int ondisk = indices.size();
+		List<Index> selected = getSelectedIndices();
+		int ondisk = selected.size();
 		int[] offsets = new int[ondisk];
 		DocumentIndex[] docs = new DocumentIndex[ondisk];
 
 		int i =0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : selected) {
 			docs[i] = index.getDocumentIndex();
 			offsets[i] = index.getCollectionStatistics()
 					.getNumberOfDocuments();
@@ -184,11 +196,12 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public CollectionStatistics getCollectionStatistics() {
-		int ondisk = indices.size();
+		List<Index> selected = getSelectedIndices();
+		int ondisk = selected.size();
 		CollectionStatistics[] stats = new CollectionStatistics[ondisk];
 
 		int i =0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : selected) {
 			stats[i] = index.getCollectionStatistics();
 			i++;
 		}
@@ -198,12 +211,13 @@ public class MultiIndex extends Index {
 	
 	@SuppressWarnings("unchecked")
 	public PostingIndex<?> getDirectIndex() {
-		int ondisk = indices.size();
+		List<Index> selected = getSelectedIndices();
+		int ondisk = selected.size();
 		int[] offsets = new int[ondisk];
 		PostingIndex<?>[] postings = new PostingIndex[ondisk];
 
 		int i = 0;
-		for (Index index : selectiveMatchingPolicy.getSelectedIndices(indices)) {
+		for (Index index : selected) {
 			postings[i] = index.getDirectIndex();
 			offsets[i] = index.getCollectionStatistics().getNumberOfUniqueTerms();
 			i++;
@@ -219,18 +233,37 @@ public class MultiIndex extends Index {
 
 	/** {@inheritDoc} */
 	public void close() throws IOException {
-		for (Index i : this.indices)
+		for (Index i : getIndices())
 			i.close();
 	}
 
 	/** {@inheritDoc} */
 	public void flush() throws IOException {
-		for (Index i : this.indices)
+		for (Index i : getIndices())
 			i.flush();
 	}
+
+	/** 
+	 * Returns a snapshot of the list of indices. The list may be updated
+	 * concurrently (e.g. when an IncrementalIndex replaces a memory index by its
+	 * on-disk version), and all updates are made while synchronized on it.
+	 * @since 5.2
+	 */
+	protected List<Index> getIndices() {
+		synchronized (indices) {
+			return new ArrayList<Index>(indices);
+		}
+	}
+
+	/** Returns the indices selected by the selective matching policy, from a snapshot of the list of indices */
+	public List<Index> getSelectedIndices() {
+		return selectiveMatchingPolicy.getSelectedIndices(getIndices());
+	}
 	
 	public Index getIthShard(int i) {
-		return indices.get(i);
+		synchronized (indices) {
+			return indices.get(i);
+		}
 	}
 	
 	/**
@@ -238,7 +271,9 @@ public class MultiIndex extends Index {
 	 * @return integer number of shards
 	 */
 	public int getNumberOfShards() {
-		return indices.size();
+		synchronized (indices) {
+			return indices.size();
+		}
 	}
 
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ package org.terrier.realtime.multi;
 
 import java.io.IOException;
 
+import org.terrier.structures.Index;
 import org.terrier.structures.Pointer;
 import org.terrier.structures.PostingIndex;
 import org.terrier.structures.postings.IterablePosting;
@@ -56,10 +57,22 @@ public class MultiInverted implements PostingIndex<Pointer> {
 	/** {@inheritDoc} */
 	public IterablePosting getPostings(Pointer _multiPointer)
 			throws IOException {
-		IterablePosting[] constituentIPs = new IterablePosting[postings.length];
-		int i = 0;
 		MultiLexiconEntry mle = (MultiLexiconEntry) _multiPointer;
+		if (mle.getShards() != null)
+		{
+			// read the postings from the shards the entry was obtained from
+			final Index[] shards = mle.getShards();
+			IterablePosting[] constituentIPs = new IterablePosting[shards.length];
+			for (int i = 0; i < shards.length; i++) {
+				Pointer pointer = mle.getChildren()[i];
+				if (pointer != null)
+					constituentIPs[i] = shards[i].getInvertedIndex().getPostings(pointer);
+			}
+			return new MultiIterablePosting(constituentIPs, mle.getDocumentOffsets());
+		}
 
+		IterablePosting[] constituentIPs = new IterablePosting[postings.length];
+		int i = 0;
 		for (PostingIndex<Pointer> p : postings) {
 			Pointer pointer = mle.getChildren()[i];
 			if (pointer != null)
@@ -35,7 +35,8 @@ import org.terrier.structures.postings.WritablePosting;
 
 /**
  * A posting list implementation used within a MultiIndex. It iterates over the posting
- * lists from multiple index shards. 
+ * lists from multiple index shards, whose postings skip any documents deleted 
+ * from the shards. 
  * 
  * @author Richard McCreadie, Stuart Mackie
  * @since 4.0
@@ -76,6 +77,8 @@ public class MultiIterablePosting extends IterablePostingImpl implements
 
 	/** {@inheritDoc} */
 	public int getId() {
+		if (currentChild >= children.length)
+			return IterablePosting.EOL;
 		return children[currentChild].getId() + offsets[currentChild];
 	}
 
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.terrier.structures.Index;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.utility.ApplicationSetup;
@@ -53,6 +54,9 @@ import org.terrier.utility.StaTools;
  * <li>The unique number of terms is not stored and needs to be calculated on-the-fly. </li>
  * </ul>
  * 
+ * <p>Shards may provide a {@link LexiconBloomFilter}, in which case terms are only looked up
+ * in the lexicons of those shards that might contain them.</p>
+ * 
  * <p><b>Properties</b></p>
  * <ul>
  * <li><tt>MultiLexicon.approxNumEntries</tt> - do we try and approximate the number of lexicon entries (saves a lot of time but is inaccurate), default is true.</li>
@@ -64,6 +68,9 @@ import org.terrier.utility.StaTools;
 public class MultiLexicon extends Lexicon<String> {
 
 	private Lexicon<String>[] lexicons;
+	private LexiconBloomFilter[] filters;
+	private Index[] shards;
+	private int[] docOffsets;
 	private int[] numTerms;
 	private ArrayList<String> uniqueTerms;
 
@@ -75,7 +82,23 @@ public class MultiLexicon extends Lexicon<String> {
 	 * constructor.
 	 */
 	public MultiLexicon(Lexicon<String>[] lexicons, int[] numTerms) {
+		this(lexicons, new LexiconBloomFilter[lexicons.length], numTerms, null, null);
+	}
+
+	/**
+	 * constructor.
+	 * @param lexicons lexicons of each shard
+	 * @param filters filters of each shard's vocabulary, null for shards without a filter
+	 * @param numTerms number of terms in each shard
+	 * @param shards the shards of the lexicons, recorded in each MultiLexiconEntry, or null
+	 * @param docOffsets the docid offset of each shard, or null
+	 * @since 5.2
+	 */
+	public MultiLexicon(Lexicon<String>[] lexicons, LexiconBloomFilter[] filters, int[] numTerms, Index[] shards, int[] docOffsets) {
 		this.lexicons = lexicons;
+		this.filters = filters;
+		this.shards = shards;
+		this.docOffsets = docOffsets;
 		this.numTerms = numTerms;
 		Set<String> unorderedTerms = new HashSet<String>();
 		if (!approximateNumberofEntries)
@@ -109,14 +132,16 @@ public class MultiLexicon extends Lexicon<String> {
 		int i = 0;
 		boolean found = false;
 		for (Lexicon<String> lexicon : lexicons) {
-			le = lexicon.getLexiconEntry(term);
-			if (le != null) {
-				les[i] = le;
-				found = true;
+			if (filters[i] == null || filters[i].mightContain(term)) {
+				le = lexicon.getLexiconEntry(term);
+				if (le != null) {
+					les[i] = le;
+					found = true;
+				}
 			}
 			i++;
 		}
-		return found ? new MultiLexiconEntry(les) : null;
+		return found ? new MultiLexiconEntry(les, shards, docOffsets) : null;
 	}
 
 	/** {@inheritDoc} */
@@ -32,6 +32,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.terrier.structures.EntryStatistics;
+import org.terrier.structures.Index;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.Pointer;
 
@@ -47,6 +48,8 @@ public class MultiLexiconEntry extends LexiconEntry {
 
 	int maxtf = Integer.MAX_VALUE;
 	private LexiconEntry[] children;
+	private Index[] shards;
+	private int[] docOffsets;
 
 	/**
 	 * Constructor.
@@ -55,6 +58,19 @@ public class MultiLexiconEntry extends LexiconEntry {
 		this.children = le;
 	}
 
+	/**
+	 * Constructor, for an entry that records the shards it was obtained from.
+	 * @param le entries of each shard, null where the shard does not contain the term
+	 * @param shards the shards the entries were obtained from
+	 * @param docOffsets the docid offset of each shard
+	 * @since 5.2
+	 */
+	public MultiLexiconEntry(LexiconEntry[] le, Index[] shards, int[] docOffsets) {
+		this.children = le;
+		this.shards = shards;
+		this.docOffsets = docOffsets;
+	}
+
 	/**
 	 * Return LexiconEntry's.
 	 */
@@ -62,6 +78,22 @@ public class MultiLexiconEntry extends LexiconEntry {
 		return children;
 	}
 
+	/**
+	 * Return the shards the LexiconEntry's were obtained from, or null if not known.
+	 * @since 5.2
+	 */
+	public Index[] getShards() {
+		return shards;
+	}
+
+	/**
+	 * Return the docid offsets of the shards, or null if not known.
+	 * @since 5.2
+	 */
+	public int[] getDocumentOffsets() {
+		return docOffsets;
+	}
+
 	/** {@inheritDoc} */
 	public int getFrequency() {
 		int freq = 0;
@@ -34,8 +34,8 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,8 +60,9 @@ public class CheckClosedStreams extends ApplicationSetupBasedTest implements Ter
 		assertTrue(CheckClosedStreams.allClosed());
 	}
 
-	static Set<CloseCheckFilterInputStream> inputStreams = new HashSet<CloseCheckFilterInputStream>();
-	static Set<CloseCheckFilterOutputStream> outputStreams = new HashSet<CloseCheckFilterOutputStream>();
+	//streams may be opened and closed by several threads
+	static Set<CloseCheckFilterInputStream> inputStreams = ConcurrentHashMap.newKeySet();
+	static Set<CloseCheckFilterOutputStream> outputStreams = ConcurrentHashMap.newKeySet();
 	
 	public static class CloseCheckFilterInputStream extends FilterInputStream
 	{
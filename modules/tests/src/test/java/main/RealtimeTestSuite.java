@@ -30,6 +30,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.terrier.realtime.incremental.TestIncremental;
+import org.terrier.realtime.matching.TestParallelShardMatching;
+import org.terrier.realtime.memory.TestCompressedMemoryPostingList;
 import org.terrier.realtime.memory.TestMemoryIndex;
 import org.terrier.realtime.memory.TestMemoryIndexer;
 import org.terrier.realtime.memory.TestMemoryInvertedIndex;
@@ -44,6 +46,7 @@ import org.terrier.realtime.multi.TestMultiIndex;
 @SuiteClasses({
 
         // memory and incremental index tests
+        TestCompressedMemoryPostingList.class,
         TestMemoryFieldsIndex.class,
         TestMemoryIndexer.class,
         TestMemoryInvertedIndex.class,
@@ -51,6 +54,7 @@ import org.terrier.realtime.multi.TestMultiIndex;
         TestMemoryLexicon.class,
         TestMemoryMetaIndex.class,
         TestMultiIndex.class,
+        TestParallelShardMatching.class,
         TestIncremental.class
 })
 public class RealtimeTestSuite{}
@@ -29,6 +29,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.terrier.applications.TestCLITool;
+import org.terrier.applications.TestThreadedBatchIndexing;
 import org.terrier.compression.bit.TestCompressedBitFiles;
 import org.terrier.compression.bit.TestCompressedBitFilesDelta;
 import org.terrier.compression.bit.TestCompressedBitFilesGolomb;
@@ -50,6 +51,7 @@ import org.terrier.indexing.TestTRECCollection;
 import org.terrier.indexing.TestTRECWebCollection;
 import org.terrier.indexing.TestTaggedDocument;
 import org.terrier.indexing.TestTweetJSONCollection;
+import org.terrier.indexing.TestWARC09Collection;
 import org.terrier.indexing.TestWARC10Collection;
 import org.terrier.indexing.tokenisation.TestEnglishTokeniser;
 import org.terrier.indexing.tokenisation.TestUTFTokeniser;
@@ -64,6 +66,7 @@ import org.terrier.matching.models.TestWeightingModelFactory;
 import org.terrier.querying.TestDecorate;
 import org.terrier.querying.TestManager;
 import org.terrier.querying.TestSimpleDecorate;
+import org.terrier.querying.TestTieredManager;
 import org.terrier.querying.parser.TestQueryParser;
 import org.terrier.querying.summarisation.TestDefaultSummariser;
 import org.terrier.rest.TestClientAndServer;
@@ -79,18 +82,26 @@ import org.terrier.structures.bit.TestBitPostingIndexInputStream;
 import org.terrier.structures.bit.TestPostingStructures;
 import org.terrier.structures.collections.TestFSArrayFile;
 import org.terrier.structures.collections.TestFSOrderedMapFile;
+import org.terrier.structures.indexing.TestImpactIndexBuilder;
 import org.terrier.structures.indexing.TestIndexing;
 import org.terrier.structures.indexing.TestIndexingFatalErrors;
 import org.terrier.structures.indexing.singlepass.TestInverted2DirectIndexBuilder;
+import org.terrier.structures.indexing.singlepass.TestCompactMemoryPostings;
+import org.terrier.structures.indexing.singlepass.TestParallelRunsMerger;
+import org.terrier.structures.indexing.singlepass.TestPipelinedSinglePassIndexer;
+import org.terrier.structures.postings.TestDeletedDocumentsIterablePosting;
 import org.terrier.structures.postings.TestFieldORIterablePosting;
 import org.terrier.structures.postings.TestFieldOnlyIterablePosting;
 import org.terrier.structures.postings.TestORIterablePosting;
 import org.terrier.structures.postings.TestPhraseIterablePosting;
 import org.terrier.structures.postings.TestProximityIterablePosting;
+import org.terrier.structures.merging.TestMultiStructureMerger;
+import org.terrier.structures.pruning.TestIndexPruner;
 import org.terrier.structures.serialization.TestFixedSizeTextFactory;
 import org.terrier.terms.TestPorterStemmer;
 import org.terrier.terms.TestRemoveDiacritics;
 import org.terrier.terms.TestSnowball;
+import org.terrier.terms.TestStemCache;
 import org.terrier.terms.TestTermPipelineAccessor;
 import org.terrier.tests.ShakespeareEndToEndTestSuite;
 import org.terrier.utility.TestArrayUtils;
@@ -103,9 +114,13 @@ import org.terrier.utility.TestStaTools;
 import org.terrier.utility.TestStringTools;
 import org.terrier.utility.TestTagSet;
 import org.terrier.utility.TestTermCodes;
+import org.terrier.utility.TestUTF8TermDictionary;
 import org.terrier.utility.TestUnitUtils;
 import org.terrier.utility.TestVersion;
 import org.terrier.utility.io.TestCountingInputStream;
+import org.terrier.utility.io.TestParallelGZIPInputStream;
+import org.terrier.utility.io.TestReadAheadInputStream;
+import org.terrier.utility.io.TestScanningInputStream;
 import org.terrier.utility.io.TestRandomDataInputMemory;
 
 
@@ -123,6 +138,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	
 	//.applications
 	TestCLITool.class,
+	TestThreadedBatchIndexing.class,
 	
 	//.compression
 	TestCompressedBitFiles.class,
@@ -153,6 +169,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestTRECCollection.class,
 	TestTRECWebCollection.class,
 	TestTweetJSONCollection.class,
+	TestWARC09Collection.class,
 	TestWARC10Collection.class,
 	
 	//.indexing.tokenisation
@@ -179,6 +196,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestManager.class,
 	TestSimpleDecorate.class,
 	TestDecorate.class,
+	TestTieredManager.class,
 	
 	//querying.parser
 	TestQueryParser.class,
@@ -210,21 +228,32 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	//.structures.indexing
 	TestIndexing.class,
 	TestIndexingFatalErrors.class,
+	TestImpactIndexBuilder.class,
 	
 	//.structures.indexing.sp.hadoop
 	TestInverted2DirectIndexBuilder.class,
+	TestCompactMemoryPostings.class,
+	TestParallelRunsMerger.class,
+	TestPipelinedSinglePassIndexer.class,
 	
 	//.structures.indexing.sp.hadoop
 //	TestBitPostingIndexInputFormat.class,
 //	TestSplitEmittedTerm.class,
 //	TestPositingAwareSplit.class,
 //	
+	//.structures.merging
+	TestMultiStructureMerger.class,
+	
 	//structures.postings
 	TestFieldOnlyIterablePosting.class,
 	TestORIterablePosting.class,
 	TestFieldORIterablePosting.class,
 	TestPhraseIterablePosting.class,
 	TestProximityIterablePosting.class,
+	TestDeletedDocumentsIterablePosting.class,
+	
+	//.structures.pruning
+	TestIndexPruner.class,
 	
 	//.structures.serialization
 	TestFixedSizeTextFactory.class,
@@ -233,6 +262,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestTermPipelineAccessor.class,
 	TestPorterStemmer.class,
 	TestSnowball.class,
+	TestStemCache.class,
         TestRemoveDiacritics.class,
 	
 	//.utility
@@ -246,6 +276,7 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	TestStaTools.class,
 	TestStringTools.class,
 	TestTermCodes.class,
+	TestUTF8TermDictionary.class,
 	TestUnitUtils.class,
 	TestVersion.class,
 	//TestTimer.class,
@@ -253,6 +284,9 @@ import org.terrier.utility.io.TestRandomDataInputMemory;
 	//utility.io
 	TestRandomDataInputMemory.class,
 	TestCountingInputStream.class,
+	TestReadAheadInputStream.class,
+	TestParallelGZIPInputStream.class,
+	TestScanningInputStream.class,
 	
 	
 })
@@ -0,0 +1,133 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestThreadedBatchIndexing.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.applications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+public class TestThreadedBatchIndexing extends ApplicationSetupBasedTest {
+
+	/** number of documents in each file of the collection.spec, such that the files vary in size */
+	static final int[] DOCS_PER_FILE = {1, 8, 2, 2, 5, 1, 3};
+
+	void writeCollection() throws Exception
+	{
+		List<String> files = new ArrayList<String>();
+		int docno = 0;
+		for(int f=0;f<DOCS_PER_FILE.length;f++)
+		{
+			String[] lines = new String[DOCS_PER_FILE[f]];
+			for(int d=0;d<lines.length;d++,docno++)
+				lines[d] = "<DOC><DOCNO>doc" + docno + "</DOCNO>common file" + f + " term" + docno + " term" + (docno / 2) + "</DOC>";
+			files.add(writeTemporaryFile("file" + f + ".trec", lines));
+		}
+		PrintWriter p = new PrintWriter(Files.writeFileWriter(ApplicationSetup.COLLECTION_SPEC));
+		for(String file : files)
+			p.println(file);
+		p.close();
+	}
+
+	IndexOnDisk indexThreaded(String partitioning, String prefix)
+	{
+		ApplicationSetup.setProperty("indexing.threaded.partitioning", partitioning);
+		new ThreadedBatchIndexing(ApplicationSetup.TERRIER_INDEX_PATH, prefix, false, 3).index();
+		return Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, prefix);
+	}
+
+	void checkSameIndex(IndexOnDisk expected, IndexOnDisk actual) throws Exception
+	{
+		assertNotNull(actual);
+		CollectionStatistics cs1 = expected.getCollectionStatistics();
+		CollectionStatistics cs2 = actual.getCollectionStatistics();
+		assertEquals(cs1.getNumberOfDocuments(), cs2.getNumberOfDocuments());
+		assertEquals(cs1.getNumberOfTokens(), cs2.getNumberOfTokens());
+		assertEquals(cs1.getNumberOfUniqueTerms(), cs2.getNumberOfUniqueTerms());
+		assertEquals(cs1.getNumberOfPointers(), cs2.getNumberOfPointers());
+		for(int docid=0;docid<cs1.getNumberOfDocuments();docid++)
+		{
+			assertEquals(expected.getMetaIndex().getItem("docno", docid), actual.getMetaIndex().getItem("docno", docid));
+			assertEquals(expected.getDocumentIndex().getDocumentLength(docid), actual.getDocumentIndex().getDocumentLength(docid));
+		}
+		PostingIndex<?> inverted1 = expected.getInvertedIndex();
+		PostingIndex<?> inverted2 = actual.getInvertedIndex();
+		for(Map.Entry<String,LexiconEntry> term : expected.getLexicon())
+		{
+			LexiconEntry le1 = term.getValue();
+			LexiconEntry le2 = actual.getLexicon().getLexiconEntry(term.getKey());
+			assertNotNull(term.getKey(), le2);
+			assertEquals(term.getKey(), le1.getDocumentFrequency(), le2.getDocumentFrequency());
+			assertEquals(term.getKey(), le1.getFrequency(), le2.getFrequency());
+			IterablePosting ip1 = inverted1.getPostings(le1);
+			IterablePosting ip2 = inverted2.getPostings(le2);
+			while(ip1.next() != IterablePosting.EOL)
+			{
+				assertEquals(term.getKey(), ip1.getId(), ip2.next());
+				assertEquals(term.getKey(), ip1.getFrequency(), ip2.getFrequency());
+			}
+			assertEquals(term.getKey(), IterablePosting.EOL, ip2.next());
+		}
+	}
+
+	@Test public void testPartitioningRetainsDocids() throws Exception
+	{
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "20");
+		ApplicationSetup.setProperty("termpipelines", "");
+		writeCollection();
+
+		new TRECIndexing(ApplicationSetup.TERRIER_INDEX_PATH, "single").index();
+		IndexOnDisk single = Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, "single");
+		assertNotNull(single);
+		assertEquals(22, single.getCollectionStatistics().getNumberOfDocuments());
+		for(int docid=0;docid<22;docid++)
+			assertEquals("doc" + docid, single.getMetaIndex().getItem("docno", docid));
+
+		for(String partitioning : new String[]{"count", "size", "queue"})
+		{
+			IndexOnDisk threaded = indexThreaded(partitioning, partitioning);
+			checkSameIndex(single, threaded);
+			threaded.close();
+		}
+		single.close();
+	}
+
+}
@@ -28,6 +28,7 @@ package org.terrier.indexing;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -46,6 +47,32 @@ public class TestCollectionFactory {
 		
 	}
 	
+	@Test public void testSplitListBySize()
+	{
+		List<String> files = Arrays.asList("a", "b", "c", "d", "e", "f");
+		long[] sizes = new long[]{10, 4000, 10, 10, 10, 20};
+		List<List<String>> split = CollectionFactory.splitListBySize(files, sizes, 2);
+		assertEquals(2, split.size());
+		//partitions are contiguous ranges of the list
+		assertEquals(Arrays.asList("a", "b"), split.get(0));
+		assertEquals(Arrays.asList("c", "d", "e", "f"), split.get(1));
+		
+		split = CollectionFactory.splitListBySize(files, new long[]{30, 10, 10, 10, 20, 40}, 3);
+		assertEquals(3, split.size());
+		assertEquals(Arrays.asList("a", "b"), split.get(0));
+		assertEquals(Arrays.asList("c", "d", "e"), split.get(1));
+		assertEquals(Arrays.asList("f"), split.get(2));
+		
+		split = CollectionFactory.splitListBySize(files, new long[]{5, 5, 5, 5, 5, 5}, 3);
+		assertEquals(3, split.size());
+		for(List<String> partition : split)
+			assertEquals(2, partition.size());
+		
+		assertEquals(1, CollectionFactory.splitListBySize(Arrays.asList("a"), new long[]{0}, 4).size());
+		//unknown sizes are split by count
+		assertEquals(3, CollectionFactory.splitListBySize(files, new long[6], 3).size());
+	}
+	
 	List<Object> makeList(int size) {
 		List<Object> l = new ArrayList<Object>(size);
 		for(int i=0;i<size;i++)
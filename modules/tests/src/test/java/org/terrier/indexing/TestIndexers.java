@@ -57,6 +57,7 @@ import org.terrier.structures.indexing.classical.BasicIndexer;
 import org.terrier.structures.indexing.classical.BlockIndexer;
 import org.terrier.structures.indexing.singlepass.BasicSinglePassIndexer;
 import org.terrier.structures.indexing.singlepass.BlockSinglePassIndexer;
+import org.terrier.structures.indexing.singlepass.PipelinedSinglePassIndexer;
 import org.terrier.structures.postings.FieldPosting;
 import org.terrier.structures.postings.IterablePosting;
 import org.terrier.structures.postings.bit.BlockFieldIterablePosting;
@@ -465,5 +466,20 @@ public class TestIndexers extends ApplicationSetupBasedTest {
 		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
 		testIndexer(new BlockSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
 	}
+	
+	@Test
+	public void testPipelinedSPNoFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "");
+		ApplicationSetup.setProperty("indexing.singlepass.pipelined.threads", "2");
+		testIndexer(new PipelinedSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), false, false);
+	}
+	@Test
+	public void testPipelinedSPFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		ApplicationSetup.setProperty("indexing.singlepass.pipelined.threads", "2");
+		testIndexer(new PipelinedSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "fields"), false, true);
+	}
 
 }
@@ -81,6 +81,31 @@ public class TestTRECCollection extends ApplicationSetupBasedTest {
 		c.close();
 	}
 	
+	//test files being opened and read ahead
+	@Test public void testThreeFileShakespeareReadAhead() throws Exception
+	{
+		ApplicationSetup.setProperty("trec.collection.readahead", "1");
+		Writer w = Files.writeFileWriter(ApplicationSetup.COLLECTION_SPEC);
+		w.write("../../share/tests/shakespeare/shakespeare-merchant.trec.1");
+		w.write("\n");
+		w.write("../../share/tests/shakespeare/shakespeare-merchant.trec.2");
+		w.write("\n");
+		w.write("../../share/tests/shakespeare/shakespeare-merchant.trec.1");
+		w.write("\n");
+		w.close();
+		Collection c = new TRECCollection();
+		int count =0;
+		while(c.nextDocument())
+		{
+			Document d = c.getDocument();
+			String docno = ShakespeareEndToEndTest.DOCUMENT_NAMES[count % ShakespeareEndToEndTest.DOCUMENT_NAMES.length];
+			assertEquals(docno, d.getProperty("docno"));
+			count++;
+		}
+		assertEquals(ShakespeareEndToEndTest.DOCUMENT_NAMES.length + 14, count);
+		c.close();
+	}
+	
 	//test first Shakespeare
 	@Test public void testFirstShakespeare() throws Exception
 	{
@@ -114,6 +139,48 @@ public class TestTRECCollection extends ApplicationSetupBasedTest {
 		c.close();
 	}
 	
+	//test documents larger than the read buffer
+	@Test public void testLargeDocuments() throws Exception
+	{
+		final int numTerms = 30000;
+		StringBuilder body = new StringBuilder();
+		String[] expected = new String[numTerms];
+		for(int i=0;i<numTerms;i++)
+		{
+			expected[i] = "t" + (i % 500);
+			body.append(expected[i]).append(' ');
+		}
+		String dataFilename = writeTemporaryFile("test.trec", new String[]{
+				"<DOC>",
+				"<DOCNO>doc1</DOCNO>",
+				body.toString(),
+				"</DOC>",
+				"<DOC>",
+				"<DOCNO>doc2</DOCNO>",
+				body.toString(),
+				"</DOC>"
+			});
+		Collection c = openCollection(dataFilename);
+		assertTrue(c.nextDocument());
+		Document d = c.getDocument();
+		assertEquals("doc1", d.getProperty("docno"));
+		checkContents(d, expected);
+		//the second document is skipped without being read
+		assertTrue(c.nextDocument());
+		assertFalse(c.nextDocument());
+		c.close();
+		
+		//the first document is skipped without being read
+		c = openCollection(dataFilename);
+		assertTrue(c.nextDocument());
+		assertTrue(c.nextDocument());
+		d = c.getDocument();
+		assertEquals("doc2", d.getProperty("docno"));
+		checkContents(d, expected);
+		assertFalse(c.nextDocument());
+		c.close();
+	}
+	
 	//test a basic document
 	@Test public void testSingleDocumentSingleTerm() throws Exception
 	{
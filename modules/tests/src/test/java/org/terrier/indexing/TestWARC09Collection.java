@@ -0,0 +1,94 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org 
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original is in 'TestWARC09Collection.java'
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *   Craig Macdonald <craigm{a.}dcs.gla.ac.uk>
+ *   Richard McCreadie <richard.mccreadie@glasgow.ac.uk>
+ */
+package org.terrier.indexing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.terrier.tests.ApplicationSetupBasedTest;
+
+public class TestWARC09Collection extends ApplicationSetupBasedTest {
+
+	/** makes a WARC 0.9 record, whose length includes its header line */
+	static String record(String type, String url, String content)
+	{
+		final String suffix = " " + type + " " + url + " 20060920234350 message/http uuid:" + url.hashCode() + "\r\n";
+		final int base = "warc/0.9 ".length() + suffix.length() + content.length();
+		int length = base + Integer.toString(base).length();
+		length = base + Integer.toString(length).length();
+		return "warc/0.9 " + length + suffix + content;
+	}
+
+	static List<String> terms(Document d)
+	{
+		List<String> terms = new ArrayList<String>();
+		while(! d.endOfDocument())
+		{
+			String t = d.getNextTerm();
+			if (t != null)
+				terms.add(t);
+		}
+		return terms;
+	}
+
+	@Test public void testDocuments() throws Exception {
+		String collection = 
+			record("metadata", "http://a.org/", "skipped\r\n")
+			+ record("response", "http://b.org/", "\r\nHTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n<html>hello\nworld</html>\r\n")
+			//a bare \n does not end a header line
+			+ record("response", "http://c.org/", "\r\nHTTP/1.1 200 OK\r\nX-Note: one\ntwo\r\n\r\n<html>goodbye</html>");
+		ByteArrayInputStream is = new ByteArrayInputStream(collection.getBytes(StandardCharsets.ISO_8859_1));
+		WARC09Collection coll = new WARC09Collection(is);
+		
+		assertTrue(coll.nextDocument());
+		Document d = coll.getDocument();
+		assertEquals("http://b.org/", d.getProperty("url"));
+		assertEquals("1158795830", d.getProperty("crawldate"));
+		assertEquals("0-1", d.getProperty("docno"));
+		List<String> terms = terms(d);
+		assertTrue(terms.toString(), terms.contains("hello"));
+		assertTrue(terms.toString(), terms.contains("world"));
+		
+		assertTrue(coll.nextDocument());
+		d = coll.getDocument();
+		assertEquals("http://c.org/", d.getProperty("url"));
+		assertEquals("0-2", d.getProperty("docno"));
+		terms = terms(d);
+		assertTrue(terms.toString(), terms.contains("goodbye"));
+		assertFalse(terms.toString(), terms.contains("hello"));
+		
+		assertFalse(coll.nextDocument());
+		coll.close();
+	}
+}
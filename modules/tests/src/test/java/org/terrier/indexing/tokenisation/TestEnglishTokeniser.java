@@ -71,6 +71,27 @@ public class TestEnglishTokeniser extends BaseTestTokeniser {
 	}
 	
 	
+	@Test public void testLowercase() throws Exception
+	{
+		testTokenisation(tokenise("Hello THERE wOrLd"), "hello", "there", "world");
+		//consecutive characters are checked before lowercasing
+		testTokenisation(tokenise("a aAAa c"), "a", "aaaa", "c");
+	}
+	
+	@Test public void testAcrossReadBuffer() throws Exception
+	{
+		final int n = 3 * EnglishTokeniser.READ_BUFFER_SIZE;
+		StringBuilder text = new StringBuilder();
+		String[] expected = new String[n];
+		for(int i=0;i<n;i++)
+		{
+			expected[i] = "t" + (i % 1000);
+			text.append(i % 7 == 0 ? " T" : ", t").append(i % 1000);
+		}
+		testTokenisation(tokenise(text.toString()), expected);
+		testTokenisation(tokenise(text.toString() + " thisisareallylongwordthatistoolong"), expected);
+	}
+	
 	@Test public void testSingleLatinTerms() throws Exception
 	{
 		testTokenisation(tokenise("a\u0133a"), "a", "a");
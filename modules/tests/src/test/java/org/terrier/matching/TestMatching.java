@@ -49,7 +49,9 @@ import org.terrier.querying.parser.Query.QTPBuilder;
 import org.terrier.querying.parser.Query.QueryTermsParameter;
 import org.terrier.querying.parser.QueryParser;
 import org.terrier.querying.parser.QueryParserException;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.terms.BaseTermPipelineAccessor;
 import org.terrier.terms.TermPipelineAccessor;
@@ -170,6 +172,31 @@ public abstract class TestMatching extends ApplicationSetupBasedTest {
 		return rs;
 	}
 	
+	@Test public void testDeletedDocuments() throws Exception
+	{
+		Index index = IndexTestUtils.makeIndex(
+				new String[]{"doc1", "doc2", "doc3"}, 
+				new String[]{
+						"The quick brown fox jumps over the lazy dog",
+						"how much is that dog in the window",
+						"a dog is for life"});
+		Matching matching = makeMatching(index);
+		MatchingQueryTerms mqt = new MatchingQueryTerms();
+		mqt.setTermProperty("dog", 1);
+		mqt.setDefaultTermWeightingModel(new DLH13());
+		assertEquals(3, matching.match("query1", mqt).getResultSize());
+		
+		DeletedDocuments.create((IndexOnDisk) index).delete(1);
+		mqt = new MatchingQueryTerms();
+		mqt.setTermProperty("dog", 1);
+		mqt.setDefaultTermWeightingModel(new DLH13());
+		ResultSet rs = matching.match("query2", mqt);
+		assertEquals(2, rs.getResultSize());
+		TIntHashSet docids = new TIntHashSet(rs.getDocids());
+		assertTrue(docids.contains(0));
+		assertTrue(docids.contains(2));
+	}
+	
 	@Test public void testFourDocumentsFieldIndexMatching() throws Exception
 	{
 		_testFourDocumentsFieldIndexMatching();
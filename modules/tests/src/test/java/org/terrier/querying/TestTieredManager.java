@@ -0,0 +1,186 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestTieredManager.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.querying;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.models.BM25;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.PrunedLexiconEntry;
+import org.terrier.structures.pruning.IndexPruner;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestTieredManager extends ApplicationSetupBasedTest {
+
+	static final String[] DOCNOS = new String[]{"doc1", "doc2", "doc3", "doc4", "doc5", "doc6", "doc7", "doc8"};
+	static final String[] DOCS = new String[]{
+		"dog dog dog cat",
+		"dog mouse mouse mouse mouse mouse mouse",
+		"cat cat fish dog",
+		"lazy dog sleeps",
+		"fish bird dog",
+		"bird bird cat",
+		"mouse cheese",
+		"cheese fish"};
+	
+	@Before public void setIndexerProperties()
+	{
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "20");
+		ApplicationSetup.setProperty("indexer.meta.reverse.keys", "");
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("tiered.min.results", "1");
+	}
+	
+	IndexOnDisk prune(IndexOnDisk index, String strategy) throws Exception
+	{
+		IndexPruner.getIndexPruner(strategy, index, new BM25(), 0.5d).prune(index.getPath(), index.getPrefix() + "-pruned").close();
+		return Index.createIndex(index.getPath(), index.getPrefix() + "-pruned");
+	}
+	
+	static SearchRequest search(Manager m, String query)
+	{
+		SearchRequest srq = m.newSearchRequest("1", query);
+		srq.setControl(SearchRequest.CONTROL_WMODEL, BM25.class.getName());
+		m.runSearchRequest(srq);
+		return srq;
+	}
+	
+	static void assertSameResults(SearchRequest expected, SearchRequest actual)
+	{
+		ResultSet e = ((Request)expected).getResultSet();
+		ResultSet a = ((Request)actual).getResultSet();
+		assertArrayEquals(e.getDocids(), a.getDocids());
+		assertArrayEquals(e.getScores(), a.getScores(), 0d);
+	}
+	
+	@Test public void testPopularityTier() throws Exception
+	{
+		ApplicationSetup.setProperty("pruning.popularity.querylog", 
+				writeTemporaryFile("querylog.txt", new String[]{"dog cat", "dog cat", "cheese"}));
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "popularity");
+		LocalManager full = new LocalManager(index);
+		TieredManager tiered = new TieredManager(new LocalManager(pruned), full);
+		
+		//dog is fully retained in the first tier
+		SearchRequest srq = search(tiered, "dog");
+		assertEquals("first", srq.getControl("tiered.tier"));
+		assertSameResults(search(full, "dog"), srq);
+		
+		//mouse was pruned
+		srq = search(tiered, "mouse");
+		assertEquals("full", srq.getControl("tiered.tier"));
+		assertSameResults(search(full, "mouse"), srq);
+		
+		//dog is retained, but mouse is not
+		srq = search(tiered, "dog mouse");
+		assertEquals("full", srq.getControl("tiered.tier"));
+		assertSameResults(search(full, "dog mouse"), srq);
+		
+		assertEquals(3, tiered.getNumberOfQueries());
+		assertEquals(2, tiered.getNumberOfFallbacks());
+		index.close();
+		pruned.close();
+	}
+	
+	@Test public void testTermCentricTier() throws Exception
+	{
+		ApplicationSetup.setProperty("pruning.termcentric.k", "1");
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "term");
+		assertEquals(new BM25().getInfo(), pruned.getIndexProperty("index.pruning.model", null));
+		PrunedLexiconEntry le = (PrunedLexiconEntry) pruned.getLexicon().getLexiconEntry("cat");
+		assertTrue(le.getNumberOfEntries() < le.getDocumentFrequency());
+		assertTrue(le.getPrunedScoreBound() > 0);
+		TieredManager tiered = new TieredManager(new LocalManager(pruned), new LocalManager(index));
+		
+		//postings of cat were pruned, but their scores are too low to change the top-ranked document
+		SearchRequest srq = search(tiered, "cat");
+		assertEquals("first", srq.getControl("tiered.tier"));
+		ResultSet first = ((Request)srq).getResultSet();
+		ResultSet full = ((Request)search(tiered.getFullTier(), "cat")).getResultSet();
+		assertTrue(first.getResultSize() < full.getResultSize());
+		assertEquals(full.getDocids()[0], first.getDocids()[0]);
+		
+		//the pruned (negative) scores of dog could change the top-ranked document: doc3 is ranked first
+		//on the first tier, while doc6 is ranked first on the full index
+		srq = search(tiered, "dog cat");
+		assertEquals("full", srq.getControl("tiered.tier"));
+		assertSameResults(search(tiered.getFullTier(), "dog cat"), srq);
+		assertEquals("doc6", pruned.getMetaIndex().getItem("docno", ((Request)srq).getResultSet().getDocids()[0]));
+		
+		//the top-ranked documents are not checked
+		ApplicationSetup.setProperty("tiered.guarantee", "false");
+		tiered = new TieredManager(new LocalManager(pruned), new LocalManager(index));
+		srq = search(tiered, "dog");
+		assertEquals("first", srq.getControl("tiered.tier"));
+		assertTrue(((Request)srq).getResultSet().getResultSize() < ((Request)search(tiered.getFullTier(), "dog")).getResultSet().getResultSize());
+		
+		//too few results
+		ApplicationSetup.setProperty("tiered.min.results", "100");
+		tiered = new TieredManager(new LocalManager(pruned), new LocalManager(index));
+		assertEquals("full", search(tiered, "dog").getControl("tiered.tier"));
+		
+		//documents deleted from the full index are not retrieved by the first tier either
+		ApplicationSetup.setProperty("tiered.min.results", "1");
+		tiered = new TieredManager(new LocalManager(pruned), new LocalManager(index));
+		final int deletedDocid = ((Request)search(tiered, "cat")).getResultSet().getDocids()[0];
+		DeletedDocuments.create(index).delete(deletedDocid);
+		srq = search(tiered, "cat");
+		assertFalse(Arrays.stream(((Request)srq).getResultSet().getDocids()).anyMatch(docid -> docid == deletedDocid));
+		assertFalse(Arrays.stream(((Request)search(tiered.getFirstTier(), "cat")).getResultSet().getDocids()).anyMatch(docid -> docid == deletedDocid));
+		index.close();
+		pruned.close();
+	}
+	
+	@Test public void testManagerFactory() throws Exception
+	{
+		ApplicationSetup.setProperty("pruning.termcentric.k", "1");
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "term");
+		pruned.close();
+		//the full tier is obtained from the pruned index
+		Manager m = ManagerFactory.from(IndexRef.of(TieredManager.PREFIX + pruned.getIndexRef().toString()));
+		assertTrue(m instanceof TieredManager);
+		assertEquals(index.getPath() + "/" + index.getPrefix() + ".properties", 
+				((TieredManager)m).getFullTier().getIndexRef().toString());
+		assertSameResults(search(new LocalManager(index), "dog"), search(m, "dog"));
+		index.close();
+	}
+}
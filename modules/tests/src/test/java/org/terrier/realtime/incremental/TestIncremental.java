@@ -27,24 +27,83 @@
 
 package org.terrier.realtime.incremental;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.terrier.indexing.Collection;
 import org.terrier.indexing.CollectionDocumentList;
 import org.terrier.indexing.Document;
 import org.terrier.indexing.FileDocument;
+import org.terrier.indexing.IndexTestUtils;
 import org.terrier.indexing.tokenisation.EnglishTokeniser;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.daat.Full;
+import org.terrier.matching.models.BM25;
+import org.terrier.realtime.memory.MemoryIndex;
+import org.terrier.realtime.multi.LexiconBloomFilter;
+import org.terrier.realtime.multi.MultiLexicon;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.indexing.classical.BasicIndexer;
+import org.terrier.structures.postings.IterablePosting;
 import org.terrier.tests.ApplicationSetupBasedTest;
 import org.terrier.utility.ApplicationSetup;
 
 public class TestIncremental extends ApplicationSetupBasedTest {
 
+	/** A lexicon recording the terms looked up in it */
+	static class RecordingLexicon extends Lexicon<String> {
+		final Lexicon<String> parent;
+		final List<String> lookups = new ArrayList<String>();
+
+		RecordingLexicon(Lexicon<String> _parent) {
+			parent = _parent;
+		}
+
+		public int numberOfEntries() {
+			return parent.numberOfEntries();
+		}
+
+		public LexiconEntry getLexiconEntry(String term) {
+			lookups.add(term);
+			return parent.getLexiconEntry(term);
+		}
+
+		public Map.Entry<String,LexiconEntry> getLexiconEntry(int termid) {
+			return parent.getLexiconEntry(termid);
+		}
+
+		public Map.Entry<String,LexiconEntry> getIthLexiconEntry(int index) {
+			return parent.getIthLexiconEntry(index);
+		}
+
+		public Iterator<Map.Entry<String,LexiconEntry>> getLexiconEntryRange(String from, String to) {
+			return parent.getLexiconEntryRange(from, to);
+		}
+
+		public Iterator<Map.Entry<String,LexiconEntry>> iterator() {
+			return parent.iterator();
+		}
+
+		public void close() throws IOException {}
+	}
+
 	/*
 	 * Test IndexInMemory.
 	 */
@@ -73,6 +132,332 @@ public class TestIncremental extends ApplicationSetupBasedTest {
 		// assertEquals(4, index.indices.size());
 	}
 
+	@Test
+	public void test_BackgroundFlush() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "5");
+		ApplicationSetup.setProperty("incremental.flush.maxpending", "1");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		final int DOCS = 23;
+		for (int i = 0; i < DOCS; i++)
+		{
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "doc" + i);
+			index.indexDocument(IndexTestUtils.makeDocumentFromText("common term" + i, props));
+			// all documents indexed so far are searchable, whether or not they have been flushed
+			assertEquals(i + 1, index.getCollectionStatistics().getNumberOfDocuments());
+			LexiconEntry le = index.getLexicon().getLexiconEntry("common");
+			assertNotNull(le);
+			IterablePosting ip = index.getInvertedIndex().getPostings(le);
+			int count = 0;
+			while (ip.next() != IterablePosting.EOL)
+				assertEquals("doc" + count++, index.getMetaIndex().getItem("docno", ip.getId()));
+			assertEquals(i + 1, count);
+		}
+		index.close();
+
+		// four flushed indices, followed by the current memory index
+		assertEquals(5, index.getNumberOfShards());
+		for (int i = 0; i < 4; i++)
+			assertTrue(index.getIthShard(i) instanceof IndexOnDisk);
+		assertTrue(index.getIthShard(4) instanceof MemoryIndex);
+		assertEquals(DOCS, index.getCollectionStatistics().getNumberOfDocuments());
+		for (int i = 0; i < DOCS; i++)
+			assertEquals("doc" + i, index.getMetaIndex().getItem("docno", i));
+	}
+
+	@Test
+	public void test_LexiconBloomFilter() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "3");
+		ApplicationSetup.setProperty("incremental.flush.background", "false");
+		//make false positives very unlikely, such that the filters reject the terms of other shards
+		ApplicationSetup.setProperty("lexicon.bloom.fpp", "0.000001");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		final int DOCS = 10;
+		for (int i = 0; i < DOCS; i++)
+		{
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "doc" + i);
+			index.indexDocument(IndexTestUtils.makeDocumentFromText("common term" + i, props));
+		}
+
+		// each flushed shard has a filter admitting its own terms, and rejecting those of other shards
+		assertEquals(4, index.getNumberOfShards());
+		LexiconBloomFilter[] filters = new LexiconBloomFilter[3];
+		RecordingLexicon[] shardLexicons = new RecordingLexicon[3];
+		int[] numTerms = new int[3];
+		for (int s = 0; s < 3; s++)
+		{
+			Index shard = index.getIthShard(s);
+			assertTrue(shard.hasIndexStructure(LexiconBloomFilter.STRUCTURE_NAME));
+			LexiconBloomFilter filter = (LexiconBloomFilter) shard.getIndexStructure(LexiconBloomFilter.STRUCTURE_NAME);
+			assertTrue(filter.mightContain("common"));
+			for (int i = 0; i < DOCS; i++)
+				assertEquals("term" + i, i / 3 == s, filter.mightContain("term" + i));
+			assertFalse(filter.mightContain("absent"));
+			filters[s] = filter;
+			shardLexicons[s] = new RecordingLexicon(shard.getLexicon());
+			numTerms[s] = shard.getCollectionStatistics().getNumberOfUniqueTerms();
+		}
+		assertFalse(index.getIthShard(3).hasIndexStructure(LexiconBloomFilter.STRUCTURE_NAME));
+
+		// a shard whose filter rejects a term is skipped by MultiLexicon
+		MultiLexicon multiLex = new MultiLexicon(shardLexicons, filters, numTerms, null, null);
+		assertNotNull(multiLex.getLexiconEntry("term4"));
+		assertNull(multiLex.getLexiconEntry("absent"));
+		assertNotNull(multiLex.getLexiconEntry("common"));
+		assertEquals(Arrays.asList("common"), shardLexicons[0].lookups);
+		assertEquals(Arrays.asList("term4", "common"), shardLexicons[1].lookups);
+		assertEquals(Arrays.asList("common"), shardLexicons[2].lookups);
+
+		// lookups agree with the contents of the shards
+		Lexicon<String> lex = index.getLexicon();
+		assertEquals(DOCS, lex.getLexiconEntry("common").getDocumentFrequency());
+		for (int i = 0; i < DOCS; i++)
+		{
+			LexiconEntry le = lex.getLexiconEntry("term" + i);
+			assertNotNull(le);
+			assertEquals(1, le.getDocumentFrequency());
+			IterablePosting ip = index.getInvertedIndex().getPostings(le);
+			assertEquals(i, ip.next());
+			assertEquals(IterablePosting.EOL, ip.next());
+		}
+		assertNull(lex.getLexiconEntry("absent"));
+		index.close();
+	}
+
+	IncrementalIndex indexTiered(int docs) throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "2");
+		ApplicationSetup.setProperty("incremental.merge", "tiered");
+		ApplicationSetup.setProperty("incremental.tiered.k", "2");
+		ApplicationSetup.setProperty("incremental.tiered.floor", "1");
+		ApplicationSetup.setProperty("incremental.tiered.ratio", "1.5");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		for (int i = 0; i < docs; i++)
+		{
+			Map<String,String> props = new HashMap<String,String>();
+			props.put("docno", "doc" + i);
+			index.indexDocument(IndexTestUtils.makeDocumentFromText("common term" + i, props));
+			// merges never lose or reorder documents
+			LexiconEntry le = index.getLexicon().getLexiconEntry("common");
+			IterablePosting ip = index.getInvertedIndex().getPostings(le);
+			int count = 0;
+			while (ip.next() != IterablePosting.EOL)
+				assertEquals("doc" + count++, index.getMetaIndex().getItem("docno", ip.getId()));
+			assertEquals(i + 1, count);
+		}
+		index.close();
+		assertEquals(docs, index.getCollectionStatistics().getNumberOfDocuments());
+		for (int i = 0; i < docs; i++)
+			assertEquals("doc" + i, index.getMetaIndex().getItem("docno", i));
+		return index;
+	}
+
+	@Test
+	public void test_TieredMerge() throws Exception {
+		ApplicationSetup.setProperty("incremental.tiered.maxmerges", "2");
+		IncrementalIndex index = indexTiered(20);
+		// 10 partitions of 2 documents are merged into partitions of 16 and 4 documents
+		assertEquals(3, index.getNumberOfShards());
+		assertEquals(16, index.getIthShard(0).getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(4, index.getIthShard(1).getCollectionStatistics().getNumberOfDocuments());
+		assertTrue(index.getIthShard(0).hasIndexStructure(LexiconBloomFilter.STRUCTURE_NAME));
+		assertTrue(index.getIthShard(2) instanceof MemoryIndex);
+		assertEquals(1, index.getLexicon().getLexiconEntry("term17").getDocumentFrequency());
+	}
+
+	@Test
+	public void test_TieredMergeMaxDocs() throws Exception {
+		ApplicationSetup.setProperty("incremental.tiered.maxdocs", "8");
+		IncrementalIndex index = indexTiered(20);
+		// partitions of more than 4 documents are not merged further
+		assertEquals(4, index.getNumberOfShards());
+		assertEquals(8, index.getIthShard(0).getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(8, index.getIthShard(1).getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(4, index.getIthShard(2).getCollectionStatistics().getNumberOfDocuments());
+	}
+
+	@Test
+	public void test_TieredMergeUnevenFlushes() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "1000");
+		ApplicationSetup.setProperty("incremental.merge", "tiered");
+		ApplicationSetup.setProperty("incremental.tiered.k", "2");
+		ApplicationSetup.setProperty("incremental.tiered.floor", "2");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		// flushes alternate between sizes that are in different tiers of k^t documents,
+		// or far apart, and the last document of every third flush is removed
+		final int[] flushSizes = {1, 3, 1, 3, 12, 1, 12, 1, 7, 2, 5};
+		List<String> expected = new ArrayList<String>();
+		int docno = 0;
+		for (int f = 0; f < 4 * flushSizes.length; f++) {
+			for (int i = 0; i < flushSizes[f % flushSizes.length]; i++) {
+				indexDocument(index, docno);
+				expected.add("doc" + docno++);
+			}
+			if (f % 3 == 0) {
+				MemoryIndex memory = (MemoryIndex) index.getIthShard(index.getNumberOfShards() - 1);
+				assertTrue(memory.removeDocument(memory.getCollectionStatistics().getNumberOfDocuments() - 1));
+				expected.remove(expected.size() - 1);
+			}
+			index.flush();
+			index.waitForFlushes();
+			// k partitions for each factor k between the floor and the total size
+			assertTrue(index.getNumberOfShards() - 1 <= 2 * (1 + Math.max(0, (int) Math.ceil(Math.log(docno / 2d) / Math.log(2)))));
+			// the partitions of 0, 3, 1 and 2 documents are merged
+			if (f == 3)
+				assertEquals(2, index.getNumberOfShards());
+		}
+		index.close();
+		assertEquals(expected, getCommonDocnos(index));
+	}
+
+	void indexDocument(IncrementalIndex index, int i) throws Exception {
+		Map<String,String> props = new HashMap<String,String>();
+		props.put("docno", "doc" + i);
+		index.indexDocument(IndexTestUtils.makeDocumentFromText("common term" + i, props));
+	}
+
+	List<String> getCommonDocnos(Index index) throws Exception {
+		List<String> docnos = new ArrayList<String>();
+		LexiconEntry le = index.getLexicon().getLexiconEntry("common");
+		IterablePosting ip = index.getInvertedIndex().getPostings(le);
+		while (ip.next() != IterablePosting.EOL)
+			docnos.add(index.getMetaIndex().getItem("docno", ip.getId()));
+		return docnos;
+	}
+
+	MatchingQueryTerms makeQuery(String term) {
+		MatchingQueryTerms mqt = new MatchingQueryTerms();
+		mqt.setTermProperty(term, 1);
+		mqt.setDefaultTermWeightingModel(new BM25());
+		return mqt;
+	}
+
+	@Test
+	public void test_DeleteDocuments() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "4");
+		ApplicationSetup.setProperty("incremental.merge", "tiered");
+		ApplicationSetup.setProperty("incremental.tiered.k", "2");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		// doc1 and doc6 are removed while in memory
+		indexDocument(index, 0);
+		indexDocument(index, 1);
+		assertTrue(index.removeDocument(1));
+		assertFalse(index.removeDocument(1));
+		for (int i = 2; i < 7; i++)
+			indexDocument(index, i);
+		assertTrue(index.removeDocument(6));
+		assertEquals(Arrays.asList("doc0", "doc2", "doc3", "doc4", "doc5"), getCommonDocnos(index));
+		for (int i = 7; i < 12; i++)
+			indexDocument(index, i);
+		index.waitForFlushes();
+		// the postings of the removed documents are reclaimed by merging the partitions of 4+4 and 4 documents,
+		// which keeps placeholders for the removed documents
+		assertEquals(2, index.getNumberOfShards());
+		assertEquals(12, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(2, DeletedDocuments.of(index.getIthShard(0)).getNumberOfDeletedDocuments());
+		assertTrue(DeletedDocuments.of(index.getIthShard(0)).isDeleted(1));
+		assertTrue(DeletedDocuments.of(index.getIthShard(0)).isDeleted(6));
+		assertEquals(10, index.getLexicon().getLexiconEntry("common").getDocumentFrequency());
+		assertNull(index.getLexicon().getLexiconEntry("term6"));
+		assertEquals(Arrays.asList("doc0", "doc2", "doc3", "doc4", "doc5", "doc7", "doc8", "doc9", "doc10", "doc11"), 
+				getCommonDocnos(index));
+
+		// doc9 is removed on disk, and is skipped by matching
+		assertTrue(index.removeDocument(9));
+		assertFalse(index.removeDocument(12));
+		assertEquals(Arrays.asList("doc0", "doc2", "doc3", "doc4", "doc5", "doc7", "doc8", "doc10", "doc11"), 
+				getCommonDocnos(index));
+		assertEquals(0, new Full(index).match("q", makeQuery("term9")).getResultSize());
+		assertEquals(9, new Full(index.getIthShard(0)).match("q", makeQuery("common")).getResultSize());
+		index.close();
+
+		// the removal is persisted
+		IndexOnDisk shard = Index.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, 
+				((IndexOnDisk) index.getIthShard(0)).getPrefix());
+		assertEquals(3, DeletedDocuments.of(shard).getNumberOfDeletedDocuments());
+		assertTrue(DeletedDocuments.of(shard).isDeleted(9));
+		assertEquals(2, shard.getIntIndexProperty("index.deleted.reclaimed", 0));
+		shard.close();
+	}
+
+	@Test
+	public void test_DeleteAcrossMerge() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		ApplicationSetup.setProperty("incremental.flush", "flushdocs");
+		ApplicationSetup.setProperty("incremental.flushdocs", "2");
+		ApplicationSetup.setProperty("incremental.merge", "tiered");
+		ApplicationSetup.setProperty("incremental.tiered.k", "2");
+		ApplicationSetup.setProperty("incremental.tiered.floor", "1");
+		ApplicationSetup.setProperty("incremental.tiered.ratio", "2");
+		IncrementalIndex index = IncrementalIndex.get(
+				ApplicationSetup.TERRIER_INDEX_PATH,
+				ApplicationSetup.TERRIER_INDEX_PREFIX);
+		indexDocument(index, 0);
+		indexDocument(index, 1);
+		index.waitForFlushes();
+		assertTrue(index.removeDocument(0));
+		final int docid1 = new Full(index).match("q", makeQuery("term1")).getDocids()[0];
+		assertEquals(1, docid1);
+
+		// the partitions of 1+2 documents are merged, and doc0 is reclaimed
+		indexDocument(index, 2);
+		indexDocument(index, 3);
+		index.waitForFlushes();
+		assertEquals(2, index.getNumberOfShards());
+		assertNull(index.getLexicon().getLexiconEntry("term0"));
+		// docids obtained before the merge remain valid
+		assertEquals("doc1", index.getMetaIndex().getItem("docno", docid1));
+		assertEquals(3, new Full(index).match("q", makeQuery("term3")).getDocids()[0]);
+		assertTrue(index.removeDocument(3));
+		assertFalse(index.removeDocument(0));
+		assertEquals(Arrays.asList("doc1", "doc2"), getCommonDocnos(index));
+
+		// the merged partition is merged again, and doc3 is reclaimed
+		indexDocument(index, 4);
+		indexDocument(index, 5);
+		index.waitForFlushes();
+		assertEquals(2, index.getNumberOfShards());
+		assertEquals(6, index.getIthShard(0).getCollectionStatistics().getNumberOfDocuments());
+		assertNull(index.getLexicon().getLexiconEntry("term3"));
+		assertEquals("doc5", index.getMetaIndex().getItem("docno", 5));
+		assertFalse(index.removeDocument(3));
+		assertTrue(index.removeDocument(4));
+		assertEquals(Arrays.asList("doc1", "doc2", "doc5"), getCommonDocnos(index));
+		index.close();
+	}
+
 	/*
 	 * make index disk1 with m document make increcmenta index populate
 	 * incremental index with same m documents compare indices make index disk2
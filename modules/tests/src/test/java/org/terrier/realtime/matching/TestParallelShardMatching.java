@@ -0,0 +1,102 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestParallelShardMatching.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.matching;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.Full;
+import org.terrier.matching.models.BM25;
+import org.terrier.realtime.multi.MultiIndex;
+import org.terrier.structures.Index;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestParallelShardMatching extends ApplicationSetupBasedTest {
+
+	MatchingQueryTerms makeQuery(String... terms) {
+		MatchingQueryTerms mqt = new MatchingQueryTerms();
+		for (String t : terms)
+			mqt.setTermProperty(t, 1);
+		mqt.setDefaultTermWeightingModel(new BM25());
+		return mqt;
+	}
+
+	void checkSame(ResultSet expected, ResultSet actual) {
+		assertEquals(expected.getResultSize(), actual.getResultSize());
+		assertEquals(expected.getExactResultSize(), actual.getExactResultSize());
+		for (int i = 0; i < expected.getResultSize(); i++)
+		{
+			assertEquals(expected.getScores()[i], actual.getScores()[i], 1e-9);
+			// documents with the same score may appear in any order
+			if (i + 1 == expected.getResultSize() || expected.getScores()[i] != expected.getScores()[i+1])
+				if (i == 0 || expected.getScores()[i] != expected.getScores()[i-1])
+					assertEquals(expected.getDocids()[i], actual.getDocids()[i]);
+		}
+	}
+
+	@Test
+	public void testShards() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("multiindex.parallel.threads", "2");
+		Index i1 = IndexTestUtils.makeIndex(
+				new String[]{"0", "1", "2"},
+				new String[]{"one two three", "two two four", "one five"});
+		Index i2 = IndexTestUtils.makeIndex(
+				new String[]{"3", "4"},
+				new String[]{"two three three four", "six"});
+		Index i3 = IndexTestUtils.makeIndex(
+				new String[]{"5", "6", "7"},
+				new String[]{"one one one", "three four five six", "two"});
+		MultiIndex mindex = new MultiIndex(new Index[]{i1, i2, i3});
+
+		for (String size : new String[]{"0", "2"})
+		{
+			ApplicationSetup.setProperty("matching.retrieved_set_size", size);
+			for (String[] query : new String[][]{{"one"}, {"two", "four"}, {"three", "six"}, {"seven"}})
+			{
+				ResultSet expected = new Full(mindex).match("q", makeQuery(query));
+				ResultSet actual = new ParallelShardMatching(mindex).match("q", makeQuery(query));
+				checkSame(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testSingleIndex() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		Index index = IndexTestUtils.makeIndex(
+				new String[]{"0", "1"},
+				new String[]{"one two", "two three"});
+		ResultSet expected = new Full(index).match("q", makeQuery("two"));
+		ResultSet actual = new ParallelShardMatching(index).match("q", makeQuery("two"));
+		checkSame(expected, actual);
+	}
+}
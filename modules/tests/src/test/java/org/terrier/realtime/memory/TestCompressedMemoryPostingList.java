@@ -0,0 +1,151 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestCompressedMemoryPostingList.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+
+package org.terrier.realtime.memory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.TIntArrayList;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.structures.postings.IterablePosting;
+
+/** Unit tests for CompressedMemoryPostingList. */
+public class TestCompressedMemoryPostingList {
+
+	static final int N = 1000;
+
+	/** makes N postings with random gaps, the postings are added to the specified list */
+	static void makePostings(CompressedMemoryPostingList pl, TIntArrayList docids, TIntArrayList freqs) {
+		Random r = new Random(42);
+		int docid = -1;
+		for (int i = 0; i < N; i++)
+		{
+			docid += 1 + r.nextInt(i % 300 == 0 ? 50000 : 20);
+			int freq = 1 + r.nextInt(i % 100 == 0 ? 1000 : 3);
+			docids.add(docid);
+			freqs.add(freq);
+			pl.add(docid, freq);
+		}
+	}
+
+	static void checkPostings(CompressedMemoryPostingList pl, TIntArrayList docids, TIntArrayList freqs) throws Exception {
+		assertEquals(docids.size(), pl.size());
+		assertArrayEquals(docids.toNativeArray(), pl.getDocids());
+		assertArrayEquals(freqs.toNativeArray(), pl.getFrequencies());
+		IterablePosting ip = pl.iterator(null);
+		for (int i = 0; i < docids.size(); i++)
+		{
+			assertFalse(ip.endOfPostings());
+			assertEquals(docids.get(i), ip.next());
+			assertEquals(freqs.get(i), ip.getFrequency());
+			assertEquals(freqs.get(i), pl.getFreq(docids.get(i)));
+		}
+		assertTrue(ip.endOfPostings());
+		assertEquals(IterablePosting.EOL, ip.next());
+	}
+
+	@Test
+	public void testAppend() throws Exception {
+		CompressedMemoryPostingList pl = new CompressedMemoryPostingList();
+		TIntArrayList docids = new TIntArrayList();
+		TIntArrayList freqs = new TIntArrayList();
+		assertEquals(IterablePosting.EOL, pl.iterator(null).next());
+		makePostings(pl, docids, freqs);
+		checkPostings(pl, docids, freqs);
+		assertEquals(-1, pl.getFreq(docids.get(10) + 1));
+		// sealed blocks should be much smaller than two int arrays
+		assertTrue(pl.getCompressedBytes() < (N / CompressedMemoryPostingList.BLOCK_SIZE) * CompressedMemoryPostingList.BLOCK_SIZE * 8 / 3);
+		
+		// same content when built from arrays
+		checkPostings(new CompressedMemoryPostingList(docids.toNativeArray(), freqs.toNativeArray()), docids, freqs);
+	}
+
+	@Test
+	public void testSkipping() throws Exception {
+		CompressedMemoryPostingList pl = new CompressedMemoryPostingList();
+		TIntArrayList docids = new TIntArrayList();
+		TIntArrayList freqs = new TIntArrayList();
+		makePostings(pl, docids, freqs);
+		for (int step : new int[]{1, 7, 100, 200, 600})
+		{
+			IterablePosting ip = pl.iterator(null);
+			for (int i = 0; i < N; i += step)
+			{
+				assertEquals(docids.get(i), ip.next(docids.get(i)));
+				assertEquals(freqs.get(i), ip.getFrequency());
+				if (i + step < N)
+				{
+					// a target between two postings moves to the latter
+					assertEquals(docids.get(i+1), ip.next(docids.get(i) + 1));
+				}
+			}
+			assertEquals(IterablePosting.EOL, ip.next(docids.get(N-1) + 1));
+			assertTrue(ip.endOfPostings());
+		}
+	}
+
+	@Test
+	public void testUpdates() throws Exception {
+		CompressedMemoryPostingList pl = new CompressedMemoryPostingList();
+		TIntArrayList docids = new TIntArrayList();
+		TIntArrayList freqs = new TIntArrayList();
+		makePostings(pl, docids, freqs);
+		IterablePosting before = pl.iterator(null);
+
+		// update a frequency in a sealed block, and in the tail
+		for (int i : new int[]{5, 300, N-2})
+		{
+			assertFalse(pl.addOrUpdateFreq(docids.get(i), 2));
+			freqs.set(i, freqs.get(i) + 2);
+		}
+		checkPostings(pl, docids, freqs);
+
+		// insert postings in a sealed block, in the tail, and after the last posting
+		for (int i : new int[]{N-2, 500, 0})
+		{
+			if (docids.get(i) + 1 == docids.get(i+1))
+				continue;
+			assertTrue(pl.addOrUpdateFreq(docids.get(i) + 1, 9));
+			docids.insert(i+1, docids.get(i) + 1);
+			freqs.insert(i+1, 9);
+		}
+		assertTrue(pl.addOrUpdateFreq(docids.get(docids.size()-1) + 5, 1));
+		docids.add(docids.get(docids.size()-1) + 5);
+		freqs.add(1);
+		checkPostings(pl, docids, freqs);
+
+		// an iterator obtained earlier sees the postings at that time
+		int count = 0;
+		while (before.next() != IterablePosting.EOL)
+			count++;
+		assertEquals(N, count);
+	}
+}
@@ -29,13 +29,22 @@ package org.terrier.realtime.memory;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.After;
 import org.junit.Before;
@@ -50,8 +59,10 @@ import org.terrier.matching.ResultSet;
 import org.terrier.realtime.MemoryIndexer;
 import org.terrier.realtime.TestUtils;
 import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.DeletedDocuments;
 import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.MetaIndex;
@@ -144,6 +155,75 @@ public class TestMemoryIndex extends ApplicationSetupBasedTest {
 		
 		index.close();
 	}
+
+
+	@Test
+	public void test_concurrentIndexing() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "10");
+		final MemoryIndex index = new MemoryIndex();
+		final int THREADS = 4;
+		final int DOCS = 250;
+		final AtomicBoolean indexing = new AtomicBoolean(true);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+		List<Future<?>> writers = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++)
+		{
+			final int thread = t;
+			writers.add(pool.submit(() -> {
+				for (int i = 0; i < DOCS; i++)
+				{
+					Map<String,String> props = new HashMap<String,String>();
+					props.put("docno", "t" + thread + "d" + i);
+					index.indexDocument(IndexTestUtils.makeDocumentFromText(
+						"common common thread" + thread + " t" + thread + "d" + i, props));
+				}
+				return null;
+			}));
+		}
+		// a reader checks that each posting list it sees is consistent with the other structures
+		Future<Integer> reader = pool.submit(() -> {
+			int reads = 0;
+			do {
+				LexiconEntry le = index.getLexicon().getLexiconEntry("common");
+				if (le == null)
+					continue;
+				IterablePosting ip = index.getInvertedIndex().getPostings(le);
+				int last = -1;
+				while (ip.next() != IterablePosting.EOL)
+				{
+					assertTrue(ip.getId() > last);
+					assertEquals(2, ip.getFrequency());
+					assertEquals(4, ip.getDocumentLength());
+					assertNotNull(index.getMetaIndex().getItem("docno", ip.getId()));
+					last = ip.getId();
+				}
+				ip.close();
+				reads++;
+			} while (indexing.get());
+			return reads;
+		});
+		for (Future<?> writer : writers)
+			writer.get();
+		indexing.set(false);
+		assertTrue(reader.get() > 0);
+		pool.shutdown();
+		
+		assertEquals(THREADS * DOCS, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(THREADS * DOCS * 4l, index.getCollectionStatistics().getNumberOfTokens());
+		assertEquals(1 + THREADS + THREADS * DOCS, index.getLexicon().numberOfEntries());
+		assertEquals(THREADS * DOCS, index.getLexicon().getLexiconEntry("common").getDocumentFrequency());
+		MetaIndex meta = index.getMetaIndex();
+		for (int docid = 0; docid < THREADS * DOCS; docid++)
+		{
+			String docno = meta.getItem("docno", docid);
+			IterablePosting ip = index.getInvertedIndex().getPostings(index.getLexicon().getLexiconEntry(docno));
+			assertEquals(docid, ip.next());
+			assertEquals(IterablePosting.EOL, ip.next());
+		}
+		index.close();
+	}
 		
 		
 	/*
@@ -384,6 +464,27 @@ public class TestMemoryIndex extends ApplicationSetupBasedTest {
 		assertArrayEquals(new int[] { 1, 0 }, docids);
 	}
 
+	/*
+	 * Test removal of documents.
+	 */
+	@Test
+	public void test_removeDocument() throws Exception {
+		MemoryIndex index = TestUtils.memory(collection);
+		assertArrayEquals(new int[] { 1, 0 }, TestUtils.query("knuth", index).getDocids());
+		assertTrue(index.removeDocument(1));
+		assertFalse(index.removeDocument(1));
+		assertFalse(index.removeDocument(2));
+		// the removed document is no longer retrieved, but remains in the statistics
+		assertArrayEquals(new int[] { 0 }, TestUtils.query("knuth", index).getDocids());
+		assertEquals(2, index.getCollectionStatistics().getNumberOfDocuments());
+		// removed documents are written to disk
+		IndexOnDisk disk = (IndexOnDisk) index.write(ApplicationSetup.TERRIER_INDEX_PATH, "removed");
+		assertTrue(DeletedDocuments.of(disk).isDeleted(1));
+		assertFalse(DeletedDocuments.of(disk).isDeleted(0));
+		assertArrayEquals(new int[] { 0 }, TestUtils.query("knuth", disk).getDocids());
+		disk.close();
+	}
+
 	/*
 	 * Test incremental indexing.
 	 */
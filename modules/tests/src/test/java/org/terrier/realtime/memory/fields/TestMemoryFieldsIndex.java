@@ -33,10 +33,15 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
@@ -52,11 +57,14 @@ import org.terrier.realtime.TestUtils;
 import org.terrier.realtime.memory.*;
 import org.terrier.structures.CollectionStatistics;
 import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.FieldDocumentIndexEntry;
 import org.terrier.structures.Index;
 import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.MetaIndex;
 import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.FieldPosting;
+import org.terrier.structures.postings.IterablePosting;
 import org.terrier.tests.ApplicationSetupBasedTest;
 import org.terrier.utility.ApplicationSetup;
 
@@ -386,6 +394,71 @@ public class TestMemoryFieldsIndex extends ApplicationSetupBasedTest {
 		TestUtils.compareRetrieval("turing", disk, mem2disk);
 	}
 
+	@Test
+	public void test_concurrentIndexing() throws Exception {
+		ApplicationSetup.setProperty("termpipelines", "");
+		final MemoryFieldsIndex index = new MemoryFieldsIndex();
+		final int THREADS = 4;
+		final int DOCS = 250;
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> writers = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++)
+		{
+			final int thread = t;
+			writers.add(pool.submit(() -> {
+				for (int i = 0; i < DOCS; i++)
+				{
+					Map<String,String> props = new HashMap<String,String>();
+					props.put("filename", "t" + thread + "d" + i);
+					// the documents of each thread have titles of different lengths
+					StringBuilder title = new StringBuilder("common t" + thread + "d" + i);
+					for (int j = 0; j < thread; j++)
+						title.append(" title");
+					index.indexDocument(new TaggedDocument(new ByteArrayInputStream(
+						("<TITLE>" + title + "</TITLE><CONTENT>common thread" + thread + "</CONTENT>").getBytes()), 
+						props, new EnglishTokeniser()));
+				}
+				return null;
+			}));
+		}
+		for (Future<?> writer : writers)
+			writer.get();
+		pool.shutdown();
+
+		assertEquals(THREADS * DOCS, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(THREADS * DOCS, index.getLexicon().getLexiconEntry("common").getDocumentFrequency());
+		MetaIndex meta = index.getMetaIndex();
+		PostingIndex<?> inverted = index.getInvertedIndex();
+		for (int docid = 0; docid < THREADS * DOCS; docid++)
+		{
+			// the postings and field lengths of each document are not mixed with those of another
+			String docno = meta.getItem("filename", docid);
+			int thread = docno.charAt(1) - '0';
+			assertArrayEquals(new int[]{2 + thread, 2}, 
+				((FieldDocumentIndexEntry) index.getDocumentIndex().getDocumentEntry(docid)).getFieldLengths());
+			IterablePosting ip = inverted.getPostings(index.getLexicon().getLexiconEntry(docno));
+			assertEquals(docid, ip.next());
+			assertArrayEquals(new int[]{1, 0}, ((FieldPosting) ip).getFieldFrequencies());
+			assertEquals(IterablePosting.EOL, ip.next());
+		}
+		IterablePosting ip = inverted.getPostings(index.getLexicon().getLexiconEntry("common"));
+		while (ip.next() != IterablePosting.EOL)
+			assertArrayEquals(new int[]{1, 1}, ((FieldPosting) ip).getFieldFrequencies());
+		for (int t = 0; t < THREADS; t++)
+		{
+			ip = inverted.getPostings(index.getLexicon().getLexiconEntry("thread" + t));
+			int count = 0;
+			while (ip.next() != IterablePosting.EOL)
+			{
+				assertEquals("thread" + t, "t" + t, meta.getItem("filename", ip.getId()).substring(0, 2));
+				assertArrayEquals(new int[]{0, 1}, ((FieldPosting) ip).getFieldFrequencies());
+				count++;
+			}
+			assertEquals(DOCS, count);
+		}
+		index.close();
+	}
+
 	/*
 	 * Test data.
 	 */
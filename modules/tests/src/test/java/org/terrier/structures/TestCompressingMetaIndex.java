@@ -212,6 +212,22 @@ public class TestCompressingMetaIndex extends ApplicationSetupBasedTest {
 	}
 	
 	
+	@Test
+	public void testConcurrentCompression() throws Exception
+	{
+		ApplicationSetup.setProperty("metaindex.compressed.threads", "3");
+		//more records than can be pending, to exercise waiting for the oldest record
+		final String[][] data = new String[1000][];
+		for(int i=0;i<data.length;i++)
+		{
+			StringBuilder words = new StringBuilder();
+			for(int j=0;j<i % 17;j++)
+				words.append("word").append(i * j).append(' ');
+			data[i] = new String[]{"d" + i, words.toString().trim()};
+		}
+		testBase("meta", new String[]{"docno", "words"}, new int[]{7, 200}, new String[]{"docno"}, data);
+	}
+	
 	protected void testBase(String name, String[] keyNames, int[] keyLengths, String[] revKeys, String[][] data) throws Exception
 	{
 		IndexOnDisk index = Index.createNewIndex(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
@@ -0,0 +1,180 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestImpactIndexBuilder.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.Full;
+import org.terrier.matching.daat.ImpactFull;
+import org.terrier.matching.matchops.SynonymOp;
+import org.terrier.matching.models.BM25;
+import org.terrier.querying.parser.Query.QTPBuilder;
+import org.terrier.structures.DeletedDocuments;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.postings.ImpactPosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.bit.ImpactIterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestImpactIndexBuilder extends ApplicationSetupBasedTest {
+
+	static final String[] DOCNOS = new String[]{"doc1", "doc2", "doc3", "doc4", "doc5", "doc6", "doc7", "doc8"};
+	static final String[] DOCS = new String[]{
+		"dog dog dog cat",
+		"dog mouse mouse mouse mouse mouse mouse",
+		"cat cat fish",
+		"lazy dog sleeps",
+		"fish bird",
+		"bird bird cat",
+		"mouse cheese",
+		"cheese fish"};
+	
+	@Before public void setIndexerProperties()
+	{
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "filename");
+		ApplicationSetup.setProperty("indexer.meta.reverse.keys", "");
+		ApplicationSetup.setProperty("termpipelines", "");
+	}
+	
+	@Test public void testQuantise()
+	{
+		assertEquals(0, ImpactIndexBuilder.quantise(0d, 10d));
+		assertEquals(0, ImpactIndexBuilder.quantise(-1d, 10d));
+		assertEquals(1, ImpactIndexBuilder.quantise(0.0001d, 10d));
+		assertEquals(128, ImpactIndexBuilder.quantise(5d, 10d));
+		assertEquals(ImpactIterablePosting.MAX_IMPACT, ImpactIndexBuilder.quantise(10d, 10d));
+	}
+	
+	@Test public void testImpactIndex() throws Exception
+	{
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		String path = index.getPath();
+		String prefix = index.getPrefix();
+		ResultSet bm25 = match(new Full(index), "dog");
+		index.close();
+		
+		index = Index.createIndex(path, prefix);
+		new ImpactIndexBuilder(index, new BM25()).createImpactIndex();
+		index.close();
+		
+		index = Index.createIndex(path, prefix);
+		assertEquals(new BM25().getInfo(), index.getIndexProperty("index.inverted.impact.model", null));
+		assertTrue(Double.parseDouble(index.getIndexProperty("index.inverted.impact.scale", "0")) > 0);
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) index.getIndexStructureInputStream("inverted");
+		int maxImpact = 0;
+		int postings = 0;
+		while(postingsIn.hasNext())
+		{
+			IterablePosting ip = postingsIn.next();
+			assertTrue(ip instanceof ImpactPosting);
+			while(ip.next() != IterablePosting.EOL)
+			{
+				postings++;
+				assertTrue(((ImpactPosting)ip).getImpact() >= 0);
+				maxImpact = Math.max(maxImpact, ((ImpactPosting)ip).getImpact());
+			}
+		}
+		IndexUtil.close(postingsIn);
+		assertEquals(index.getCollectionStatistics().getNumberOfPointers(), postings);
+		assertEquals(ImpactIterablePosting.MAX_IMPACT, maxImpact);
+		
+		final double scale = Double.parseDouble(index.getIndexProperty("index.inverted.impact.scale", "0"));
+		ResultSet impacts = match(new ImpactFull(index), "dog");
+		assertArrayEquals(bm25.getDocids(), impacts.getDocids());
+		for(int i=0;i<impacts.getResultSize();i++)
+		{
+			//impacts are rescaled to the scores of the weighting model, up to the quantisation error
+			final double score = impacts.getScores()[i];
+			assertEquals(Math.rint(score / scale) * scale, score, 1e-9d);
+			assertEquals(bm25.getScores()[i], score, scale);
+		}
+		
+		//scores of posting lists with and without impacts are added in the same units
+		MatchingQueryTerms mixed = new MatchingQueryTerms();
+		mixed.setTermProperty("dog", 1);
+		mixed.add(QTPBuilder.of(new SynonymOp(new String[]{"cat", "fish"})).build());
+		mixed.setDefaultTermWeightingModel(new BM25());
+		Map<Integer,Double> expected = new HashMap<>();
+		for(ResultSet rs : new ResultSet[]{impacts, match(new Full(index), new SynonymOp(new String[]{"cat", "fish"}))})
+			for(int i=0;i<rs.getResultSize();i++)
+				expected.merge(rs.getDocids()[i], rs.getScores()[i], Double::sum);
+		ResultSet mixedRs = new ImpactFull(index).match("query1", mixed);
+		assertEquals(expected.size(), mixedRs.getResultSize());
+		for(int i=0;i<mixedRs.getResultSize();i++)
+			assertEquals(expected.get(mixedRs.getDocids()[i]), mixedRs.getScores()[i], 1e-9d);
+		
+		//deleted documents are not retrieved
+		final int deletedDocid = impacts.getDocids()[0];
+		DeletedDocuments.create(index).delete(deletedDocid);
+		ResultSet afterDeletion = match(new ImpactFull(index), "dog");
+		assertEquals(impacts.getResultSize() - 1, afterDeletion.getResultSize());
+		assertFalse(Arrays.stream(afterDeletion.getDocids()).anyMatch(docid -> docid == deletedDocid));
+		
+		Iterator<?> it = (Iterator<?>) index.getIndexStructureInputStream("lexicon");
+		int terms = 0;
+		while(it.hasNext())
+		{
+			it.next();
+			terms++;
+		}
+		IndexUtil.close(it);
+		assertEquals(index.getCollectionStatistics().getNumberOfUniqueTerms(), terms);
+		index.close();
+	}
+	
+	static ResultSet match(Full matching, SynonymOp op) throws Exception
+	{
+		MatchingQueryTerms mqt = new MatchingQueryTerms();
+		mqt.add(QTPBuilder.of(op).build());
+		mqt.setDefaultTermWeightingModel(new BM25());
+		return matching.match("query1", mqt);
+	}
+	
+	static ResultSet match(Full matching, String term) throws Exception
+	{
+		MatchingQueryTerms mqt = new MatchingQueryTerms();
+		mqt.setTermProperty(term, 1);
+		mqt.setDefaultTermWeightingModel(new BM25());
+		return matching.match("query1", mqt);
+	}
+}
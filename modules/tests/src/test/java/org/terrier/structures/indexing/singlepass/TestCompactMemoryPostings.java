@@ -0,0 +1,158 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestCompactMemoryPostings.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.TRECCollection;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+import com.google.common.io.ByteStreams;
+
+public class TestCompactMemoryPostings extends ApplicationSetupBasedTest {
+
+	static final String[] WORDS = {"cat", "dog", "mouse", "horse", "cow", "sheep", "chicken", "duck", "goat", "pig"};
+	
+	protected String[] runFiles(String name)
+	{
+		String filename = ApplicationSetup.TERRIER_INDEX_PATH + File.separator + name;
+		return new String[]{filename, filename + ".str"};
+	}
+	
+	protected void checkSameFiles(String[] expected, String[] actual) throws Exception
+	{
+		for(int i=0;i<expected.length;i++)
+		{
+			byte[] b1 = ByteStreams.toByteArray(Files.openFileStream(expected[i]));
+			byte[] b2 = ByteStreams.toByteArray(Files.openFileStream(actual[i]));
+			assertArrayEquals(b1, b2);
+		}
+	}
+	
+	@Test public void testSameRunAsMemoryPostings() throws Exception
+	{
+		MemoryPostings expected = new MemoryPostings();
+		CompactMemoryPostings actual = new CompactMemoryPostings();
+		Random r = new Random(42);
+		for(int docid=0;docid<5000;docid++)
+		{
+			//frequent terms span many slices and pages
+			for(String word : WORDS)
+				if (r.nextInt(3) > 0)
+				{
+					int tf = 1 + r.nextInt(r.nextBoolean() ? 5 : 1000);
+					expected.add(word, docid, tf);
+					actual.add(word, docid, tf);
+				}
+			String rare = "rare" + r.nextInt(100000);
+			expected.add(rare, docid, 1);
+			actual.add(rare, docid, 1);
+		}
+		assertEquals(expected.getSize(), actual.getSize());
+		assertEquals(expected.getPointers(), actual.getPointers());
+		assertTrue(actual.getMemoryConsumption() > 0);
+		String[] run1 = runFiles("memory");
+		String[] run2 = runFiles("compact");
+		expected.finish(run1);
+		actual.finish(run2);
+		checkSameFiles(run1, run2);
+	}
+	
+	@Test public void testSameRunAsFieldsMemoryPostings() throws Exception
+	{
+		FieldsMemoryPostings expected = new FieldsMemoryPostings();
+		CompactMemoryPostings actual = new CompactMemoryPostings(2);
+		Random r = new Random(7);
+		for(int docid=0;docid<1000;docid++)
+			for(String word : WORDS)
+				if (r.nextBoolean())
+				{
+					int[] fieldFrequencies = new int[]{r.nextInt(3), r.nextInt(200)};
+					int tf = fieldFrequencies[0] + fieldFrequencies[1] + 1;
+					expected.add(word, docid, tf, fieldFrequencies);
+					actual.add(word, docid, tf, fieldFrequencies);
+				}
+		String[] run1 = runFiles("memory");
+		String[] run2 = runFiles("compact");
+		expected.finish(run1);
+		actual.finish(run2);
+		checkSameFiles(run1, run2);
+	}
+	
+	@Test public void testExactMemoryFlushing() throws Exception
+	{
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexing.singlepass.compact.postings", "true");
+		ApplicationSetup.setProperty("indexing.singlepass.max.postings.memory", "120000");
+		Random r = new Random(42);
+		String[] lines = new String[200];
+		for(int i=0;i<lines.length;i++)
+		{
+			StringBuilder doc = new StringBuilder();
+			doc.append("<DOC><DOCNO>doc" + i + "</DOCNO>");
+			for(int j=0;j<50;j++)
+				doc.append(' ').append(WORDS[r.nextInt(WORDS.length)]).append(r.nextInt(100));
+			doc.append("</DOC>");
+			lines[i] = doc.toString();
+		}
+		String filename = writeTemporaryFile("collection.trec", lines);
+		BasicSinglePassIndexer indexer = new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		Collection c = new TRECCollection(Files.openFileStream(filename));
+		indexer.createDirectIndex(new Collection[]{c});
+		//several runs were written
+		assertTrue(indexer.currentFile > 1);
+		indexer.createInvertedIndex();
+		c.close();
+		
+		Index index = IndexOnDisk.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		assertEquals(200, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(200 * 50, index.getCollectionStatistics().getNumberOfTokens());
+		LexiconEntry le = index.getLexicon().getLexiconEntry("cat1");
+		IterablePosting ip = index.getInvertedIndex().getPostings(le);
+		int count = 0;
+		int lastId = -1;
+		while(ip.next() != IterablePosting.EOL)
+		{
+			assertTrue(ip.getId() > lastId);
+			lastId = ip.getId();
+			count++;
+		}
+		assertEquals(le.getDocumentFrequency(), count);
+	}
+}
@@ -29,14 +29,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Test;
 import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.DocumentIndex;
 import org.terrier.structures.DocumentIndexEntry;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.IndexUtil;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.IterablePosting;
 import org.terrier.tests.ApplicationSetupBasedTest;
 import org.terrier.utility.ApplicationSetup;
 
@@ -74,6 +79,54 @@ public class TestInverted2DirectIndexBuilder extends ApplicationSetupBasedTest {
 		assertTrue(index.hasIndexStructure("direct-inputstream"));
 	}
 
+	static List<String> directPostings(Index index) throws Exception
+	{
+		List<String> rtr = new ArrayList<>();
+		DocumentIndex doi = index.getDocumentIndex();
+		PostingIndex<?> direct = index.getDirectIndex();
+		for(int docid=0;docid<index.getCollectionStatistics().getNumberOfDocuments();docid++)
+		{
+			DocumentIndexEntry die = doi.getDocumentEntry(docid);
+			StringBuilder sb = new StringBuilder();
+			sb.append(docid).append(':').append(die.getNumberOfEntries());
+			if (die.getNumberOfEntries() > 0)
+			{
+				IterablePosting ip = direct.getPostings(die);
+				while(ip.next() != IterablePosting.EOL)
+					sb.append(' ').append(ip.getId()).append(',').append(ip.getFrequency());
+				ip.close();
+			}
+			rtr.add(sb.toString());
+		}
+		return rtr;
+	}
+	
+	@Test public void testSortingSameAsMultiPass() throws Exception
+	{
+		String[] docnos = new String[]{"doc1", "doc2", "doc3", "doc4", "doc5"};
+		String[] docs = new String[]{
+			"Quick fast brown fox fox", 
+			"", 
+			"jumped huge black lazy dog", 
+			"fox dog fox dog quick", 
+			"brown"};
+		
+		Index index = IndexTestUtils.makeIndexSinglePass(docnos, docs);
+		ApplicationSetup.setProperty("inverted2direct.processtokens", "4");
+		new Inverted2DirectIndexBuilder((IndexOnDisk) index).createDirectIndex();
+		List<String> expected = directPostings(index);
+		
+		Index sortingIndex = IndexTestUtils.makeIndexSinglePass(docnos, docs);
+		ApplicationSetup.setProperty("inverted2direct.sort.buffer", "100");
+		ApplicationSetup.setProperty("inverted2direct.sort.threads", "2");
+		new SortingInverted2DirectIndexBuilder((IndexOnDisk) sortingIndex).createDirectIndex();
+		assertTrue(sortingIndex.hasIndexStructure("direct"));
+		assertTrue(sortingIndex.hasIndexStructure("direct-inputstream"));
+		assertEquals(expected, directPostings(sortingIndex));
+		index.close();
+		sortingIndex.close();
+	}
+	
 	@SuppressWarnings("unchecked")
 	@Test public void testScanForTokens() throws Exception
 	{
@@ -0,0 +1,248 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestParallelRunsMerger.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.TRECCollection;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.FieldLexiconEntry;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.indexing.singlepass.RunWriter.TermSample;
+import org.terrier.structures.postings.BlockPosting;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+public class TestParallelRunsMerger extends ApplicationSetupBasedTest {
+
+	@Before public void setIndexerProperties() {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "20");
+		//force several runs
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "40");
+	}
+	
+	protected String makeTRECCollection(int numDocs, boolean fields) throws Exception
+	{
+		Random r = new Random(42);
+		String[] vocabulary = new String[5000];
+		for(int i=0;i<vocabulary.length;i++)
+		{
+			char[] word = new char[3 + r.nextInt(6)];
+			for(int j=0;j<word.length;j++)
+				word[j] = (char)('a' + r.nextInt(26));
+			vocabulary[i] = new String(word);
+		}
+		String[] lines = new String[numDocs];
+		for(int i=0;i<numDocs;i++)
+		{
+			StringBuilder doc = new StringBuilder();
+			doc.append("<DOC><DOCNO>doc" + i + "</DOCNO>");
+			if (fields)
+				doc.append("<TITLE>").append(vocabulary[r.nextInt(vocabulary.length)]).append("</TITLE>");
+			final int length = 1 + r.nextInt(80);
+			for(int j=0;j<length;j++)
+				doc.append(' ').append(vocabulary[r.nextInt(vocabulary.length)]);
+			doc.append("</DOC>");
+			lines[i] = doc.toString();
+		}
+		return writeTemporaryFile("collection.trec", lines);
+	}
+	
+	protected Index index(String filename, String prefix, int mergeThreads) throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.singlepass.merge.threads", String.valueOf(mergeThreads));
+		BasicSinglePassIndexer indexer = ApplicationSetup.BLOCK_INDEXING
+				? new BlockSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, prefix)
+				: new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, prefix);
+		Collection c = new TRECCollection(Files.openFileStream(filename));
+		indexer.createDirectIndex(new Collection[]{c});
+		indexer.createInvertedIndex();
+		c.close();
+		return IndexOnDisk.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, prefix);
+	}
+	
+	protected void checkSameIndex(Index expected, Index actual) throws Exception
+	{
+		CollectionStatistics cs1 = expected.getCollectionStatistics();
+		CollectionStatistics cs2 = actual.getCollectionStatistics();
+		assertEquals(cs1.getNumberOfDocuments(), cs2.getNumberOfDocuments());
+		assertEquals(cs1.getNumberOfTokens(), cs2.getNumberOfTokens());
+		assertEquals(cs1.getNumberOfUniqueTerms(), cs2.getNumberOfUniqueTerms());
+		assertEquals(cs1.getNumberOfPointers(), cs2.getNumberOfPointers());
+		
+		//lexicons should be identical, including termids
+		Iterator<Map.Entry<String,LexiconEntry>> iter1 = expected.getLexicon().iterator();
+		Iterator<Map.Entry<String,LexiconEntry>> iter2 = actual.getLexicon().iterator();
+		PostingIndex<?> inv1 = expected.getInvertedIndex();
+		PostingIndex<?> inv2 = actual.getInvertedIndex();
+		while(iter1.hasNext())
+		{
+			assertTrue(iter2.hasNext());
+			Map.Entry<String,LexiconEntry> e1 = iter1.next();
+			Map.Entry<String,LexiconEntry> e2 = iter2.next();
+			assertEquals(e1.getKey(), e2.getKey());
+			assertEquals(e1.getValue().getTermId(), e2.getValue().getTermId());
+			assertEquals(e1.getValue().getFrequency(), e2.getValue().getFrequency());
+			assertEquals(e1.getValue().getDocumentFrequency(), e2.getValue().getDocumentFrequency());
+			if (e1.getValue() instanceof FieldLexiconEntry)
+				assertArrayEquals(((FieldLexiconEntry)e1.getValue()).getFieldFrequencies(), ((FieldLexiconEntry)e2.getValue()).getFieldFrequencies());
+			IterablePosting ip1 = inv1.getPostings(e1.getValue());
+			IterablePosting ip2 = inv2.getPostings(e2.getValue());
+			comparePostings(ip1, ip2);
+			ip1.close();
+			ip2.close();
+		}
+		assertTrue(! iter2.hasNext());
+		
+		//the inverted index should also be readable as a stream
+		PostingIndexInputStream stream1 = (PostingIndexInputStream) expected.getIndexStructureInputStream("inverted");
+		PostingIndexInputStream stream2 = (PostingIndexInputStream) actual.getIndexStructureInputStream("inverted");
+		while(stream1.hasNext())
+		{
+			assertTrue(stream2.hasNext());
+			comparePostings(stream1.next(), stream2.next());
+		}
+		assertTrue(! stream2.hasNext());
+		IndexUtil.close(stream1);
+		IndexUtil.close(stream2);
+	}
+	
+	protected void comparePostings(IterablePosting ip1, IterablePosting ip2) throws Exception
+	{
+		while(ip1.next() != IterablePosting.EOL)
+		{
+			assertEquals(ip1.getId(), ip2.next());
+			assertEquals(ip1.getFrequency(), ip2.getFrequency());
+			if (ip1 instanceof BlockPosting)
+				assertArrayEquals(((BlockPosting)ip1).getPositions(), ((BlockPosting)ip2).getPositions());
+		}
+		assertEquals(IterablePosting.EOL, ip2.next());
+	}
+	
+	@Test public void testSameAsSingleThreaded() throws Exception
+	{
+		String filename = makeTRECCollection(300, false);
+		Index expected = index(filename, "single", 1);
+		Index actual = index(filename, "parallel", 4);
+		assertEquals(300, actual.getCollectionStatistics().getNumberOfDocuments());
+		checkSameIndex(expected, actual);
+	}
+	
+	@Test public void testSameAsSingleThreadedFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE");
+		String filename = makeTRECCollection(300, true);
+		Index expected = index(filename, "single", 1);
+		Index actual = index(filename, "parallel", 3);
+		assertEquals(1, actual.getCollectionStatistics().getNumberOfFields());
+		checkSameIndex(expected, actual);
+	}
+	
+	@Test public void testSameAsSingleThreadedBlocks() throws Exception
+	{
+		ApplicationSetup.setProperty("block.indexing", "true");
+		ApplicationSetup.BLOCK_INDEXING = true;
+		String filename = makeTRECCollection(300, false);
+		Index expected = index(filename, "single", 1);
+		Index actual = index(filename, "parallel", 2);
+		assertTrue(actual.getInvertedIndex().getPostings(actual.getLexicon().getLexiconEntry(0).getValue()) instanceof BlockPosting);
+		checkSameIndex(expected, actual);
+	}
+	
+	@Test public void testTooSmallToSplit() throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "0");
+		String[] lines = new String[]{"<DOC><DOCNO>doc0</DOCNO> cat dog</DOC>", "<DOC><DOCNO>doc1</DOCNO> dog mouse</DOC>"};
+		String filename = writeTemporaryFile("collection.trec", lines);
+		Index expected = index(filename, "single", 1);
+		Index actual = index(filename, "parallel", 4);
+		checkSameIndex(expected, actual);
+	}
+	
+	@Test public void testChooseSplits()
+	{
+		List<List<TermSample>> samples = new ArrayList<>();
+		samples.add(Arrays.asList(
+				new TermSample("b", 10, 0, 128), new TermSample("d", 20, 0, 256), new TermSample("f", 30, 0, 384)));
+		samples.add(Arrays.asList(
+				new TermSample("c", 10, 0, 128), new TermSample("e", 20, 0, 256)));
+		// weights: b=10, c=10, d=10, e=10, f=10
+		long[] runLengths = new long[]{40, 30};
+		assertEquals(Arrays.asList("e"), ParallelRunsMerger.chooseSplits(samples, runLengths, 2));
+		assertEquals(Arrays.asList("d", "f"), ParallelRunsMerger.chooseSplits(samples, runLengths, 3));
+		assertEquals(0, ParallelRunsMerger.chooseSplits(new ArrayList<>(), new long[0], 4).size());
+	}
+	
+	@Test public void testUtfLength() throws Exception
+	{
+		for(String term : new String[]{"", "cat", "caf\u00e9", "\u0000", "\u4e2d\u6587", "\ud83d\ude00"})
+		{
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			new DataOutputStream(buffer).writeUTF(term);
+			assertEquals(term, buffer.size(), RunWriter.utfLength(term));
+		}
+	}
+	
+	@Test public void testAbortDeletesRun() throws Exception
+	{
+		String runFile = ApplicationSetup.TERRIER_INDEX_PATH + "/run.0";
+		String termsFile = ApplicationSetup.TERRIER_INDEX_PATH + "/run.0.terms";
+		RunWriter writer = new RunWriter(runFile, termsFile);
+		Posting posting = new Posting();
+		posting.writeFirstDoc(0, 1);
+		writer.beginWrite(1, 1);
+		writer.writeTerm("cat", posting);
+		assertTrue(Files.exists(runFile));
+		assertTrue(Files.exists(termsFile));
+		writer.abort();
+		assertFalse(Files.exists(runFile));
+		assertFalse(Files.exists(termsFile));
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestPipelinedSinglePassIndexer.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.indexing.singlepass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.indexing.Collection;
+import org.terrier.indexing.Document;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.indexing.TRECCollection;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.indexing.Indexer;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+import org.terrier.utility.Files;
+
+public class TestPipelinedSinglePassIndexer extends ApplicationSetupBasedTest {
+
+	static final String[] WORDS = {"cat", "dog", "mouse", "horse", "cow", "sheep", "chicken", "duck", "goat", "pig"};
+	
+	@Before public void setIndexerProperties() {
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "docno");
+		ApplicationSetup.setProperty("indexer.meta.forward.keylens", "20");
+		ApplicationSetup.setProperty("indexing.singlepass.pipelined.threads", "3");
+		ApplicationSetup.setProperty("indexing.singlepass.pipelined.queue.size", "2");
+		//force several runs
+		ApplicationSetup.setProperty("indexing.singlepass.max.documents.flush", "17");
+	}
+	
+	protected String makeTRECCollection(int numDocs) throws Exception
+	{
+		Random r = new Random(42);
+		String[] lines = new String[numDocs];
+		for(int i=0;i<numDocs;i++)
+		{
+			StringBuilder doc = new StringBuilder();
+			doc.append("<DOC><DOCNO>doc" + i + "</DOCNO>");
+			//every 10th document is empty
+			final int length = i % 10 == 9 ? 0 : 1 + r.nextInt(30);
+			for(int j=0;j<length;j++)
+				doc.append(' ').append(WORDS[r.nextInt(WORDS.length)]);
+			doc.append("</DOC>");
+			lines[i] = doc.toString();
+		}
+		return writeTemporaryFile("collection.trec", lines);
+	}
+	
+	protected Index index(Indexer indexer, String filename, String prefix) throws Exception
+	{
+		Collection c = new TRECCollection(Files.openFileStream(filename));
+		indexer.createDirectIndex(new Collection[]{c});
+		indexer.createInvertedIndex();
+		c.close();
+		return IndexOnDisk.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, prefix);
+	}
+	
+	protected void checkSameIndex(Index expected, Index actual) throws Exception
+	{
+		CollectionStatistics cs1 = expected.getCollectionStatistics();
+		CollectionStatistics cs2 = actual.getCollectionStatistics();
+		assertEquals(cs1.getNumberOfDocuments(), cs2.getNumberOfDocuments());
+		assertEquals(cs1.getNumberOfTokens(), cs2.getNumberOfTokens());
+		assertEquals(cs1.getNumberOfUniqueTerms(), cs2.getNumberOfUniqueTerms());
+		assertEquals(cs1.getNumberOfPointers(), cs2.getNumberOfPointers());
+		for(int docid=0;docid<cs1.getNumberOfDocuments();docid++)
+		{
+			assertEquals(expected.getMetaIndex().getItem("docno", docid), actual.getMetaIndex().getItem("docno", docid));
+			assertEquals(expected.getDocumentIndex().getDocumentLength(docid), actual.getDocumentIndex().getDocumentLength(docid));
+		}
+		PostingIndex<?> inv1 = expected.getInvertedIndex();
+		PostingIndex<?> inv2 = actual.getInvertedIndex();
+		Iterator<Map.Entry<String,LexiconEntry>> iter = expected.getLexicon().iterator();
+		while(iter.hasNext())
+		{
+			Map.Entry<String,LexiconEntry> e1 = iter.next();
+			LexiconEntry le2 = actual.getLexicon().getLexiconEntry(e1.getKey());
+			assertNotNull(e1.getKey(), le2);
+			assertEquals(e1.getValue().getFrequency(), le2.getFrequency());
+			assertEquals(e1.getValue().getDocumentFrequency(), le2.getDocumentFrequency());
+			IterablePosting ip1 = inv1.getPostings(e1.getValue());
+			IterablePosting ip2 = inv2.getPostings(le2);
+			while(ip1.next() != IterablePosting.EOL)
+			{
+				assertEquals(ip1.getId(), ip2.next());
+				assertEquals(ip1.getFrequency(), ip2.getFrequency());
+			}
+			assertEquals(IterablePosting.EOL, ip2.next());
+			ip1.close();
+			ip2.close();
+		}
+	}
+	
+	@Test public void testSameAsBasicTREC() throws Exception
+	{
+		String filename = makeTRECCollection(200);
+		Index basic = index(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "basic"), filename, "basic");
+		Index pipelined = index(new PipelinedSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "pipelined"), filename, "pipelined");
+		assertEquals(200, pipelined.getCollectionStatistics().getNumberOfDocuments());
+		checkSameIndex(basic, pipelined);
+	}
+	
+	@Test public void testSameAsBasicDocumentList() throws Exception
+	{
+		String[] docnos = new String[50];
+		String[] docs = new String[50];
+		Random r = new Random(7);
+		for(int i=0;i<docnos.length;i++)
+		{
+			docnos[i] = "doc" + i;
+			StringBuilder doc = new StringBuilder();
+			for(int j=0;j<1 + r.nextInt(10);j++)
+				doc.append(' ').append(WORDS[r.nextInt(WORDS.length)]);
+			docs[i] = doc.toString();
+		}
+		Index basic = IndexTestUtils.makeIndexSinglePass(docnos, docs);
+		Index pipelined = IndexTestUtils.makeIndex(docnos, docs, PipelinedSinglePassIndexer.class);
+		checkSameIndex(basic, pipelined);
+	}
+	
+	/** a pipelined indexer where the parsing of the first document is slow */
+	static class SlowFirstDocumentIndexer extends PipelinedSinglePassIndexer
+	{
+		final AtomicInteger read = new AtomicInteger();
+		final AtomicInteger inverted = new AtomicInteger();
+		volatile int maxAhead = 0;
+		
+		SlowFirstDocumentIndexer(String path, String prefix) {
+			super(path, prefix);
+			init();
+		}
+
+		@Override
+		protected Document readDocument(Collection collection) {
+			final Document doc = super.readDocument(collection);
+			if (doc == null)
+				return null;
+			maxAhead = Math.max(maxAhead, read.incrementAndGet() - inverted.get());
+			if (read.get() > 1)
+				return doc;
+			return new Document() {
+				public String getNextTerm() {
+					try{
+						Thread.sleep(500);
+					} catch (InterruptedException ie) {}
+					return doc.getNextTerm();
+				}
+				public Set<String> getFields() { return doc.getFields(); }
+				public boolean endOfDocument() { return doc.endOfDocument(); }
+				public Reader getReader() { return doc.getReader(); }
+				public String getProperty(String name) { return doc.getProperty(name); }
+				public Map<String, String> getAllProperties() { return doc.getAllProperties(); }
+			};
+		}
+
+		@Override
+		protected void invert(PipelineItem item) {
+			super.invert(item);
+			inverted.incrementAndGet();
+		}
+	}
+	
+	@Test public void testBoundedReadAhead() throws Exception
+	{
+		String filename = makeTRECCollection(100);
+		SlowFirstDocumentIndexer indexer = new SlowFirstDocumentIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "slow");
+		Index index = index(indexer, filename, "slow");
+		assertEquals(100, index.getCollectionStatistics().getNumberOfDocuments());
+		//queues of 2 documents and 3 parsing threads, plus the document being read
+		assertTrue("read ahead by " + indexer.maxAhead, indexer.maxAhead <= 2 * 2 + 3 + 1);
+		Index basic = index(new BasicSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, "basic"), filename, "basic");
+		checkSameIndex(basic, index);
+	}
+	
+	@Test public void testBoundaryDocument() throws Exception
+	{
+		ApplicationSetup.setProperty("indexing.builder.boundary.docnos", "doc41");
+		String filename = makeTRECCollection(100);
+		Index index = index(new PipelinedSinglePassIndexer(ApplicationSetup.TERRIER_INDEX_PATH, ApplicationSetup.TERRIER_INDEX_PREFIX), 
+				filename, ApplicationSetup.TERRIER_INDEX_PREFIX);
+		assertEquals(42, index.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals("doc41", index.getMetaIndex().getItem("docno", 41));
+		assertTrue(index.getCollectionStatistics().getNumberOfUniqueTerms() > 0);
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestMultiStructureMerger.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.merging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.structures.CollectionStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndex;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestMultiStructureMerger extends ApplicationSetupBasedTest {
+
+	static final String[][] DOCNOS = {
+		{"doc1", "doc2"},
+		{"doc3"},
+		{"doc4", "doc5", "doc6"}
+	};
+	static final String[][] DOCUMENTS = {
+		{"cat dog mouse", "dog dog horse"},
+		{"zebra cat"},
+		{"mouse aardvark", "dog cow cow", "horse zebra cat"}
+	};
+	
+	@Before public void setIndexerProperties() {
+		ApplicationSetup.setProperty("termpipelines", "");
+	}
+	
+	protected void testMerge(boolean singlePass) throws Exception
+	{
+		Index[] sources = new Index[DOCNOS.length];
+		for(int i=0;i<DOCNOS.length;i++)
+			sources[i] = singlePass 
+				? IndexTestUtils.makeIndexSinglePass(DOCNOS[i], DOCUMENTS[i])
+				: IndexTestUtils.makeIndex(DOCNOS[i], DOCUMENTS[i]);
+		
+		String[] allDocnos = new String[0];
+		String[] allDocuments = new String[0];
+		for(int i=0;i<DOCNOS.length;i++)
+		{
+			allDocnos = concat(allDocnos, DOCNOS[i]);
+			allDocuments = concat(allDocuments, DOCUMENTS[i]);
+		}
+		Index expected = singlePass 
+			? IndexTestUtils.makeIndexSinglePass(allDocnos, allDocuments)
+			: IndexTestUtils.makeIndex(allDocnos, allDocuments);
+		
+		IndexOnDisk[] srcIndices = new IndexOnDisk[sources.length];
+		for(int i=0;i<sources.length;i++)
+			srcIndices[i] = (IndexOnDisk) sources[i];
+		IndexOnDisk merged = IndexOnDisk.createNewIndex(ApplicationSetup.TERRIER_INDEX_PATH, "merged");
+		new MultiStructureMerger(srcIndices, merged).mergeStructures();
+		merged.close();
+		merged = IndexOnDisk.createIndex(ApplicationSetup.TERRIER_INDEX_PATH, "merged");
+		assertNotNull(merged);
+		
+		CollectionStatistics cs1 = expected.getCollectionStatistics();
+		CollectionStatistics cs2 = merged.getCollectionStatistics();
+		assertEquals(cs1.getNumberOfDocuments(), cs2.getNumberOfDocuments());
+		assertEquals(cs1.getNumberOfTokens(), cs2.getNumberOfTokens());
+		assertEquals(cs1.getNumberOfUniqueTerms(), cs2.getNumberOfUniqueTerms());
+		assertEquals(cs1.getNumberOfPointers(), cs2.getNumberOfPointers());
+		for(int docid=0;docid<allDocnos.length;docid++)
+		{
+			assertEquals(allDocnos[docid], merged.getMetaIndex().getItem("docno", docid));
+			assertEquals(expected.getDocumentIndex().getDocumentLength(docid), merged.getDocumentIndex().getDocumentLength(docid));
+		}
+		
+		Lexicon<String> lex = merged.getLexicon();
+		PostingIndex<?> inv1 = expected.getInvertedIndex();
+		PostingIndex<?> inv2 = merged.getInvertedIndex();
+		Iterator<Map.Entry<String,LexiconEntry>> iter = expected.getLexicon().iterator();
+		int termid = 0;
+		while(iter.hasNext())
+		{
+			Map.Entry<String,LexiconEntry> e1 = iter.next();
+			LexiconEntry le2 = lex.getLexiconEntry(e1.getKey());
+			assertNotNull(e1.getKey(), le2);
+			//termids are assigned in lexicographical order
+			assertEquals(termid++, le2.getTermId());
+			assertEquals(e1.getKey(), lex.getLexiconEntry(le2.getTermId()).getKey());
+			assertEquals(e1.getValue().getFrequency(), le2.getFrequency());
+			assertEquals(e1.getValue().getDocumentFrequency(), le2.getDocumentFrequency());
+			assertEquals(e1.getValue().getMaxFrequencyInDocuments(), le2.getMaxFrequencyInDocuments());
+			IterablePosting ip1 = inv1.getPostings(e1.getValue());
+			IterablePosting ip2 = inv2.getPostings(le2);
+			while(ip1.next() != IterablePosting.EOL)
+			{
+				assertEquals(e1.getKey(), ip1.getId(), ip2.next());
+				assertEquals(ip1.getFrequency(), ip2.getFrequency());
+			}
+			assertEquals(IterablePosting.EOL, ip2.next());
+		}
+		
+		assertEquals(! singlePass, merged.hasIndexStructure("direct"));
+		if (! singlePass)
+		{
+			PostingIndex<?> direct1 = expected.getDirectIndex();
+			PostingIndex<?> direct2 = merged.getDirectIndex();
+			for(int docid=0;docid<allDocnos.length;docid++)
+			{
+				IterablePosting ip1 = direct1.getPostings(expected.getDocumentIndex().getDocumentEntry(docid));
+				IterablePosting ip2 = direct2.getPostings(merged.getDocumentIndex().getDocumentEntry(docid));
+				TObjectIntHashMap<String> tfs = new TObjectIntHashMap<String>();
+				while(ip1.next() != IterablePosting.EOL)
+					tfs.put(expected.getLexicon().getLexiconEntry(ip1.getId()).getKey(), ip1.getFrequency());
+				int lastTermid = -1;
+				while(ip2.next() != IterablePosting.EOL)
+				{
+					assertTrue(ip2.getId() > lastTermid);
+					lastTermid = ip2.getId();
+					String term = lex.getLexiconEntry(ip2.getId()).getKey();
+					assertEquals(term, tfs.remove(term), ip2.getFrequency());
+				}
+				assertEquals(0, tfs.size());
+			}
+		}
+		else
+		{
+			assertFalse(merged.hasIndexStructure("direct-inputstream"));
+		}
+	}
+	
+	static String[] concat(String[] a, String[] b)
+	{
+		String[] rtr = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, rtr, a.length, b.length);
+		return rtr;
+	}
+	
+	@Test public void testMergeClassical() throws Exception
+	{
+		testMerge(false);
+	}
+	
+	@Test public void testMergeSinglePass() throws Exception
+	{
+		testMerge(true);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Terrier - Terabyte Retriever
+ * Webpage: http://terrier.org
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ *
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestDeletedDocumentsIterablePosting.java.
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.postings;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.terrier.structures.DeletedDocuments;
+
+public class TestDeletedDocumentsIterablePosting {
+
+	@Test public void testNext() throws Exception
+	{
+		DeletedDocuments deleted = new DeletedDocuments();
+		deleted.delete(0);
+		deleted.delete(3);
+		deleted.delete(4);
+		IterablePosting ip = DeletedDocumentsIterablePosting.of(
+				new ArrayOfBasicIterablePosting(new int[]{0,1,3,4,6}, new int[]{1,2,3,4,5}), deleted);
+		assertEquals(1, ip.next());
+		assertEquals(2, ip.getFrequency());
+		assertEquals(6, ip.next());
+		assertEquals(5, ip.getFrequency());
+		assertEquals(IterablePosting.EOL, ip.next());
+		ip.close();
+	}
+
+	@Test public void testNextTarget() throws Exception
+	{
+		DeletedDocuments deleted = new DeletedDocuments();
+		deleted.delete(3);
+		IterablePosting ip = DeletedDocumentsIterablePosting.of(
+				new ArrayOfBasicIterablePosting(new int[]{0,1,3,4,6}, new int[]{1,2,3,4,5}), deleted);
+		assertEquals(4, ip.next(2));
+		assertEquals(4, ip.getId());
+		assertEquals(6, ip.next(5));
+		assertEquals(IterablePosting.EOL, ip.next(7));
+
+		// documents deleted after the posting list was obtained are also skipped
+		ip = DeletedDocumentsIterablePosting.of(
+				new ArrayOfBasicIterablePosting(new int[]{0,1,3,4,6}, new int[]{1,2,3,4,5}), deleted);
+		deleted.delete(6);
+		assertEquals(IterablePosting.EOL, ip.next(5));
+	}
+
+	@Test public void testEndOfPostings() throws Exception
+	{
+		DeletedDocuments deleted = new DeletedDocuments();
+		deleted.delete(1);
+		deleted.delete(4);
+		deleted.delete(6);
+		IterablePosting ip = DeletedDocumentsIterablePosting.of(
+				new ArrayOfBasicIterablePosting(new int[]{0,1,3,4,6}, new int[]{1,2,3,4,5}), deleted);
+		assertFalse(ip.endOfPostings());
+		assertEquals(0, ip.next());
+		assertFalse(ip.endOfPostings());
+		// the current posting is retained while looking ahead
+		assertEquals(0, ip.getId());
+		assertEquals(1, ip.getFrequency());
+		assertEquals(3, ip.next());
+		// the remaining postings are all deleted
+		assertTrue(ip.endOfPostings());
+		assertTrue(ip.endOfPostings());
+		assertEquals(3, ip.getId());
+		assertEquals(3, ip.getFrequency());
+		assertEquals(3, ip.asWritablePosting().getId());
+		assertEquals(IterablePosting.EOL, ip.next());
+		assertTrue(ip.endOfPostings());
+
+		// postings can be skipped to after looking ahead
+		ip = DeletedDocumentsIterablePosting.of(
+				new ArrayOfBasicIterablePosting(new int[]{0,2,3,5,7}, new int[]{1,2,3,4,5}), deleted);
+		assertEquals(0, ip.next());
+		assertFalse(ip.endOfPostings());
+		assertEquals(3, ip.next(3));
+		assertFalse(ip.endOfPostings());
+		assertEquals(7, ip.next(6));
+		assertEquals(5, ip.getFrequency());
+		assertTrue(ip.endOfPostings());
+	}
+
+	@Test public void testFields() throws Exception
+	{
+		DeletedDocuments deleted = new DeletedDocuments();
+		deleted.delete(1);
+		IterablePosting ip = DeletedDocumentsIterablePosting.of(new ArrayOfFieldIterablePosting(
+				new int[]{0,1,2},
+				new int[]{1,10,16},
+				new int[]{1,2,3},
+				new int[][]{ new int[]{0,1},  new int[]{1,9},  new int[]{8,8}},//tff
+				new int[][]{ new int[]{1,1}, new int[]{2,2}, new int[]{3,3}}), deleted);//lf
+		assertTrue(ip instanceof FieldPosting);
+		assertFalse(ip instanceof BlockPosting);
+		assertEquals(0, ip.next());
+		assertEquals(2, ip.next());
+		assertArrayEquals(new int[]{8,8}, ((FieldPosting) ip).getFieldFrequencies());
+		assertArrayEquals(new int[]{3,3}, ((FieldPosting) ip).getFieldLengths());
+		assertTrue(ip.endOfPostings());
+		assertArrayEquals(new int[]{8,8}, ((FieldPosting) ip).getFieldFrequencies());
+		assertEquals(IterablePosting.EOL, ip.next());
+	}
+
+	@Test public void testNoDeletions() throws Exception
+	{
+		IterablePosting ip = new ArrayOfIdsIterablePosting(new int[]{0,1});
+		assertSame(ip, DeletedDocumentsIterablePosting.of(ip, null));
+		assertNull(DeletedDocumentsIterablePosting.of(null, new DeletedDocuments()));
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestIndexPruner.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.structures.pruning;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import gnu.trove.TIntHashSet;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terrier.indexing.IndexTestUtils;
+import org.terrier.matching.MatchingQueryTerms;
+import org.terrier.matching.ResultSet;
+import org.terrier.matching.daat.Full;
+import org.terrier.matching.models.BM25;
+import org.terrier.structures.FieldEntryStatistics;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.IndexUtil;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.PostingIndexInputStream;
+import org.terrier.structures.PrunedLexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.tests.ApplicationSetupBasedTest;
+import org.terrier.utility.ApplicationSetup;
+
+public class TestIndexPruner extends ApplicationSetupBasedTest {
+
+	static final String[] DOCNOS = new String[]{"doc1", "doc2", "doc3", "doc4", "doc5", "doc6", "doc7", "doc8"};
+	static final String[] DOCS = new String[]{
+		"dog dog dog cat",
+		"dog mouse mouse mouse mouse mouse mouse",
+		"cat cat fish dog",
+		"lazy dog sleeps",
+		"fish bird dog",
+		"bird bird cat",
+		"mouse cheese",
+		"cheese fish"};
+	
+	@Before public void setIndexerProperties()
+	{
+		ApplicationSetup.setProperty("indexer.meta.forward.keys", "filename");
+		ApplicationSetup.setProperty("indexer.meta.reverse.keys", "");
+		ApplicationSetup.setProperty("termpipelines", "");
+		ApplicationSetup.setProperty("pruning.termcentric.k", "1");
+	}
+	
+	@Test public void testTermCentric() throws Exception
+	{
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "term", 0.5d);
+		ResultSet original = match(index, "dog");
+		ResultSet top = match(pruned, "dog");
+		assertTrue(top.getResultSize() > 0);
+		assertTrue(top.getResultSize() < original.getResultSize());
+		//retained documents obtain the same scores as on the original index
+		assertEquals(original.getDocids()[0], top.getDocids()[0]);
+		assertEquals(original.getScores()[0], top.getScores()[0], 0d);
+		index.close();
+		pruned.close();
+	}
+	
+	@Test public void testTermCentricFields() throws Exception
+	{
+		ApplicationSetup.setProperty("FieldTags.process", "TITLE,ELSE");
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndexFields(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "term", 0.5d);
+		assertEquals(index.getIntIndexProperty("index.inverted.fields.count", 0), pruned.getIntIndexProperty("index.inverted.fields.count", -1));
+		LexiconEntry le = pruned.getLexicon().getLexiconEntry("dog");
+		assertTrue(le instanceof FieldEntryStatistics);
+		assertArrayEquals(
+				((FieldEntryStatistics)index.getLexicon().getLexiconEntry("dog")).getFieldFrequencies(), 
+				((FieldEntryStatistics)le).getFieldFrequencies());
+		index.close();
+		pruned.close();
+	}
+	
+	@Test public void testDocumentCentric() throws Exception
+	{
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "document", 0.5d);
+		//every document retains at least one posting
+		TIntHashSet docids = new TIntHashSet();
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) pruned.getIndexStructureInputStream("inverted");
+		while(postingsIn.hasNext())
+		{
+			IterablePosting ip = postingsIn.next();
+			while(ip.next() != IterablePosting.EOL)
+				docids.add(ip.getId());
+		}
+		IndexUtil.close(postingsIn);
+		assertEquals(DOCNOS.length, docids.size());
+		index.close();
+		pruned.close();
+	}
+	
+	@Test public void testPopularity() throws Exception
+	{
+		ApplicationSetup.setProperty("pruning.popularity.querylog", 
+				writeTemporaryFile("querylog.txt", new String[]{"dog cat", "dog cat", "cheese"}));
+		IndexOnDisk index = (IndexOnDisk) IndexTestUtils.makeIndex(DOCNOS, DOCS);
+		IndexOnDisk pruned = prune(index, "popularity", 0.4d);
+		//dog and cat are the most popular terms, and fit within the budget
+		assertEquals(index.getLexicon().getLexiconEntry("dog").getDocumentFrequency(), pruned.getLexicon().getLexiconEntry("dog").getNumberOfEntries());
+		assertEquals(index.getLexicon().getLexiconEntry("cat").getDocumentFrequency(), pruned.getLexicon().getLexiconEntry("cat").getNumberOfEntries());
+		//cheese does not fit, and terms without postings are removed
+		assertNull(pruned.getLexicon().getLexiconEntry("cheese"));
+		assertNull(pruned.getLexicon().getLexiconEntry("mouse"));
+		assertArrayEquals(match(index, "dog").getDocids(), match(pruned, "dog").getDocids());
+		assertEquals(0, match(pruned, "mouse").getResultSize());
+		index.close();
+		pruned.close();
+	}
+	
+	/** prunes the index, and checks that the statistics of the pruned index are those of the original */
+	@SuppressWarnings("unchecked")
+	static IndexOnDisk prune(IndexOnDisk index, String strategy, double ratio) throws Exception
+	{
+		IndexOnDisk pruned = IndexPruner.getIndexPruner(strategy, index, new BM25(), ratio).prune(index.getPath(), index.getPrefix() + "-pruned");
+		pruned.close();
+		pruned = Index.createIndex(index.getPath(), index.getPrefix() + "-pruned");
+		assertNotNull(pruned);
+		
+		assertEquals(index.getCollectionStatistics().getNumberOfDocuments(), pruned.getCollectionStatistics().getNumberOfDocuments());
+		assertEquals(index.getCollectionStatistics().getNumberOfTokens(), pruned.getCollectionStatistics().getNumberOfTokens());
+		assertEquals(index.getCollectionStatistics().getNumberOfUniqueTerms(), pruned.getCollectionStatistics().getNumberOfUniqueTerms());
+		assertEquals(index.getMetaIndex().getItem("docno", 1), pruned.getMetaIndex().getItem("docno", 1));
+		assertEquals(index.getDocumentIndex().getDocumentLength(1), pruned.getDocumentIndex().getDocumentLength(1));
+		
+		long pointers = 0;
+		Iterator<Entry<String, LexiconEntry>> lexIn = (Iterator<Entry<String, LexiconEntry>>) pruned.getIndexStructureInputStream("lexicon");
+		PostingIndexInputStream postingsIn = (PostingIndexInputStream) pruned.getIndexStructureInputStream("inverted");
+		while(lexIn.hasNext())
+		{
+			Entry<String, LexiconEntry> lee = lexIn.next();
+			LexiconEntry original = index.getLexicon().getLexiconEntry(lee.getKey());
+			assertTrue(lee.getValue() instanceof PrunedLexiconEntry);
+			assertEquals(original.getDocumentFrequency(), lee.getValue().getDocumentFrequency());
+			assertEquals(original.getFrequency(), lee.getValue().getFrequency());
+			assertTrue(lee.getValue().getNumberOfEntries() > 0);
+			assertTrue(lee.getValue().getNumberOfEntries() <= original.getNumberOfEntries());
+			IterablePosting ip = postingsIn.next();
+			int count = 0;
+			while(ip.next() != IterablePosting.EOL)
+				count++;
+			assertEquals(lee.getValue().getNumberOfEntries(), count);
+			pointers += count;
+		}
+		IndexUtil.close(lexIn);
+		IndexUtil.close(postingsIn);
+		assertEquals(pointers, Long.parseLong(pruned.getIndexProperty("index.pruning.pointers", "-1")));
+		assertTrue(pointers >= Math.ceil(ratio * index.getCollectionStatistics().getNumberOfPointers()) || strategy.equals("popularity"));
+		assertTrue(pointers < index.getCollectionStatistics().getNumberOfPointers());
+		return pruned;
+	}
+	
+	static ResultSet match(Index index, String term) throws Exception
+	{
+		MatchingQueryTerms mqt = new MatchingQueryTerms();
+		mqt.setTermProperty(term, 1);
+		mqt.setDefaultTermWeightingModel(new BM25());
+		return new Full(index).match("query1", mqt);
+	}
+}
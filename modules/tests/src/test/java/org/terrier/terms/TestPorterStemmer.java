@@ -28,6 +28,8 @@ package org.terrier.terms;
 import static org.junit.Assert.assertEquals;
 
 import java.io.BufferedReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 import org.terrier.tests.ApplicationSetupBasedTest;
@@ -58,6 +60,46 @@ public class TestPorterStemmer extends ApplicationSetupBasedTest {
 		}
 	}
 	
+	static class CollectingCharTermPipeline implements CharTermPipeline
+	{
+		List<String> terms = new ArrayList<>();
+		
+		@Override
+		public void processTerm(String t) {
+			terms.add(t);
+		}
+
+		@Override
+		public boolean reset() {
+			return true;
+		}
+
+		@Override
+		public void processTerm(char[] buffer, int length) {
+			terms.add(new String(buffer, 0, length) + "/chars");
+		}
+	}
+	
+	@Test
+	public void testCharPipeline()
+	{
+		CollectingCharTermPipeline last = new CollectingCharTermPipeline();
+		PorterStemmer p = new PorterStemmer(last);
+		final int l = TEST_EXAMPLES.length;
+		for(int i=0;i<(l/2);i++)
+		{
+			p.processTerm(TEST_EXAMPLES[2*i]);
+			char[] buffer = (TEST_EXAMPLES[2*i] + "ignored").toCharArray();
+			p.processTerm(buffer, TEST_EXAMPLES[2*i].length());
+		}
+		assertEquals(l, last.terms.size());
+		for(int i=0;i<(l/2);i++)
+		{
+			assertEquals(TEST_EXAMPLES[2*i+1] + "/chars", last.terms.get(2*i));
+			assertEquals(TEST_EXAMPLES[2*i+1] + "/chars", last.terms.get(2*i+1));
+		}
+	}
+	
 	@Test
 	public void testAllExamples() throws Exception
 	{
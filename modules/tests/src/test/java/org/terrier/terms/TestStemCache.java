@@ -0,0 +1,133 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestStemCache.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.terms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.terrier.terms.TestPorterStemmer.CollectingCharTermPipeline;
+
+/** Test StemCache behaves as expected. */
+public class TestStemCache {
+
+	@Test public void testGetPut()
+	{
+		StemCache cache = new StemCache(100);
+		assertEquals(128, cache.capacity());
+		assertNull(cache.get("abandoned"));
+		cache.put("abandoned", "abandon");
+		assertEquals("abandon", cache.get("abandoned"));
+		assertEquals("abandon", cache.get("abandonedxx".toCharArray(), 9));
+		assertNull(cache.get("abandone".toCharArray(), 8));
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0.5d, cache.getHitRate(), 0d);
+		cache.clear();
+		assertNull(cache.get("abandoned"));
+		assertEquals(0, cache.getHits());
+	}
+	
+	@Test public void testBounded()
+	{
+		StemCache cache = new StemCache(1);
+		assertEquals(1, cache.capacity());
+		cache.put("a", "b");
+		cache.put("c", "d");
+		assertNull(cache.get("a"));
+		assertEquals("d", cache.get("c"));
+	}
+	
+	@Test public void testSharedByClass()
+	{
+		PorterStemmer p1 = new PorterStemmer(new CollectingCharTermPipeline());
+		PorterStemmer p2 = new PorterStemmer(new CollectingCharTermPipeline());
+		assertNotNull(p1.getCache());
+		assertSame(p1.getCache(), p2.getCache());
+		assertSame(p1.getCache(), StemCache.getCaches().get(PorterStemmer.class.getName()));
+		assertSame(new EnglishSnowballStemmer(null).getCache(), new EnglishSnowballStemmer(null).getCache());
+		assertNotSame(p1.getCache(), new WeakPorterStemmer(null).getCache());
+	}
+	
+	@Test public void testPipeline()
+	{
+		CollectingCharTermPipeline last = new CollectingCharTermPipeline();
+		PorterStemmer p = new PorterStemmer(last);
+		p.getCache().clear();
+		p.processTerm("abandoned");
+		p.processTerm("abandoned");
+		p.processTerm("abandoned".toCharArray(), 9);
+		p.processTerm("abergavenny");
+		assertEquals(2, p.getCache().getHits());
+		assertEquals(2, p.getCache().getMisses());
+		for(String t : last.terms)
+			assertEquals(t.startsWith("abandon/") ? "abandon/chars" : "abergavenni/chars", t);
+		
+		last.terms.clear();
+		EnglishSnowballStemmer s = new EnglishSnowballStemmer(last);
+		s.getCache().clear();
+		s.processTerm("abandoned");
+		s.processTerm("abandoned");
+		assertEquals(1, s.getCache().getHits());
+		assertEquals("abandon", last.terms.get(0));
+		assertEquals("abandon", last.terms.get(1));
+	}
+	
+	@Test public void testConcurrent() throws Exception
+	{
+		final String[] words = new String[]{"abandoned", "abandon", "abergavenny", "running", "runs", "generalization", "hopeful", "relational"};
+		List<String> porter = new ArrayList<>();
+		for(String w : words)
+			porter.add(new PorterStemmer(null).stem(w) + "/chars");
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<List<String>>> results = new ArrayList<>();
+		for(int t=0;t<4;t++)
+			results.add(pool.submit(() -> {
+				CollectingCharTermPipeline last = new CollectingCharTermPipeline();
+				PorterStemmer p = new PorterStemmer(last);
+				for(int i=0;i<10000;i++)
+					p.processTerm(words[i % words.length].toCharArray(), words[i % words.length].length());
+				return last.terms;
+			}));
+		for(Future<List<String>> f : results)
+		{
+			List<String> terms = f.get();
+			assertEquals(10000, terms.size());
+			for(int i=0;i<10000;i++)
+				assertEquals(porter.get(i % words.length), terms.get(i));
+		}
+		pool.shutdown();
+	}
+}
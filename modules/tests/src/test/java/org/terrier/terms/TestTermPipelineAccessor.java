@@ -48,4 +48,23 @@ public class TestTermPipelineAccessor extends ApplicationSetupBasedTest {
 		assertNull(tpa.pipelineTerm("i"));
 		assertNull(tpa.pipelineTerm("the"));
 	}
+	
+	@Test public void testStopwordsChars()
+	{
+		TestPorterStemmer.CollectingCharTermPipeline last = new TestPorterStemmer.CollectingCharTermPipeline();
+		Stopwords stop = new Stopwords(new PorterStemmer(last));
+		for (String t : new String[]{"the", "meeting", "i", "theory"})
+		{
+			char[] buffer = (t + "s").toCharArray();
+			stop.processTerm(buffer, t.length());
+		}
+		stop.processTerm("the");
+		stop.processTerm("meetings");
+		assertEquals(3, last.terms.size());
+		assertEquals("meet/chars", last.terms.get(0));
+		assertEquals("theori/chars", last.terms.get(1));
+		assertEquals("meet/chars", last.terms.get(2));
+		assertTrue(stop.isStopword("the"));
+		assertFalse(stop.isStopword("thes"));
+	}
 }
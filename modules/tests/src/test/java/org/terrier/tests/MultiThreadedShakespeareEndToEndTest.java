@@ -45,6 +45,22 @@ public class MultiThreadedShakespeareEndToEndTest {
 		}
 	}
 
+	public static class BasicInvertedThreads extends BasicShakespeareEndToEndTest {
+		public BasicInvertedThreads() {
+			super();
+			indexingOptions.add("-Dinvertedfile.threads=3");
+			indexingOptions.add("-Dinvertedfile.processpointers=800");
+		}
+	}
+	
+	public static class BlockInvertedThreads extends BlockShakespeareEndToEndTest {
+		public BlockInvertedThreads() {
+			super();
+			indexingOptions.add("-Dinvertedfile.threads=3");
+			indexingOptions.add("-Dinvertedfile.processpointers=800");
+		}
+	}
+
 	public static class BasicSinglePassThreads extends BasicSinglePassShakespeareEndToEndTest {
 		public BasicSinglePassThreads() {
 			super();
@@ -45,6 +45,8 @@ import org.junit.runners.Suite.SuiteClasses;
 	SinglePassShakespeareEndToEndTest.MultiPassBasicSinglePassShakespeareEndToEndTest.class,
 	SinglePassShakespeareEndToEndTest.MultiPassBlockSinglePassShakespeareEndToEndTest.class,
 	SinglePassShakespeareEndToEndTest.BlockSinglePassMaxBlocksShakespeareEndToEndTest.class,
+	SinglePassShakespeareEndToEndTest.SortingBasicSinglePassShakespeareEndToEndTest.class,
+	SinglePassShakespeareEndToEndTest.SortingBlockSinglePassShakespeareEndToEndTest.class,
 	
 	
 	MergingShakespeareEndToEndTests.BasicMerging.class,
@@ -54,6 +56,8 @@ import org.junit.runners.Suite.SuiteClasses;
 	
 	MultiThreadedShakespeareEndToEndTest.BasicThreads.class,
 	MultiThreadedShakespeareEndToEndTest.BlockThreads.class,
+	MultiThreadedShakespeareEndToEndTest.BasicInvertedThreads.class,
+	MultiThreadedShakespeareEndToEndTest.BlockInvertedThreads.class,
 	MultiThreadedShakespeareEndToEndTest.BasicSinglePassThreads.class,
 	MultiThreadedShakespeareEndToEndTest.BlockSinglePassThreads.class,
 	
@@ -28,6 +28,7 @@ package org.terrier.tests;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.indexing.singlepass.BlockInverted2DirectIndexBuilder;
 import org.terrier.structures.indexing.singlepass.Inverted2DirectIndexBuilder;
+import org.terrier.structures.indexing.singlepass.SortingInverted2DirectIndexBuilder;
 import org.terrier.tests.BlockMaxBlocksShakespeareEndToEndTest.MaxBlockChecks;
 import org.terrier.utility.ApplicationSetup;
 
@@ -102,4 +103,25 @@ public class SinglePassShakespeareEndToEndTest
 			super.addDirectStructure(index);
 		}
 	}
+	
+	static public class SortingBasicSinglePassShakespeareEndToEndTest extends BasicSinglePassShakespeareEndToEndTest
+	{
+		@Override
+		protected void addDirectStructure(IndexOnDisk index) throws Exception {
+			//several runs and ranges of documents
+			ApplicationSetup.setProperty("inverted2direct.sort.buffer", "16K");
+			ApplicationSetup.setProperty("inverted2direct.sort.threads", "3");
+			new SortingInverted2DirectIndexBuilder(index).createDirectIndex();
+		}
+	}
+	
+	static public class SortingBlockSinglePassShakespeareEndToEndTest extends BlockSinglePassShakespeareEndToEndTest
+	{
+		@Override
+		protected void addDirectStructure(IndexOnDisk index) throws Exception {
+			ApplicationSetup.setProperty("inverted2direct.sort.buffer", "8K");
+			ApplicationSetup.setProperty("inverted2direct.sort.threads", "2");
+			new SortingInverted2DirectIndexBuilder(index).createDirectIndex();
+		}
+	}
 }
@@ -85,4 +85,19 @@ public class TestTermCodes extends TestCase {
 			}
 		}
 	}
+	
+	@Test
+	public void testTermCodesPutAndGet() {
+		TermCodes termCodes = new TermCodes();
+		assertEquals(0, termCodes.getCode("a"));
+		assertEquals(1, termCodes.getCode("b"));
+		termCodes.setTermCode("c", 10);
+		assertEquals(10, termCodes.getCode("c"));
+		assertEquals(2, termCodes.getCode("d"));
+		assertEquals(0, termCodes.getCode("a"));
+		termCodes.setTermCode("a", 20);
+		assertEquals(20, termCodes.getCode("a"));
+		termCodes.reset();
+		assertEquals(0, termCodes.getCode("c"));
+	}
 }
@@ -0,0 +1,93 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestUTF8TermDictionary.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestUTF8TermDictionary {
+
+	@Test public void testAddLookup()
+	{
+		UTF8TermDictionary dict = new UTF8TermDictionary();
+		assertEquals(-1, dict.lookup("a"));
+		assertEquals(0, dict.add("a"));
+		assertEquals(1, dict.add("bb"));
+		assertEquals(0, dict.add("a"));
+		assertEquals(2, dict.add(""));
+		assertEquals(1, dict.lookup("bb"));
+		assertEquals(2, dict.lookup(""));
+		assertEquals(-1, dict.lookup("b"));
+		assertEquals(3, dict.size());
+		assertEquals("bb", dict.getTerm(1));
+		assertEquals("", dict.getTerm(2));
+		
+		dict.clear();
+		assertEquals(0, dict.size());
+		assertEquals(-1, dict.lookup("a"));
+		assertEquals(0, dict.add("bb"));
+	}
+	
+	@Test public void testNonAscii()
+	{
+		final String[] terms = {"café", "cafe", "中文", "😀x", "x😀", "é", "е"};
+		UTF8TermDictionary dict = new UTF8TermDictionary();
+		for(int i=0;i<terms.length;i++)
+			assertEquals(i, dict.add(terms[i]));
+		for(int i=0;i<terms.length;i++)
+		{
+			assertEquals(i, dict.lookup(terms[i]));
+			assertEquals(terms[i], dict.getTerm(i));
+		}
+		//a StringBuilder is looked up by its characters
+		assertEquals(0, dict.lookup(new StringBuilder("café")));
+	}
+	
+	@Test public void testGrowth()
+	{
+		UTF8TermDictionary dict = new UTF8TermDictionary(10);
+		List<String> terms = new ArrayList<>();
+		for(int i=0;i<100000;i++)
+			terms.add("term" + i);
+		//a term longer than a page
+		StringBuilder longTerm = new StringBuilder();
+		for(int i=0;i<UTF8TermDictionary.PAGE_SIZE;i++)
+			longTerm.append((char) ('a' + i % 26));
+		terms.add(50000, longTerm.toString());
+		for(int i=0;i<terms.size();i++)
+			assertEquals(i, dict.add(terms.get(i)));
+		assertEquals(terms.size(), dict.size());
+		for(int i=0;i<terms.size();i++)
+		{
+			assertEquals(i, dict.lookup(terms.get(i)));
+			assertEquals(terms.get(i), dict.getTerm(i));
+		}
+	}
+}
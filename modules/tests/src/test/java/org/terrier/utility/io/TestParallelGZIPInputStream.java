@@ -0,0 +1,130 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestParallelGZIPInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import net.sf.samtools.util.BlockCompressedOutputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/** Test ParallelGZIPInputStream behaves as expected. */
+public class TestParallelGZIPInputStream {
+
+	/** compressible bytes */
+	static byte[] data(int length)
+	{
+		byte[] rtr = new byte[length];
+		Random r = new Random(42);
+		for(int i=0;i<length;i++)
+			rtr[i] = (byte) ('a' + r.nextInt(4));
+		return rtr;
+	}
+	
+	static byte[] gzip(byte[] data) throws IOException
+	{
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		OutputStream out = new GZIPOutputStream(buffer);
+		out.write(data);
+		out.close();
+		return buffer.toByteArray();
+	}
+	
+	static byte[] decompress(byte[] compressed, int chunkSize) throws IOException
+	{
+		InputStream in = new ParallelGZIPInputStream(new ByteArrayInputStream(compressed), chunkSize, 2);
+		byte[] rtr = ByteStreams.toByteArray(in);
+		in.close();
+		return rtr;
+	}
+	
+	@Test public void testSingleMember() throws Exception
+	{
+		for(int length : new int[]{0, 1, 1000, 200000})
+		{
+			byte[] data = data(length);
+			assertArrayEquals(data, decompress(gzip(data), 1024));
+			assertArrayEquals(data, decompress(gzip(data), 64*1024));
+		}
+	}
+	
+	@Test public void testMultiMember() throws Exception
+	{
+		byte[] data = data(300000);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		buffer.write(gzip(Arrays.copyOfRange(data, 0, 1000)));
+		buffer.write(gzip(Arrays.copyOfRange(data, 1000, 1000)));
+		buffer.write(gzip(Arrays.copyOfRange(data, 1000, 300000)));
+		assertArrayEquals(data, decompress(buffer.toByteArray(), 1024));
+	}
+	
+	@Test public void testBGZF() throws Exception
+	{
+		byte[] data = data(500000);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		OutputStream out = new BlockCompressedOutputStream(buffer, null);
+		out.write(data);
+		out.close();
+		assertArrayEquals(data, decompress(buffer.toByteArray(), 1024));
+		//a gzip member after BGZF blocks
+		buffer.write(gzip(data));
+		byte[] expected = Arrays.copyOf(data, 2 * data.length);
+		System.arraycopy(data, 0, expected, data.length, data.length);
+		assertArrayEquals(expected, decompress(buffer.toByteArray(), 1024));
+	}
+	
+	@Test public void testCorrupt() throws Exception
+	{
+		try{
+			decompress("not compressed".getBytes(), 1024);
+			fail("Expected IOException");
+		} catch (IOException ioe) {}
+		
+		byte[] compressed = gzip(data(100000));
+		try{
+			decompress(Arrays.copyOf(compressed, compressed.length / 2), 1024);
+			fail("Expected IOException");
+		} catch (IOException ioe) {}
+		
+		compressed[compressed.length-5]++;
+		try{
+			decompress(compressed, 1024);
+			fail("Expected IOException");
+		} catch (IOException ioe) {}
+	}
+}
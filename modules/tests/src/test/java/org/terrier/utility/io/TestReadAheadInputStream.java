@@ -0,0 +1,111 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestReadAheadInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/** Test ReadAheadInputStream behaves as expected. */
+public class TestReadAheadInputStream {
+
+	static byte[] randomBytes(int length)
+	{
+		byte[] rtr = new byte[length];
+		new Random(42).nextBytes(rtr);
+		return rtr;
+	}
+	
+	@Test public void testReadAll() throws Exception
+	{
+		for(int length : new int[]{0, 1, 10, 100, 1000, 10000})
+		{
+			byte[] data = randomBytes(length);
+			InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 100, 2);
+			assertArrayEquals(data, ByteStreams.toByteArray(in));
+			assertEquals(-1, in.read());
+			in.close();
+		}
+	}
+	
+	@Test public void testReadAndSkip() throws Exception
+	{
+		byte[] data = randomBytes(1000);
+		InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 64, 3);
+		assertEquals(data[0] & 0xFF, in.read());
+		assertEquals(300, in.skip(300));
+		assertEquals(data[301] & 0xFF, in.read());
+		byte[] b = new byte[200];
+		ByteStreams.readFully(in, b);
+		for(int i=0;i<200;i++)
+			assertEquals(data[302+i], b[i]);
+		assertEquals(1000-502, in.skip(10000));
+		assertEquals(-1, in.read());
+		in.close();
+	}
+	
+	@Test public void testException() throws Exception
+	{
+		InputStream failing = new InputStream() {
+			int count = 0;
+			@Override
+			public int read() throws IOException {
+				if (count++ >= 150)
+					throw new IOException("test");
+				return 1;
+			}
+		};
+		InputStream in = new ReadAheadInputStream(failing, 100, 2);
+		assertEquals(100, in.skip(100));
+		try{
+			in.skip(100);
+			fail("Expected IOException");
+		} catch (IOException ioe) {
+			assertEquals("test", ioe.getMessage());
+		}
+		in.close();
+	}
+	
+	@Test public void testCloseEarly() throws Exception
+	{
+		InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(randomBytes(10000)), 10, 2);
+		in.read();
+		in.close();
+		try{
+			in.read(new byte[100]);
+			fail("Expected IOException");
+		} catch (IOException ioe) {}
+	}
+}
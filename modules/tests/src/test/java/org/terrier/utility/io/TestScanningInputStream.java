@@ -0,0 +1,151 @@
+/*
+ * Terrier - Terabyte Retriever 
+ * Webpage: http://terrier.org/
+ * Contact: terrier{a.}dcs.gla.ac.uk
+ * University of Glasgow - School of Computing Science
+ * http://www.gla.ac.uk/
+ * 
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See
+ * the License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * The Original Code is TestScanningInputStream.java
+ *
+ * The Original Code is Copyright (C) 2004-2019 the University of Glasgow.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ */
+package org.terrier.utility.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/** Test ScanningInputStream behaves as expected. */
+public class TestScanningInputStream {
+
+	/** returns at most 3 bytes per read, such that patterns straddle reads */
+	static InputStream trickle(String s)
+	{
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(3, len));
+			}
+			@Override
+			public synchronized long skip(long n) {
+				return super.skip(Math.min(3, n));
+			}
+		};
+	}
+	
+	static byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	static String string(ByteArrayOutputStream out)
+	{
+		String rtr = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		out.reset();
+		return rtr;
+	}
+	
+	@Test public void testReadUntil() throws Exception
+	{
+		for(int bufferSize : new int[]{1, 4, 7, 1024})
+		{
+			ScanningInputStream sis = new ScanningInputStream(trickle("xx<<DOC> one </doc><DOC>two</DOC>end"), 0, bufferSize);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertTrue(sis.readUntil(bytes("<DOC>"), false, out));
+			assertEquals("xx<", string(out));
+			assertEquals(8, sis.getPos());
+			assertTrue(sis.readUntil(bytes("</DOC>"), true, out));
+			assertEquals(" one ", string(out));
+			assertTrue(sis.readUntil(bytes("<DOC>"), false, null));
+			assertTrue(sis.readUntil(bytes("</DOC>"), false, out));
+			assertEquals("two", string(out));
+			assertEquals(33, sis.getPos());
+			assertFalse(sis.readUntil(bytes("<DOC>"), false, out));
+			assertEquals("end", string(out));
+			assertEquals(36, sis.getPos());
+			assertEquals(-1, sis.read());
+			sis.close();
+		}
+	}
+	
+	@Test public void testReadLine() throws Exception
+	{
+		for(int bufferSize : new int[]{1, 4, 1024})
+		{
+			ScanningInputStream sis = new ScanningInputStream(trickle("WARC/1.0\r\nkey: value\n\r\nlast"), 0, bufferSize);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertTrue(sis.readLine(out));
+			assertEquals("WARC/1.0\r", string(out));
+			assertTrue(sis.readLine(out));
+			assertEquals("key: value", string(out));
+			assertTrue(sis.readLine(out));
+			assertEquals("\r", string(out));
+			assertFalse(sis.readLine(out));
+			assertEquals("last", string(out));
+			assertEquals(27, sis.getPos());
+			sis.close();
+		}
+	}
+	
+	@Test public void testReadAndSkip() throws Exception
+	{
+		byte[] data = new byte[100];
+		for(int i=0;i<data.length;i++)
+			data[i] = (byte) i;
+		ScanningInputStream sis = new ScanningInputStream(new ByteArrayInputStream(data) {
+			@Override
+			public synchronized long skip(long n) {
+				return super.skip(Math.min(3, n));
+			}
+		}, 10, 8);
+		assertEquals(0, sis.read());
+		assertEquals(11, sis.getPos());
+		//skips fully, even though the underlying stream skips partially
+		assertEquals(20, sis.skip(20));
+		assertEquals(31, sis.getPos());
+		assertEquals(21, sis.read());
+		byte[] b = new byte[30];
+		int read = 0;
+		while(read < b.length)
+			read += sis.read(b, read, b.length - read);
+		for(int i=0;i<b.length;i++)
+			assertEquals(22 + i, b[i]);
+		assertEquals(62, sis.getPos());
+		assertEquals(48, sis.skip(1000));
+		assertEquals(110, sis.getPos());
+		assertEquals(-1, sis.read());
+		assertEquals(-1, sis.read(b, 0, 10));
+		assertEquals(110, sis.getPos());
+		sis.close();
+	}
+	
+	@Test public void testIgnoreCase() throws IOException
+	{
+		ScanningInputStream sis = new ScanningInputStream(trickle("a<dOcNo>b"), 0, 4);
+		assertTrue(sis.readUntil(bytes("<DOCNO>"), true, null));
+		assertEquals('b', sis.read());
+		sis.close();
+	}
+}